@@ -0,0 +1,126 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Cliente;
+import com.zetallegue.tms.model.ColectaDiaria;
+import com.zetallegue.tms.model.Envio;
+import com.zetallegue.tms.model.Grupo;
+import com.zetallegue.tms.model.ListaPrecio;
+import com.zetallegue.tms.model.Zona;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Datos sintéticos para los benchmarks de informes: clientes repartidos en grupos, listas de precios con zonas
+ * (algunas referencian las zonas de otra) y envíos colectados en el período, con la mezcla de estados, zonas y
+ * formatos de envio.cliente que se ven en producción. La semilla es fija para que las corridas sean comparables.
+ */
+final class DatosSinteticosInforme {
+
+    static final LocalDate DESDE = LocalDate.of(2025, 3, 1);
+    static final LocalDate HASTA = LocalDate.of(2025, 3, 31);
+
+    private static final String[] ESTADOS = {
+            "Entregado", "Entregado", "Entregado", "Entregado", "En camino al destinatario", "Retirado",
+            "Rechazado por el comprador", "Cancelado", "Nadie", "Reprogramado"
+    };
+    private static final String[] LOCALIDADES = {"CABA", "Avellaneda", "Lanús", "Quilmes", "Morón", "San Isidro", "Tigre", "La Matanza"};
+    private static final int ZONAS_POR_LISTA = 8;
+
+    final List<Cliente> clientes = new ArrayList<>();
+    final List<Grupo> grupos = new ArrayList<>();
+    final List<ListaPrecio> listas = new ArrayList<>();
+    final List<Envio> envios;
+    final List<ColectaDiaria> hechos;
+
+    DatosSinteticosInforme(int filas, int cantidadClientes, int cantidadGrupos) {
+        Random random = new Random(42);
+        for (long g = 1; g <= cantidadGrupos; g++) {
+            grupos.add(new Grupo(g, "Grupo " + g));
+        }
+        int cantidadListas = 10;
+        for (long l = 1; l <= cantidadListas; l++) {
+            ListaPrecio lista = new ListaPrecio();
+            lista.setId(l);
+            lista.setCodigo("L" + l);
+            lista.setNombre("Lista " + l);
+            // Las listas pares usan las zonas de la impar anterior
+            if (l % 2 == 0) {
+                lista.setZonaPropia(false);
+                lista.setListaPrecioSeleccionada(l - 1);
+            } else {
+                for (int z = 1; z <= ZONAS_POR_LISTA; z++) {
+                    Zona zona = new Zona();
+                    zona.setId(l * 100 + z);
+                    zona.setCodigo("Z" + z);
+                    zona.setNombre("Zona " + z);
+                    zona.setValor(String.valueOf(1000 + 250 * z + 10 * l));
+                    zona.setListaPrecio(lista);
+                    lista.getZonas().add(zona);
+                }
+            }
+            listas.add(lista);
+        }
+        for (long c = 1; c <= cantidadClientes; c++) {
+            Cliente cliente = new Cliente();
+            cliente.setId(c);
+            cliente.setCodigo(String.format("C%04d", c));
+            cliente.setNombreFantasia("Tienda " + c);
+            cliente.setRazonSocial("Tienda " + c + " SRL");
+            cliente.setHabilitado(true);
+            cliente.setGrupoId(1 + (c - 1) % cantidadGrupos);
+            cliente.setListaPreciosId(1 + (c - 1) % cantidadListas);
+            clientes.add(cliente);
+        }
+
+        envios = new ArrayList<>(filas);
+        int dias = (int) (HASTA.toEpochDay() - DESDE.toEpochDay()) + 1;
+        for (int i = 0; i < filas; i++) {
+            // Pocos clientes concentran la mayoría de los envíos
+            Cliente cliente = clientes.get((int) (Math.pow(random.nextDouble(), 2) * clientes.size()));
+            Envio e = new Envio();
+            e.setId((long) i + 1);
+            e.setTracking("TRK" + (1_000_000 + i));
+            e.setCliente(random.nextInt(10) == 0 ? cliente.getNombreFantasia() : cliente.getCodigo() + " - " + cliente.getNombreFantasia());
+            e.setEstado(ESTADOS[random.nextInt(ESTADOS.length)]);
+            e.setColectado(true);
+            LocalDateTime colecta = DESDE.plusDays(random.nextInt(dias)).atTime(8 + random.nextInt(10), random.nextInt(60));
+            e.setFechaColecta(colecta);
+            e.setFechaUltimoMovimiento(colecta.plusHours(random.nextInt(48)));
+            e.setDireccion("Calle " + (1 + random.nextInt(5000)) + " " + (100 + random.nextInt(9000)));
+            String localidad = LOCALIDADES[random.nextInt(LOCALIDADES.length)];
+            e.setLocalidad(localidad);
+            e.setCodigoPostal(String.valueOf(1000 + random.nextInt(900)));
+            e.setZonaEntrega("Zona " + (1 + random.nextInt(ZONAS_POR_LISTA)));
+            BigDecimal costo = BigDecimal.valueOf(1000 + random.nextInt(4000), 0).setScale(2);
+            e.setCostoEnvio(costo.toPlainString());
+            e.setCostoEnvioNum(costo);
+            BigDecimal cobro = random.nextInt(4) == 0 ? BigDecimal.valueOf(5000 + random.nextInt(50000)).setScale(2) : BigDecimal.ZERO.setScale(2);
+            e.setTotalACobrar(cobro.toPlainString());
+            e.setTotalACobrarNum(cobro);
+            envios.add(e);
+        }
+        hechos = agregarPorDia(envios);
+    }
+
+    /** Lo que tendría colecta_diaria para estos envíos (mismo agrupamiento que ColectaDiariaService). */
+    private static List<ColectaDiaria> agregarPorDia(List<Envio> envios) {
+        Map<List<Object>, ColectaDiaria> porClave = new LinkedHashMap<>();
+        for (Envio e : envios) {
+            LocalDate dia = e.diaColectaEfectiva();
+            String estadoGrupo = ColectaDiaria.grupoDeEstado(e.getEstado());
+            ColectaDiaria hecho = porClave.computeIfAbsent(List.of(dia, e.getCliente(), e.getZonaEntrega(), estadoGrupo),
+                    k -> new ColectaDiaria(null, dia, e.getCliente(), null, e.getZonaEntrega(), estadoGrupo, 0, BigDecimal.ZERO, BigDecimal.ZERO));
+            hecho.setCantidad(hecho.getCantidad() + 1);
+            hecho.setCostoEnvioTotal(hecho.getCostoEnvioTotal().add(e.getCostoEnvioNum()));
+            hecho.setTotalACobrarTotal(hecho.getTotalACobrarTotal().add(e.getTotalACobrarNum()));
+        }
+        return new ArrayList<>(porClave.values());
+    }
+}
@@ -0,0 +1,144 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.InformeRequestDTO;
+import com.zetallegue.tms.model.Cliente;
+import com.zetallegue.tms.model.Grupo;
+import com.zetallegue.tms.model.ListaPrecio;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.GrupoRepository;
+import com.zetallegue.tms.repository.ListaPrecioRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmarks de {@link InformeService} sobre datos sintéticos ({@link DatosSinteticosInforme}), con los repositorios
+ * reemplazados por mocks que devuelven listas en memoria: se mide la lógica del informe, no la base.
+ *
+ * <ul>
+ *   <li>{@code prepararTodasLasCuentas}: resolución de targets, reparto de envíos por target (IndiceTargets, lo que
+ *       antes hacían perteneceATarget / filtrarEnviosParaTarget), resúmenes (buildResumen) y precios por zona.</li>
+ *   <li>{@code excelGrupo} / {@code pdfGrupo}: lo anterior más el render de un archivo (escribirExcel / escribirPdf).</li>
+ *   <li>{@code zipExcelTodasLasCuentas}: informe multi-destinatario completo con el render en paralelo.</li>
+ * </ul>
+ *
+ * Con el perfil de Maven: {@code mvn -Pbenchmarks test-compile exec:exec}. Por defecto corre con {@code -prof gc},
+ * que agrega la tasa de asignación (gc.alloc.rate y gc.alloc.rate.norm, bytes por operación) al throughput.
+ * Para 1M de filas: {@code -Djmh.args="InformeBenchmark -p filas=1000000 -prof gc"} (requiere varios GB de heap).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class InformeBenchmark {
+
+    @Param({"10000", "100000"})
+    public int filas;
+
+    @Param({"200"})
+    public int clientes;
+
+    private InformeService informeService;
+    private InformeRequestDTO todasLasCuentasExcel;
+    private InformeRequestDTO grupoExcel;
+    private InformeRequestDTO grupoPdf;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        DatosSinteticosInforme datos = new DatosSinteticosInforme(filas, clientes, 20);
+
+        EnvioRepository envioRepository = mock(EnvioRepository.class);
+        when(envioRepository.findEnviosColectadosEntreFechas(any(), any())).thenReturn(datos.envios);
+        DirectorioClientesService directorioClientesService = mock(DirectorioClientesService.class);
+        when(directorioClientesService.todos()).thenReturn(datos.clientes);
+        when(directorioClientesService.clientesDeGrupo(anyLong())).thenAnswer(inv -> {
+            Long grupoId = inv.getArgument(0);
+            List<Cliente> out = datos.clientes.stream().filter(c -> grupoId.equals(c.getGrupoId())).toList();
+            return out;
+        });
+        GrupoRepository grupoRepository = mock(GrupoRepository.class);
+        when(grupoRepository.findAll(any(Sort.class))).thenReturn(datos.grupos);
+        when(grupoRepository.findAllById(anyIterable())).thenAnswer(inv -> {
+            Set<Long> ids = new HashSet<>();
+            for (Long id : inv.<Iterable<Long>>getArgument(0)) ids.add(id);
+            List<Grupo> out = datos.grupos.stream().filter(g -> ids.contains(g.getId())).toList();
+            return out;
+        });
+        ListaPrecioRepository listaPrecioRepository = mock(ListaPrecioRepository.class);
+        when(listaPrecioRepository.findAllConZonasByIdIn(anyCollection())).thenAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            List<ListaPrecio> out = datos.listas.stream().filter(l -> ids.contains(l.getId())).toList();
+            return out;
+        });
+
+        ColectaDiariaService colectaDiariaService = mock(ColectaDiariaService.class);
+        when(colectaDiariaService.disponible()).thenReturn(true);
+        when(colectaDiariaService.obtener(any(), any())).thenReturn(datos.hechos);
+
+        // Fuera de Spring informes.render.cache-horas queda en 0: cada operación renderiza todo, sin reutilizar archivos
+        informeService = new InformeService(envioRepository, grupoRepository, listaPrecioRepository,
+                directorioClientesService, colectaDiariaService, mock(AlmacenInformes.class));
+        informeService.iniciarPoolRender();
+
+        todasLasCuentasExcel = solicitud(InformeService.TIPO_TODAS_CUENTAS, null, InformeService.FORMATO_EXCEL);
+        grupoExcel = solicitud(InformeService.TIPO_GRUPOS, List.of(1L), InformeService.FORMATO_EXCEL);
+        grupoPdf = solicitud(InformeService.TIPO_GRUPOS, List.of(1L), InformeService.FORMATO_PDF);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        informeService.detenerPoolRender();
+    }
+
+    @Benchmark
+    public InformeService.InformePreparado prepararTodasLasCuentas() {
+        return informeService.prepararInforme(todasLasCuentasExcel);
+    }
+
+    @Benchmark
+    public void excelGrupo() throws Exception {
+        informeService.prepararInforme(grupoExcel).escribir(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void pdfGrupo() throws Exception {
+        informeService.prepararInforme(grupoPdf).escribir(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void zipExcelTodasLasCuentas() throws Exception {
+        informeService.prepararInforme(todasLasCuentasExcel).escribir(OutputStream.nullOutputStream());
+    }
+
+    private static InformeRequestDTO solicitud(String tipo, List<Long> idsGrupos, String formato) {
+        return new InformeRequestDTO(DatosSinteticosInforme.DESDE, DatosSinteticosInforme.HASTA, tipo, idsGrupos, null,
+                formato, InformeService.TOMAR_RETIRADOS_EXCEPTO);
+    }
+}
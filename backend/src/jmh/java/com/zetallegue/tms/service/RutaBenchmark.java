@@ -0,0 +1,70 @@
+package com.zetallegue.tms.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo de {@link OptimizadorRutaService#optimizar} para la zona de un chofer (unos 10 x 10 km) con paradas al
+ * azar, sin deadlines ajustados (solo distancia) y con un tercio de las paradas con deadline entre 2 y 12 horas.
+ * El presupuesto se sube a 10 s para medir lo que tarda en converger y no el corte.
+ *
+ * {@code mvn -Pbenchmarks test-compile exec:exec -Djmh.args="RutaBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RutaBenchmark {
+
+    @Param({"50", "150", "300"})
+    public int paradas;
+
+    private OptimizadorRutaService optimizador;
+    private List<OptimizadorRutaService.Parada> sinDeadlines;
+    private List<OptimizadorRutaService.Parada> conDeadlines;
+    private LocalDateTime inicio;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        optimizador = new OptimizadorRutaService(25, 4, 10, 10_000);
+        inicio = LocalDateTime.of(2025, 3, 10, 9, 0);
+        Random random = new Random(42);
+        sinDeadlines = new ArrayList<>();
+        conDeadlines = new ArrayList<>();
+        for (long i = 1; i <= paradas; i++) {
+            double lat = -34.65 + random.nextDouble() * 0.09;
+            double lng = -58.5 + random.nextDouble() * 0.11;
+            sinDeadlines.add(new OptimizadorRutaService.Parada(i, lat, lng, null));
+            LocalDateTime deadline = i % 3 == 0 ? inicio.plusMinutes(120 + random.nextInt(600)) : null;
+            conDeadlines.add(new OptimizadorRutaService.Parada(i, lat, lng, deadline));
+        }
+    }
+
+    @Benchmark
+    public OptimizadorRutaService.Ruta soloDistancia() {
+        return optimizador.optimizar(-34.6, -58.45, sinDeadlines, inicio);
+    }
+
+    @Benchmark
+    public OptimizadorRutaService.Ruta conDeadlines() {
+        return optimizador.optimizar(-34.6, -58.45, conDeadlines, inicio);
+    }
+}
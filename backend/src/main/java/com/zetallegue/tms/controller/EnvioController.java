@@ -1,14 +1,24 @@
 package com.zetallegue.tms.controller;
 
+import com.zetallegue.tms.dto.AsignacionMasivaDTO;
 import com.zetallegue.tms.dto.EnvioDTO;
 import com.zetallegue.tms.dto.EnvioFilterDTO;
 import com.zetallegue.tms.dto.HistorialEnvioDTO;
 import com.zetallegue.tms.dto.ObservacionEnvioDTO;
 import com.zetallegue.tms.dto.ImagenEnvioDTO;
 import com.zetallegue.tms.dto.PageResponseDTO;
+import com.zetallegue.tms.dto.PlanAsignacionDTO;
+import com.zetallegue.tms.dto.PlanificacionRequestDTO;
+import com.zetallegue.tms.dto.RutaOptimizadaDTO;
+import com.zetallegue.tms.dto.SincronizacionRequestDTO;
 import com.zetallegue.tms.service.EnvioService;
+import com.zetallegue.tms.service.IndiceGeograficoService;
+import com.zetallegue.tms.service.PlanificadorAsignacionService;
+import com.zetallegue.tms.service.SincronizacionChoferService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -26,6 +36,9 @@ public class EnvioController {
     private final com.zetallegue.tms.service.EnvioServiceTiendaNube envioServiceTiendaNube;
     private final com.zetallegue.tms.service.EnvioServiceVtex envioServiceVtex;
     private final com.zetallegue.tms.service.EnvioServiceShopify envioServiceShopify;
+    private final PlanificadorAsignacionService planificadorAsignacionService;
+    private final IndiceGeograficoService indiceGeograficoService;
+    private final SincronizacionChoferService sincronizacionChoferService;
 
     @GetMapping
     public ResponseEntity<PageResponseDTO<EnvioDTO>> buscarEnvios(EnvioFilterDTO filter) {
@@ -451,6 +464,75 @@ public class EnvioController {
         return ResponseEntity.ok(envios);
     }
 
+    /** Igual que /ruta con la posición, llegada estimada y distancia de cada parada y los totales de la ruta. */
+    @GetMapping("/chofer/{choferId}/ruta/optimizada")
+    public ResponseEntity<RutaOptimizadaDTO> obtenerRutaOptimizada(@PathVariable Long choferId) {
+        return ResponseEntity.ok(envioService.obtenerRutaOptimizada(choferId));
+    }
+
+    /**
+     * Sincronización de la app del chofer: aplica los cambios de estado acumulados sin señal (con clave de
+     * idempotencia, se puede reintentar el mismo lote) y devuelve lo que cambió en su ruta desde el cursor.
+     */
+    @PostMapping("/chofer/{choferId}/sincronizar")
+    public ResponseEntity<?> sincronizarChofer(@PathVariable Long choferId, @RequestBody SincronizacionRequestDTO request) {
+        try {
+            return ResponseEntity.ok(sincronizacionChoferService.sincronizar(choferId, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (DataIntegrityViolationException e) {
+            // El mismo lote llegó dos veces a la vez: el otro pedido lo está aplicando
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Sincronización en curso, reintentar"));
+        }
+    }
+
+    /** Envíos pendientes a menos de radioKm del punto (del índice geográfico), del más cercano al más lejano. */
+    @GetMapping("/cercanos")
+    public ResponseEntity<?> obtenerEnviosCercanos(
+            @RequestParam Double lat,
+            @RequestParam Double lng,
+            @RequestParam(defaultValue = "2") Double radioKm,
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String estado,
+            @RequestParam(required = false) Long choferId) {
+        try {
+            return ResponseEntity.ok(indiceGeograficoService.enviosCercanos(lat, lng, radioKm, limite, estado, choferId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /** Envíos pendientes dentro del área visible del mapa; si son más que el límite vienen agrupados. */
+    @GetMapping("/mapa")
+    public ResponseEntity<?> obtenerEnviosEnMapa(
+            @RequestParam Double latMin,
+            @RequestParam Double latMax,
+            @RequestParam Double lngMin,
+            @RequestParam Double lngMax,
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String estado,
+            @RequestParam(required = false) Long choferId) {
+        try {
+            return ResponseEntity.ok(indiceGeograficoService.enviosEnArea(latMin, latMax, lngMin, lngMax, limite, estado, choferId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /** Choferes habilitados más cercanos al destino del envío, para reasignar. */
+    @GetMapping("/{id}/choferes-cercanos")
+    public ResponseEntity<?> obtenerChoferesCercanos(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "5") Integer cantidad,
+            @RequestParam(required = false) Double maxKm,
+            @RequestParam(required = false) Integer maxMinutosUbicacion) {
+        try {
+            return ResponseEntity.ok(indiceGeograficoService.choferesCercanosAEnvio(id, cantidad, maxKm, maxMinutosUbicacion));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PostMapping("/{id}/asignar")
     public ResponseEntity<?> asignarEnvio(
             @PathVariable Long id,
@@ -483,6 +565,49 @@ public class EnvioController {
         }
     }
 
+    /**
+     * Asigna a un chofer una lista de envíos (envioIds) o los que cumplan un filtro, en un solo pedido. Devuelve
+     * cuántos se asignaron y los rechazados con el motivo.
+     */
+    @PostMapping("/asignar-masivo")
+    public ResponseEntity<?> asignarEnviosMasivo(@RequestBody AsignacionMasivaDTO request) {
+        try {
+            return ResponseEntity.ok(envioService.asignarEnviosMasivo(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            log.error("Error en asignación masiva choferId={}: {}", request != null ? request.getChoferId() : null, e.getMessage(), e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage() != null ? e.getMessage() : "Error al asignar"));
+        }
+    }
+
+    /**
+     * Propone un reparto de los envíos "Retirado" sin chofer entre los choferes (por cercanía, zonas habituales de
+     * cada chofer y capacidad). No asigna nada: el plan se revisa y se confirma con /planificacion/aplicar.
+     */
+    @PostMapping("/planificacion/previsualizar")
+    public ResponseEntity<?> previsualizarPlanificacion(@RequestBody(required = false) PlanificacionRequestDTO request) {
+        try {
+            return ResponseEntity.ok(planificadorAsignacionService.previsualizar(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/planificacion/aplicar")
+    public ResponseEntity<?> aplicarPlanificacion(
+            @RequestBody PlanAsignacionDTO plan,
+            @RequestParam(required = false) String usuarioAsignador) {
+        try {
+            return ResponseEntity.ok(planificadorAsignacionService.aplicar(plan, usuarioAsignador));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            log.error("Error al aplicar planificación: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage() != null ? e.getMessage() : "Error al aplicar el plan"));
+        }
+    }
+
     /** Para verificar que el backend desplegado es el nuevo: abrí en el navegador https://api.mvgtms.com.ar/api/envios/deploy-version */
     @GetMapping("/deploy-version")
     public ResponseEntity<Map<String, String>> deployVersion() {
@@ -1,17 +1,29 @@
 package com.zetallegue.tms.controller;
 
+import com.zetallegue.tms.dto.InformeProgramadoDTO;
 import com.zetallegue.tms.dto.InformeRequestDTO;
+import com.zetallegue.tms.dto.InformeTrabajoDTO;
+import com.zetallegue.tms.service.ColectaDiariaService;
+import com.zetallegue.tms.service.InformeProgramadoService;
 import com.zetallegue.tms.service.InformeService;
+import com.zetallegue.tms.service.InformeTrabajoService;
 import com.lowagie.text.DocumentException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/informes")
@@ -21,25 +33,24 @@ import java.nio.charset.StandardCharsets;
 public class InformeController {
 
     private final InformeService informeService;
+    private final InformeTrabajoService informeTrabajoService;
+    private final ColectaDiariaService colectaDiariaService;
+    private final InformeProgramadoService informeProgramadoService;
 
     @PostMapping(value = "/generar", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     public void generar(@RequestBody InformeRequestDTO request, HttpServletResponse response) throws IOException {
         try {
-            byte[] bytes = informeService.generarInforme(request);
-            String formato = request.getFormato() != null ? request.getFormato().toUpperCase() : "EXCEL";
-            boolean esZip = bytes.length > 4 && bytes[0] == 0x50 && bytes[1] == 0x4B && bytes[2] == 0x03 && bytes[3] == 0x04;
-            String contentType = esZip ? "application/zip" : ("PDF".equals(formato) ? "application/pdf" : "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            String ext = esZip ? "zip" : ("PDF".equals(formato) ? "pdf" : "xlsx");
-            String filename = "informe_colectados." + ext;
+            // Primero se resuelven los datos (puede fallar con 400); recién después se escribe la respuesta en streaming
+            InformeService.InformePreparado informe = informeService.prepararInforme(request);
+            String filename = informe.getNombre();
             String encoded = URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
 
             response.setStatus(HttpServletResponse.SC_OK);
-            response.setContentType(contentType);
-            response.setContentLength(bytes.length);
+            response.setContentType(informe.getContentType());
             response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"; filename*=UTF-8''" + encoded);
             response.setHeader("Access-Control-Expose-Headers", "Content-Disposition");
-            response.getOutputStream().write(bytes);
-            response.getOutputStream().flush();
+            informe.escribir(response.getOutputStream());
+            response.flushBuffer();
         } catch (IllegalArgumentException e) {
             log.warn("Solicitud de informe inválida: {}", e.getMessage());
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
@@ -50,4 +61,125 @@ public class InformeController {
             }
         }
     }
+
+    /** Encola el informe para generarlo en segundo plano; devuelve el trabajo (202) con su id para consultar el progreso. */
+    @PostMapping("/trabajos")
+    public ResponseEntity<?> encolar(@RequestBody InformeRequestDTO request) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(informeTrabajoService.encolar(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/trabajos/{id}")
+    public ResponseEntity<InformeTrabajoDTO> obtenerTrabajo(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(informeTrabajoService.obtenerEstado(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /** Descarga del informe generado. Soporta pedidos parciales (header Range) para reanudar descargas grandes. */
+    @GetMapping("/trabajos/{id}/descarga")
+    public ResponseEntity<?> descargarTrabajo(@PathVariable String id) {
+        InformeTrabajoService.ArchivoInforme archivo;
+        try {
+            archivo = informeTrabajoService.obtenerArchivo(id);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+        return descarga(archivo);
+    }
+
+    @GetMapping("/programados")
+    public ResponseEntity<List<InformeProgramadoDTO>> listarProgramados() {
+        return ResponseEntity.ok(informeProgramadoService.listar());
+    }
+
+    @GetMapping("/programados/{id}")
+    public ResponseEntity<InformeProgramadoDTO> obtenerProgramado(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(informeProgramadoService.obtenerPorId(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /** Registra un informe recurrente; se genera de madrugada para el período cerrado anterior. */
+    @PostMapping("/programados")
+    public ResponseEntity<?> crearProgramado(@RequestBody InformeProgramadoDTO dto) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(informeProgramadoService.crear(dto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PutMapping("/programados/{id}")
+    public ResponseEntity<?> actualizarProgramado(@PathVariable Long id, @RequestBody InformeProgramadoDTO dto) {
+        try {
+            return ResponseEntity.ok(informeProgramadoService.actualizar(id, dto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @DeleteMapping("/programados/{id}")
+    public ResponseEntity<Void> eliminarProgramado(@PathVariable Long id) {
+        try {
+            informeProgramadoService.eliminar(id);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /** Genera ya el período cerrado anterior (en segundo plano), sin esperar a la corrida de la madrugada. */
+    @PostMapping("/programados/{id}/generar")
+    public ResponseEntity<?> generarProgramado(@PathVariable Long id) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(informeProgramadoService.generarAhora(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/programados/{id}/descarga")
+    public ResponseEntity<?> descargarProgramado(@PathVariable Long id) {
+        InformeTrabajoService.ArchivoInforme archivo;
+        try {
+            archivo = informeProgramadoService.obtenerArchivo(id);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+        return descarga(archivo);
+    }
+
+    private ResponseEntity<?> descarga(InformeTrabajoService.ArchivoInforme archivo) {
+        String encoded = URLEncoder.encode(archivo.nombre(), StandardCharsets.UTF_8).replace("+", "%20");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(archivo.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archivo.nombre() + "\"; filename*=UTF-8''" + encoded)
+                .header(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, "Content-Disposition")
+                .body(archivo.recurso());
+    }
+
+    /** Reconstruye la tabla de hechos diarios de colectas para [desde, hasta] (por ejemplo, después de correcciones masivas). */
+    @PostMapping("/colecta-diaria/reconstruir")
+    public ResponseEntity<?> reconstruirColectaDiaria(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                                      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        try {
+            return ResponseEntity.ok(Map.of("filas", colectaDiariaService.reconstruir(desde, hasta)));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 }
@@ -2,12 +2,18 @@ package com.zetallegue.tms.controller;
 
 import com.zetallegue.tms.dto.ListaPrecioDTO;
 import com.zetallegue.tms.dto.PageResponseDTO;
+import com.zetallegue.tms.dto.RecalculoCostosDTO;
 import com.zetallegue.tms.service.ListaPrecioService;
+import com.zetallegue.tms.service.RecalculoCostosService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/lista-precios")
 @CrossOrigin(origins = "*")
@@ -15,6 +21,7 @@ import org.springframework.web.bind.annotation.*;
 public class ListaPrecioController {
 
     private final ListaPrecioService listaPrecioService;
+    private final RecalculoCostosService recalculoCostosService;
 
     @GetMapping
     public ResponseEntity<PageResponseDTO<ListaPrecioDTO>> obtenerTodasLasListasPrecios(
@@ -53,5 +60,31 @@ public class ListaPrecioController {
             return ResponseEntity.notFound().build();
         }
     }
-}
 
+    /**
+     * Recalcula en segundo plano el costo de envío de los envíos cargados entre las fechas (inclusive)
+     * cuyos clientes usan esta lista. Devuelve el trabajo para consultar el progreso.
+     */
+    @PostMapping("/{id}/recalcular-costos")
+    public ResponseEntity<?> recalcularCostos(
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta
+    ) {
+        try {
+            RecalculoCostosDTO trabajo = recalculoCostosService.iniciarRecalculo(id, desde, hasta);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(trabajo);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/recalculos/{trabajoId}")
+    public ResponseEntity<RecalculoCostosDTO> obtenerRecalculo(@PathVariable String trabajoId) {
+        try {
+            return ResponseEntity.ok(recalculoCostosService.obtenerEstado(trabajoId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package com.zetallegue.tms.controller;
 
 import com.zetallegue.tms.dto.ChoferCierreDTO;
+import com.zetallegue.tms.service.CierreChoferService;
 import com.zetallegue.tms.service.EnvioService;
+import com.zetallegue.tms.service.EtaService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/ruteate")
@@ -16,6 +20,8 @@ import java.util.List;
 public class RuteateController {
 
     private final EnvioService envioService;
+    private final CierreChoferService cierreChoferService;
+    private final EtaService etaService;
 
     @GetMapping("/cierre")
     public ResponseEntity<List<ChoferCierreDTO>> obtenerChoferesCierre(
@@ -25,5 +31,28 @@ public class RuteateController {
         List<ChoferCierreDTO> choferes = envioService.obtenerChoferesCierre(fecha, soloFlex);
         return ResponseEntity.ok(choferes);
     }
-}
 
+    /** Reconstruye los contadores del cierre para [desde, hasta] (por ejemplo, después de correcciones masivas). */
+    @PostMapping("/cierre/reconstruir")
+    public ResponseEntity<?> reconstruirCierre(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        try {
+            return ResponseEntity.ok(Map.of("filas", cierreChoferService.reconstruir(desde, hasta)));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /** Parámetros vigentes de la estimación de llegadas (velocidad, servicio por zona, factor por chofer). */
+    @GetMapping("/eta/modelo")
+    public ResponseEntity<Map<String, Object>> obtenerModeloEta() {
+        return ResponseEntity.ok(etaService.resumenModelo());
+    }
+
+    /** Reentrena la estimación de llegadas sin esperar al proceso nocturno. */
+    @PostMapping("/eta/entrenar")
+    public ResponseEntity<Map<String, Object>> entrenarEta() {
+        etaService.entrenar();
+        return ResponseEntity.ok(etaService.resumenModelo());
+    }
+}
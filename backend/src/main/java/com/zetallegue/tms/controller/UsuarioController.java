@@ -3,17 +3,21 @@ package com.zetallegue.tms.controller;
 import com.zetallegue.tms.dto.LoginRequestDTO;
 import com.zetallegue.tms.dto.LoginResponseDTO;
 import com.zetallegue.tms.dto.PageResponseDTO;
+import com.zetallegue.tms.dto.UbicacionChoferDTO;
 import com.zetallegue.tms.dto.UsuarioDTO;
 import com.zetallegue.tms.service.EnvioService;
 import com.zetallegue.tms.service.UsuarioService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/usuarios")
@@ -84,12 +88,46 @@ public class UsuarioController {
     }
 
     @PutMapping("/{id}/ubicacion")
-    public ResponseEntity<UsuarioDTO> actualizarUbicacion(
+    public ResponseEntity<?> actualizarUbicacion(
             @PathVariable Long id,
             @RequestBody UbicacionRequest request
     ) {
-        UsuarioDTO usuario = usuarioService.actualizarUbicacion(id, request.getLatitud(), request.getLongitud(), request.getBateria());
-        return ResponseEntity.ok(usuario);
+        try {
+            UsuarioDTO usuario = usuarioService.actualizarUbicacion(id, request.getLatitud(), request.getLongitud(), request.getBateria());
+            return ResponseEntity.ok(usuario);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Posiciones acumuladas por la app (sin señal o enviadas por lotes). Cada una con su fechaHora; las repetidas
+     * se ignoran, así que la app puede reenviar el lote completo si no recibió la respuesta.
+     */
+    @PostMapping("/{id}/ubicaciones")
+    public ResponseEntity<?> registrarUbicaciones(
+            @PathVariable Long id,
+            @RequestBody List<UbicacionChoferDTO> posiciones
+    ) {
+        try {
+            return ResponseEntity.ok(usuarioService.registrarUbicaciones(id, posiciones));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /** Recorrido del chofer entre desde y hasta (fecha y hora ISO), según las posiciones guardadas. */
+    @GetMapping("/{id}/ubicaciones")
+    public ResponseEntity<List<UbicacionChoferDTO>> obtenerRecorrido(
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta
+    ) {
+        return ResponseEntity.ok(usuarioService.obtenerRecorrido(id, desde, hasta));
     }
 
     // Clase interna para el request body
@@ -102,9 +140,11 @@ public class UsuarioController {
         private Integer bateria;
     }
 
+    /** resumen=true devuelve solo la ubicación y la cantidad de envíos de cada chofer, sin la lista de envíos. */
     @GetMapping("/choferes-con-envios")
-    public ResponseEntity<List<com.zetallegue.tms.dto.ChoferConUbicacionDTO>> obtenerChoferesConEnvios() {
-        List<com.zetallegue.tms.dto.ChoferConUbicacionDTO> choferes = envioService.obtenerChoferesConEnviosAsignados();
+    public ResponseEntity<List<com.zetallegue.tms.dto.ChoferConUbicacionDTO>> obtenerChoferesConEnvios(
+            @RequestParam(defaultValue = "false") boolean resumen) {
+        List<com.zetallegue.tms.dto.ChoferConUbicacionDTO> choferes = envioService.obtenerChoferesConEnviosAsignados(resumen);
         return ResponseEntity.ok(choferes);
     }
 }
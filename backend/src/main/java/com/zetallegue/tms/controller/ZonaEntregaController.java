@@ -0,0 +1,55 @@
+package com.zetallegue.tms.controller;
+
+import com.zetallegue.tms.dto.ZonaEntregaRangoDTO;
+import com.zetallegue.tms.service.ZonaEntregaService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/zonas-entrega")
+@CrossOrigin(origins = "*")
+@RequiredArgsConstructor
+public class ZonaEntregaController {
+
+    private final ZonaEntregaService zonaEntregaService;
+
+    @GetMapping
+    public ResponseEntity<List<ZonaEntregaRangoDTO>> obtenerRangos() {
+        return ResponseEntity.ok(zonaEntregaService.obtenerRangos());
+    }
+
+    @PutMapping
+    public ResponseEntity<?> reemplazarRangos(@RequestBody List<ZonaEntregaRangoDTO> rangos) {
+        try {
+            return ResponseEntity.ok(zonaEntregaService.reemplazarRangos(rangos));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/clasificar")
+    public ResponseEntity<Map<String, String>> clasificar(@RequestParam String codigoPostal) {
+        return ResponseEntity.ok(Map.of("zona", zonaEntregaService.clasificar(codigoPostal)));
+    }
+
+    /**
+     * Recalcula la zona de entrega de los envíos cargados entre las fechas (inclusive) con el mapa actual.
+     */
+    @PostMapping("/reclasificar")
+    public ResponseEntity<?> reclasificarEnvios(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        if (hasta.isBefore(desde)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "La fecha hasta no puede ser anterior a desde"));
+        }
+        Map<String, Integer> actualizados = zonaEntregaService.reclasificarEnvios(
+                desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay());
+        return ResponseEntity.ok(actualizados);
+    }
+}
@@ -0,0 +1,25 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Pedido de asignación de varios envíos a un chofer: por ids o, si envioIds viene vacío, por los mismos filtros
+ * de la búsqueda de envíos (page y size se ignoran).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AsignacionMasivaDTO {
+    private Long choferId;
+    /** Se toma siempre nombre y apellido del chofer; solo se usa para "PENDIENTES DEPÓSITO" (sin choferId o -1) */
+    private String choferNombre;
+    private String usuarioAsignador;
+    /** "APP" o "WEB" */
+    private String origen;
+    private List<Long> envioIds;
+    private EnvioFilterDTO filtro;
+}
@@ -0,0 +1,20 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AsignacionMasivaResultadoDTO {
+    private Long choferId;
+    private String choferNombre;
+    private Integer asignados;
+    /** Asignados que pasaron de "Retirado" a "En camino al destinatario" */
+    private Integer pasaronAEnCamino;
+    /** Envíos que no se asignaron, con el motivo */
+    private Map<Long, String> rechazados;
+}
@@ -0,0 +1,21 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Chofer cerca de un punto, con su última ubicación conocida. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChoferCercanoDTO {
+    private Long choferId;
+    private String choferNombre;
+    private Double latitud;
+    private Double longitud;
+    private Integer bateria;
+    private LocalDateTime fechaHora;
+    private Double distanciaKm;
+}
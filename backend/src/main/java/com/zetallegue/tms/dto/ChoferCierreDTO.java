@@ -10,6 +10,12 @@ import lombok.NoArgsConstructor;
 public class ChoferCierreDTO {
     private Long id;
     private String nombreCompleto;
+    /** Envíos en camino (solo Flex si se pidió soloFlex) */
     private Long cantidadEnvios;
+    /** Envíos del día asignados al chofer, en cualquier estado (solo Flex si se pidió soloFlex) */
+    private Long totalAsignados;
+    /** Entregados y rechazados del día, de todos los orígenes */
+    private Long entregados;
+    private Long rechazados;
 }
 
@@ -21,5 +21,7 @@ public class ChoferConUbicacionDTO {
     private Integer bateria; // Porcentaje de batería (0-100)
     private Integer cantidadEnvios;
     private List<EnvioDTO> envios;
+    /** Llegada estimada a la última parada (solo con los envíos cargados) */
+    private LocalDateTime llegadaUltimaParada;
 }
 
@@ -57,5 +57,11 @@ public class EnvioDTO {
     private Double latDestino;
     /** Longitud del destino (geolocalización desde app chofer). */
     private Double lngDestino;
+    /** Llegada estimada del chofer (solo en camino al destinatario, en tracking y vistas de despacho). */
+    private LocalDateTime llegadaEstimada;
+    /** La llegada puede adelantarse o atrasarse hasta estos minutos (ventana a mostrar). */
+    private Integer margenLlegadaMinutos;
+    /** Paradas que el chofer visita antes que esta. */
+    private Integer paradasAntes;
 }
 
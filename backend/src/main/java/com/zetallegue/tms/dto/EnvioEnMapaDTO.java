@@ -0,0 +1,22 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Envío pendiente ubicado en el mapa (lo que sale del índice geográfico, sin leer la base). */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnvioEnMapaDTO {
+    private Long id;
+    private String tracking;
+    private String estado;
+    private String zonaEntrega;
+    private Long choferAsignadoId;
+    private String choferAsignadoNombre;
+    private Double latitud;
+    private Double longitud;
+    /** Solo en búsquedas por radio */
+    private Double distanciaKm;
+}
@@ -0,0 +1,15 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Varios envíos cercanos resumidos en un punto (centro y cantidad), para el mapa alejado. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GrupoMapaDTO {
+    private Double latitud;
+    private Double longitud;
+    private Integer cantidad;
+}
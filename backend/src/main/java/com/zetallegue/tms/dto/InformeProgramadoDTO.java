@@ -0,0 +1,39 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Informe recurrente. Se define con los mismos campos que {@link InformeRequestDTO} salvo las fechas;
+ * los campos de la última generación son de solo lectura.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InformeProgramadoDTO {
+
+    private Long id;
+    private String nombre;
+    /** SEMANAL o MENSUAL */
+    private String frecuencia;
+    private String tipoDestinatario;
+    private List<Long> idsGrupos;
+    private List<Long> idsCuentas;
+    private String formato;
+    private String tomarEnvios;
+    private Boolean activo;
+
+    /** Período de la última generación exitosa */
+    private LocalDate ultimaFechaDesde;
+    private LocalDate ultimaFechaHasta;
+    private LocalDateTime ultimaGeneracion;
+    private String nombreArchivo;
+    private Long tamanio;
+    private String error;
+    private String urlDescarga;
+}
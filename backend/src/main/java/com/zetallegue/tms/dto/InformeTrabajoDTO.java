@@ -0,0 +1,28 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado y progreso de un informe generado en segundo plano.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InformeTrabajoDTO {
+    private String id;
+    private String estado; // PENDIENTE, EN_CURSO, COMPLETADO, ERROR
+    private String nombreArchivo;
+    private Integer totalArchivos;
+    private Integer archivosGenerados;
+    private Long tamanio;
+    private String error;
+    private LocalDateTime creado;
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+    private LocalDateTime expira;
+    private String urlDescarga;
+}
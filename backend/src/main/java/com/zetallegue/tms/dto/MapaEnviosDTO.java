@@ -0,0 +1,21 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Envíos dentro del área visible del mapa. Si son más que el límite pedido vienen agrupados (grupos) en lugar de
+ * uno por uno (envios).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapaEnviosDTO {
+    private Integer total;
+    private Boolean agrupado;
+    private List<EnvioEnMapaDTO> envios;
+    private List<GrupoMapaDTO> grupos;
+}
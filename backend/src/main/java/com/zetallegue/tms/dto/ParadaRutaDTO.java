@@ -0,0 +1,25 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ParadaRutaDTO {
+    private Integer orden;
+    private EnvioDTO envio;
+    private Double latitud;
+    private Double longitud;
+    /** true si la posición es el centro del código postal (el envío no tiene latDestino/lngDestino) */
+    private Boolean ubicacionAproximada;
+    private Double kmDesdeAnterior;
+    private LocalDateTime llegadaEstimada;
+    /** La llegada puede adelantarse o atrasarse hasta estos minutos */
+    private Integer margenMinutos;
+    /** true si la llegada estimada es posterior al deadline del envío */
+    private Boolean fueraDeDeadline;
+}
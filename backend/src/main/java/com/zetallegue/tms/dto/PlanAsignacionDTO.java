@@ -0,0 +1,24 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Propuesta de asignación de los envíos "Retirado" sin chofer. Es solo una vista previa: se puede editar y
+ * se confirma con POST /api/envios/planificacion/aplicar.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanAsignacionDTO {
+    private List<PlanChoferDTO> choferes;
+    /** Envíos que no entraron por capacidad */
+    private List<Long> sinAsignar;
+    private Integer totalEnvios;
+    /** Envíos sin coordenadas ni código postal ubicable, repartidos solo por zona */
+    private Integer sinUbicacion;
+    private Long milisegundos;
+}
@@ -0,0 +1,26 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/** Envíos propuestos para un chofer en un plan de asignación. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanChoferDTO {
+    private Long choferId;
+    private String choferNombre;
+    private Integer capacidad;
+    private Integer cantidad;
+    /** Cantidad de envíos por zona de entrega */
+    private Map<String, Integer> porZona;
+    private Double centroLatitud;
+    private Double centroLongitud;
+    /** Distancia promedio de los envíos ubicados al centro del grupo (qué tan compacto es el reparto) */
+    private Double kmPromedioAlCentro;
+    private List<Long> envioIds;
+}
@@ -0,0 +1,22 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/** Parámetros del planificador de asignaciones. Todo es opcional. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanificacionRequestDTO {
+    /** Choferes disponibles; vacío = todos los choferes habilitados */
+    private List<Long> choferIds;
+    /** Capacidad (envíos) por chofer; los que no están usan capacidadPorDefecto */
+    private Map<Long, Integer> capacidades;
+    private Integer capacidadPorDefecto;
+    /** Solo envíos de estas zonas de entrega; vacío = todas */
+    private List<String> zonas;
+}
@@ -0,0 +1,29 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Estado y progreso de un recálculo de costos de envío por cambio en una lista de precios.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecalculoCostosDTO {
+    private String id;
+    private Long listaPrecioId;
+    private LocalDate desde;
+    private LocalDate hasta;
+    private String estado; // EN_CURSO, COMPLETADO, ERROR
+    private Integer total;
+    private Integer procesados;
+    private Integer actualizados;
+    private Integer sinZona;
+    private String error;
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+}
@@ -0,0 +1,20 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Resultado de un cambio de estado sincronizado. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoTransicionDTO {
+    private String claveIdempotencia;
+    private Long envioId;
+    private String estado;
+    /** APLICADA o RECHAZADA (la app no debe reintentar ninguno de los dos) */
+    private String resultado;
+    private String error;
+    /** true si la clave ya se había procesado (reintento): el resultado es el de la primera vez */
+    private Boolean duplicada;
+}
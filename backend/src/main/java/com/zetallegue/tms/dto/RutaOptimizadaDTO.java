@@ -0,0 +1,27 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** Envíos en camino de un chofer en el orden de visita sugerido. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RutaOptimizadaDTO {
+    private Long choferId;
+    /** Posición del chofer desde la que se calculó la ruta (null si no reportó ubicación) */
+    private Double origenLatitud;
+    private Double origenLongitud;
+    private List<ParadaRutaDTO> paradas;
+    /** Envíos sin coordenadas ni código postal ubicable: van al final, en el orden de su deadline */
+    private List<EnvioDTO> sinUbicacion;
+    private Double distanciaKm;
+    private Double minutosEstimados;
+    private Integer paradasFueraDeDeadline;
+    private Long milisegundosCalculo;
+    /** true si se cortó la mejora por el límite de tiempo (la ruta es válida, pero podría mejorarse) */
+    private Boolean presupuestoAgotado;
+}
@@ -0,0 +1,18 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** Pedido de sincronización de la app del chofer: cambios pendientes y el cursor de la última sincronización. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SincronizacionRequestDTO {
+    private String usuarioNombre;
+    /** El cursor devuelto por la sincronización anterior; null la primera vez (trae la ruta completa) */
+    private Long cursor;
+    private List<TransicionEstadoDTO> transiciones;
+}
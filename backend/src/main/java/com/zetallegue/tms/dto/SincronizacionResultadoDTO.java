@@ -0,0 +1,22 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Respuesta de la sincronización: el resultado de cada cambio enviado, los envíos del chofer que cambiaron desde
+ * el cursor, los ids que forman hoy su ruta (los que la app tenga y no estén acá se sacan) y el cursor para la
+ * próxima vez.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SincronizacionResultadoDTO {
+    private List<ResultadoTransicionDTO> resultados;
+    private List<EnvioDTO> cambios;
+    private List<Long> idsEnRuta;
+    private Long cursor;
+}
@@ -0,0 +1,25 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Cambio de estado hecho en la app del chofer (posiblemente sin señal), tal como lo manda al sincronizar. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransicionEstadoDTO {
+    /** Única por cambio (la genera la app, por ejemplo un UUID); la misma en cada reintento */
+    private String claveIdempotencia;
+    private Long envioId;
+    private String estado;
+    /** Momento del cambio en el teléfono */
+    private LocalDateTime fechaHora;
+    private String observaciones;
+    private String foto;
+    private String rolRecibio;
+    private String nombreRecibio;
+    private String dniRecibio;
+}
@@ -0,0 +1,20 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Posición GPS de un chofer (recorrido histórico). */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UbicacionChoferDTO {
+    private Long choferId;
+    private Double latitud;
+    private Double longitud;
+    private Integer bateria;
+    /** Momento en que el teléfono tomó la posición */
+    private LocalDateTime fechaHora;
+}
@@ -0,0 +1,18 @@
+package com.zetallegue.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Rango de CPs del mapa de zonas de entrega. Para un CP suelto cpDesde == cpHasta.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZonaEntregaRangoDTO {
+    private String zona;
+    private Integer cpDesde;
+    private Integer cpHasta;
+    private Integer orden;
+}
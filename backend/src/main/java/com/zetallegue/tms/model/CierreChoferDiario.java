@@ -0,0 +1,51 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Contadores del cierre de un chofer en un día (día de carga del envío, envio.fecha): cuántos envíos tiene
+ * asignados y cuántos están en camino, entregados o rechazados, en total y Flex. Se mantiene desde
+ * {@code CierreChoferService}: es derivada, se puede borrar y reconstruir desde la tabla envios.
+ */
+@Entity
+@Table(name = "cierre_chofer_diario", indexes = {
+    @Index(name = "idx_cierre_chofer_fecha_chofer", columnList = "fecha, chofer_id", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CierreChoferDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "fecha", nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "chofer_id", nullable = false)
+    private Long choferId;
+
+    @Column(name = "total", nullable = false)
+    private Integer total = 0;
+
+    @Column(name = "flex", nullable = false)
+    private Integer flex = 0;
+
+    @Column(name = "en_camino", nullable = false)
+    private Integer enCamino = 0;
+
+    @Column(name = "en_camino_flex", nullable = false)
+    private Integer enCaminoFlex = 0;
+
+    @Column(name = "entregados", nullable = false)
+    private Integer entregados = 0;
+
+    @Column(name = "rechazados", nullable = false)
+    private Integer rechazados = 0;
+}
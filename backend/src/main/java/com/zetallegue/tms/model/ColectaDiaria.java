@@ -0,0 +1,67 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Hecho diario de colectas: cantidad e importes de los envíos colectados un día, por cliente (texto de
+ * envio.cliente), zona de entrega y grupo de estado. Se mantiene desde {@code ColectaDiariaService}: es derivada,
+ * se puede borrar y reconstruir desde la tabla envios.
+ */
+@Entity
+@Table(name = "colecta_diaria", indexes = {
+    @Index(name = "idx_colecta_diaria_fecha", columnList = "fecha"),
+    @Index(name = "idx_colecta_diaria_grupo_fecha", columnList = "grupo_id, fecha")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ColectaDiaria {
+
+    public static final String ESTADO_ENTREGADO = "ENTREGADO";
+    public static final String ESTADO_RECHAZADO_CANCELADO = "RECHAZADO_CANCELADO";
+    public static final String ESTADO_OTRO = "OTRO";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** Día de colecta efectiva: fechaColecta, o fechaUltimoMovimiento para retirados sin fecha de colecta. */
+    @Column(name = "fecha", nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "cliente", length = 200)
+    private String cliente;
+
+    /** Grupo del cliente al momento del cálculo (null si el texto no corresponde a un cliente). */
+    @Column(name = "grupo_id")
+    private Long grupoId;
+
+    @Column(name = "zona_entrega", length = 50)
+    private String zonaEntrega;
+
+    /** ENTREGADO, RECHAZADO_CANCELADO u OTRO: lo que distingue los filtros de "tomar envíos" de los informes. */
+    @Column(name = "estado_grupo", nullable = false, length = 30)
+    private String estadoGrupo;
+
+    @Column(name = "cantidad", nullable = false)
+    private Integer cantidad;
+
+    @Column(name = "costo_envio_total", precision = 16, scale = 2)
+    private BigDecimal costoEnvioTotal;
+
+    @Column(name = "total_a_cobrar_total", precision = 16, scale = 2)
+    private BigDecimal totalACobrarTotal;
+
+    /** Grupo de estado de un envío ("Entregado", "Rechazado por el comprador", "Cancelado", resto). */
+    public static String grupoDeEstado(String estado) {
+        if ("Entregado".equals(estado)) return ESTADO_ENTREGADO;
+        if ("Rechazado por el comprador".equals(estado) || "Cancelado".equals(estado)) return ESTADO_RECHAZADO_CANCELADO;
+        return ESTADO_OTRO;
+    }
+}
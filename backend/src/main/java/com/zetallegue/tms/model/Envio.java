@@ -1,13 +1,21 @@
 package com.zetallegue.tms.model;
 
 import jakarta.persistence.*;
+import com.zetallegue.tms.service.CierreChoferListener;
+import com.zetallegue.tms.service.ColectaDiariaListener;
+import com.zetallegue.tms.service.IndiceGeograficoListener;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners({ColectaDiariaListener.class, IndiceGeograficoListener.class, CierreChoferListener.class})
 @Table(name = "envios", indexes = {
     @Index(name = "idx_tracking", columnList = "tracking"),
     @Index(name = "idx_id_mvg", columnList = "id_mvg"),
@@ -18,9 +26,11 @@ import java.time.LocalDateTime;
     @Index(name = "idx_estado", columnList = "estado"),
     @Index(name = "idx_origen", columnList = "origen"),
     @Index(name = "idx_zona_entrega", columnList = "zona_entrega"),
+    @Index(name = "idx_codigo_postal_destino", columnList = "codigo_postal, lat_destino, lng_destino"),
     @Index(name = "idx_eliminado", columnList = "eliminado"),
     @Index(name = "idx_fecha_eliminado", columnList = "fecha, eliminado"),
-    @Index(name = "idx_colectado", columnList = "colectado")
+    @Index(name = "idx_colectado", columnList = "colectado"),
+    @Index(name = "idx_chofer_fecha_modificacion", columnList = "chofer_asignado_id, fecha_modificacion")
 })
 @Data
 @NoArgsConstructor
@@ -61,6 +71,10 @@ public class Envio {
     @Column(name = "fecha_ultimo_movimiento")
     private LocalDateTime fechaUltimoMovimiento;
 
+    /** Última escritura de la fila (cualquier campo): cursor de la sincronización de la app del chofer */
+    @Column(name = "fecha_modificacion")
+    private LocalDateTime fechaModificacion;
+
     @Column(name = "origen", length = 50)
     private String origen;
 
@@ -95,6 +109,10 @@ public class Envio {
     @Column(name = "total_a_cobrar", length = 50)
     private String totalACobrar;
 
+    /** Total a cobrar numérico, derivado de {@link #totalACobrar} al guardar (null si el texto no es un número). */
+    @Column(name = "total_a_cobrar_num", precision = 14, scale = 2)
+    private BigDecimal totalACobrarNum;
+
     @Column(name = "cambio_retiro", length = 200)
     private String cambioRetiro;
 
@@ -142,6 +160,10 @@ public class Envio {
     @Column(name = "costo_envio", length = 50)
     private String costoEnvio;
 
+    /** Costo de envío numérico, derivado de {@link #costoEnvio} al guardar. Es el que se suma en informes. */
+    @Column(name = "costo_envio_num", precision = 14, scale = 2)
+    private BigDecimal costoEnvioNum;
+
     // IDML (Order ID de MercadoLibre)
     @Column(name = "idml", length = 50)
     private String idml;
@@ -150,6 +172,10 @@ public class Envio {
     @Column(name = "peso", length = 50)
     private String peso;
 
+    /** Peso numérico, derivado de {@link #peso} al guardar. */
+    @Column(name = "peso_num", precision = 14, scale = 3)
+    private BigDecimal pesoNum;
+
     // Método de envío
     @Column(name = "metodo_envio", length = 200)
     private String metodoEnvio;
@@ -174,15 +200,57 @@ public class Envio {
     @Column(name = "lng_destino")
     private Double lngDestino;
 
-    /** Total a cobrar no puede ser negativo: si es número negativo, se guarda "0". Aplica a cualquier origen (Excel, API, etc.). */
+    /** Día de colecta efectiva con el que se leyó el envío de la base, para saber qué día de colecta_diaria deja. */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private LocalDate diaColectaLeido;
+
+    /** Día de colecta efectiva: el de fechaColecta, o el de fechaUltimoMovimiento si no tiene fecha de colecta. */
+    public LocalDate diaColectaEfectiva() {
+        LocalDateTime f = fechaColecta != null ? fechaColecta : fechaUltimoMovimiento;
+        return f != null ? f.toLocalDate() : null;
+    }
+
+    /** Chofer con el que se leyó el envío, para saber qué contador de cierre_chofer_diario deja. */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Long choferCierreLeido;
+
+    /** Día de carga con el que se leyó el envío (el día de su contador de cierre). */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private LocalDate diaCierreLeido;
+
+    @PostLoad
+    private void recordarValoresLeidos() {
+        this.diaColectaLeido = diaColectaEfectiva();
+        this.choferCierreLeido = choferAsignadoId;
+        this.diaCierreLeido = fecha != null ? fecha.toLocalDate() : null;
+    }
+
     @PrePersist
     @PreUpdate
-    private void normalizarTotalACobrar() {
-        if (this.totalACobrar == null || this.totalACobrar.trim().isEmpty()) return;
-        try {
-            double n = Double.parseDouble(this.totalACobrar.trim().replace(",", "."));
-            if (n < 0) this.totalACobrar = "0";
-        } catch (NumberFormatException ignored) { }
+    private void antesDeGuardar() {
+        normalizarImportes();
+        this.fechaModificacion = LocalDateTime.now();
+    }
+
+    /**
+     * Total a cobrar no puede ser negativo: si es número negativo, se guarda "0". Aplica a cualquier origen (Excel, API, etc.).
+     * Además mantiene sincronizadas las columnas numéricas con los textos.
+     */
+    private void normalizarImportes() {
+        BigDecimal total = Importes.parsear(this.totalACobrar, Importes.ESCALA_MONTO);
+        if (total != null && total.signum() < 0) {
+            this.totalACobrar = "0";
+            total = BigDecimal.ZERO;
+        }
+        this.totalACobrarNum = total;
+        this.costoEnvioNum = Importes.parsear(this.costoEnvio, Importes.ESCALA_MONTO);
+        this.pesoNum = Importes.parsear(this.peso, Importes.ESCALA_PESO);
     }
 }
 
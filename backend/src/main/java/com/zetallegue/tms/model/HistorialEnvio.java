@@ -8,7 +8,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "historial_envios")
+@Table(name = "historial_envios", indexes = {
+    @Index(name = "idx_historial_estado_fecha", columnList = "estado, fecha")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
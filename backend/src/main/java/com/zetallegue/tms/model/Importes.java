@@ -0,0 +1,41 @@
+package com.zetallegue.tms.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversión de los importes y pesos guardados como texto ("1500", "1500,50", "2.5") a sus columnas numéricas.
+ */
+public final class Importes {
+
+    /** Escala de las columnas de montos (costo, total a cobrar, valor de zona). */
+    public static final int ESCALA_MONTO = 2;
+    /** Escala de la columna de peso. */
+    public static final int ESCALA_PESO = 3;
+    /** Precisión de las columnas numéricas: lo que no entra se deja en null en lugar de fallar el guardado. */
+    private static final int PRECISION = 14;
+
+    private Importes() {
+    }
+
+    /**
+     * Valor numérico del texto (acepta coma decimal) redondeado a la escala de la columna,
+     * o null si está vacío, no es un número o no entra en la columna.
+     */
+    public static BigDecimal parsear(String texto, int escala) {
+        if (texto == null) return null;
+        String s = texto.trim();
+        if (s.isEmpty()) return null;
+        try {
+            BigDecimal valor = new BigDecimal(s.replace(",", ".")).setScale(escala, RoundingMode.HALF_UP);
+            return valor.precision() <= PRECISION ? valor : null;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /** Monto como double para sumas y formato; 0 si es null. */
+    public static double aDouble(BigDecimal valor) {
+        return valor != null ? valor.doubleValue() : 0;
+    }
+}
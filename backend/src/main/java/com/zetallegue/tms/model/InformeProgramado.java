@@ -0,0 +1,81 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Definición de un informe recurrente (semanal o mensual) que se genera fuera de hora pico y queda guardado
+ * para descargar. Los campos de la solicitud son los de {@link com.zetallegue.tms.dto.InformeRequestDTO} sin las
+ * fechas, que salen del período cerrado anterior; los "ultimo*" describen la última generación.
+ */
+@Entity
+@Table(name = "informes_programados")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InformeProgramado {
+
+    public static final String FRECUENCIA_SEMANAL = "SEMANAL";
+    public static final String FRECUENCIA_MENSUAL = "MENSUAL";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "nombre", nullable = false, length = 200)
+    private String nombre;
+
+    /** SEMANAL (lunes a domingo anterior) o MENSUAL (mes calendario anterior) */
+    @Column(name = "frecuencia", nullable = false, length = 20)
+    private String frecuencia;
+
+    @Column(name = "tipo_destinatario", nullable = false, length = 30)
+    private String tipoDestinatario;
+
+    /** IDs separados por coma cuando tipoDestinatario = GRUPOS */
+    @Column(name = "ids_grupos", length = 2000)
+    private String idsGrupos;
+
+    /** IDs separados por coma cuando tipoDestinatario = CUENTAS */
+    @Column(name = "ids_cuentas", length = 2000)
+    private String idsCuentas;
+
+    @Column(name = "formato", length = 10)
+    private String formato;
+
+    @Column(name = "tomar_envios", length = 50)
+    private String tomarEnvios;
+
+    @Column(name = "activo", nullable = false)
+    private Boolean activo = true;
+
+    @Column(name = "ultima_fecha_desde")
+    private LocalDate ultimaFechaDesde;
+
+    @Column(name = "ultima_fecha_hasta")
+    private LocalDate ultimaFechaHasta;
+
+    @Column(name = "ultima_generacion")
+    private LocalDateTime ultimaGeneracion;
+
+    /** Clave del archivo en el almacén de informes */
+    @Column(name = "ultima_clave", length = 100)
+    private String ultimaClave;
+
+    @Column(name = "ultimo_nombre_archivo", length = 300)
+    private String ultimoNombreArchivo;
+
+    @Column(name = "ultimo_content_type", length = 100)
+    private String ultimoContentType;
+
+    @Column(name = "ultimo_tamanio")
+    private Long ultimoTamanio;
+
+    @Column(name = "ultimo_error", length = 1000)
+    private String ultimoError;
+}
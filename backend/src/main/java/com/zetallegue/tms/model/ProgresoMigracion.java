@@ -0,0 +1,26 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Hasta qué id llegó una migración de datos que recorre una tabla por id. Al arrancar se sigue desde ahí en lugar de
+ * volver a revisar las filas que ya vio, aunque algunas hayan quedado sin migrar (por ejemplo, textos que no son
+ * números).
+ */
+@Entity
+@Table(name = "progreso_migraciones")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProgresoMigracion {
+
+    @Id
+    @Column(name = "nombre", length = 100)
+    private String nombre;
+
+    @Column(name = "ultimo_id", nullable = false)
+    private Long ultimoId;
+}
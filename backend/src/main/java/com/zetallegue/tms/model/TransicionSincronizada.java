@@ -0,0 +1,58 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cambio de estado recibido por la sincronización de la app del chofer, con su clave de idempotencia y el resultado
+ * que se le respondió. Si la app reintenta el mismo lote (no recibió la respuesta), los cambios ya procesados se
+ * reconocen por la clave y no se vuelven a aplicar. Tabla de solo inserción, purgada por antigüedad.
+ */
+@Entity
+@Table(name = "transiciones_sincronizadas", indexes = {
+    @Index(name = "idx_transiciones_sincronizadas_clave", columnList = "clave_idempotencia", unique = true),
+    @Index(name = "idx_transiciones_sincronizadas_recepcion", columnList = "fecha_recepcion")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransicionSincronizada {
+
+    public static final String APLICADA = "APLICADA";
+    public static final String RECHAZADA = "RECHAZADA";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transiciones_sincronizadas_seq")
+    @SequenceGenerator(name = "transiciones_sincronizadas_seq", sequenceName = "transiciones_sincronizadas_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "clave_idempotencia", nullable = false, length = 100)
+    private String claveIdempotencia;
+
+    @Column(name = "chofer_id", nullable = false)
+    private Long choferId;
+
+    @Column(name = "envio_id")
+    private Long envioId;
+
+    @Column(name = "estado", length = 100)
+    private String estado;
+
+    /** APLICADA o RECHAZADA */
+    @Column(name = "resultado", nullable = false, length = 20)
+    private String resultado;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    /** Momento del cambio en el teléfono */
+    @Column(name = "fecha_dispositivo")
+    private LocalDateTime fechaDispositivo;
+
+    @Column(name = "fecha_recepcion", nullable = false)
+    private LocalDateTime fechaRecepcion;
+}
@@ -0,0 +1,49 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Posición GPS reportada por un chofer. Tabla de solo inserción (recorrido histórico); la posición actual de cada
+ * chofer se sirve desde memoria en {@code UbicacionChoferService}. El id sale de una secuencia con asignación por
+ * bloques para que Hibernate pueda insertar en batch (con IDENTITY inserta de a una fila). Hay una sola posición
+ * por chofer y momento: el índice único descarta las que el teléfono reenvía.
+ */
+@Entity
+@Table(name = "ubicaciones_chofer", indexes = {
+    @Index(name = "uk_ubicaciones_chofer_chofer_fecha", columnList = "chofer_id, fecha_hora", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UbicacionChofer {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ubicaciones_chofer_seq")
+    @SequenceGenerator(name = "ubicaciones_chofer_seq", sequenceName = "ubicaciones_chofer_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "chofer_id", nullable = false)
+    private Long choferId;
+
+    @Column(name = "latitud", nullable = false)
+    private Double latitud;
+
+    @Column(name = "longitud", nullable = false)
+    private Double longitud;
+
+    @Column(name = "bateria")
+    private Integer bateria;
+
+    /** Momento en que el teléfono tomó la posición */
+    @Column(name = "fecha_hora", nullable = false)
+    private LocalDateTime fechaHora;
+
+    /** Momento en que llegó al servidor */
+    @Column(name = "fecha_recepcion", nullable = false)
+    private LocalDateTime fechaRecepcion;
+}
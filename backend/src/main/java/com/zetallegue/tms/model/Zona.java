@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+
 @Entity
 @Table(name = "zonas")
 @Data
@@ -27,8 +29,17 @@ public class Zona {
     @Column(name = "valor", length = 50)
     private String valor; // Precio como string
 
+    /** Precio numérico, derivado de {@link #valor} al guardar. */
+    @Column(name = "valor_num", precision = 14, scale = 2)
+    private BigDecimal valorNum;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "lista_precios_id")
     private ListaPrecio listaPrecio;
-}
 
+    @PrePersist
+    @PreUpdate
+    private void sincronizarValorNum() {
+        this.valorNum = Importes.parsear(this.valor, Importes.ESCALA_MONTO);
+    }
+}
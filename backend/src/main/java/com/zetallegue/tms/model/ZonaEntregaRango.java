@@ -0,0 +1,35 @@
+package com.zetallegue.tms.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Rango de códigos postales asignado a una zona de entrega (CABA, Zona 1, ...).
+ * Un CP suelto se guarda con cpDesde == cpHasta. Si dos rangos se superponen gana el de menor orden.
+ */
+@Entity
+@Table(name = "zonas_entrega_rangos", indexes = {
+    @Index(name = "idx_zona_entrega_rango_orden", columnList = "orden")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZonaEntregaRango {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "zona", nullable = false, length = 50)
+    private String zona;
+
+    @Column(name = "cp_desde", nullable = false)
+    private Integer cpDesde;
+
+    @Column(name = "cp_hasta", nullable = false)
+    private Integer cpHasta;
+
+    @Column(name = "orden", nullable = false)
+    private Integer orden = 0;
+}
@@ -0,0 +1,26 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.CierreChoferDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CierreChoferDiarioRepository extends JpaRepository<CierreChoferDiario, Long> {
+
+    List<CierreChoferDiario> findByFecha(LocalDate fecha);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM CierreChoferDiario c WHERE c.fecha = :fecha")
+    int deleteByFecha(@Param("fecha") LocalDate fecha);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM CierreChoferDiario c WHERE c.fecha = :fecha AND c.choferId IN :choferIds")
+    int deleteByFechaAndChoferIdIn(@Param("fecha") LocalDate fecha, @Param("choferIds") Collection<Long> choferIds);
+}
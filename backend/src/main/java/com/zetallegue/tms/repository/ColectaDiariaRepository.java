@@ -0,0 +1,21 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.ColectaDiaria;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ColectaDiariaRepository extends JpaRepository<ColectaDiaria, Long> {
+
+    List<ColectaDiaria> findByFechaBetweenOrderByFechaAscZonaEntregaAsc(LocalDate desde, LocalDate hasta);
+
+    @Modifying
+    @Query("DELETE FROM ColectaDiaria c WHERE c.fecha = :fecha")
+    int deleteByFecha(@Param("fecha") LocalDate fecha);
+}
@@ -5,12 +5,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -54,20 +56,110 @@ public interface EnvioRepository extends JpaRepository<Envio, Long>, JpaSpecific
     @Query("SELECT e FROM Envio e WHERE e.choferAsignadoId = :choferId AND e.estado = :estado AND e.eliminado = false AND (e.colectado = true OR e.colectado IS NULL)")
     List<Envio> findByChoferAsignadoIdAndEstadoAndEliminadoFalseAndColectadoTrue(@Param("choferId") Long choferAsignadoId, @Param("estado") String estado);
     
+    /**
+     * Lo necesario para validar una asignación masiva: [id, estado, origen, choferAsignadoNombre, eliminado,
+     * fechaColecta, fechaUltimoMovimiento, fecha, choferAsignadoId].
+     */
+    @Query("SELECT e.id, e.estado, e.origen, e.choferAsignadoNombre, e.eliminado, e.fechaColecta, e.fechaUltimoMovimiento, " +
+           "e.fecha, e.choferAsignadoId FROM Envio e WHERE e.id IN :ids")
+    List<Object[]> findDatosAsignacion(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Asigna los envíos al chofer en un solo UPDATE. Con pasarAEnCamino, los "Retirado" que no son Flex pasan a
+     * "En camino al destinatario" (misma regla que la asignación individual). No toca envíos eliminados ni en
+     * estado final, por si cambiaron después de validarlos: el llamador compara la cantidad actualizada.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Envio e SET e.choferAsignadoId = :choferId, e.choferAsignadoNombre = :choferNombre, " +
+           "e.fechaAsignacion = :ahora, e.fechaUltimoMovimiento = :ahora, e.fechaModificacion = :ahora, " +
+           "e.estado = CASE WHEN :pasarAEnCamino = true AND e.estado = 'Retirado' AND (e.origen IS NULL OR e.origen <> 'Flex') " +
+           "THEN 'En camino al destinatario' ELSE e.estado END " +
+           "WHERE e.id IN :ids AND e.eliminado = false AND (e.estado IS NULL OR e.estado NOT IN ('Entregado', 'Cancelado'))")
+    int asignarChofer(@Param("ids") Collection<Long> ids,
+                      @Param("choferId") Long choferId,
+                      @Param("choferNombre") String choferNombre,
+                      @Param("ahora") LocalDateTime ahora,
+                      @Param("pasarAEnCamino") boolean pasarAEnCamino);
+    
+    /** Envíos "Retirado" sin chofer para el planificador: [id, zonaEntrega, codigoPostal, latDestino, lngDestino]. */
+    @Query("SELECT e.id, e.zonaEntrega, e.codigoPostal, e.latDestino, e.lngDestino FROM Envio e " +
+           "WHERE e.estado = 'Retirado' AND e.eliminado = false AND e.choferAsignadoId IS NULL ORDER BY e.id")
+    List<Object[]> findRetiradosSinChoferParaPlanificar();
+
+    /** Envíos asignados desde una fecha por chofer y zona: [choferId, zonaEntrega, cantidad]. */
+    @Query("SELECT e.choferAsignadoId, e.zonaEntrega, COUNT(e) FROM Envio e " +
+           "WHERE e.fechaAsignacion >= :desde AND e.choferAsignadoId IS NOT NULL AND e.zonaEntrega IS NOT NULL " +
+           "GROUP BY e.choferAsignadoId, e.zonaEntrega")
+    List<Object[]> contarAsignadosPorChoferYZonaDesde(@Param("desde") LocalDateTime desde);
+    
+    /** Centro aproximado de cada código postal: promedio de los destinos geolocalizados. Devuelve [cp, lat, lng]. Se lee a través de CentroidesCodigoPostalService. */
+    @Query("SELECT e.codigoPostal, AVG(e.latDestino), AVG(e.lngDestino) FROM Envio e " +
+           "WHERE e.codigoPostal IN :codigosPostales AND e.latDestino IS NOT NULL AND e.lngDestino IS NOT NULL " +
+           "GROUP BY e.codigoPostal")
+    List<Object[]> findCentroidesPorCodigoPostal(@Param("codigosPostales") Collection<String> codigosPostales);
+    
+    /**
+     * Envíos pendientes con destino geolocalizado, para el índice geográfico:
+     * [id, latDestino, lngDestino, tracking, estado, zonaEntrega, choferAsignadoId, choferAsignadoNombre, eliminado].
+     */
+    @Query("SELECT e.id, e.latDestino, e.lngDestino, e.tracking, e.estado, e.zonaEntrega, e.choferAsignadoId, " +
+           "e.choferAsignadoNombre, e.eliminado FROM Envio e " +
+           "WHERE e.eliminado = false AND (e.estado IS NULL OR e.estado NOT IN ('Entregado', 'Cancelado')) " +
+           "AND e.latDestino IS NOT NULL AND e.lngDestino IS NOT NULL")
+    List<Object[]> findParaIndiceGeografico();
+
+    /** Igual que findParaIndiceGeografico para envíos puntuales, sin filtrar (el índice decide si quedan). */
+    @Query("SELECT e.id, e.latDestino, e.lngDestino, e.tracking, e.estado, e.zonaEntrega, e.choferAsignadoId, " +
+           "e.choferAsignadoNombre, e.eliminado FROM Envio e WHERE e.id IN :ids")
+    List<Object[]> findParaIndiceGeograficoPorIds(@Param("ids") Collection<Long> ids);
+    
+    /** Envíos del chofer escritos después de una fecha (cambios para la sincronización de la app). */
+    @Query("SELECT e FROM Envio e WHERE e.choferAsignadoId = :choferId AND e.fechaModificacion > :desde")
+    List<Envio> findByChoferAsignadoIdModificadosDesde(@Param("choferId") Long choferId, @Param("desde") LocalDateTime desde);
+
+    /** Ids de la ruta actual del chofer: en camino, no eliminados, colectados (o NULL). */
+    @Query("SELECT e.id FROM Envio e WHERE e.choferAsignadoId = :choferId AND e.estado = 'En camino al destinatario' " +
+           "AND e.eliminado = false AND (e.colectado = true OR e.colectado IS NULL)")
+    List<Long> findIdsEnRutaDeChofer(@Param("choferId") Long choferId);
+
+    /**
+     * Paradas pendientes del chofer para estimar llegadas (mismo criterio que la ruta optimizada):
+     * [id, latDestino, lngDestino, codigoPostal, zonaEntrega, deadline].
+     */
+    @Query("SELECT e.id, e.latDestino, e.lngDestino, e.codigoPostal, e.zonaEntrega, e.deadline FROM Envio e " +
+           "WHERE e.choferAsignadoId = :choferId AND e.estado = 'En camino al destinatario' " +
+           "AND e.eliminado = false AND e.colectado = true")
+    List<Object[]> findParadasPendientesDeChofer(@Param("choferId") Long choferId);
+    
     // Obtener IDs únicos de choferes con envíos en estado específico (solo colectados o NULL)
     @Query("SELECT DISTINCT e.choferAsignadoId FROM Envio e WHERE e.estado = :estado AND e.eliminado = false AND (e.colectado = true OR e.colectado IS NULL) AND e.choferAsignadoId IS NOT NULL")
     List<Long> findChoferIdsConEnviosEnEstado(@Param("estado") String estado);
+
+    // Todos los envíos asignados a algún chofer en estado específico (solo colectados o NULL), para agrupar por chofer en memoria
+    @Query("SELECT e FROM Envio e WHERE e.estado = :estado AND e.eliminado = false AND (e.colectado = true OR e.colectado IS NULL) AND e.choferAsignadoId IS NOT NULL ORDER BY e.choferAsignadoId, e.id")
+    List<Envio> findConChoferAsignadoEnEstado(@Param("estado") String estado);
+
+    // Cantidad de envíos por chofer en estado específico (solo colectados o NULL): [choferAsignadoId, count]
+    @Query("SELECT e.choferAsignadoId, COUNT(e) FROM Envio e WHERE e.estado = :estado AND e.eliminado = false AND (e.colectado = true OR e.colectado IS NULL) AND e.choferAsignadoId IS NOT NULL GROUP BY e.choferAsignadoId")
+    List<Object[]> contarPorChoferEnEstado(@Param("estado") String estado);
     
-    // Contar envíos por chofer y fecha para cierre (solo colectados o NULL)
-    @Query("SELECT e.choferAsignadoId, COUNT(e) FROM Envio e " +
-           "WHERE e.estado = 'En camino al destinatario' " +
-           "AND e.eliminado = false " +
-           "AND (e.colectado = true OR e.colectado IS NULL) " +
-           "AND CAST(e.fecha AS date) = :fecha " +
-           "AND e.choferAsignadoId IS NOT NULL " +
-           "AND (:soloFlex = false OR e.cliente LIKE '%Flex%' OR e.origen = 'Flex') " +
-           "GROUP BY e.choferAsignadoId")
-    List<Object[]> countEnviosPorChoferYFecha(@Param("fecha") LocalDate fecha, @Param("soloFlex") boolean soloFlex);
+    /**
+     * Contadores del cierre de choferes para los envíos cargados en [desde, hasta): [choferAsignadoId, estado,
+     * esFlex (1/0), cantidad]. Solo no eliminados y colectados (o NULL), con chofer.
+     */
+    @Query("SELECT e.choferAsignadoId, e.estado, CASE WHEN e.origen = 'Flex' OR e.cliente LIKE '%Flex%' THEN 1 ELSE 0 END, COUNT(e) " +
+           "FROM Envio e WHERE e.fecha >= :desde AND e.fecha < :hasta AND e.eliminado = false " +
+           "AND (e.colectado = true OR e.colectado IS NULL) AND e.choferAsignadoId IS NOT NULL " +
+           "GROUP BY e.choferAsignadoId, e.estado, CASE WHEN e.origen = 'Flex' OR e.cliente LIKE '%Flex%' THEN 1 ELSE 0 END")
+    List<Object[]> contarCierrePorChofer(@Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta);
+
+    /** Igual que contarCierrePorChofer, solo para algunos choferes. */
+    @Query("SELECT e.choferAsignadoId, e.estado, CASE WHEN e.origen = 'Flex' OR e.cliente LIKE '%Flex%' THEN 1 ELSE 0 END, COUNT(e) " +
+           "FROM Envio e WHERE e.fecha >= :desde AND e.fecha < :hasta AND e.eliminado = false " +
+           "AND (e.colectado = true OR e.colectado IS NULL) AND e.choferAsignadoId IN :choferIds " +
+           "GROUP BY e.choferAsignadoId, e.estado, CASE WHEN e.origen = 'Flex' OR e.cliente LIKE '%Flex%' THEN 1 ELSE 0 END")
+    List<Object[]> contarCierrePorChofer(@Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta,
+                                         @Param("choferIds") Collection<Long> choferIds);
     
     // Obtener envíos Flex para polling (no eliminados, no en estados finales, con mlShipmentId)
     @Query("SELECT e FROM Envio e WHERE e.origen = 'Flex' " +
@@ -124,5 +216,98 @@ public interface EnvioRepository extends JpaRepository<Envio, Long>, JpaSpecific
         @Param("desde") LocalDateTime desde,
         @Param("hasta") LocalDateTime hasta
     );
-}
 
+    /** CPs distintos de envíos cargados en el rango (para reclasificar zonas de entrega). */
+    @Query("SELECT DISTINCT e.codigoPostal FROM Envio e WHERE e.codigoPostal IS NOT NULL " +
+           "AND e.fecha >= :desde AND e.fecha < :hasta")
+    List<String> findCodigosPostalesDistintos(
+        @Param("desde") LocalDateTime desde,
+        @Param("hasta") LocalDateTime hasta
+    );
+
+    /**
+     * Envíos que cambiaría {@link #actualizarZonaEntregaPorCodigosPostales} (mismo filtro), para marcar lo que el
+     * update masivo no avisa: [id, COALESCE(fechaColecta, fechaUltimoMovimiento)].
+     */
+    @Query("SELECT e.id, COALESCE(e.fechaColecta, e.fechaUltimoMovimiento) FROM Envio e " +
+           "WHERE e.codigoPostal IN :codigosPostales AND e.fecha >= :desde AND e.fecha < :hasta " +
+           "AND (e.zonaEntrega IS NULL OR e.zonaEntrega <> :zona)")
+    List<Object[]> findParaReclasificarZona(
+        @Param("zona") String zona,
+        @Param("codigosPostales") Collection<String> codigosPostales,
+        @Param("desde") LocalDateTime desde,
+        @Param("hasta") LocalDateTime hasta
+    );
+
+    /** Asigna la zona de entrega a todos los envíos del rango con alguno de los CPs dados. */
+    @Modifying
+    @Query("UPDATE Envio e SET e.zonaEntrega = :zona, e.fechaModificacion = :ahora WHERE e.codigoPostal IN :codigosPostales " +
+           "AND e.fecha >= :desde AND e.fecha < :hasta " +
+           "AND (e.zonaEntrega IS NULL OR e.zonaEntrega <> :zona)")
+    int actualizarZonaEntregaPorCodigosPostales(
+        @Param("zona") String zona,
+        @Param("codigosPostales") Collection<String> codigosPostales,
+        @Param("desde") LocalDateTime desde,
+        @Param("hasta") LocalDateTime hasta,
+        @Param("ahora") LocalDateTime ahora
+    );
+
+    /** Id y cliente de los envíos no eliminados cargados en el rango (para recalcular costos por lista de precios). */
+    @Query("SELECT e.id, e.cliente FROM Envio e WHERE e.eliminado = false AND e.cliente IS NOT NULL " +
+           "AND e.fecha >= :desde AND e.fecha < :hasta ORDER BY e.id")
+    List<Object[]> findIdYClienteEntreFechas(
+        @Param("desde") LocalDateTime desde,
+        @Param("hasta") LocalDateTime hasta
+    );
+
+    /**
+     * Totales de los envíos colectados en el rango (mismo criterio que {@link #findEnviosColectadosEntreFechas}),
+     * agrupados por cliente, estado, día de colecta efectiva y zona de entrega. Cada fila:
+     * [cliente, estado, día, zonaEntrega, cantidad, suma costoEnvioNum, suma totalACobrarNum].
+     */
+    @Query("SELECT e.cliente, e.estado, CAST(COALESCE(e.fechaColecta, e.fechaUltimoMovimiento) AS date), e.zonaEntrega, " +
+           "COUNT(e), SUM(e.costoEnvioNum), SUM(e.totalACobrarNum) " +
+           "FROM Envio e WHERE e.eliminado = false AND (" +
+           "(e.fechaColecta IS NOT NULL AND e.fechaColecta >= :desde AND e.fechaColecta <= :hasta) " +
+           "OR (e.colectado = true AND e.fechaColecta IS NULL AND e.fechaUltimoMovimiento IS NOT NULL " +
+           "AND e.fechaUltimoMovimiento >= :desde AND e.fechaUltimoMovimiento <= :hasta)) " +
+           "GROUP BY e.cliente, e.estado, CAST(COALESCE(e.fechaColecta, e.fechaUltimoMovimiento) AS date), e.zonaEntrega " +
+           "ORDER BY 3, 4")
+    List<Object[]> resumirColectadosEntreFechas(
+        @Param("desde") LocalDateTime desde,
+        @Param("hasta") LocalDateTime hasta
+    );
+
+    /**
+     * Envíos (id mayor a desdeId) con algún importe en texto cuya columna numérica todavía no se completó. Cada fila:
+     * [id, costoEnvio, totalACobrar, peso, COALESCE(fechaColecta, fechaUltimoMovimiento)].
+     */
+    @Query("SELECT e.id, e.costoEnvio, e.totalACobrar, e.peso, COALESCE(e.fechaColecta, e.fechaUltimoMovimiento) " +
+           "FROM Envio e WHERE e.id > :desdeId AND (" +
+           "(e.costoEnvio IS NOT NULL AND e.costoEnvio <> '' AND e.costoEnvioNum IS NULL) " +
+           "OR (e.totalACobrar IS NOT NULL AND e.totalACobrar <> '' AND e.totalACobrarNum IS NULL) " +
+           "OR (e.peso IS NOT NULL AND e.peso <> '' AND e.pesoNum IS NULL)) ORDER BY e.id")
+    List<Object[]> findImportesSinMigrar(@Param("desdeId") Long desdeId, Pageable pageable);
+
+    /**
+     * Totales de los envíos colectados en el intervalo [inicio, fin) (mismo criterio de colecta efectiva que
+     * {@link #findEnviosColectadosEntreFechas}), por cliente, estado y zona. Cada fila:
+     * [cliente, estado, zonaEntrega, cantidad, suma costoEnvioNum, suma totalACobrarNum].
+     */
+    @Query("SELECT e.cliente, e.estado, e.zonaEntrega, COUNT(e), SUM(e.costoEnvioNum), SUM(e.totalACobrarNum) " +
+           "FROM Envio e WHERE e.eliminado = false AND (" +
+           "(e.fechaColecta IS NOT NULL AND e.fechaColecta >= :inicio AND e.fechaColecta < :fin) " +
+           "OR (e.colectado = true AND e.fechaColecta IS NULL AND e.fechaUltimoMovimiento IS NOT NULL " +
+           "AND e.fechaUltimoMovimiento >= :inicio AND e.fechaUltimoMovimiento < :fin)) " +
+           "GROUP BY e.cliente, e.estado, e.zonaEntrega")
+    List<Object[]> resumirColectadosPorClienteEstadoZona(
+        @Param("inicio") LocalDateTime inicio,
+        @Param("fin") LocalDateTime fin
+    );
+
+    /** Primer y último día con envíos colectados: [min fecha, max fecha] de colecta efectiva. */
+    @Query("SELECT MIN(COALESCE(e.fechaColecta, e.fechaUltimoMovimiento)), MAX(COALESCE(e.fechaColecta, e.fechaUltimoMovimiento)) " +
+           "FROM Envio e WHERE e.eliminado = false AND (e.fechaColecta IS NOT NULL " +
+           "OR (e.colectado = true AND e.fechaUltimoMovimiento IS NOT NULL))")
+    List<Object[]> findRangoFechasColecta();
+}
@@ -2,12 +2,27 @@ package com.zetallegue.tms.repository;
 
 import com.zetallegue.tms.model.HistorialEnvio;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface HistorialEnvioRepository extends JpaRepository<HistorialEnvio, Long> {
     List<HistorialEnvio> findByEnvioIdOrderByFechaDesc(Long envioId);
+
+    /**
+     * Visitas de los choferes en [desde, hasta) para entrenar la estimación de llegadas, por chofer y hora:
+     * [fecha, choferAsignadoId, zonaEntrega, latDestino, lngDestino].
+     */
+    @Query("SELECT h.fecha, e.choferAsignadoId, e.zonaEntrega, e.latDestino, e.lngDestino FROM HistorialEnvio h, Envio e " +
+           "WHERE e.id = h.envioId AND h.estado IN :estados AND h.fecha >= :desde AND h.fecha < :hasta " +
+           "AND e.choferAsignadoId IS NOT NULL ORDER BY e.choferAsignadoId, h.fecha")
+    List<Object[]> findVisitasParaEta(@Param("estados") Collection<String> estados,
+                                      @Param("desde") LocalDateTime desde,
+                                      @Param("hasta") LocalDateTime hasta);
 }
 
@@ -2,12 +2,21 @@ package com.zetallegue.tms.repository;
 
 import com.zetallegue.tms.model.ListaPrecio;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ListaPrecioRepository extends JpaRepository<ListaPrecio, Long> {
     Optional<ListaPrecio> findById(Long id);
+    List<ListaPrecio> findByListaPrecioSeleccionadaAndZonaPropiaFalse(Long listaPrecioSeleccionada);
+
+    /** Listas con sus zonas en una sola consulta (sin el select de zonas por lista del fetch EAGER). */
+    @Query("SELECT DISTINCT l FROM ListaPrecio l LEFT JOIN FETCH l.zonas WHERE l.id IN :ids")
+    List<ListaPrecio> findAllConZonasByIdIn(@Param("ids") Collection<Long> ids);
 }
 
@@ -0,0 +1,9 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.ProgresoMigracion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProgresoMigracionRepository extends JpaRepository<ProgresoMigracion, String> {
+}
@@ -0,0 +1,22 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.TransicionSincronizada;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TransicionSincronizadaRepository extends JpaRepository<TransicionSincronizada, Long> {
+
+    List<TransicionSincronizada> findByClaveIdempotenciaIn(Collection<String> claves);
+
+    @Modifying
+    @Query("DELETE FROM TransicionSincronizada t WHERE t.fechaRecepcion < :antes")
+    int deleteByFechaRecepcionBefore(@Param("antes") LocalDateTime antes);
+}
@@ -0,0 +1,21 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.UbicacionChofer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UbicacionChoferRepository extends JpaRepository<UbicacionChofer, Long> {
+    List<UbicacionChofer> findByChoferIdAndFechaHoraBetweenOrderByFechaHoraAsc(Long choferId, LocalDateTime desde, LocalDateTime hasta);
+
+    /** Momentos ya guardados del chofer en [desde, hasta] (para descartar posiciones reenviadas). */
+    @Query("SELECT u.fechaHora FROM UbicacionChofer u WHERE u.choferId = :choferId AND u.fechaHora BETWEEN :desde AND :hasta")
+    List<LocalDateTime> findMomentosEntre(@Param("choferId") Long choferId,
+                                          @Param("desde") LocalDateTime desde,
+                                          @Param("hasta") LocalDateTime hasta);
+}
@@ -2,8 +2,12 @@ package com.zetallegue.tms.repository;
 
 import com.zetallegue.tms.model.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,5 +18,26 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     boolean existsByUsuario(String usuario);
     List<Usuario> findByPerfilAndHabilitadoTrueAndBloqueadoFalse(String perfil);
     List<Usuario> findAllById(Iterable<Long> ids);
+
+    /** Última posición conocida del chofer; solo la escriben los volcados periódicos de ubicaciones. */
+    @Modifying
+    @Query("UPDATE Usuario u SET u.latitud = :latitud, u.longitud = :longitud, u.bateria = :bateria, " +
+           "u.ultimaActualizacionUbicacion = :fechaHora WHERE u.id = :id " +
+           "AND (u.ultimaActualizacionUbicacion IS NULL OR u.ultimaActualizacionUbicacion < :fechaHora)")
+    int actualizarUltimaUbicacion(@Param("id") Long id,
+                                  @Param("latitud") Double latitud,
+                                  @Param("longitud") Double longitud,
+                                  @Param("bateria") Integer bateria,
+                                  @Param("fechaHora") LocalDateTime fechaHora);
+
+    /** Igual que {@link #actualizarUltimaUbicacion} para posiciones que llegaron sin batería: conserva la guardada. */
+    @Modifying
+    @Query("UPDATE Usuario u SET u.latitud = :latitud, u.longitud = :longitud, " +
+           "u.ultimaActualizacionUbicacion = :fechaHora WHERE u.id = :id " +
+           "AND (u.ultimaActualizacionUbicacion IS NULL OR u.ultimaActualizacionUbicacion < :fechaHora)")
+    int actualizarUltimaUbicacionSinBateria(@Param("id") Long id,
+                                            @Param("latitud") Double latitud,
+                                            @Param("longitud") Double longitud,
+                                            @Param("fechaHora") LocalDateTime fechaHora);
 }
 
@@ -0,0 +1,12 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.ZonaEntregaRango;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ZonaEntregaRangoRepository extends JpaRepository<ZonaEntregaRango, Long> {
+    List<ZonaEntregaRango> findAllByOrderByOrdenAscCpDesdeAsc();
+}
@@ -0,0 +1,14 @@
+package com.zetallegue.tms.repository;
+
+import com.zetallegue.tms.model.Zona;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ZonaRepository extends JpaRepository<Zona, Long> {
+    @Query("SELECT z FROM Zona z WHERE z.valor IS NOT NULL AND z.valor <> '' AND z.valorNum IS NULL")
+    List<Zona> findConValorSinMigrar();
+}
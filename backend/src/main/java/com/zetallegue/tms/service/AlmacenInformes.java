@@ -0,0 +1,47 @@
+package com.zetallegue.tms.service;
+
+import org.springframework.core.io.Resource;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Almacenamiento de los archivos de informes generados en segundo plano. La implementación por defecto es
+ * {@link AlmacenInformesLocal} (disco local); se puede reemplazar por otra (S3, etc.) declarando otro bean.
+ */
+public interface AlmacenInformes {
+
+    /**
+     * Stream para escribir el archivo con esa clave. El archivo nuevo queda visible para {@link #obtener} (reemplazando
+     * al que existía) recién con {@link ArchivoNuevo#confirmar()}; si se cierra sin confirmar se descarta.
+     */
+    ArchivoNuevo crear(String clave) throws IOException;
+
+    /** Archivo guardado con esa clave, si existe. */
+    Optional<Resource> obtener(String clave);
+
+    void eliminar(String clave);
+
+    /**
+     * Elimina los archivos cuya clave empieza con el prefijo y que se escribieron antes del límite
+     * (incluye los que quedaron de ejecuciones anteriores).
+     */
+    int eliminarAnterioresA(String prefijo, Instant limite);
+
+    /**
+     * Archivo en escritura. Se usa con try-with-resources llamando a {@link #confirmar()} como último paso: si la
+     * escritura falla antes, el cierre descarta lo escrito y el archivo anterior con la misma clave queda intacto.
+     */
+    abstract class ArchivoNuevo extends FilterOutputStream {
+
+        protected ArchivoNuevo(OutputStream out) {
+            super(out);
+        }
+
+        /** Cierra el stream y publica el archivo con su clave. */
+        public abstract void confirmar() throws IOException;
+    }
+}
@@ -0,0 +1,120 @@
+package com.zetallegue.tms.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Guarda los informes en un directorio local ({@code informes.almacen.directorio}), un archivo por clave.
+ */
+@Service
+@Slf4j
+public class AlmacenInformesLocal implements AlmacenInformes {
+
+    private static final Pattern CLAVE_VALIDA = Pattern.compile("[A-Za-z0-9_-]{1,100}");
+
+    private final Path directorio;
+
+    public AlmacenInformesLocal(@Value("${informes.almacen.directorio:./data/informes}") String directorio) {
+        this.directorio = Paths.get(directorio).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(this.directorio);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el directorio de informes " + this.directorio, e);
+        }
+    }
+
+    /**
+     * Escribe en un temporal del mismo directorio y lo mueve al nombre final al confirmar: nunca se lee un archivo a
+     * medio escribir. Cerrar sin confirmar borra el temporal.
+     */
+    @Override
+    public ArchivoNuevo crear(String clave) throws IOException {
+        Path destino = archivo(clave);
+        // El temporal empieza con la clave: si queda huérfano lo limpia eliminarAnterioresA con el mismo prefijo
+        Path temporal = Files.createTempFile(directorio, clave + ".", ".tmp");
+        return new ArchivoNuevo(Files.newOutputStream(temporal)) {
+            private boolean cerrado;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void confirmar() throws IOException {
+                if (cerrado) throw new IOException("El informe " + clave + " ya se cerró");
+                cerrado = true;
+                try {
+                    out.close();
+                    Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(temporal);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (cerrado) return;
+                cerrado = true;
+                try {
+                    out.close();
+                } finally {
+                    Files.deleteIfExists(temporal);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Optional<Resource> obtener(String clave) {
+        Path archivo = archivo(clave);
+        return Files.isRegularFile(archivo) ? Optional.of(new FileSystemResource(archivo)) : Optional.empty();
+    }
+
+    @Override
+    public void eliminar(String clave) {
+        try {
+            Files.deleteIfExists(archivo(clave));
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el informe {}: {}", clave, e.getMessage());
+        }
+    }
+
+    @Override
+    public int eliminarAnterioresA(String prefijo, Instant limite) {
+        int eliminados = 0;
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, prefijo + "*")) {
+            for (Path archivo : archivos) {
+                if (Files.isRegularFile(archivo) && Files.getLastModifiedTime(archivo).toInstant().isBefore(limite)) {
+                    Files.deleteIfExists(archivo);
+                    eliminados++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error limpiando informes vencidos en {}: {}", directorio, e.getMessage());
+        }
+        return eliminados;
+    }
+
+    private Path archivo(String clave) {
+        if (clave == null || !CLAVE_VALIDA.matcher(clave).matches()) {
+            throw new IllegalArgumentException("Clave de informe inválida: " + clave);
+        }
+        return directorio.resolve(clave);
+    }
+}
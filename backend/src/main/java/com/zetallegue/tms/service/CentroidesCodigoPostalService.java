@@ -0,0 +1,70 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.repository.EnvioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Centro aproximado de cada código postal (promedio de los destinos geolocalizados), para ubicar las paradas sin
+ * coordenadas en la ruta del chofer, el planificador de asignaciones y las estimaciones de llegada (incluido el
+ * tracking público). El promedio sobre todo el historial casi no cambia de un pedido a otro: cada código postal se
+ * consulta una vez y se guarda {@code centroides.ttl-ms}; también se recuerda cuando no tiene centro, para no
+ * repetir la consulta.
+ */
+@Service
+@Slf4j
+public class CentroidesCodigoPostalService {
+
+    /** Centro de un código postal (null si no hay destinos geolocalizados) y cuándo se calculó. */
+    private record Centroide(double[] centro, long momentoMs) {
+    }
+
+    private final EnvioRepository envioRepository;
+    private final long ttlMs;
+
+    private final Map<String, Centroide> centroides = new ConcurrentHashMap<>();
+
+    public CentroidesCodigoPostalService(EnvioRepository envioRepository,
+                                         @Value("${centroides.ttl-ms:21600000}") long ttlMs) {
+        this.envioRepository = envioRepository;
+        this.ttlMs = ttlMs;
+    }
+
+    /** [lat, lng] por código postal; los que no tienen destinos geolocalizados no aparecen. */
+    public Map<String, double[]> obtener(Collection<String> codigosPostales) {
+        Map<String, double[]> resultado = new HashMap<>();
+        if (codigosPostales == null || codigosPostales.isEmpty()) return resultado;
+        long ahora = System.currentTimeMillis();
+        Set<String> faltantes = new HashSet<>();
+        for (String cp : codigosPostales) {
+            if (cp == null || cp.isBlank()) continue;
+            Centroide c = centroides.get(cp);
+            if (c == null || ahora - c.momentoMs() > ttlMs) {
+                faltantes.add(cp);
+            } else if (c.centro() != null) {
+                resultado.put(cp, c.centro());
+            }
+        }
+        if (faltantes.isEmpty()) return resultado;
+
+        Set<String> sinCentro = new HashSet<>(faltantes);
+        for (Object[] fila : envioRepository.findCentroidesPorCodigoPostal(faltantes)) {
+            String cp = (String) fila[0];
+            double[] centro = new double[]{((Number) fila[1]).doubleValue(), ((Number) fila[2]).doubleValue()};
+            centroides.put(cp, new Centroide(centro, ahora));
+            resultado.put(cp, centro);
+            sinCentro.remove(cp);
+        }
+        sinCentro.forEach(cp -> centroides.put(cp, new Centroide(null, ahora)));
+        log.debug("Centroides por código postal: {} consultados, {} sin destinos geolocalizados", faltantes.size(), sinCentro.size());
+        return resultado;
+    }
+}
@@ -0,0 +1,37 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Envio;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Listener JPA de {@link Envio}: cada alta, cambio o baja marca como pendientes en {@link CierreChoferService}
+ * el contador (día, chofer) que el envío tenía al leerse y el que tiene ahora.
+ */
+@Component
+public class CierreChoferListener {
+
+    // ObjectProvider: Hibernate crea el listener junto con el EntityManagerFactory, antes que los repositorios
+    private final ObjectProvider<CierreChoferService> cierreChoferService;
+
+    public CierreChoferListener(ObjectProvider<CierreChoferService> cierreChoferService) {
+        this.cierreChoferService = cierreChoferService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void envioModificado(Envio envio) {
+        LocalDate dia = envio.getFecha() != null ? envio.getFecha().toLocalDate() : null;
+        CierreChoferService servicio = cierreChoferService.getObject();
+        servicio.marcarPendiente(envio.getDiaCierreLeido(), envio.getChoferCierreLeido());
+        servicio.marcarPendiente(dia, envio.getChoferAsignadoId());
+        envio.setDiaCierreLeido(dia);
+        envio.setChoferCierreLeido(envio.getChoferAsignadoId());
+    }
+}
@@ -0,0 +1,187 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.CierreChoferDiario;
+import com.zetallegue.tms.repository.CierreChoferDiarioRepository;
+import com.zetallegue.tms.repository.EnvioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mantiene la tabla {@code cierre_chofer_diario} (contadores por día y chofer) que lee la pantalla de cierre
+ * (/api/ruteate/cierre) en lugar de contar envíos en cada pedido.
+ *
+ * Mantenimiento incremental por contador: {@link CierreChoferListener} marca los pares (día, chofer) que toca cada
+ * alta, cambio o baja de envío (al confirmarse la transacción; la asignación masiva los marca a mano) y solo esos
+ * contadores se recalculan con un GROUP BY sobre los envíos de ese chofer y día, cada 30 segundos o antes de leer.
+ * Lo que no pase por ahí lo corrige la reconciliación: al arrancar y cada noche se reconstruyen los últimos
+ * {@code cierre.dias-reconciliacion} días.
+ */
+@Service
+@Slf4j
+public class CierreChoferService {
+
+    public static final String ESTADO_EN_CAMINO = "En camino al destinatario";
+
+    record Clave(LocalDate fecha, Long choferId) {
+    }
+
+    private final CierreChoferDiarioRepository cierreChoferDiarioRepository;
+    private final EnvioRepository envioRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int diasReconciliacion;
+
+    private final Set<Clave> pendientes = ConcurrentHashMap.newKeySet();
+    /** Clave del conjunto de contadores tocados por la transacción en curso. */
+    private final Object recursoTransaccion = new Object();
+
+    public CierreChoferService(CierreChoferDiarioRepository cierreChoferDiarioRepository,
+                               EnvioRepository envioRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${cierre.dias-reconciliacion:7}") int diasReconciliacion) {
+        this.cierreChoferDiarioRepository = cierreChoferDiarioRepository;
+        this.envioRepository = envioRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Transacción propia aunque se llame desde una de solo lectura
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.diasReconciliacion = diasReconciliacion;
+    }
+
+    /**
+     * Marca el contador (día, chofer) para recalcular. Dentro de una transacción se acumulan y se registran al
+     * confirmarse, como en {@link ColectaDiariaService#marcarDiasPendientes}.
+     */
+    @SuppressWarnings("unchecked")
+    public void marcarPendiente(LocalDate dia, Long choferId) {
+        if (dia == null || choferId == null) return;
+        Clave clave = new Clave(dia, choferId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendientes.add(clave);
+            return;
+        }
+        Set<Clave> delaTransaccion = (Set<Clave>) TransactionSynchronizationManager.getResource(recursoTransaccion);
+        if (delaTransaccion == null) {
+            Set<Clave> nuevas = new HashSet<>();
+            delaTransaccion = nuevas;
+            TransactionSynchronizationManager.bindResource(recursoTransaccion, nuevas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(recursoTransaccion);
+                    if (status == STATUS_COMMITTED) pendientes.addAll(nuevas);
+                }
+            });
+        }
+        delaTransaccion.add(clave);
+    }
+
+    /** Contadores de todos los choferes del día, después de aplicar los pendientes. */
+    public List<CierreChoferDiario> obtener(LocalDate fecha) {
+        if (!pendientes.isEmpty()) procesarPendientes();
+        return cierreChoferDiarioRepository.findByFecha(fecha);
+    }
+
+    @Scheduled(fixedDelay = 30 * 1000, initialDelay = 30 * 1000)
+    public synchronized void procesarPendientes() {
+        if (pendientes.isEmpty()) return;
+        List<Clave> claves = new ArrayList<>(pendientes);
+        pendientes.removeAll(claves);
+        Map<LocalDate, Set<Long>> porDia = new TreeMap<>();
+        for (Clave clave : claves) {
+            porDia.computeIfAbsent(clave.fecha(), d -> new HashSet<>()).add(clave.choferId());
+        }
+        porDia.forEach((dia, choferIds) -> {
+            try {
+                recalcular(dia, choferIds);
+            } catch (RuntimeException e) {
+                choferIds.forEach(id -> pendientes.add(new Clave(dia, id)));
+                log.error("Error recalculando el cierre del {} ({} choferes): {}", dia, choferIds.size(), e.getMessage(), e);
+            }
+        });
+        log.debug("Cierre de choferes: {} contadores recalculados", claves.size());
+    }
+
+    /** Reconstruye los días [desde, hasta]; devuelve la cantidad de filas generadas. */
+    public synchronized int reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new RuntimeException("Rango de fechas inválido para reconstruir el cierre de choferes");
+        }
+        int filas = 0;
+        for (LocalDate dia = desde; !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+            filas += recalcular(dia, null);
+        }
+        log.info("Cierre de choferes reconstruido del {} al {}: {} filas", desde, hasta, filas);
+        return filas;
+    }
+
+    /** Reconciliación: corrige lo que no pasó por el listener (updates masivos, pendientes perdidos al reiniciar). */
+    @Scheduled(cron = "${cierre.reconciliacion-cron:0 15 4 * * ?}")
+    public void reconciliar() {
+        LocalDate hoy = LocalDate.now();
+        reconstruir(hoy.minusDays(diasReconciliacion), hoy);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        try {
+            reconciliar();
+        } catch (Exception e) {
+            log.error("Error inicializando el cierre de choferes: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Recalcula los contadores del día de los choferes indicados (null = todos los del día). */
+    private int recalcular(LocalDate dia, Collection<Long> choferIds) {
+        Integer filas = transactionTemplate.execute(status -> {
+            List<Object[]> conteos = choferIds == null
+                    ? envioRepository.contarCierrePorChofer(dia.atStartOfDay(), dia.plusDays(1).atStartOfDay())
+                    : envioRepository.contarCierrePorChofer(dia.atStartOfDay(), dia.plusDays(1).atStartOfDay(), choferIds);
+            Map<Long, CierreChoferDiario> porChofer = new LinkedHashMap<>();
+            for (Object[] fila : conteos) {
+                Long choferId = (Long) fila[0];
+                String estado = (String) fila[1];
+                boolean flex = ((Number) fila[2]).intValue() == 1;
+                int cantidad = ((Number) fila[3]).intValue();
+                CierreChoferDiario c = porChofer.computeIfAbsent(choferId,
+                        id -> new CierreChoferDiario(null, dia, id, 0, 0, 0, 0, 0, 0));
+                c.setTotal(c.getTotal() + cantidad);
+                if (flex) c.setFlex(c.getFlex() + cantidad);
+                if (ESTADO_EN_CAMINO.equals(estado)) {
+                    c.setEnCamino(c.getEnCamino() + cantidad);
+                    if (flex) c.setEnCaminoFlex(c.getEnCaminoFlex() + cantidad);
+                } else if ("Entregado".equals(estado)) {
+                    c.setEntregados(c.getEntregados() + cantidad);
+                } else if ("Rechazado por el comprador".equals(estado)) {
+                    c.setRechazados(c.getRechazados() + cantidad);
+                }
+            }
+            if (choferIds == null) {
+                cierreChoferDiarioRepository.deleteByFecha(dia);
+            } else {
+                cierreChoferDiarioRepository.deleteByFechaAndChoferIdIn(dia, choferIds);
+            }
+            cierreChoferDiarioRepository.saveAll(porChofer.values());
+            return porChofer.size();
+        });
+        return filas != null ? filas : 0;
+    }
+}
@@ -37,6 +37,7 @@ public class ClienteService {
     private final com.zetallegue.tms.repository.GrupoRepository grupoRepository;
     private final MercadoLibreService mercadoLibreService;
     private final EnvioService envioService;
+    private final DirectorioClientesService directorioClientesService;
     private final Environment environment;
 
     /** Path del callback de Tienda Nube. NUNCA concatenar con nada que contenga "mercadolibre". */
@@ -173,6 +174,7 @@ public class ClienteService {
 
         Cliente cliente = toEntity(clienteDTO);
         cliente = clienteRepository.save(cliente);
+        directorioClientesService.invalidar();
         return toDTO(cliente);
     }
 
@@ -263,6 +265,7 @@ public class ClienteService {
         cliente.setGrupoId(grupoEfectivo);
 
         cliente = clienteRepository.save(cliente);
+        directorioClientesService.invalidar();
         return toDTO(cliente);
     }
 
@@ -272,6 +275,7 @@ public class ClienteService {
             throw new RuntimeException("Cliente no encontrado con id: " + id);
         }
         clienteRepository.deleteById(id);
+        directorioClientesService.invalidar();
     }
 
     @Transactional
@@ -280,6 +284,7 @@ public class ClienteService {
                 .orElseThrow(() -> new RuntimeException("Cliente no encontrado con id: " + id));
         cliente.setHabilitado(!cliente.getHabilitado());
         cliente = clienteRepository.save(cliente);
+        directorioClientesService.invalidar();
         return toDTO(cliente);
     }
 
@@ -590,6 +595,7 @@ public class ClienteService {
                 cliente.setFlexIdVendedor(sellerId != null ? sellerId.toString() : null);
                 cliente.setFlexUsername(username);
                 cliente = clienteRepository.save(cliente);
+                directorioClientesService.invalidar();
                 
                 // Verificar que se guardó correctamente
                 Cliente clienteVerificado = clienteRepository.findById(clienteId).orElse(null);
@@ -1024,6 +1030,7 @@ public class ClienteService {
                 cliente.setTiendanubeStoreId(storeId);
             }
             cliente = clienteRepository.save(cliente);
+            directorioClientesService.invalidar();
             
             log.debug("Tienda Nube vinculada cliente {}", clienteId);
             
@@ -1269,6 +1276,7 @@ public class ClienteService {
             // Actualizar el cliente con el access token
             cliente.setShopifyClaveUnica(accessToken);
             cliente = clienteRepository.save(cliente);
+            directorioClientesService.invalidar();
             
             log.info("Cuenta de Shopify vinculada exitosamente para cliente {}", clienteId);
             
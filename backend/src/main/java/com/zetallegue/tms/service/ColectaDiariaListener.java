@@ -0,0 +1,35 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Envio;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Listener JPA de {@link Envio}: cada alta, cambio o baja marca como pendientes en {@link ColectaDiariaService}
+ * el día de colecta que el envío tenía al leerse y el que tiene ahora.
+ */
+@Component
+public class ColectaDiariaListener {
+
+    // ObjectProvider: Hibernate crea el listener junto con el EntityManagerFactory, antes que los repositorios
+    private final ObjectProvider<ColectaDiariaService> colectaDiariaService;
+
+    public ColectaDiariaListener(ObjectProvider<ColectaDiariaService> colectaDiariaService) {
+        this.colectaDiariaService = colectaDiariaService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void envioModificado(Envio envio) {
+        LocalDate anterior = envio.getDiaColectaLeido();
+        LocalDate actual = envio.diaColectaEfectiva();
+        colectaDiariaService.getObject().marcarDiasPendientes(anterior, actual);
+        envio.setDiaColectaLeido(actual);
+    }
+}
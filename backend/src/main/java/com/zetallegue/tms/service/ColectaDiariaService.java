@@ -0,0 +1,226 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.ColectaDiaria;
+import com.zetallegue.tms.model.Cliente;
+import com.zetallegue.tms.repository.ColectaDiariaRepository;
+import com.zetallegue.tms.repository.EnvioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mantiene la tabla {@code colecta_diaria} (hechos diarios de colectas por cliente, zona y grupo de estado) que usan
+ * los resúmenes de informes en lugar de agregar la tabla envios en cada pedido.
+ *
+ * Mantenimiento incremental por día: {@link ColectaDiariaListener} marca los días tocados por cada alta, cambio o
+ * baja de envío (al confirmarse la transacción) y esos días se recalculan completos con un GROUP BY, cada minuto o
+ * antes de leer, así el resumen coincide con el detalle del informe. Los updates masivos (JPQL o JDBC) no pasan por
+ * el listener: cada uno marca a mano los días que toca (asignación masiva, reclasificación de zonas, migración de
+ * importes). La reconstrucción nocturna de los últimos días y la reconstrucción a pedido de cualquier rango quedan
+ * como red para cambios hechos por fuera de la aplicación. Si la tabla está vacía al arrancar se reconstruye todo el
+ * historial en segundo plano, del día más reciente al más viejo, sin demorar el arranque; hasta que termine,
+ * {@link #disponible()} devuelve false y los informes agregan envios con un GROUP BY.
+ */
+@Service
+@Slf4j
+public class ColectaDiariaService {
+
+    private final ColectaDiariaRepository colectaDiariaRepository;
+    private final EnvioRepository envioRepository;
+    private final DirectorioClientesService directorioClientesService;
+    private final TransactionTemplate transactionTemplate;
+    private final int diasReconstruccionNocturna;
+
+    private final Set<LocalDate> diasPendientes = ConcurrentHashMap.newKeySet();
+    /** Clave del conjunto de días tocados por la transacción en curso. */
+    private final Object recursoTransaccion = new Object();
+    private volatile boolean disponible;
+
+    public ColectaDiariaService(ColectaDiariaRepository colectaDiariaRepository,
+                                EnvioRepository envioRepository,
+                                DirectorioClientesService directorioClientesService,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${colecta-diaria.dias-reconstruccion-nocturna:45}") int diasReconstruccionNocturna) {
+        this.colectaDiariaRepository = colectaDiariaRepository;
+        this.envioRepository = envioRepository;
+        this.directorioClientesService = directorioClientesService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Transacción propia aunque se llame desde la transacción de solo lectura de un informe
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.diasReconstruccionNocturna = diasReconstruccionNocturna;
+    }
+
+    /** true cuando la tabla ya refleja el historial de envíos y se puede usar en lugar de agregar envios. */
+    public boolean disponible() {
+        return disponible;
+    }
+
+    /**
+     * Marca días para recalcular. Dentro de una transacción se acumulan y se registran al confirmarse,
+     * así el recálculo no lee datos sin commitear (ni marca días de transacciones que se revierten).
+     */
+    @SuppressWarnings("unchecked")
+    public void marcarDiasPendientes(LocalDate... dias) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            agregarPendientes(dias);
+            return;
+        }
+        Set<LocalDate> delaTransaccion = (Set<LocalDate>) TransactionSynchronizationManager.getResource(recursoTransaccion);
+        if (delaTransaccion == null) {
+            Set<LocalDate> nuevos = new HashSet<>();
+            delaTransaccion = nuevos;
+            TransactionSynchronizationManager.bindResource(recursoTransaccion, nuevos);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(recursoTransaccion);
+                    if (status == STATUS_COMMITTED) diasPendientes.addAll(nuevos);
+                }
+            });
+        }
+        for (LocalDate dia : dias) {
+            if (dia != null) delaTransaccion.add(dia);
+        }
+    }
+
+    /** Hechos del rango [desde, hasta] (días inclusive), después de aplicar los días pendientes. */
+    public List<ColectaDiaria> obtener(LocalDate desde, LocalDate hasta) {
+        procesarPendientes();
+        return colectaDiariaRepository.findByFechaBetweenOrderByFechaAscZonaEntregaAsc(desde, hasta);
+    }
+
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public synchronized void procesarPendientes() {
+        if (diasPendientes.isEmpty()) return;
+        List<LocalDate> dias = new ArrayList<>(new TreeSet<>(diasPendientes));
+        diasPendientes.removeAll(dias);
+        for (LocalDate dia : dias) {
+            try {
+                recalcularDia(dia);
+            } catch (RuntimeException e) {
+                diasPendientes.add(dia);
+                log.error("Error recalculando colecta diaria del {}: {}", dia, e.getMessage(), e);
+            }
+        }
+        log.debug("Colecta diaria: {} días recalculados", dias.size());
+    }
+
+    /** Reconstruye los días [desde, hasta]; devuelve la cantidad de filas generadas. */
+    public synchronized int reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new RuntimeException("Rango de fechas inválido para reconstruir la colecta diaria");
+        }
+        int filas = 0;
+        for (LocalDate dia = desde; !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+            filas += recalcularDia(dia);
+        }
+        log.info("Colecta diaria reconstruida {} - {}: {} filas", desde, hasta, filas);
+        return filas;
+    }
+
+    /** Cubre los cambios que no pasan por el listener (updates masivos, reclasificación de zonas, etc.). */
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void reconstruccionNocturna() {
+        LocalDate hoy = LocalDate.now();
+        reconstruir(hoy.minusDays(diasReconstruccionNocturna), hoy);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        Thread t = new Thread(this::cargarHistorial, "colecta-diaria-inicial");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Reconstrucción inicial si la tabla está vacía. Va día por día (del más reciente al más viejo) tomando el lock
+     * solo para cada día, así el procesamiento de pendientes y las reconstrucciones a pedido no esperan todo el historial.
+     */
+    private void cargarHistorial() {
+        try {
+            if (colectaDiariaRepository.count() == 0) {
+                List<Object[]> rango = envioRepository.findRangoFechasColecta();
+                Object[] minMax = rango.isEmpty() ? null : rango.get(0);
+                if (minMax != null && minMax[0] != null && minMax[1] != null) {
+                    LocalDate desde = aFecha(minMax[0]);
+                    LocalDate hasta = aFecha(minMax[1]);
+                    log.info("Colecta diaria vacía: reconstruyendo historial {} - {} en segundo plano", desde, hasta);
+                    int filas = 0;
+                    for (LocalDate dia = hasta; !dia.isBefore(desde); dia = dia.minusDays(1)) {
+                        synchronized (this) {
+                            filas += recalcularDia(dia);
+                        }
+                    }
+                    log.info("Colecta diaria: historial reconstruido, {} filas", filas);
+                }
+            }
+            disponible = true;
+        } catch (Exception e) {
+            log.error("Error inicializando colecta diaria: {}", e.getMessage(), e);
+        }
+    }
+
+    private int recalcularDia(LocalDate dia) {
+        Integer filas = transactionTemplate.execute(status -> {
+            colectaDiariaRepository.deleteByFecha(dia);
+            Map<List<Object>, ColectaDiaria> porClave = new LinkedHashMap<>();
+            for (Object[] fila : envioRepository.resumirColectadosPorClienteEstadoZona(dia.atStartOfDay(), dia.plusDays(1).atStartOfDay())) {
+                String cliente = (String) fila[0];
+                String estadoGrupo = ColectaDiaria.grupoDeEstado((String) fila[1]);
+                String zona = (String) fila[2];
+                ColectaDiaria hecho = porClave.computeIfAbsent(List.of(Objects.toString(cliente, ""), Objects.toString(zona, ""), estadoGrupo),
+                        k -> new ColectaDiaria(null, dia, cliente, grupoDe(cliente), zona, estadoGrupo, 0, BigDecimal.ZERO, BigDecimal.ZERO));
+                hecho.setCantidad(hecho.getCantidad() + ((Number) fila[3]).intValue());
+                hecho.setCostoEnvioTotal(hecho.getCostoEnvioTotal().add(aBigDecimal(fila[4])));
+                hecho.setTotalACobrarTotal(hecho.getTotalACobrarTotal().add(aBigDecimal(fila[5])));
+            }
+            colectaDiariaRepository.saveAll(porClave.values());
+            return porClave.size();
+        });
+        return filas != null ? filas : 0;
+    }
+
+    private Long grupoDe(String cliente) {
+        return directorioClientesService.resolverDesdeTextoEnvio(cliente).map(Cliente::getGrupoId).orElse(null);
+    }
+
+    private void agregarPendientes(LocalDate... dias) {
+        for (LocalDate dia : dias) {
+            if (dia != null) diasPendientes.add(dia);
+        }
+    }
+
+    private static BigDecimal aBigDecimal(Object valor) {
+        if (valor == null) return BigDecimal.ZERO;
+        if (valor instanceof BigDecimal bd) return bd;
+        return BigDecimal.valueOf(((Number) valor).doubleValue());
+    }
+
+    private static LocalDate aFecha(Object valor) {
+        if (valor instanceof LocalDateTime ldt) return ldt.toLocalDate();
+        if (valor instanceof Timestamp ts) return ts.toLocalDateTime().toLocalDate();
+        return (LocalDate) valor;
+    }
+}
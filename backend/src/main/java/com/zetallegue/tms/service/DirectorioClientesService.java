@@ -0,0 +1,199 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Cliente;
+import com.zetallegue.tms.repository.ClienteRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Directorio en memoria de clientes con índices hash por id, grupo, código, nombre (fantasía o razón social, sin distinguir
+ * mayúsculas) y seller ID de Flex, y las listas de clientes vinculados con Flex y con Shopify.
+ *
+ * Reemplaza los {@code clienteRepository.findAll()} + filtro en streams que se hacían por cada envío.
+ * El snapshot se construye de forma perezosa con una sola consulta y se descarta con {@link #invalidar()}
+ * cada vez que se escribe un cliente (ClienteService, refresco de tokens, vinculaciones).
+ *
+ * El snapshot guarda copias desacopladas de la sesión y cada consulta devuelve una copia nueva: quien la recibe
+ * puede modificarla y guardarla (como el refresco de tokens) sin tocar lo que ven los demás.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DirectorioClientesService {
+
+    private final ClienteRepository clienteRepository;
+
+    private volatile Snapshot snapshot;
+    /** Se incrementa en cada invalidación; un snapshot leído antes de la última no se publica. */
+    private final AtomicLong version = new AtomicLong();
+
+    public Optional<Cliente> buscarPorId(Long id) {
+        if (id == null) return Optional.empty();
+        return copia(obtenerSnapshot().porId.get(id));
+    }
+
+    public Optional<Cliente> buscarPorCodigo(String codigo) {
+        if (codigo == null || codigo.trim().isEmpty()) return Optional.empty();
+        return copia(obtenerSnapshot().porCodigo.get(codigo.trim()));
+    }
+
+    /** Busca por nombre fantasía o razón social (trim, ignore case); ante duplicados gana el de menor id, como el findFirst anterior. */
+    public Optional<Cliente> buscarPorNombre(String nombre) {
+        if (nombre == null || nombre.trim().isEmpty()) return Optional.empty();
+        return copia(obtenerSnapshot().porNombre.get(claveNombre(nombre)));
+    }
+
+    /**
+     * Resuelve el cliente desde el texto guardado en {@code envio.cliente}: por código si viene en formato
+     * "código - nombre", si no por nombre fantasía / razón social.
+     */
+    public Optional<Cliente> resolverDesdeTextoEnvio(String clienteStr) {
+        if (clienteStr == null || clienteStr.trim().isEmpty()) return Optional.empty();
+        if (clienteStr.contains(" - ")) {
+            return buscarPorCodigo(clienteStr.split(" - ")[0]);
+        }
+        return buscarPorNombre(clienteStr);
+    }
+
+    public Optional<Cliente> buscarPorFlexIdVendedor(String flexIdVendedor) {
+        if (flexIdVendedor == null || flexIdVendedor.trim().isEmpty()) return Optional.empty();
+        return copia(obtenerSnapshot().porFlexIdVendedor.get(flexIdVendedor.trim()));
+    }
+
+    /** Todos los clientes, ordenados por id. */
+    public List<Cliente> todos() {
+        return copias(obtenerSnapshot().todos);
+    }
+
+    /** Clientes del grupo, ordenados por id. */
+    public List<Cliente> clientesDeGrupo(Long grupoId) {
+        if (grupoId == null) return List.of();
+        return copias(obtenerSnapshot().porGrupo.getOrDefault(grupoId, List.of()));
+    }
+
+    /** Clientes con seller ID de Flex configurado (vinculados con MercadoLibre). */
+    public List<Cliente> clientesConFlex() {
+        return copias(obtenerSnapshot().conFlex);
+    }
+
+    /** Clientes habilitados con URL y clave única de Shopify configuradas. */
+    public List<Cliente> clientesConShopify() {
+        return copias(obtenerSnapshot().conShopify);
+    }
+
+    /**
+     * Descarta el snapshot actual. Si hay una transacción activa se vuelve a descartar al commit,
+     * para que ninguna lectura concurrente reconstruya el índice con datos previos a la escritura.
+     */
+    public void invalidar() {
+        descartar();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    descartar();
+                }
+            });
+        }
+    }
+
+    private synchronized void descartar() {
+        version.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot obtenerSnapshot() {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        synchronized (this) {
+            if (snapshot != null) return snapshot;
+        }
+        // La consulta va fuera del lock: si mientras tanto se invalida (por ejemplo el commit de una escritura que
+        // esta lectura no vio), el resultado sirve para este pedido pero no se publica
+        long leida = version.get();
+        List<Cliente> clientes = clienteRepository.findAll(Sort.by(Sort.Direction.ASC, "id")).stream()
+                .map(DirectorioClientesService::copiar)
+                .toList();
+        Snapshot nuevo = new Snapshot(clientes);
+        synchronized (this) {
+            if (version.get() == leida) {
+                snapshot = nuevo;
+                log.debug("Directorio de clientes reconstruido: {} clientes", clientes.size());
+            }
+        }
+        return nuevo;
+    }
+
+    private static Optional<Cliente> copia(Cliente cliente) {
+        return Optional.ofNullable(cliente).map(DirectorioClientesService::copiar);
+    }
+
+    private static List<Cliente> copias(List<Cliente> clientes) {
+        List<Cliente> resultado = new ArrayList<>(clientes.size());
+        for (Cliente c : clientes) resultado.add(copiar(c));
+        return resultado;
+    }
+
+    private static Cliente copiar(Cliente cliente) {
+        Cliente copia = new Cliente();
+        BeanUtils.copyProperties(cliente, copia);
+        return copia;
+    }
+
+    private static String claveNombre(String nombre) {
+        return nombre.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean tieneTexto(String s) {
+        return s != null && !s.trim().isEmpty();
+    }
+
+    /** Vista inmutable de la tabla clientes con sus índices. */
+    private static final class Snapshot {
+        final List<Cliente> todos;
+        final Map<Long, Cliente> porId = new HashMap<>();
+        final Map<Long, List<Cliente>> porGrupo = new HashMap<>();
+        final Map<String, Cliente> porCodigo = new HashMap<>();
+        final Map<String, Cliente> porNombre = new HashMap<>();
+        final Map<String, Cliente> porFlexIdVendedor = new HashMap<>();
+        final List<Cliente> conFlex;
+        final List<Cliente> conShopify;
+
+        Snapshot(List<Cliente> clientes) {
+            List<Cliente> flex = new ArrayList<>();
+            List<Cliente> shopify = new ArrayList<>();
+            this.todos = clientes;
+            for (Cliente c : clientes) {
+                porId.put(c.getId(), c);
+                if (c.getGrupoId() != null) porGrupo.computeIfAbsent(c.getGrupoId(), k -> new ArrayList<>()).add(c);
+                if (tieneTexto(c.getCodigo())) porCodigo.putIfAbsent(c.getCodigo().trim(), c);
+                // Mismo orden de prioridad que el filtro anterior: nombre fantasía o razón social del primer cliente que coincide
+                if (tieneTexto(c.getNombreFantasia())) porNombre.putIfAbsent(claveNombre(c.getNombreFantasia()), c);
+                if (tieneTexto(c.getRazonSocial())) porNombre.putIfAbsent(claveNombre(c.getRazonSocial()), c);
+                if (tieneTexto(c.getFlexIdVendedor())) {
+                    porFlexIdVendedor.putIfAbsent(c.getFlexIdVendedor().trim(), c);
+                    flex.add(c);
+                }
+                if (tieneTexto(c.getShopifyUrl()) && tieneTexto(c.getShopifyClaveUnica()) && Boolean.TRUE.equals(c.getHabilitado())) {
+                    shopify.add(c);
+                }
+            }
+            this.conFlex = Collections.unmodifiableList(flex);
+            this.conShopify = Collections.unmodifiableList(shopify);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.zetallegue.tms.service;
 
+import com.zetallegue.tms.dto.AsignacionMasivaDTO;
+import com.zetallegue.tms.dto.AsignacionMasivaResultadoDTO;
 import com.zetallegue.tms.dto.ChoferConUbicacionDTO;
 import com.zetallegue.tms.dto.ChoferCierreDTO;
 import com.zetallegue.tms.dto.EnvioDTO;
@@ -8,6 +10,11 @@ import com.zetallegue.tms.dto.HistorialEnvioDTO;
 import com.zetallegue.tms.dto.ObservacionEnvioDTO;
 import com.zetallegue.tms.dto.ImagenEnvioDTO;
 import com.zetallegue.tms.dto.PageResponseDTO;
+import com.zetallegue.tms.dto.ParadaRutaDTO;
+import com.zetallegue.tms.dto.ResultadoTransicionDTO;
+import com.zetallegue.tms.dto.RutaOptimizadaDTO;
+import com.zetallegue.tms.dto.TransicionEstadoDTO;
+import com.zetallegue.tms.model.CierreChoferDiario;
 import com.zetallegue.tms.model.Cliente;
 import com.zetallegue.tms.model.Usuario;
 import com.zetallegue.tms.repository.UsuarioRepository;
@@ -15,6 +22,7 @@ import com.zetallegue.tms.model.Envio;
 import com.zetallegue.tms.model.HistorialEnvio;
 import com.zetallegue.tms.model.ObservacionEnvio;
 import com.zetallegue.tms.model.ImagenEnvio;
+import com.zetallegue.tms.model.TransicionSincronizada;
 import com.zetallegue.tms.repository.EnvioRepository;
 import com.zetallegue.tms.repository.HistorialEnvioRepository;
 import com.zetallegue.tms.repository.ObservacionEnvioRepository;
@@ -32,19 +40,24 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -58,11 +71,22 @@ public class EnvioService {
     private final ObservacionEnvioRepository observacionEnvioRepository;
     private final ImagenEnvioRepository imagenEnvioRepository;
     private final MercadoLibreService mercadoLibreService;
-    private final com.zetallegue.tms.repository.ClienteRepository clienteRepository;
-    private final com.zetallegue.tms.repository.ListaPrecioRepository listaPrecioRepository;
+    private final DirectorioClientesService directorioClientesService;
+    private final MotorPreciosService motorPreciosService;
+    private final ZonaEntregaService zonaEntregaService;
     private final EmailService emailService;
+    private final UbicacionChoferService ubicacionChoferService;
+    private final OptimizadorRutaService optimizadorRutaService;
+    private final CentroidesCodigoPostalService centroidesCodigoPostalService;
+    private final ColectaDiariaService colectaDiariaService;
+    private final IndiceGeograficoService indiceGeograficoService;
+    private final CierreChoferService cierreChoferService;
+    private final EtaService etaService;
+    private final JdbcTemplate jdbcTemplate;
     private final com.fasterxml.jackson.databind.ObjectMapper objectMapper = new com.fasterxml.jackson.databind.ObjectMapper();
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    /** Máximo de envíos por pedido de asignación masiva (un chofer rara vez lleva más de 200) */
+    private static final int MAX_ENVIOS_ASIGNACION_MASIVA = 2000;
     
     /**
      * Busca envío existente por número de tracking del carrier (p. ej. sincronización Mercado Libre).
@@ -167,7 +191,9 @@ public class EnvioService {
         if (envios.isEmpty()) {
             return null;
         }
-        return toDTO(envios.get(0));
+        EnvioDTO dto = toDTO(envios.get(0));
+        completarLlegada(dto, etaService.estimarEnvio(envios.get(0)));
+        return dto;
     }
 
     @Transactional
@@ -406,28 +432,65 @@ public class EnvioService {
         Envio envio = envioRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Envío no encontrado con id: " + id));
         
-        // Bloquear cambios manuales de estado para envíos Flex
-        // Los estados de Flex se sincronizan automáticamente desde MercadoLibre vía polling
-        if ("Flex".equals(envio.getOrigen())) {
-            throw new RuntimeException("No se puede cambiar manualmente el estado de un envío Flex. " +
-                    "El estado se sincroniza automáticamente desde MercadoLibre.");
+        String rechazo = motivoRechazoCambioEstado(envio, estado);
+        if (rechazo != null) {
+            throw new RuntimeException(rechazo);
         }
         
-        LocalDateTime ahora = LocalDateTime.now();
         String estadoAnterior = envio.getEstado();
+        HistorialEnvio historial = aplicarCambioEstado(envio, estado, usuarioNombre, observaciones, fotoUrl,
+                rolRecibio, nombreRecibio, dniRecibio, LocalDateTime.now());
+        envio = envioRepository.save(envio);
+        if (historial != null) {
+            historialEnvioRepository.save(historial);
+        }
+        
+        // Enviar email "Tu pedido está en camino" cuando el estado pasa a Retirado (web/app)
+        if ("Retirado".equals(estado) && !"Retirado".equals(estadoAnterior)) {
+            enviarEmailNotificacionSiRetirado(envio);
+        }
+        
+        return toDTO(envio);
+    }
 
+    /** Por qué no se permite el cambio de estado, o null si se permite (reglas de actualizarEstado). */
+    public String motivoRechazoCambioEstado(Envio envio, String estado) {
+        if (estado == null || estado.isBlank()) {
+            return "Falta el estado";
+        }
+        // Bloquear cambios manuales de estado para envíos Flex
+        // Los estados de Flex se sincronizan automáticamente desde MercadoLibre vía polling
+        if ("Flex".equals(envio.getOrigen())) {
+            return "No se puede cambiar manualmente el estado de un envío Flex. " +
+                    "El estado se sincroniza automáticamente desde MercadoLibre.";
+        }
         // No permitir pasar a "En camino al destinatario" sin haber pasado por "Retirado"
-        if ("En camino al destinatario".equals(estado) && "A retirar".equals(estadoAnterior)) {
-            throw new RuntimeException("No se puede pasar a 'En camino al destinatario' desde 'A retirar'. " +
-                    "El envío debe marcarse primero como 'Retirado' (colectado).");
+        if ("En camino al destinatario".equals(estado) && "A retirar".equals(envio.getEstado())) {
+            return "No se puede pasar a 'En camino al destinatario' desde 'A retirar'. " +
+                    "El envío debe marcarse primero como 'Retirado' (colectado).";
         }
+        return null;
+    }
+
+    /**
+     * Aplica al envío (sin guardarlo) un cambio de estado ya validado con {@link #motivoRechazoCambioEstado}:
+     * fechas y datos de entrega, observación de rechazo e imagen de "Nadie". Devuelve la entrada de historial a
+     * guardar, o null si el estado no cambió.
+     */
+    private HistorialEnvio aplicarCambioEstado(Envio envio, String estado, String usuarioNombre,
+                                              String observaciones, String fotoUrl,
+                                              String rolRecibio, String nombreRecibio, String dniRecibio,
+                                              LocalDateTime momento) {
+        String estadoAnterior = envio.getEstado();
+        String quien = usuarioNombre != null ? usuarioNombre : "Usuario";
 
         envio.setEstado(estado);
-        envio.setFechaUltimoMovimiento(ahora);
+        if (envio.getFechaUltimoMovimiento() == null || momento.isAfter(envio.getFechaUltimoMovimiento())) {
+            envio.setFechaUltimoMovimiento(momento);
+        }
         
         // Guardar datos de entrega si el estado es "Entregado"
         if ("Entregado".equals(estado)) {
-            envio.setFechaEntregado(ahora);
             if (rolRecibio != null) envio.setRolRecibio(rolRecibio);
             if (nombreRecibio != null) envio.setNombreRecibio(nombreRecibio);
             if (dniRecibio != null) envio.setDniRecibio(dniRecibio);
@@ -436,39 +499,25 @@ public class EnvioService {
         // Actualizar fecha específica y flags según el estado
         switch (estado) {
             case "Entregado":
-                envio.setFechaEntregado(ahora);
+                envio.setFechaEntregado(momento);
                 break;
             case "Cancelado":
-                envio.setFechaCancelado(ahora);
+                envio.setFechaCancelado(momento);
                 break;
             case "Retirado":
-                envio.setFechaColecta(ahora);
+                envio.setFechaColecta(momento);
                 envio.setColectado(true);
                 break;
         }
         
-        envio = envioRepository.save(envio);
-        
-        // Agregar entrada al historial solo si el estado cambió
-        if (!estado.equals(estadoAnterior)) {
-            HistorialEnvio historial = new HistorialEnvio();
-            historial.setEnvioId(envio.getId());
-            historial.setEstado(estado);
-            historial.setFecha(ahora);
-            historial.setQuien(usuarioNombre != null ? usuarioNombre : "Usuario");
-            historial.setObservaciones(observaciones);
-            historial.setOrigen("APP"); // Desde la app móvil
-            historialEnvioRepository.save(historial);
-        }
-        
         // Guardar observación si se proporciona (para rechazo)
         if (observaciones != null && !observaciones.trim().isEmpty() && 
             "Rechazado por el comprador".equals(estado)) {
             ObservacionEnvio observacion = new ObservacionEnvio();
             observacion.setEnvioId(envio.getId());
             observacion.setObservacion(observaciones);
-            observacion.setFecha(ahora);
-            observacion.setQuien(usuarioNombre != null ? usuarioNombre : "Usuario");
+            observacion.setFecha(momento);
+            observacion.setQuien(quien);
             observacionEnvioRepository.save(observacion);
         }
         
@@ -477,18 +526,87 @@ public class EnvioService {
             ImagenEnvio imagen = new ImagenEnvio();
             imagen.setEnvioId(envio.getId());
             imagen.setUrlImagen(fotoUrl);
-            imagen.setFecha(ahora);
-            imagen.setQuien(usuarioNombre != null ? usuarioNombre : "Usuario");
+            imagen.setFecha(momento);
+            imagen.setQuien(quien);
             imagen.setTipo("nadie_en_domicilio");
             imagenEnvioRepository.save(imagen);
         }
         
-        // Enviar email "Tu pedido está en camino" cuando el estado pasa a Retirado (web/app)
-        if ("Retirado".equals(estado) && !"Retirado".equals(estadoAnterior)) {
-            enviarEmailNotificacionSiRetirado(envio);
+        // Entrada al historial solo si el estado cambió
+        if (estado.equals(estadoAnterior)) {
+            return null;
         }
-        
-        return toDTO(envio);
+        HistorialEnvio historial = new HistorialEnvio();
+        historial.setEnvioId(envio.getId());
+        historial.setEstado(estado);
+        historial.setFecha(momento);
+        historial.setQuien(quien);
+        historial.setObservaciones(observaciones);
+        historial.setOrigen("APP"); // Desde la app móvil
+        return historial;
+    }
+
+    /**
+     * Aplica en orden, en una sola transacción, los cambios de estado que la app del chofer acumuló sin señal. Cada
+     * uno pasa por las reglas de {@link #actualizarEstado} y además se rechaza si el envío ya no es del chofer o si
+     * después del cambio alguien lo pasó a un estado final (el del servidor gana). Un rechazo no corta el lote:
+     * se informa en su resultado. El historial se inserta en batch y queda con la hora del teléfono.
+     */
+    @Transactional
+    public List<ResultadoTransicionDTO> aplicarTransicionesChofer(Long choferId, String usuarioNombre, List<TransicionEstadoDTO> transiciones) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Set<Long> ids = transiciones.stream().map(TransicionEstadoDTO::getEnvioId).filter(java.util.Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, Envio> envios = envioRepository.findAllById(ids).stream().collect(Collectors.toMap(Envio::getId, e -> e));
+
+        List<ResultadoTransicionDTO> resultados = new ArrayList<>(transiciones.size());
+        List<HistorialEnvio> historial = new ArrayList<>();
+        List<Envio> retirados = new ArrayList<>();
+        for (TransicionEstadoDTO t : transiciones) {
+            Envio envio = t.getEnvioId() != null ? envios.get(t.getEnvioId()) : null;
+            // La hora del teléfono, salvo que venga en el futuro (reloj adelantado)
+            LocalDateTime momento = t.getFechaHora() != null && t.getFechaHora().isBefore(ahora) ? t.getFechaHora() : ahora;
+            String rechazo;
+            if (envio == null || Boolean.TRUE.equals(envio.getEliminado())) {
+                rechazo = "Envío no encontrado";
+            } else if (!choferId.equals(envio.getChoferAsignadoId())) {
+                rechazo = "El envío ya no está asignado a este chofer";
+            } else if (!java.util.Objects.equals(t.getEstado(), envio.getEstado())
+                    && ("Entregado".equals(envio.getEstado()) || "Cancelado".equals(envio.getEstado()))
+                    && envio.getFechaUltimoMovimiento() != null && envio.getFechaUltimoMovimiento().isAfter(momento)) {
+                rechazo = "El envío pasó a '" + envio.getEstado() + "' después de este cambio";
+            } else {
+                rechazo = motivoRechazoCambioEstado(envio, t.getEstado());
+            }
+            if (rechazo != null) {
+                resultados.add(new ResultadoTransicionDTO(t.getClaveIdempotencia(), t.getEnvioId(), t.getEstado(),
+                        TransicionSincronizada.RECHAZADA, rechazo, false));
+                continue;
+            }
+            String estadoAnterior = envio.getEstado();
+            HistorialEnvio h = aplicarCambioEstado(envio, t.getEstado(), usuarioNombre, t.getObservaciones(), t.getFoto(),
+                    t.getRolRecibio(), t.getNombreRecibio(), t.getDniRecibio(), momento);
+            if (h != null) historial.add(h);
+            if ("Retirado".equals(t.getEstado()) && !"Retirado".equals(estadoAnterior)) retirados.add(envio);
+            resultados.add(new ResultadoTransicionDTO(t.getClaveIdempotencia(), t.getEnvioId(), t.getEstado(),
+                    TransicionSincronizada.APLICADA, null, false));
+        }
+        // Los envíos son entidades administradas: se escriben al confirmar (en batch); el historial va por JDBC
+        envioRepository.flush();
+        insertarHistorialEnBatch(historial);
+        retirados.forEach(this::enviarEmailNotificacionSiRetirado);
+        return resultados;
+    }
+
+    /**
+     * Envíos del chofer escritos después de {@code desde} (con null, su ruta actual completa), para la
+     * sincronización de la app.
+     */
+    @Transactional(readOnly = true)
+    public List<EnvioDTO> obtenerCambiosDeChofer(Long choferId, LocalDateTime desde) {
+        List<Envio> envios = desde == null
+                ? envioRepository.findByChoferAsignadoIdAndEstadoAndEliminadoFalseAndColectadoTrue(choferId, "En camino al destinatario")
+                : envioRepository.findByChoferAsignadoIdModificadosDesde(choferId, desde);
+        return envios.stream().map(this::toDTO).collect(Collectors.toList());
     }
     
     /**
@@ -593,9 +711,7 @@ public class EnvioService {
             
             // Si no existe en BD, intentar obtener desde MercadoLibre (para colectar)
             // Buscar cliente vinculado con Flex que tenga este shipment
-            List<com.zetallegue.tms.model.Cliente> clientesVinculados = clienteRepository.findAll().stream()
-                    .filter(c -> c.getFlexIdVendedor() != null && !c.getFlexIdVendedor().isEmpty())
-                    .collect(Collectors.toList());
+            List<com.zetallegue.tms.model.Cliente> clientesVinculados = directorioClientesService.clientesConFlex();
             
             for (com.zetallegue.tms.model.Cliente cliente : clientesVinculados) {
                 try {
@@ -705,7 +821,7 @@ public class EnvioService {
         // Buscar cliente por sender_id si está disponible (más eficiente)
         com.zetallegue.tms.model.Cliente clienteEncontrado = null;
         if (senderId != null && !senderId.isEmpty()) {
-            java.util.Optional<com.zetallegue.tms.model.Cliente> clienteOpt = clienteRepository.findByFlexIdVendedor(senderId);
+            java.util.Optional<com.zetallegue.tms.model.Cliente> clienteOpt = directorioClientesService.buscarPorFlexIdVendedor(senderId);
             if (clienteOpt.isPresent()) {
                 clienteEncontrado = clienteOpt.get();
                 log.info("Cliente encontrado por sender_id {}: {}", senderId, clienteEncontrado.getId());
@@ -731,9 +847,7 @@ public class EnvioService {
         if (clienteEncontrado != null) {
             clientesVinculados = java.util.Collections.singletonList(clienteEncontrado);
         } else {
-            clientesVinculados = clienteRepository.findAll().stream()
-                    .filter(c -> c.getFlexIdVendedor() != null && !c.getFlexIdVendedor().isEmpty())
-                    .collect(Collectors.toList());
+            clientesVinculados = directorioClientesService.clientesConFlex();
             log.info("Clientes vinculados encontrados: {}", clientesVinculados.size());
         }
         
@@ -841,7 +955,7 @@ public class EnvioService {
         log.info("Intentando subir envío Flex manualmente - Seller ID: {}, Shipment ID: {}", sellerId, shipmentId);
         
         // Buscar cliente por seller ID
-        java.util.Optional<com.zetallegue.tms.model.Cliente> clienteOpt = clienteRepository.findByFlexIdVendedor(sellerId);
+        java.util.Optional<com.zetallegue.tms.model.Cliente> clienteOpt = directorioClientesService.buscarPorFlexIdVendedor(sellerId);
         if (!clienteOpt.isPresent()) {
             throw new RuntimeException("No se encontró cliente vinculado con Seller ID: " + sellerId);
         }
@@ -998,63 +1112,176 @@ public class EnvioService {
         envio = envioRepository.save(envio);
         log.info("asignarEnvio save OK envio id={}", envio.getId());
         
-        // Determinar si hubo cambio de estado
-        boolean cambioEstado = !estadoAnterior.equals(envio.getEstado());
-        
-        // Determinar si hubo reasignación (cambio de chofer)
-        boolean esReasignacion = choferAnterior != null && 
-                                 !choferAnterior.trim().isEmpty() && 
-                                 !choferAnterior.equals(choferNombre);
+        HistorialEnvio historial = historialDeAsignacion(envio.getId(), estadoAnterior, envio.getEstado(), choferAnterior,
+                choferNombre, usuarioAsignador, origen, ahora);
+        if (historial != null) {
+            historialEnvioRepository.save(historial);
+        }
         
-        // Determinar si es la primera asignación (no había chofer antes)
+        return toDTO(envio);
+    }
+
+    /**
+     * Fila de historial de una asignación, o null si no corresponde. Se agrega si:
+     * 1. Cambió el estado (siempre agregar)
+     * 2. Hubo reasignación (cambio de chofer) sin cambio de estado
+     * 3. Es la primera asignación sin cambio de estado (ej. "A retirar" -> chofer)
+     * Una reasignación al mismo chofer sin cambio de estado no se registra (para evitar duplicados en la página
+     * pública); las asignaciones se pueden ver en la tabla de asignaciones del frontend.
+     */
+    private static HistorialEnvio historialDeAsignacion(Long envioId, String estadoAnterior, String estadoNuevo,
+                                                        String choferAnterior, String choferNombre,
+                                                        String usuarioAsignador, String origen, LocalDateTime ahora) {
+        boolean cambioEstado = !java.util.Objects.equals(estadoAnterior, estadoNuevo);
         boolean esPrimeraAsignacion = choferAnterior == null || choferAnterior.trim().isEmpty();
-        
-        // Solo agregar al historial si:
-        // 1. Cambió el estado (siempre agregar)
-        // 2. Es la primera asignación Y cambió el estado (de "Retirado" a "En camino al destinatario")
-        // NO agregar si solo hay reasignación sin cambio de estado (para evitar duplicados en la página pública)
-        // Las asignaciones se pueden ver en la tabla de asignaciones del frontend
+        boolean esReasignacion = !esPrimeraAsignacion && !choferAnterior.equals(choferNombre);
+
+        String observacion;
         if (cambioEstado) {
-            HistorialEnvio historial = new HistorialEnvio();
-            historial.setEnvioId(envio.getId());
-            historial.setEstado(envio.getEstado());
-            historial.setFecha(ahora);
-            historial.setQuien(usuarioAsignador != null ? usuarioAsignador : "Usuario");
-            historial.setOrigen(origen != null ? origen : "WEB");
-            
-            // Construir observación según el caso
-            String observacion = "Estado: " + estadoAnterior + " -> " + envio.getEstado();
+            observacion = "Estado: " + estadoAnterior + " -> " + estadoNuevo;
             if (esReasignacion) {
                 observacion += " | Reasignado desde: " + choferAnterior + " a: " + choferNombre;
             } else if (esPrimeraAsignacion || choferNombre != null) {
                 observacion += " | Asignado a: " + choferNombre;
             }
-            
-            historial.setObservaciones(observacion);
-            historialEnvioRepository.save(historial);
         } else if (esReasignacion) {
-            // Si solo hubo reasignación sin cambio de estado, agregar al historial
-            HistorialEnvio historial = new HistorialEnvio();
-            historial.setEnvioId(envio.getId());
-            historial.setEstado(envio.getEstado());
-            historial.setFecha(ahora);
-            historial.setQuien(usuarioAsignador != null ? usuarioAsignador : "Usuario");
-            historial.setOrigen(origen != null ? origen : "WEB");
-            historial.setObservaciones("Reasignado desde: " + choferAnterior + " a: " + choferNombre);
-            historialEnvioRepository.save(historial);
+            observacion = "Reasignado desde: " + choferAnterior + " a: " + choferNombre;
         } else if (esPrimeraAsignacion) {
-            // Primera asignación sin cambio de estado (ej. "A retirar" -> chofer): registrar en historial
-            HistorialEnvio historial = new HistorialEnvio();
-            historial.setEnvioId(envio.getId());
-            historial.setEstado(envio.getEstado());
-            historial.setFecha(ahora);
-            historial.setQuien(usuarioAsignador != null ? usuarioAsignador : "Usuario");
-            historial.setOrigen(origen != null ? origen : "WEB");
-            historial.setObservaciones("Asignado a: " + choferNombre);
-            historialEnvioRepository.save(historial);
+            observacion = "Asignado a: " + choferNombre;
+        } else {
+            return null;
         }
-        
-        return toDTO(envio);
+
+        HistorialEnvio historial = new HistorialEnvio();
+        historial.setEnvioId(envioId);
+        historial.setEstado(estadoNuevo);
+        historial.setFecha(ahora);
+        historial.setQuien(usuarioAsignador != null ? usuarioAsignador : "Usuario");
+        historial.setOrigen(origen != null ? origen : "WEB");
+        historial.setObservaciones(observacion);
+        return historial;
+    }
+
+    /**
+     * Asigna varios envíos a un chofer en una sola transacción: una consulta para validar todo el conjunto, un
+     * UPDATE ... WHERE id IN para asignarlos y un insert en batch del historial (mismas reglas que
+     * {@link #asignarEnvio}). Los envíos inexistentes, eliminados o en estado final se devuelven como rechazados
+     * y el resto se asigna. El UPDATE masivo no pasa por el listener de colecta diaria, así que los días tocados
+     * se marcan acá.
+     */
+    @Transactional
+    public AsignacionMasivaResultadoDTO asignarEnviosMasivo(AsignacionMasivaDTO pedido) {
+        if (pedido == null) {
+            throw new IllegalArgumentException("Request body es requerido");
+        }
+        // El nombre guardado sale del usuario; el único destino sin usuario es "PENDIENTES DEPÓSITO" (id -1 en la web)
+        String choferNombre;
+        boolean esPendientesDeposito = "PENDIENTES DEPÓSITO".equals(pedido.getChoferNombre())
+                && (pedido.getChoferId() == null || pedido.getChoferId() < 0);
+        if (esPendientesDeposito) {
+            choferNombre = pedido.getChoferNombre();
+        } else if (pedido.getChoferId() != null) {
+            Usuario chofer = usuarioRepository.findById(pedido.getChoferId())
+                    .orElseThrow(() -> new IllegalArgumentException("Chofer no encontrado con id: " + pedido.getChoferId()));
+            if (!"Chofer".equals(chofer.getPerfil())) {
+                throw new IllegalArgumentException("El usuario no es un chofer");
+            }
+            choferNombre = String.format("%s %s", chofer.getNombre(), chofer.getApellido()).trim();
+        } else {
+            throw new IllegalArgumentException("Chofer ID es requerido");
+        }
+
+        List<Long> ids = idsParaAsignacionMasiva(pedido);
+        Map<Long, String> rechazados = new java.util.LinkedHashMap<>();
+        Map<Long, Object[]> datosPorId = new HashMap<>();
+        for (Object[] fila : envioRepository.findDatosAsignacion(ids)) {
+            datosPorId.put((Long) fila[0], fila);
+        }
+
+        List<Long> aAsignar = new ArrayList<>();
+        for (Long id : ids) {
+            Object[] datos = datosPorId.get(id);
+            String estado = datos != null ? (String) datos[1] : null;
+            if (datos == null || Boolean.TRUE.equals(datos[4])) {
+                rechazados.put(id, "Envío no encontrado");
+            } else if ("Entregado".equals(estado) || "Cancelado".equals(estado)) {
+                rechazados.put(id, "No se pueden asignar envíos que estén en estado 'Entregado' o 'Cancelado'");
+            } else {
+                aAsignar.add(id);
+            }
+        }
+        if (aAsignar.isEmpty()) {
+            return new AsignacionMasivaResultadoDTO(pedido.getChoferId(), choferNombre, 0, 0, rechazados);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        boolean pasarAEnCamino = !esPendientesDeposito;
+        int actualizados = envioRepository.asignarChofer(aAsignar, pedido.getChoferId(), choferNombre, ahora, pasarAEnCamino);
+        if (actualizados != aAsignar.size()) {
+            // Algún envío pasó a estado final o se eliminó entre la validación y el UPDATE: se revierte todo
+            throw new RuntimeException("Algunos envíos cambiaron durante la asignación, volvé a intentar");
+        }
+
+        List<HistorialEnvio> historial = new ArrayList<>();
+        List<LocalDate> diasColecta = new ArrayList<>();
+        int pasaronAEnCamino = 0;
+        for (Long id : aAsignar) {
+            Object[] datos = datosPorId.get(id);
+            String estadoAnterior = (String) datos[1];
+            boolean esFlex = "Flex".equals(datos[2]);
+            String estadoNuevo = pasarAEnCamino && !esFlex && "Retirado".equals(estadoAnterior) ? "En camino al destinatario" : estadoAnterior;
+            if (!java.util.Objects.equals(estadoNuevo, estadoAnterior)) pasaronAEnCamino++;
+            HistorialEnvio h = historialDeAsignacion(id, estadoAnterior, estadoNuevo, (String) datos[3], choferNombre,
+                    pedido.getUsuarioAsignador(), pedido.getOrigen(), ahora);
+            if (h != null) historial.add(h);
+
+            LocalDateTime fechaColecta = (LocalDateTime) datos[5];
+            LocalDateTime fechaUltimoMovimiento = (LocalDateTime) datos[6];
+            if (fechaColecta != null) {
+                diasColecta.add(fechaColecta.toLocalDate());
+            } else {
+                // El día efectivo de los que no tienen fecha de colecta sale de fechaUltimoMovimiento, que cambia
+                if (fechaUltimoMovimiento != null) diasColecta.add(fechaUltimoMovimiento.toLocalDate());
+                diasColecta.add(ahora.toLocalDate());
+            }
+            // El UPDATE masivo no pasa por CierreChoferListener: se marcan a mano el contador que deja y el que toma
+            LocalDate diaCarga = datos[7] != null ? ((LocalDateTime) datos[7]).toLocalDate() : null;
+            cierreChoferService.marcarPendiente(diaCarga, (Long) datos[8]);
+            cierreChoferService.marcarPendiente(diaCarga, pedido.getChoferId());
+        }
+        insertarHistorialEnBatch(historial);
+        colectaDiariaService.marcarDiasPendientes(diasColecta.toArray(LocalDate[]::new));
+        indiceGeograficoService.refrescarEnvios(aAsignar);
+
+        log.info("Asignación masiva: {} envíos a {} ({} a En camino, {} rechazados)",
+                aAsignar.size(), choferNombre, pasaronAEnCamino, rechazados.size());
+        return new AsignacionMasivaResultadoDTO(pedido.getChoferId(), choferNombre, aAsignar.size(), pasaronAEnCamino, rechazados);
+    }
+
+    private List<Long> idsParaAsignacionMasiva(AsignacionMasivaDTO pedido) {
+        List<Long> ids;
+        if (pedido.getEnvioIds() != null && !pedido.getEnvioIds().isEmpty()) {
+            ids = pedido.getEnvioIds().stream().filter(java.util.Objects::nonNull).distinct().collect(Collectors.toList());
+        } else if (pedido.getFiltro() != null) {
+            Specification<Envio> spec = buildSpecification(pedido.getFiltro());
+            ids = envioRepository.findAll(spec, PageRequest.of(0, MAX_ENVIOS_ASIGNACION_MASIVA + 1, Sort.by("id")))
+                    .map(Envio::getId).getContent();
+        } else {
+            throw new IllegalArgumentException("Se requieren los ids de los envíos o un filtro");
+        }
+        if (ids.size() > MAX_ENVIOS_ASIGNACION_MASIVA) {
+            throw new IllegalArgumentException("No se pueden asignar más de " + MAX_ENVIOS_ASIGNACION_MASIVA + " envíos por pedido");
+        }
+        return ids;
+    }
+
+    /** Inserta el historial con un batch JDBC: con ids IDENTITY Hibernate inserta de a una fila. */
+    private void insertarHistorialEnBatch(List<HistorialEnvio> historial) {
+        if (historial.isEmpty()) return;
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO historial_envios (envio_id, estado, fecha, quien, observaciones, origen) VALUES (?, ?, ?, ?, ?, ?)",
+                historial.stream().map(h -> new Object[]{h.getEnvioId(), h.getEstado(), java.sql.Timestamp.valueOf(h.getFecha()),
+                        h.getQuien(), h.getObservaciones(), h.getOrigen()}).collect(Collectors.toList()));
     }
 
     @Transactional
@@ -1367,55 +1594,163 @@ public class EnvioService {
         return dto;
     }
 
+    /** Envíos en camino del chofer en el orden de visita sugerido (ver {@link #obtenerRutaOptimizada}). */
     @Transactional(readOnly = true)
     public List<EnvioDTO> obtenerEnviosParaRuta(Long choferId) {
+        RutaOptimizadaDTO ruta = obtenerRutaOptimizada(choferId);
+        List<EnvioDTO> envios = new ArrayList<>(ruta.getParadas().size() + ruta.getSinUbicacion().size());
+        ruta.getParadas().forEach(parada -> envios.add(parada.getEnvio()));
+        envios.addAll(ruta.getSinUbicacion());
+        return envios;
+    }
+
+    /**
+     * Ordena los envíos "En camino al destinatario" del chofer saliendo de su última ubicación, con
+     * {@link OptimizadorRutaService}. Cada envío se ubica por latDestino/lngDestino o, si no tiene, por el centro de
+     * su código postal (promedio de los destinos geolocalizados de ese código); los que no se pueden ubicar quedan
+     * al final ordenados por deadline.
+     */
+    @Transactional(readOnly = true)
+    public RutaOptimizadaDTO obtenerRutaOptimizada(Long choferId) {
         List<Envio> envios = envioRepository.findByChoferAsignadoIdAndEstadoAndEliminadoFalseAndColectadoTrue(
                 choferId, 
                 "En camino al destinatario"
         );
-        return envios.stream()
-                .map(this::toDTO)
+
+        Set<String> cpsSinCoordenadas = envios.stream()
+                .filter(e -> !UbicacionChoferService.coordenadasValidas(e.getLatDestino(), e.getLngDestino()))
+                .map(Envio::getCodigoPostal)
+                .filter(cp -> cp != null && !cp.isBlank())
+                .collect(Collectors.toSet());
+        Map<String, double[]> centroides = centroidesCodigoPostalService.obtener(cpsSinCoordenadas);
+
+        Map<Long, Envio> porId = new HashMap<>();
+        Set<Long> aproximadas = new HashSet<>();
+        List<OptimizadorRutaService.Parada> paradas = new ArrayList<>();
+        List<Envio> sinUbicacion = new ArrayList<>();
+        for (Envio envio : envios) {
+            porId.put(envio.getId(), envio);
+            if (UbicacionChoferService.coordenadasValidas(envio.getLatDestino(), envio.getLngDestino())) {
+                paradas.add(new OptimizadorRutaService.Parada(envio.getId(), envio.getLatDestino(), envio.getLngDestino(), envio.getDeadline()));
+            } else if (envio.getCodigoPostal() != null && centroides.containsKey(envio.getCodigoPostal())) {
+                double[] centro = centroides.get(envio.getCodigoPostal());
+                paradas.add(new OptimizadorRutaService.Parada(envio.getId(), centro[0], centro[1], envio.getDeadline()));
+                aproximadas.add(envio.getId());
+            } else {
+                sinUbicacion.add(envio);
+            }
+        }
+        sinUbicacion.sort(Comparator.comparing(Envio::getDeadline, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(Envio::getId));
+
+        UbicacionChoferService.UbicacionActual origen = usuarioRepository.findById(choferId)
+                .map(ubicacionChoferService::ubicacionDe)
+                .orElse(null);
+        Double latOrigen = origen != null && UbicacionChoferService.coordenadasValidas(origen.latitud(), origen.longitud()) ? origen.latitud() : null;
+        Double lngOrigen = latOrigen != null ? origen.longitud() : null;
+
+        LocalDateTime inicio = LocalDateTime.now();
+        OptimizadorRutaService.Ruta ruta = optimizadorRutaService.optimizar(latOrigen, lngOrigen, paradas, inicio);
+        // Las llegadas salen del modelo de EtaService (tiempos aprendidos por zona y chofer), no de la velocidad fija
+        // del optimizador; el orden queda guardado para el tracking
+        List<EtaService.ParadaUbicada> enOrden = ruta.paradas().stream()
+                .map(p -> new EtaService.ParadaUbicada(p.parada().id(), p.parada().latitud(), p.parada().longitud(),
+                        porId.get(p.parada().id()).getZonaEntrega(), p.parada().deadline()))
                 .collect(Collectors.toList());
+        etaService.recordarRuta(choferId, enOrden, sinUbicacion.stream().map(Envio::getId).collect(Collectors.toList()));
+        List<EtaService.Estimacion> estimaciones = etaService.estimar(choferId, latOrigen, lngOrigen, enOrden, inicio);
+        List<ParadaRutaDTO> paradasDTO = new ArrayList<>(estimaciones.size());
+        int fueraDeDeadline = 0;
+        for (EtaService.Estimacion estimacion : estimaciones) {
+            EtaService.ParadaUbicada parada = enOrden.get(estimacion.posicion());
+            boolean tarde = parada.deadline() != null && estimacion.llegada().isAfter(parada.deadline());
+            if (tarde) fueraDeDeadline++;
+            EnvioDTO envioDTO = toDTO(porId.get(parada.envioId()));
+            completarLlegada(envioDTO, estimacion);
+            paradasDTO.add(new ParadaRutaDTO(paradasDTO.size() + 1, envioDTO, parada.latitud(), parada.longitud(),
+                    aproximadas.contains(parada.envioId()), estimacion.kmDesdeAnterior(), estimacion.llegada(),
+                    estimacion.margenMinutos(), tarde));
+        }
+        double minutos = estimaciones.isEmpty() ? 0
+                : Duration.between(inicio, estimaciones.get(estimaciones.size() - 1).salida()).toSeconds() / 60.0;
+        if (ruta.presupuestoAgotado()) {
+            log.info("Ruta del chofer {}: {} paradas, mejora cortada por presupuesto de tiempo ({} ms)", choferId, paradas.size(), ruta.milisegundos());
+        }
+        return new RutaOptimizadaDTO(choferId, latOrigen, lngOrigen, paradasDTO,
+                sinUbicacion.stream().map(this::toDTO).collect(Collectors.toList()),
+                ruta.distanciaKm(), minutos, fueraDeDeadline, ruta.milisegundos(), ruta.presupuestoAgotado());
     }
 
+    /**
+     * Choferes con envíos "En camino al destinatario" y sus envíos, en dos consultas (envíos o conteos agrupados
+     * por chofer, y los choferes) en lugar de una por chofer. Con soloResumen no se cargan los envíos: solo la
+     * cantidad por chofer (envios queda en null).
+     */
     @Transactional(readOnly = true)
-    public List<ChoferConUbicacionDTO> obtenerChoferesConEnviosAsignados() {
-        // Obtener IDs de choferes con envíos en estado "En camino al destinatario"
-        List<Long> choferIds = envioRepository.findChoferIdsConEnviosEnEstado("En camino al destinatario");
-        
-        if (choferIds.isEmpty()) {
+    public List<ChoferConUbicacionDTO> obtenerChoferesConEnviosAsignados(boolean soloResumen) {
+        String estado = "En camino al destinatario";
+        Map<Long, List<Envio>> enviosPorChofer = new HashMap<>();
+        Map<Long, Integer> cantidadPorChofer = new HashMap<>();
+        if (soloResumen) {
+            for (Object[] fila : envioRepository.contarPorChoferEnEstado(estado)) {
+                cantidadPorChofer.put((Long) fila[0], ((Number) fila[1]).intValue());
+            }
+        } else {
+            for (Envio envio : envioRepository.findConChoferAsignadoEnEstado(estado)) {
+                enviosPorChofer.computeIfAbsent(envio.getChoferAsignadoId(), k -> new ArrayList<>()).add(envio);
+            }
+            enviosPorChofer.forEach((id, envios) -> cantidadPorChofer.put(id, envios.size()));
+        }
+
+        if (cantidadPorChofer.isEmpty()) {
             return new ArrayList<>();
         }
-        
-        // Obtener información de los choferes
-        List<Usuario> choferes = usuarioRepository.findAllById(choferIds);
-        
-        // Construir DTOs con información de envíos
+
+        List<Usuario> choferes = new ArrayList<>(usuarioRepository.findAllById(cantidadPorChofer.keySet()));
+        choferes.sort(Comparator.comparing(Usuario::getId));
+        LocalDateTime ahora = LocalDateTime.now();
+
         return choferes.stream()
                 .map(chofer -> {
-                    List<Envio> envios = envioRepository.findByChoferAsignadoIdAndEstadoAndEliminadoFalseAndColectadoTrue(
-                            chofer.getId(), 
-                            "En camino al destinatario"
-                    );
-                    
                     ChoferConUbicacionDTO dto = new ChoferConUbicacionDTO();
                     dto.setId(chofer.getId());
                     dto.setNombre(chofer.getNombre());
                     dto.setApellido(chofer.getApellido());
                     dto.setNombreCompleto(String.format("%s %s", chofer.getNombre(), chofer.getApellido()).trim());
-                    dto.setLatitud(chofer.getLatitud());
-                    dto.setLongitud(chofer.getLongitud());
-                    dto.setUltimaActualizacionUbicacion(chofer.getUltimaActualizacionUbicacion());
-                    dto.setBateria(chofer.getBateria());
-                    dto.setCantidadEnvios(envios.size());
-                    dto.setEnvios(envios.stream()
-                            .map(this::toDTO)
-                            .collect(Collectors.toList()));
+                    UbicacionChoferService.UbicacionActual ubicacion = ubicacionChoferService.ubicacionDe(chofer);
+                    dto.setLatitud(ubicacion.latitud());
+                    dto.setLongitud(ubicacion.longitud());
+                    dto.setUltimaActualizacionUbicacion(ubicacion.fechaHora());
+                    dto.setBateria(ubicacion.bateria());
+                    dto.setCantidadEnvios(cantidadPorChofer.get(chofer.getId()));
+                    if (!soloResumen) {
+                        List<Envio> envios = enviosPorChofer.get(chofer.getId());
+                        Map<Long, EtaService.Estimacion> llegadas = etaService.estimarPendientes(chofer.getId(),
+                                ubicacion.latitud(), ubicacion.longitud(),
+                                envios.stream().map(EtaService::pendiente).collect(Collectors.toList()), ahora);
+                        dto.setEnvios(envios.stream()
+                                .map(envio -> {
+                                    EnvioDTO envioDTO = toDTO(envio);
+                                    completarLlegada(envioDTO, llegadas.get(envio.getId()));
+                                    return envioDTO;
+                                })
+                                .collect(Collectors.toList()));
+                        llegadas.values().stream()
+                                .max(Comparator.comparingInt(EtaService.Estimacion::posicion))
+                                .ifPresent(ultima -> dto.setLlegadaUltimaParada(ultima.llegada()));
+                    }
                     return dto;
                 })
                 .collect(Collectors.toList());
     }
 
+    private static void completarLlegada(EnvioDTO dto, EtaService.Estimacion estimacion) {
+        if (estimacion == null) return;
+        dto.setLlegadaEstimada(estimacion.llegada());
+        dto.setMargenLlegadaMinutos(estimacion.margenMinutos());
+        dto.setParadasAntes(estimacion.posicion());
+    }
+
     private HistorialEnvioDTO historialToDTO(HistorialEnvio historial) {
         HistorialEnvioDTO dto = new HistorialEnvioDTO();
         dto.setId(historial.getId());
@@ -1552,11 +1887,11 @@ public class EnvioService {
             String cpExtraido = extraerCodigoPostalDeDireccion(direccion);
             if (cpExtraido != null && !cpExtraido.isEmpty()) {
                 envio.setCodigoPostal(cpExtraido);
-                envio.setZonaEntrega(determinarZonaEntregaEnvio(cpExtraido));
+                envio.setZonaEntrega(zonaEntregaService.clasificar(cpExtraido));
                 try {
                     com.zetallegue.tms.model.Cliente cliente = resolverClienteDesdeEnvio(envio);
                     if (cliente != null && cliente.getListaPreciosId() != null) {
-                        double costo = calcularCostoEnvioDesdeListaPrecios(cpExtraido, cliente.getListaPreciosId());
+                        double costo = motorPreciosService.calcularCosto(cpExtraido, cliente.getListaPreciosId());
                         if (costo > 0) {
                             envio.setCostoEnvio(String.format("%.2f", costo));
                             log.info("Geolocalización: costo de envío actualizado ${} para envío {}", String.format("%.2f", costo), envioId);
@@ -1587,84 +1922,34 @@ public class EnvioService {
         return m2.find() ? m2.group(1) : null;
     }
 
-    /** Determina la zona de entrega por CP (CABA / Zona 1 / 2 / 3 / Sin Zona). */
-    private String determinarZonaEntregaEnvio(String codigoPostal) {
-        if (codigoPostal == null || codigoPostal.trim().isEmpty()) return "Sin Zona";
-        String cpLimpio = codigoPostal.replaceAll("\\D", "");
-        if (cpLimpio.isEmpty()) return "Sin Zona";
-        int cpNumero;
-        try {
-            cpNumero = Integer.parseInt(cpLimpio);
-        } catch (NumberFormatException e) {
-            return "Sin Zona";
-        }
-        if (cpNumero >= 1000 && cpNumero <= 1599) return "CABA";
-        if (CP_ZONA_1_ENVIO.contains(cpLimpio)) return "Zona 1";
-        if (CP_ZONA_2_ENVIO.contains(cpLimpio)) return "Zona 2";
-        if (CP_ZONA_3_ENVIO.contains(cpLimpio)) return "Zona 3";
-        return "Sin Zona";
-    }
-
-    private static final java.util.Set<String> CP_ZONA_1_ENVIO = new java.util.HashSet<>(java.util.Arrays.asList(
-            "1602","1603","1604","1605","1606","1607","1609","1636","1637","1638","1640","1641","1642","1643","1644","1645","1646","1649","1650","1651","1652","1653","1655","1657","1672","1674","1675","1676","1678","1682","1683","1684","1685","1686","1687","1688","1692","1702","1703","1704","1706","1707","1708","1712","1713","1714","1715","1751","1752","1753","1754","1766","1773","1821","1822","1823","1824","1825","1826","1827","1828","1829","1831","1832","1833","1834","1835","1836","1868","1869","1870","1871","1872","1873","1874","1875"
-    ));
-    private static final java.util.Set<String> CP_ZONA_2_ENVIO = new java.util.HashSet<>(java.util.Arrays.asList(
-            "1608","1610","1611","1612","1613","1614","1615","1616","1617","1618","1621","1624","1648","1659","1660","1661","1662","1663","1664","1665","1666","1667","1670","1671","1716","1718","1722","1723","1724","1736","1738","1740","1742","1743","1744","1745","1746","1755","1757","1758","1759","1761","1763","1764","1765","1768","1770","1771","1772","1774","1776","1778","1785","1786","1801","1802","1803","1804","1805","1806","1807","1812","1837","1838","1839","1840","1841","1842","1843","1844","1845","1846","1847","1848","1849","1851","1852","1853","1854","1855","1856","1859","1860","1861","1863","1867","1876","1877","1878","1879","1880","1881","1882","1883","1884","1885","1886","1887","1888","1889","1890","1891","1893"
-    ));
-    private static final java.util.Set<String> CP_ZONA_3_ENVIO = new java.util.HashSet<>(java.util.Arrays.asList(
-            "1601","1619","1620","1622","1623","1625","1626","1627","1628","1629","1630","1631","1632","1633","1634","1635","1639","1647","1669","1727","1748","1749","1808","1814","1815","1816","1858","1862","1864","1865","1894","1895","1896","1897","1898","1900","1901","1902","1903","1904","1905","1906","1907","1908","1909","1910","1912","1914","1916","1923","1924","1925","1926","1927","1929","1931","1984","2800","2801","2802","2804","2805","2806","2808","2814","2816","6608","6700","6701","6702","6703","6706","6708","6712"
-    ));
-
     /** Resuelve el Cliente desde el nombre guardado en el envío (formato "código - nombre" o nombre). */
     private com.zetallegue.tms.model.Cliente resolverClienteDesdeEnvio(Envio envio) {
-        String clienteStr = envio.getCliente();
-        if (clienteStr == null || clienteStr.trim().isEmpty()) return null;
-        if (clienteStr.contains(" - ")) {
-            String codigo = clienteStr.split(" - ")[0].trim();
-            return clienteRepository.findByCodigo(codigo).orElse(null);
-        }
-        String nombre = clienteStr.trim();
-        return clienteRepository.findAll().stream()
-                .filter(c -> (c.getNombreFantasia() != null && c.getNombreFantasia().equalsIgnoreCase(nombre)) ||
-                             (c.getRazonSocial() != null && c.getRazonSocial().equalsIgnoreCase(nombre)))
-                .findFirst()
-                .orElse(null);
+        return directorioClientesService.resolverDesdeTextoEnvio(envio.getCliente()).orElse(null);
     }
     
     @Transactional(readOnly = true)
     public List<ChoferCierreDTO> obtenerChoferesCierre(LocalDate fecha, boolean soloFlex) {
-        List<Object[]> resultados = envioRepository.countEnviosPorChoferYFecha(fecha, soloFlex);
-        
-        // Obtener IDs de choferes
-        List<Long> choferIds = resultados.stream()
-                .map(result -> (Long) result[0])
-                .collect(Collectors.toList());
-        
-        if (choferIds.isEmpty()) {
+        // Contadores por chofer del día (cierre_chofer_diario), no un conteo sobre envios
+        Map<Long, CierreChoferDiario> porChofer = cierreChoferService.obtener(fecha).stream()
+                .filter(c -> (soloFlex ? c.getEnCaminoFlex() : c.getEnCamino()) > 0)
+                .collect(Collectors.toMap(CierreChoferDiario::getChoferId, c -> c));
+        if (porChofer.isEmpty()) {
             return new ArrayList<>();
         }
-        
-        // Obtener información de los choferes
-        List<Usuario> choferes = usuarioRepository.findAllById(choferIds);
-        
-        // Crear un mapa de choferId -> cantidadEnvios
-        java.util.Map<Long, Long> cantidadPorChofer = resultados.stream()
-                .collect(Collectors.toMap(
-                        result -> (Long) result[0],
-                        result -> (Long) result[1]
-                ));
-        
-        // Construir DTOs
+
+        List<Usuario> choferes = usuarioRepository.findAllById(porChofer.keySet());
         return choferes.stream()
                 .map(chofer -> {
-                    Long cantidad = cantidadPorChofer.get(chofer.getId());
+                    CierreChoferDiario c = porChofer.get(chofer.getId());
                     ChoferCierreDTO dto = new ChoferCierreDTO();
                     dto.setId(chofer.getId());
                     dto.setNombreCompleto(String.format("%s %s", chofer.getNombre(), chofer.getApellido()).trim());
-                    dto.setCantidadEnvios(cantidad != null ? cantidad : 0L);
+                    dto.setCantidadEnvios((long) (soloFlex ? c.getEnCaminoFlex() : c.getEnCamino()));
+                    dto.setTotalAsignados((long) (soloFlex ? c.getFlex() : c.getTotal()));
+                    dto.setEntregados((long) c.getEntregados());
+                    dto.setRechazados((long) c.getRechazados());
                     return dto;
                 })
-                .filter(dto -> dto.getCantidadEnvios() > 0) // Filtrar choferes con 0 envíos
                 .sorted((a, b) -> Long.compare(b.getCantidadEnvios(), a.getCantidadEnvios())) // Ordenar por cantidad descendente
                 .collect(Collectors.toList());
     }
@@ -1686,7 +1971,7 @@ public class EnvioService {
             // Intentar primero por código si está en formato "código - nombre"
             if (clienteStr.contains(" - ")) {
                 String codigoCliente = clienteStr.split(" - ")[0].trim();
-                clienteOpt = clienteRepository.findByCodigo(codigoCliente);
+                clienteOpt = directorioClientesService.buscarPorCodigo(codigoCliente);
                 if (clienteOpt.isPresent()) {
                     log.info("Cliente encontrado por código: {}", codigoCliente);
                 }
@@ -1699,11 +1984,7 @@ public class EnvioService {
                     : clienteStr.trim();
                 
                 // Buscar por nombreFantasia o razonSocial
-                List<com.zetallegue.tms.model.Cliente> clientes = clienteRepository.findAll();
-                clienteOpt = clientes.stream()
-                    .filter(c -> (c.getNombreFantasia() != null && c.getNombreFantasia().equalsIgnoreCase(nombreCliente)) ||
-                                (c.getRazonSocial() != null && c.getRazonSocial().equalsIgnoreCase(nombreCliente)))
-                    .findFirst();
+                clienteOpt = directorioClientesService.buscarPorNombre(nombreCliente);
                 
                 if (clienteOpt.isPresent()) {
                     log.info("Cliente encontrado por nombre: {}", nombreCliente);
@@ -1723,7 +2004,7 @@ public class EnvioService {
             
             if (codigoPostal != null && !codigoPostal.trim().isEmpty() && cliente.getListaPreciosId() != null) {
                 try {
-                    double costoEnvio = calcularCostoEnvioDesdeListaPrecios(codigoPostal, cliente.getListaPreciosId());
+                    double costoEnvio = motorPreciosService.calcularCosto(codigoPostal, cliente.getListaPreciosId());
                     if (costoEnvio > 0) {
                         envioDTO.setCostoEnvio(String.format("%.2f", costoEnvio));
                         log.info("Costo de envío calculado desde lista de precios: ${} para CP: {}", String.format("%.2f", costoEnvio), codigoPostal);
@@ -1750,111 +2031,6 @@ public class EnvioService {
             envioDTO.setCostoEnvio(null);
         }
     }
-    
-    /**
-     * Calcula el costo de envío desde la lista de precios del cliente
-     */
-    private double calcularCostoEnvioDesdeListaPrecios(String codigoPostal, Long listaPreciosId) {
-        try {
-            // Limpiar el CP (solo números)
-            String cpLimpio = codigoPostal.replaceAll("\\D", "");
-            int cpNumero;
-            try {
-                cpNumero = Integer.parseInt(cpLimpio);
-            } catch (NumberFormatException e) {
-                log.warn("CP inválido: {}", codigoPostal);
-                return 0.0;
-            }
-            
-            // Obtener la lista de precios directamente desde el repositorio (read-only, seguro)
-            log.info("Buscando lista de precios con ID: {} para CP: {}", listaPreciosId, codigoPostal);
-            java.util.Optional<com.zetallegue.tms.model.ListaPrecio> listaPrecioOpt = listaPrecioRepository.findById(listaPreciosId);
-            if (listaPrecioOpt.isEmpty()) {
-                log.warn("Lista de precios no encontrada con id: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            com.zetallegue.tms.model.ListaPrecio listaPrecio = listaPrecioOpt.get();
-            log.info("Lista de precios encontrada: ID={}, Codigo={}, Nombre={}, ZonaPropia={}", 
-                listaPrecio.getId(), listaPrecio.getCodigo(), listaPrecio.getNombre(), listaPrecio.getZonaPropia());
-            List<com.zetallegue.tms.model.Zona> zonas;
-            
-            // Si no tiene zonas propias, cargar las zonas de la lista referenciada
-            if (!listaPrecio.getZonaPropia() && listaPrecio.getListaPrecioSeleccionada() != null) {
-                java.util.Optional<com.zetallegue.tms.model.ListaPrecio> listaReferenciadaOpt = listaPrecioRepository.findById(listaPrecio.getListaPrecioSeleccionada());
-                if (listaReferenciadaOpt.isPresent()) {
-                    com.zetallegue.tms.model.ListaPrecio listaReferenciada = listaReferenciadaOpt.get();
-                    if (listaReferenciada.getZonaPropia() && listaReferenciada.getZonas() != null && !listaReferenciada.getZonas().isEmpty()) {
-                        zonas = listaReferenciada.getZonas();
-                    } else {
-                        zonas = new java.util.ArrayList<>();
-                    }
-                } else {
-                    zonas = new java.util.ArrayList<>();
-                }
-            } else if (listaPrecio.getZonaPropia() && listaPrecio.getZonas() != null) {
-                zonas = listaPrecio.getZonas();
-            } else {
-                zonas = new java.util.ArrayList<>();
-            }
-            
-            if (zonas.isEmpty()) {
-                log.warn("Lista de precios sin zonas para ID: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            // Buscar el CP en las zonas
-            for (com.zetallegue.tms.model.Zona zona : zonas) {
-                if (zona.getCps() == null || zona.getCps().isEmpty()) continue;
-                
-                String cps = zona.getCps();
-                
-                // Verificar si es un rango (ej: "1000-1599")
-                java.util.regex.Pattern rangoPattern = java.util.regex.Pattern.compile("(\\d+)-(\\d+)");
-                java.util.regex.Matcher rangoMatch = rangoPattern.matcher(cps);
-                if (rangoMatch.find()) {
-                    int inicio = Integer.parseInt(rangoMatch.group(1));
-                    int fin = Integer.parseInt(rangoMatch.group(2));
-                    if (cpNumero >= inicio && cpNumero <= fin) {
-                        // Zona encontrada
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-                
-                // Verificar si está en la lista de CPs separados por comas
-                String[] cpsLista = cps.split(",");
-                for (String cp : cpsLista) {
-                    String cpTrim = cp.trim();
-                    if (cpTrim.equals(cpLimpio) || cpTrim.equals(String.valueOf(cpNumero))) {
-                        // Zona encontrada
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-            }
-            
-            log.warn("No se encontró una zona para el CP: {}", codigoPostal);
-            return 0.0;
-        } catch (Exception e) {
-            log.error("Error al calcular costo de envío desde lista de precios: {}", e.getMessage(), e);
-            return 0.0;
-        }
-    }
 
     /**
      * Verifica qué pedidos de la lista ya tienen envíos procesados en la base de datos.
@@ -2108,4 +2284,3 @@ public class EnvioService {
     }
 }
 
-
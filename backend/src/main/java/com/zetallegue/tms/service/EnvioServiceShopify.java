@@ -4,11 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.zetallegue.tms.dto.EnvioDTO;
 import com.zetallegue.tms.model.Cliente;
 import com.zetallegue.tms.model.Envio;
-import com.zetallegue.tms.model.ListaPrecio;
-import com.zetallegue.tms.model.Zona;
 import com.zetallegue.tms.repository.ClienteRepository;
 import com.zetallegue.tms.repository.EnvioRepository;
-import com.zetallegue.tms.repository.ListaPrecioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -18,13 +15,8 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 @Service
 @RequiredArgsConstructor
@@ -33,30 +25,10 @@ public class EnvioServiceShopify {
 
     private final EnvioRepository envioRepository;
     private final ClienteRepository clienteRepository;
-    private final ListaPrecioRepository listaPrecioRepository;
+    private final MotorPreciosService motorPreciosService;
+    private final ZonaEntregaService zonaEntregaService;
     private final EnvioService envioService;
 
-    // Zonas de CP para determinar zona de entrega (misma lógica que Flex y Tienda Nube)
-    private static final Set<String> CP_ZONA_1 = new HashSet<>(Arrays.asList(
-        "1600", "1601", "1602", "1603", "1604", "1605", "1606", "1607", "1608", "1609",
-        "1610", "1611", "1612", "1613", "1614", "1615", "1616", "1617", "1618", "1619",
-        "1620", "1621", "1622", "1623", "1624", "1625", "1626", "1627", "1628", "1629",
-        "1630", "1631", "1632", "1633", "1634", "1635", "1636", "1637", "1638", "1639",
-        "1640", "1641", "1642", "1643", "1644", "1645", "1646", "1647", "1648", "1649",
-        "1650", "1651", "1652", "1653", "1654", "1655", "1656", "1657", "1658", "1659"
-    ));
-
-    private static final Set<String> CP_ZONA_2 = new HashSet<>(Arrays.asList(
-        "1660", "1661", "1662", "1663", "1664", "1665", "1666", "1667", "1668", "1669",
-        "1670", "1671", "1672", "1673", "1674", "1675", "1676", "1677", "1678", "1679",
-        "1680", "1681", "1682", "1683", "1684", "1685", "1686", "1687", "1688", "1689"
-    ));
-
-    private static final Set<String> CP_ZONA_3 = new HashSet<>(Arrays.asList(
-        "1690", "1691", "1692", "1693", "1694", "1695", "1696", "1697", "1698", "1699",
-        "1700", "1701", "1702", "1703", "1704", "1705", "1706", "1707", "1708", "1709"
-    ));
-
     /**
      * Crea un envío desde un pedido de Shopify
      */
@@ -341,7 +313,7 @@ public class EnvioServiceShopify {
         }
         
         // Calcular zona de entrega
-        envioDTO.setZonaEntrega(determinarZonaEntrega(envioDTO.getCodigoPostal()));
+        envioDTO.setZonaEntrega(zonaEntregaService.clasificar(envioDTO.getCodigoPostal()));
         
         // Calcular costo de envío desde lista de precios
         String codigoPostal = envioDTO.getCodigoPostal();
@@ -350,7 +322,7 @@ public class EnvioServiceShopify {
         
         if (codigoPostal != null && !codigoPostal.trim().isEmpty() && cliente.getListaPreciosId() != null) {
             try {
-                double costoEnvio = calcularCostoEnvioDesdeListaPrecios(codigoPostal, cliente.getListaPreciosId());
+                double costoEnvio = motorPreciosService.calcularCosto(codigoPostal, cliente.getListaPreciosId());
                 if (costoEnvio > 0) {
                     envioDTO.setCostoEnvio(String.format("%.2f", costoEnvio));
                     log.info("Costo de envío calculado desde lista de precios: ${} para CP: {}", String.format("%.2f", costoEnvio), codigoPostal);
@@ -447,37 +419,6 @@ public class EnvioServiceShopify {
             throw new RuntimeException("No se pudo parsear la fecha de Shopify: " + fechaStr, e);
         }
     }
-    
-    /**
-     * Determina la zona de entrega basándose en el CP.
-     * Misma lógica simple que Flex y Tienda Nube.
-     */
-    private String determinarZonaEntrega(String codigoPostal) {
-        if (codigoPostal == null || codigoPostal.trim().isEmpty()) {
-            return "Sin Zona";
-        }
-
-        String cpLimpio = codigoPostal.replaceAll("\\D", "");
-        if (cpLimpio.isEmpty()) return "Sin Zona";
-
-        int cpNumero;
-        try {
-            cpNumero = Integer.parseInt(cpLimpio);
-        } catch (NumberFormatException e) {
-            return "Sin Zona";
-        }
-
-        // CABA (1000-1599)
-        if (cpNumero >= 1000 && cpNumero <= 1599) {
-            return "CABA";
-        }
-
-        if (CP_ZONA_1.contains(cpLimpio)) return "Zona 1";
-        if (CP_ZONA_2.contains(cpLimpio)) return "Zona 2";
-        if (CP_ZONA_3.contains(cpLimpio)) return "Zona 3";
-
-        return "Sin Zona";
-    }
 
     /**
      * Genera un IDML aleatorio de 12 caracteres
@@ -492,103 +433,6 @@ public class EnvioServiceShopify {
         return idml.toString();
     }
 
-    /**
-     * Calcula el costo de envío desde la lista de precios del cliente
-     */
-    private double calcularCostoEnvioDesdeListaPrecios(String codigoPostal, Long listaPreciosId) {
-        try {
-            String cpLimpio = codigoPostal.replaceAll("\\D", "");
-            int cpNumero;
-            try {
-                cpNumero = Integer.parseInt(cpLimpio);
-            } catch (NumberFormatException e) {
-                log.warn("CP inválido: {}", codigoPostal);
-                return 0.0;
-            }
-            
-            java.util.Optional<ListaPrecio> listaPrecioOpt = listaPrecioRepository.findById(listaPreciosId);
-            if (listaPrecioOpt.isEmpty()) {
-                log.warn("Lista de precios no encontrada con id: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            ListaPrecio listaPrecio = listaPrecioOpt.get();
-            List<Zona> zonas;
-            
-            if (!listaPrecio.getZonaPropia() && listaPrecio.getListaPrecioSeleccionada() != null) {
-                java.util.Optional<ListaPrecio> listaReferenciadaOpt = listaPrecioRepository.findById(listaPrecio.getListaPrecioSeleccionada());
-                if (listaReferenciadaOpt.isPresent()) {
-                    ListaPrecio listaReferenciada = listaReferenciadaOpt.get();
-                    if (listaReferenciada.getZonaPropia() && listaReferenciada.getZonas() != null && !listaReferenciada.getZonas().isEmpty()) {
-                        zonas = listaReferenciada.getZonas();
-                    } else {
-                        zonas = new java.util.ArrayList<>();
-                    }
-                } else {
-                    zonas = new java.util.ArrayList<>();
-                }
-            } else if (listaPrecio.getZonaPropia() && listaPrecio.getZonas() != null) {
-                zonas = listaPrecio.getZonas();
-            } else {
-                zonas = new java.util.ArrayList<>();
-            }
-            
-            if (zonas.isEmpty()) {
-                log.warn("Lista de precios sin zonas para ID: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            // Buscar el CP en las zonas
-            for (Zona zona : zonas) {
-                if (zona.getCps() == null || zona.getCps().isEmpty()) continue;
-                
-                String cps = zona.getCps();
-                
-                // Verificar si es un rango
-                Pattern rangoPattern = Pattern.compile("(\\d+)-(\\d+)");
-                Matcher rangoMatch = rangoPattern.matcher(cps);
-                if (rangoMatch.find()) {
-                    int inicio = Integer.parseInt(rangoMatch.group(1));
-                    int fin = Integer.parseInt(rangoMatch.group(2));
-                    if (cpNumero >= inicio && cpNumero <= fin) {
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-                
-                // Verificar si está en la lista de CPs separados por comas
-                String[] cpsLista = cps.split(",");
-                for (String cp : cpsLista) {
-                    String cpTrim = cp.trim();
-                    if (cpTrim.equals(cpLimpio) || cpTrim.equals(String.valueOf(cpNumero))) {
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-            }
-            
-            log.warn("No se encontró una zona para el CP: {}", codigoPostal);
-            return 0.0;
-        } catch (Exception e) {
-            log.error("Error al calcular costo de envío desde lista de precios: {}", e.getMessage(), e);
-            return 0.0;
-        }
-    }
-
     /**
      * Genera un token único para el tracking público
      */
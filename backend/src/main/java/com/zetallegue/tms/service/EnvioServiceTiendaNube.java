@@ -4,11 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.zetallegue.tms.dto.EnvioDTO;
 import com.zetallegue.tms.model.Cliente;
 import com.zetallegue.tms.model.Envio;
-import com.zetallegue.tms.model.ListaPrecio;
-import com.zetallegue.tms.model.Zona;
 import com.zetallegue.tms.repository.ClienteRepository;
 import com.zetallegue.tms.repository.EnvioRepository;
-import com.zetallegue.tms.repository.ListaPrecioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -18,13 +15,8 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 @Service
 @RequiredArgsConstructor
@@ -33,7 +25,8 @@ public class EnvioServiceTiendaNube {
 
     private final EnvioRepository envioRepository;
     private final ClienteRepository clienteRepository;
-    private final ListaPrecioRepository listaPrecioRepository;
+    private final MotorPreciosService motorPreciosService;
+    private final ZonaEntregaService zonaEntregaService;
     private final EnvioService envioService;
 
     /**
@@ -234,7 +227,7 @@ public class EnvioServiceTiendaNube {
         
         // Calcular zona de entrega usando la misma lógica simple de Flex (solo CP, sin servicios)
         // Esto es seguro y no puede causar problemas de transacción
-        envioDTO.setZonaEntrega(determinarZonaEntrega(envioDTO.getCodigoPostal()));
+        envioDTO.setZonaEntrega(zonaEntregaService.clasificar(envioDTO.getCodigoPostal()));
         
         // Calcular costo de envío desde lista de precios (acceso directo al repositorio para evitar problemas de transacción)
         // Esto es opcional y no debe fallar la transacción si hay un error
@@ -244,7 +237,7 @@ public class EnvioServiceTiendaNube {
         
         if (codigoPostal != null && !codigoPostal.trim().isEmpty() && cliente.getListaPreciosId() != null) {
             try {
-                double costoEnvio = calcularCostoEnvioDesdeListaPrecios(codigoPostal, cliente.getListaPreciosId());
+                double costoEnvio = motorPreciosService.calcularCosto(codigoPostal, cliente.getListaPreciosId());
                 if (costoEnvio > 0) {
                     envioDTO.setCostoEnvio(String.format("%.2f", costoEnvio));
                     log.info("Costo de envío calculado desde lista de precios: ${} para CP: {}", String.format("%.2f", costoEnvio), codigoPostal);
@@ -320,38 +313,6 @@ public class EnvioServiceTiendaNube {
             return LocalDateTime.now();
         }
     }
-    
-    /**
-     * Determina la zona de entrega basándose en el CP.
-     * Misma lógica simple que Flex (CABA / Zona 1 / Zona 2 / Zona 3 / Sin Zona).
-     * No requiere acceso a servicios ni base de datos, por lo que es seguro y no puede causar problemas de transacción.
-     */
-    private String determinarZonaEntrega(String codigoPostal) {
-        if (codigoPostal == null || codigoPostal.trim().isEmpty()) {
-            return "Sin Zona";
-        }
-
-        String cpLimpio = codigoPostal.replaceAll("\\D", "");
-        if (cpLimpio.isEmpty()) return "Sin Zona";
-
-        int cpNumero;
-        try {
-            cpNumero = Integer.parseInt(cpLimpio);
-        } catch (NumberFormatException e) {
-            return "Sin Zona";
-        }
-
-        // CABA (1000-1599)
-        if (cpNumero >= 1000 && cpNumero <= 1599) {
-            return "CABA";
-        }
-
-        if (CP_ZONA_1.contains(cpLimpio)) return "Zona 1";
-        if (CP_ZONA_2.contains(cpLimpio)) return "Zona 2";
-        if (CP_ZONA_3.contains(cpLimpio)) return "Zona 3";
-
-        return "Sin Zona";
-    }
 
     /**
      * Genera un IDML aleatorio de 12 caracteres (no único)
@@ -367,130 +328,6 @@ public class EnvioServiceTiendaNube {
         return idml.toString();
     }
 
-    /**
-     * Calcula el costo de envío desde la lista de precios del cliente
-     * Acceso directo al repositorio para evitar problemas de transacción
-     */
-    private double calcularCostoEnvioDesdeListaPrecios(String codigoPostal, Long listaPreciosId) {
-        try {
-            // Limpiar el CP (solo números)
-            String cpLimpio = codigoPostal.replaceAll("\\D", "");
-            int cpNumero;
-            try {
-                cpNumero = Integer.parseInt(cpLimpio);
-            } catch (NumberFormatException e) {
-                log.warn("CP inválido: {}", codigoPostal);
-                return 0.0;
-            }
-            
-            // Obtener la lista de precios directamente desde el repositorio (read-only, seguro)
-            log.info("Buscando lista de precios con ID: {} para CP: {}", listaPreciosId, codigoPostal);
-            java.util.Optional<ListaPrecio> listaPrecioOpt = listaPrecioRepository.findById(listaPreciosId);
-            if (listaPrecioOpt.isEmpty()) {
-                log.warn("Lista de precios no encontrada con id: {}. Verificando si existe en la base de datos...", listaPreciosId);
-                // Verificar todas las listas de precios disponibles para debugging
-                long totalListas = listaPrecioRepository.count();
-                log.warn("Total de listas de precios en la base de datos: {}", totalListas);
-                // Listar todas las listas de precios disponibles
-                listaPrecioRepository.findAll().forEach(lp -> 
-                    log.warn("Lista de precios disponible: ID={}, Codigo={}, Nombre={}", lp.getId(), lp.getCodigo(), lp.getNombre())
-                );
-                return 0.0;
-            }
-            
-            ListaPrecio listaPrecio = listaPrecioOpt.get();
-            log.info("Lista de precios encontrada: ID={}, Codigo={}, Nombre={}, ZonaPropia={}", 
-                listaPrecio.getId(), listaPrecio.getCodigo(), listaPrecio.getNombre(), listaPrecio.getZonaPropia());
-            List<Zona> zonas;
-            
-            // Si no tiene zonas propias, cargar las zonas de la lista referenciada
-            if (!listaPrecio.getZonaPropia() && listaPrecio.getListaPrecioSeleccionada() != null) {
-                java.util.Optional<ListaPrecio> listaReferenciadaOpt = listaPrecioRepository.findById(listaPrecio.getListaPrecioSeleccionada());
-                if (listaReferenciadaOpt.isPresent()) {
-                    ListaPrecio listaReferenciada = listaReferenciadaOpt.get();
-                    if (listaReferenciada.getZonaPropia() && listaReferenciada.getZonas() != null && !listaReferenciada.getZonas().isEmpty()) {
-                        zonas = listaReferenciada.getZonas();
-                    } else {
-                        zonas = new java.util.ArrayList<>();
-                    }
-                } else {
-                    zonas = new java.util.ArrayList<>();
-                }
-            } else if (listaPrecio.getZonaPropia() && listaPrecio.getZonas() != null) {
-                zonas = listaPrecio.getZonas();
-            } else {
-                zonas = new java.util.ArrayList<>();
-            }
-            
-            if (zonas.isEmpty()) {
-                log.warn("Lista de precios sin zonas para ID: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            // Buscar el CP en las zonas
-            for (Zona zona : zonas) {
-                if (zona.getCps() == null || zona.getCps().isEmpty()) continue;
-                
-                String cps = zona.getCps();
-                
-                // Verificar si es un rango (ej: "1000-1599")
-                Pattern rangoPattern = Pattern.compile("(\\d+)-(\\d+)");
-                Matcher rangoMatch = rangoPattern.matcher(cps);
-                if (rangoMatch.find()) {
-                    int inicio = Integer.parseInt(rangoMatch.group(1));
-                    int fin = Integer.parseInt(rangoMatch.group(2));
-                    if (cpNumero >= inicio && cpNumero <= fin) {
-                        // Zona encontrada
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-                
-                // Verificar si está en la lista de CPs separados por comas
-                String[] cpsLista = cps.split(",");
-                for (String cp : cpsLista) {
-                    String cpTrim = cp.trim();
-                    if (cpTrim.equals(cpLimpio) || cpTrim.equals(String.valueOf(cpNumero))) {
-                        // Zona encontrada
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-            }
-            
-            log.warn("No se encontró una zona para el CP: {}", codigoPostal);
-            return 0.0;
-        } catch (Exception e) {
-            log.error("Error al calcular costo de envío desde lista de precios: {}", e.getMessage(), e);
-            return 0.0;
-        }
-    }
-
-    // CPs por zona (misma lógica que Flex)
-    private static final Set<String> CP_ZONA_1 = new HashSet<>(Arrays.asList(
-            "1602","1603","1604","1605","1606","1607","1609","1636","1637","1638","1640","1641","1642","1643","1644","1645","1646","1649","1650","1651","1652","1653","1655","1657","1672","1674","1675","1676","1678","1682","1683","1684","1685","1686","1687","1688","1692","1702","1703","1704","1706","1707","1708","1712","1713","1714","1715","1751","1752","1753","1754","1766","1773","1821","1822","1823","1824","1825","1826","1827","1828","1829","1831","1832","1833","1834","1835","1836","1868","1869","1870","1871","1872","1873","1874","1875"
-    ));
-    private static final Set<String> CP_ZONA_2 = new HashSet<>(Arrays.asList(
-            "1608","1610","1611","1612","1613","1614","1615","1616","1617","1618","1621","1624","1648","1659","1660","1661","1662","1663","1664","1665","1666","1667","1670","1671","1716","1718","1722","1723","1724","1736","1738","1740","1742","1743","1744","1745","1746","1755","1757","1758","1759","1761","1763","1764","1765","1768","1770","1771","1772","1774","1776","1778","1785","1786","1801","1802","1803","1804","1805","1806","1807","1812","1837","1838","1839","1840","1841","1842","1843","1844","1845","1846","1847","1848","1849","1851","1852","1853","1854","1855","1856","1859","1860","1861","1863","1867","1876","1877","1878","1879","1880","1881","1882","1883","1884","1885","1886","1887","1888","1889","1890","1891","1893"
-    ));
-    private static final Set<String> CP_ZONA_3 = new HashSet<>(Arrays.asList(
-            "1601","1619","1620","1622","1623","1625","1626","1627","1628","1629","1630","1631","1632","1633","1634","1635","1639","1647","1669","1727","1748","1749","1808","1814","1815","1816","1858","1862","1864","1865","1894","1895","1896","1897","1898","1900","1901","1902","1903","1904","1905","1906","1907","1908","1909","1910","1912","1914","1916","1923","1924","1925","1926","1927","1929","1931","1984","2800","2801","2802","2804","2805","2806","2808","2814","2816","6608","6700","6701","6702","6703","6706","6708","6712"
-    ));
-    
     // Métodos auxiliares para convertir entre DTO y Entity (completo, similar a EnvioService)
     private Envio toEntity(EnvioDTO dto) {
         Envio envio = new Envio();
@@ -4,11 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.zetallegue.tms.dto.EnvioDTO;
 import com.zetallegue.tms.model.Cliente;
 import com.zetallegue.tms.model.Envio;
-import com.zetallegue.tms.model.ListaPrecio;
-import com.zetallegue.tms.model.Zona;
 import com.zetallegue.tms.repository.ClienteRepository;
 import com.zetallegue.tms.repository.EnvioRepository;
-import com.zetallegue.tms.repository.ListaPrecioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -18,13 +15,8 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 @Service
 @RequiredArgsConstructor
@@ -33,7 +25,8 @@ public class EnvioServiceVtex {
 
     private final EnvioRepository envioRepository;
     private final ClienteRepository clienteRepository;
-    private final ListaPrecioRepository listaPrecioRepository;
+    private final MotorPreciosService motorPreciosService;
+    private final ZonaEntregaService zonaEntregaService;
     private final EnvioService envioService;
 
     /**
@@ -206,7 +199,7 @@ public class EnvioServiceVtex {
         }
         
         // Calcular zona de entrega
-        envioDTO.setZonaEntrega(determinarZonaEntrega(envioDTO.getCodigoPostal()));
+        envioDTO.setZonaEntrega(zonaEntregaService.clasificar(envioDTO.getCodigoPostal()));
         
         // Calcular costo de envío desde lista de precios
         String codigoPostal = envioDTO.getCodigoPostal();
@@ -215,7 +208,7 @@ public class EnvioServiceVtex {
         
         if (codigoPostal != null && !codigoPostal.trim().isEmpty() && cliente.getListaPreciosId() != null) {
             try {
-                double costoEnvio = calcularCostoEnvioDesdeListaPrecios(codigoPostal, cliente.getListaPreciosId());
+                double costoEnvio = motorPreciosService.calcularCosto(codigoPostal, cliente.getListaPreciosId());
                 if (costoEnvio > 0) {
                     envioDTO.setCostoEnvio(String.format("%.2f", costoEnvio));
                     log.info("Costo de envío calculado desde lista de precios: ${} para CP: {}", String.format("%.2f", costoEnvio), codigoPostal);
@@ -279,32 +272,6 @@ public class EnvioServiceVtex {
         }
     }
     
-    private String determinarZonaEntrega(String codigoPostal) {
-        if (codigoPostal == null || codigoPostal.trim().isEmpty()) {
-            return "Sin Zona";
-        }
-
-        String cpLimpio = codigoPostal.replaceAll("\\D", "");
-        if (cpLimpio.isEmpty()) return "Sin Zona";
-
-        int cpNumero;
-        try {
-            cpNumero = Integer.parseInt(cpLimpio);
-        } catch (NumberFormatException e) {
-            return "Sin Zona";
-        }
-
-        if (cpNumero >= 1000 && cpNumero <= 1599) {
-            return "CABA";
-        }
-
-        if (CP_ZONA_1.contains(cpLimpio)) return "Zona 1";
-        if (CP_ZONA_2.contains(cpLimpio)) return "Zona 2";
-        if (CP_ZONA_3.contains(cpLimpio)) return "Zona 3";
-
-        return "Sin Zona";
-    }
-    
     private String generarIdmlAleatorio() {
         String caracteres = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
         Random random = new Random();
@@ -314,109 +281,7 @@ public class EnvioServiceVtex {
         }
         return idml.toString();
     }
-    
-    private double calcularCostoEnvioDesdeListaPrecios(String codigoPostal, Long listaPreciosId) {
-        try {
-            String cpLimpio = codigoPostal.replaceAll("\\D", "");
-            int cpNumero;
-            try {
-                cpNumero = Integer.parseInt(cpLimpio);
-            } catch (NumberFormatException e) {
-                log.warn("CP inválido: {}", codigoPostal);
-                return 0.0;
-            }
-            
-            log.info("Buscando lista de precios con ID: {} para CP: {}", listaPreciosId, codigoPostal);
-            java.util.Optional<ListaPrecio> listaPrecioOpt = listaPrecioRepository.findById(listaPreciosId);
-            if (listaPrecioOpt.isEmpty()) {
-                log.warn("Lista de precios no encontrada con id: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            ListaPrecio listaPrecio = listaPrecioOpt.get();
-            List<Zona> zonas;
-            
-            if (!listaPrecio.getZonaPropia() && listaPrecio.getListaPrecioSeleccionada() != null) {
-                java.util.Optional<ListaPrecio> listaReferenciadaOpt = listaPrecioRepository.findById(listaPrecio.getListaPrecioSeleccionada());
-                if (listaReferenciadaOpt.isPresent()) {
-                    ListaPrecio listaReferenciada = listaReferenciadaOpt.get();
-                    if (listaReferenciada.getZonaPropia() && listaReferenciada.getZonas() != null && !listaReferenciada.getZonas().isEmpty()) {
-                        zonas = listaReferenciada.getZonas();
-                    } else {
-                        zonas = new java.util.ArrayList<>();
-                    }
-                } else {
-                    zonas = new java.util.ArrayList<>();
-                }
-            } else if (listaPrecio.getZonaPropia() && listaPrecio.getZonas() != null) {
-                zonas = listaPrecio.getZonas();
-            } else {
-                zonas = new java.util.ArrayList<>();
-            }
-            
-            if (zonas.isEmpty()) {
-                log.warn("Lista de precios sin zonas para ID: {}", listaPreciosId);
-                return 0.0;
-            }
-            
-            for (Zona zona : zonas) {
-                if (zona.getCps() == null || zona.getCps().isEmpty()) continue;
-                
-                String cps = zona.getCps();
-                
-                Pattern rangoPattern = Pattern.compile("(\\d+)-(\\d+)");
-                Matcher rangoMatch = rangoPattern.matcher(cps);
-                if (rangoMatch.find()) {
-                    int inicio = Integer.parseInt(rangoMatch.group(1));
-                    int fin = Integer.parseInt(rangoMatch.group(2));
-                    if (cpNumero >= inicio && cpNumero <= fin) {
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-                
-                String[] cpsLista = cps.split(",");
-                for (String cp : cpsLista) {
-                    String cpTrim = cp.trim();
-                    if (cpTrim.equals(cpLimpio) || cpTrim.equals(String.valueOf(cpNumero))) {
-                        if (zona.getValor() != null && !zona.getValor().isEmpty()) {
-                            try {
-                                double valor = Double.parseDouble(zona.getValor());
-                                log.info("Costo de envío encontrado en zona {}: ${}", zona.getNombre() != null ? zona.getNombre() : "desconocida", String.format("%.2f", valor));
-                                return valor;
-                            } catch (NumberFormatException e) {
-                                log.warn("Valor de zona inválido: {}", zona.getValor());
-                            }
-                        }
-                    }
-                }
-            }
-            
-            log.warn("No se encontró una zona para el CP: {}", codigoPostal);
-            return 0.0;
-        } catch (Exception e) {
-            log.error("Error al calcular costo de envío desde lista de precios: {}", e.getMessage(), e);
-            return 0.0;
-        }
-    }
 
-    private static final Set<String> CP_ZONA_1 = new HashSet<>(Arrays.asList(
-            "1602","1603","1604","1605","1606","1607","1609","1636","1637","1638","1640","1641","1642","1643","1644","1645","1646","1649","1650","1651","1652","1653","1655","1657","1672","1674","1675","1676","1678","1682","1683","1684","1685","1686","1687","1688","1692","1702","1703","1704","1706","1707","1708","1712","1713","1714","1715","1751","1752","1753","1754","1766","1773","1821","1822","1823","1824","1825","1826","1827","1828","1829","1831","1832","1833","1834","1835","1836","1868","1869","1870","1871","1872","1873","1874","1875"
-    ));
-    private static final Set<String> CP_ZONA_2 = new HashSet<>(Arrays.asList(
-            "1608","1610","1611","1612","1613","1614","1615","1616","1617","1618","1621","1624","1648","1659","1660","1661","1662","1663","1664","1665","1666","1667","1670","1671","1716","1718","1722","1723","1724","1736","1738","1740","1742","1743","1744","1745","1746","1755","1757","1758","1759","1761","1763","1764","1765","1768","1770","1771","1772","1774","1776","1778","1785","1786","1801","1802","1803","1804","1805","1806","1807","1812","1837","1838","1839","1840","1841","1842","1843","1844","1845","1846","1847","1848","1849","1851","1852","1853","1854","1855","1856","1859","1860","1861","1863","1867","1876","1877","1878","1879","1880","1881","1882","1883","1884","1885","1886","1887","1888","1889","1890","1891","1893"
-    ));
-    private static final Set<String> CP_ZONA_3 = new HashSet<>(Arrays.asList(
-            "1601","1619","1620","1622","1623","1625","1626","1627","1628","1629","1630","1631","1632","1633","1634","1635","1639","1647","1669","1727","1748","1749","1808","1814","1815","1816","1858","1862","1864","1865","1894","1895","1896","1897","1898","1900","1901","1902","1903","1904","1905","1906","1907","1908","1909","1910","1912","1914","1916","1923","1924","1925","1926","1927","1929","1931","1984","2800","2801","2802","2804","2805","2806","2808","2814","2816","6608","6700","6701","6702","6703","6706","6708","6712"
-    ));
-    
     private Envio toEntity(EnvioDTO dto) {
         Envio envio = new Envio();
         LocalDateTime ahora = LocalDateTime.now();
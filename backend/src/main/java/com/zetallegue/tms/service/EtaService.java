@@ -0,0 +1,504 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Envio;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.HistorialEnvioRepository;
+import com.zetallegue.tms.repository.UsuarioRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Estimación de llegadas (ETA) a las paradas de los choferes, para el link público de tracking y las vistas de
+ * despacho.
+ *
+ * El modelo se entrena con el historial: de cada par de visitas seguidas de un chofer en el mismo día (entregado,
+ * rechazado o nadie) se toman los minutos entre ambas y la distancia en línea recta. Una regresión lineal
+ * minutos = servicio + minutosPorKm * km separa viaje de servicio; el servicio se ajusta por zona de entrega y el total
+ * por chofer (factor sobre lo esperado), los dos achicados hacia el valor general según cuántas observaciones tienen
+ * ({@code eta.peso-previo}). Se reentrena cada noche y al arrancar; con menos de {@code eta.minimo-observaciones}
+ * pares se usan rutas.velocidad-kmh y rutas.minutos-por-parada.
+ *
+ * Estimar es recorrer la ruta en orden sumando viaje y servicio con los parámetros en memoria. El orden de cada chofer
+ * se guarda {@code eta.orden-ttl-ms} (lo deja la ruta optimizada o se calcula con {@link OptimizadorRutaService}), así
+ * cada vista del tracking cuesta una consulta de las paradas pendientes del chofer. Las consultas nunca optimizan: si
+ * el orden venció o aparecieron paradas nuevas, se usa el orden guardado o uno de vecino más cercano y la optimización
+ * se pide a un hilo aparte, una sola vez por chofer aunque lleguen varias consultas juntas.
+ */
+@Service
+@Slf4j
+public class EtaService {
+
+    public static final Set<String> ESTADOS_VISITA = Set.of("Entregado", "Rechazado por el comprador", "Nadie");
+    private static final String ESTADO_EN_CAMINO = "En camino al destinatario";
+    /** Menos que esto entre dos visitas es una carga tardía en lote, no un tiempo real */
+    private static final double MINUTOS_MINIMOS_ENTRE_VISITAS = 0.5;
+    private static final double MAX_KM_ENTRE_VISITAS = 30;
+    /** Velocidades posibles entre paradas: de 8 a 70 km/h */
+    private static final double MIN_MINUTOS_POR_KM = 60.0 / 70;
+    private static final double MAX_MINUTOS_POR_KM = 60.0 / 8;
+    private static final double MIN_SERVICIO = 0.5;
+    private static final double MAX_SERVICIO = 60;
+    private static final double MIN_FACTOR_CHOFER = 0.5;
+    private static final double MAX_FACTOR_CHOFER = 2.0;
+    private static final double DESVIO_POR_DEFECTO = 10;
+    private static final int VUELTAS_AJUSTE = 5;
+    /** Margen de la ventana: percentil 90 de un error normal */
+    private static final double Z_VENTANA = 1.28;
+    private static final int MIN_MARGEN_MINUTOS = 5;
+    private static final int MAX_MARGEN_MINUTOS = 90;
+    /** Un orden vencido sigue sirviendo de respaldo mientras se recalcula; después de esto se descarta. */
+    private static final long RETENCION_RUTA_MS = 24 * 60 * 60 * 1000L;
+
+    /** Parada a estimar; latitud/longitud null si el envío no tiene destino geolocalizado. */
+    public record Pendiente(Long envioId, Double latitud, Double longitud, String codigoPostal, String zona,
+                            LocalDateTime deadline) {
+    }
+
+    /** Parada ubicada, en el orden de la ruta. */
+    public record ParadaUbicada(Long envioId, double latitud, double longitud, String zona, LocalDateTime deadline) {
+    }
+
+    /** Llegada estimada a una parada (posicion 0 = la próxima) y salida después de atenderla. */
+    public record Estimacion(Long envioId, int posicion, double kmDesdeAnterior, LocalDateTime llegada,
+                             LocalDateTime salida, int margenMinutos) {
+    }
+
+    /** Dos visitas seguidas de un chofer. */
+    record Par(long choferId, String zona, double km, double minutos) {
+    }
+
+    record Modelo(double minutosPorKm, double minutosServicio, Map<String, Double> servicioPorZona,
+                  Map<Long, Double> factorPorChofer, double desvioMinutos, int observaciones, LocalDateTime entrenado) {
+
+        double servicio(String zona) {
+            return zona != null ? servicioPorZona.getOrDefault(zona, minutosServicio) : minutosServicio;
+        }
+
+        double factor(Long choferId) {
+            return choferId != null ? factorPorChofer.getOrDefault(choferId, 1.0) : 1.0;
+        }
+    }
+
+    private record RutaGuardada(List<ParadaUbicada> paradas, Set<Long> sinUbicacion, long momentoMs) {
+    }
+
+    /** Paradas con ubicación (destino o centro del código postal) y las que no tienen ninguna. */
+    private record ParadasUbicadas(List<OptimizadorRutaService.Parada> paradas, Map<Long, Pendiente> porId,
+                                   List<Long> sinUbicacion) {
+    }
+
+    private final HistorialEnvioRepository historialEnvioRepository;
+    private final EnvioRepository envioRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final UbicacionChoferService ubicacionChoferService;
+    private final OptimizadorRutaService optimizadorRutaService;
+    private final CentroidesCodigoPostalService centroidesCodigoPostalService;
+    private final double minutosPorKmPorDefecto;
+    private final double minutosPorParadaPorDefecto;
+    private final int diasEntrenamiento;
+    private final int minimoObservaciones;
+    private final double pesoPrevio;
+    private final double maxMinutosEntreVisitas;
+    private final long ordenTtlMs;
+
+    private volatile Modelo modelo;
+    private final Map<Long, RutaGuardada> rutas = new ConcurrentHashMap<>();
+    /** Choferes con una optimización pedida o en curso. */
+    private final Set<Long> ordenando = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "eta-orden");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public EtaService(HistorialEnvioRepository historialEnvioRepository,
+                      EnvioRepository envioRepository,
+                      UsuarioRepository usuarioRepository,
+                      UbicacionChoferService ubicacionChoferService,
+                      OptimizadorRutaService optimizadorRutaService,
+                      CentroidesCodigoPostalService centroidesCodigoPostalService,
+                      @Value("${rutas.velocidad-kmh:25}") double velocidadKmh,
+                      @Value("${rutas.minutos-por-parada:4}") double minutosPorParada,
+                      @Value("${eta.dias-entrenamiento:60}") int diasEntrenamiento,
+                      @Value("${eta.minimo-observaciones:50}") int minimoObservaciones,
+                      @Value("${eta.peso-previo:20}") double pesoPrevio,
+                      @Value("${eta.max-minutos-entre-visitas:90}") double maxMinutosEntreVisitas,
+                      @Value("${eta.orden-ttl-ms:300000}") long ordenTtlMs) {
+        this.historialEnvioRepository = historialEnvioRepository;
+        this.envioRepository = envioRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.ubicacionChoferService = ubicacionChoferService;
+        this.optimizadorRutaService = optimizadorRutaService;
+        this.centroidesCodigoPostalService = centroidesCodigoPostalService;
+        this.minutosPorKmPorDefecto = 60.0 / velocidadKmh;
+        this.minutosPorParadaPorDefecto = minutosPorParada;
+        this.diasEntrenamiento = diasEntrenamiento;
+        this.minimoObservaciones = minimoObservaciones;
+        this.pesoPrevio = pesoPrevio;
+        this.maxMinutosEntreVisitas = maxMinutosEntreVisitas;
+        this.ordenTtlMs = ordenTtlMs;
+        this.modelo = modeloPorDefecto(0);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        try {
+            entrenar();
+        } catch (Exception e) {
+            log.error("Error entrenando la estimación de llegadas: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    /** Olvida los órdenes de choferes que no se consultaron en el último día. */
+    @Scheduled(fixedDelay = 60 * 60 * 1000, initialDelay = 60 * 60 * 1000)
+    public void limpiarRutas() {
+        long limite = System.currentTimeMillis() - RETENCION_RUTA_MS;
+        rutas.values().removeIf(r -> r.momentoMs() < limite);
+    }
+
+    /** Reentrena con las visitas de los últimos {@code eta.dias-entrenamiento} días, de a un día por consulta. */
+    @Scheduled(cron = "${eta.entrenamiento-cron:0 30 4 * * ?}")
+    public synchronized void entrenar() {
+        long comienzo = System.currentTimeMillis();
+        LocalDate hoy = LocalDate.now();
+        List<Par> pares = new ArrayList<>();
+        for (LocalDate dia = hoy.minusDays(diasEntrenamiento); !dia.isAfter(hoy); dia = dia.plusDays(1)) {
+            Object[] anterior = null;
+            for (Object[] visita : historialEnvioRepository.findVisitasParaEta(ESTADOS_VISITA, dia.atStartOfDay(), dia.plusDays(1).atStartOfDay())) {
+                if (anterior != null && anterior[1].equals(visita[1])) {
+                    Par par = aPar(anterior, visita);
+                    if (par != null) pares.add(par);
+                }
+                anterior = visita;
+            }
+        }
+        Modelo nuevo = ajustar(pares);
+        modelo = nuevo;
+        log.info("Estimación de llegadas entrenada con {} pares de visitas en {} ms: {} min/km, {} min de servicio, desvío {} min, {} zonas, {} choferes",
+                nuevo.observaciones(), System.currentTimeMillis() - comienzo, redondear(nuevo.minutosPorKm()),
+                redondear(nuevo.minutosServicio()), redondear(nuevo.desvioMinutos()), nuevo.servicioPorZona().size(),
+                nuevo.factorPorChofer().size());
+    }
+
+    /** Parámetros vigentes del modelo (para revisar el entrenamiento). */
+    public Map<String, Object> resumenModelo() {
+        Modelo m = modelo;
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("entrenado", m.entrenado());
+        resumen.put("observaciones", m.observaciones());
+        resumen.put("velocidadKmh", redondear(60.0 / m.minutosPorKm()));
+        resumen.put("minutosServicio", redondear(m.minutosServicio()));
+        resumen.put("desvioMinutos", redondear(m.desvioMinutos()));
+        Map<String, Double> zonas = new TreeMap<>();
+        m.servicioPorZona().forEach((zona, minutos) -> zonas.put(zona, redondear(minutos)));
+        resumen.put("minutosServicioPorZona", zonas);
+        Map<Long, Double> choferes = new TreeMap<>();
+        m.factorPorChofer().forEach((id, factor) -> choferes.put(id, redondear(factor)));
+        resumen.put("factorPorChofer", choferes);
+        return resumen;
+    }
+
+    /**
+     * Llegadas a las paradas en el orden dado, saliendo de (latitudOrigen, longitudOrigen) en el momento inicio. Sin
+     * origen la primera parada se toma como alcanzada en inicio.
+     */
+    public List<Estimacion> estimar(Long choferId, Double latitudOrigen, Double longitudOrigen,
+                                    List<ParadaUbicada> enOrden, LocalDateTime inicio) {
+        Modelo m = modelo;
+        double factor = m.factor(choferId);
+        List<Estimacion> estimaciones = new ArrayList<>(enOrden.size());
+        boolean conOrigen = UbicacionChoferService.coordenadasValidas(latitudOrigen, longitudOrigen);
+        double lat = conOrigen ? latitudOrigen : 0;
+        double lng = conOrigen ? longitudOrigen : 0;
+        double minutos = 0;
+        for (int i = 0; i < enOrden.size(); i++) {
+            ParadaUbicada parada = enOrden.get(i);
+            double km = i > 0 || conOrigen ? OptimizadorRutaService.haversineKm(lat, lng, parada.latitud(), parada.longitud()) : 0;
+            minutos += factor * m.minutosPorKm() * km;
+            LocalDateTime llegada = inicio.plusSeconds(Math.round(minutos * 60));
+            minutos += factor * m.servicio(parada.zona());
+            // Los errores de cada tramo se suman: la ventana crece con la raíz de las paradas que faltan
+            long margen = Math.round(Z_VENTANA * m.desvioMinutos() * Math.sqrt(i + 1));
+            estimaciones.add(new Estimacion(parada.envioId(), i, km, llegada, inicio.plusSeconds(Math.round(minutos * 60)),
+                    (int) Math.max(MIN_MARGEN_MINUTOS, Math.min(MAX_MARGEN_MINUTOS, margen))));
+            lat = parada.latitud();
+            lng = parada.longitud();
+        }
+        return estimaciones;
+    }
+
+    /** Guarda el orden de visita calculado para el chofer (lo usan las estimaciones hasta que vence). */
+    public void recordarRuta(Long choferId, List<ParadaUbicada> enOrden, Collection<Long> sinUbicacion) {
+        rutas.put(choferId, new RutaGuardada(List.copyOf(enOrden), Set.copyOf(sinUbicacion), System.currentTimeMillis()));
+    }
+
+    /**
+     * Llegadas a las paradas pendientes del chofer, por id de envío. Usa el orden guardado si conoce todas las
+     * pendientes; si no, uno de vecino más cercano. Cuando el orden guardado venció o no sirve, pide la optimización en
+     * segundo plano: la consulta no espera al optimizador.
+     */
+    public Map<Long, Estimacion> estimarPendientes(Long choferId, Double latitudOrigen, Double longitudOrigen,
+                                                   List<Pendiente> pendientes, LocalDateTime inicio) {
+        if (pendientes.isEmpty()) return Map.of();
+        boolean conOrigen = UbicacionChoferService.coordenadasValidas(latitudOrigen, longitudOrigen);
+        Double lat = conOrigen ? latitudOrigen : null;
+        Double lng = conOrigen ? longitudOrigen : null;
+        RutaGuardada guardada = rutas.get(choferId);
+        List<ParadaUbicada> enOrden = guardada != null ? ordenConocido(guardada, pendientes) : null;
+        if (enOrden == null || System.currentTimeMillis() - guardada.momentoMs() > ordenTtlMs) {
+            pedirOrden(choferId, lat, lng, pendientes, inicio);
+        }
+        if (enOrden == null) {
+            ParadasUbicadas ubicadas = ubicar(pendientes);
+            enOrden = enOrden(optimizadorRutaService.rutaInicial(lat, lng, ubicadas.paradas(), inicio), ubicadas);
+        }
+        Map<Long, Estimacion> porEnvio = new HashMap<>();
+        for (Estimacion estimacion : estimar(choferId, lat, lng, enOrden, inicio)) {
+            porEnvio.put(estimacion.envioId(), estimacion);
+        }
+        return porEnvio;
+    }
+
+    /** Llegada estimada del envío si está en camino con un chofer (link público de tracking), o null. */
+    public Estimacion estimarEnvio(Envio envio) {
+        if (!ESTADO_EN_CAMINO.equals(envio.getEstado()) || envio.getChoferAsignadoId() == null) return null;
+        Long choferId = envio.getChoferAsignadoId();
+        List<Pendiente> pendientes = envioRepository.findParadasPendientesDeChofer(choferId).stream()
+                .map(fila -> new Pendiente((Long) fila[0], (Double) fila[1], (Double) fila[2], (String) fila[3],
+                        (String) fila[4], (LocalDateTime) fila[5]))
+                .collect(Collectors.toList());
+        if (pendientes.stream().noneMatch(p -> p.envioId().equals(envio.getId()))) return null;
+        UbicacionChoferService.UbicacionActual origen = usuarioRepository.findById(choferId)
+                .map(ubicacionChoferService::ubicacionDe)
+                .orElse(null);
+        return estimarPendientes(choferId, origen != null ? origen.latitud() : null, origen != null ? origen.longitud() : null,
+                pendientes, LocalDateTime.now()).get(envio.getId());
+    }
+
+    public static Pendiente pendiente(Envio envio) {
+        return new Pendiente(envio.getId(), envio.getLatDestino(), envio.getLngDestino(), envio.getCodigoPostal(),
+                envio.getZonaEntrega(), envio.getDeadline());
+    }
+
+    /** Orden guardado (vigente o no) filtrado a las paradas pendientes, o null si hay pendientes que no conoce. */
+    private List<ParadaUbicada> ordenConocido(RutaGuardada guardada, List<Pendiente> pendientes) {
+        Set<Long> ids = new HashSet<>();
+        for (Pendiente p : pendientes) {
+            ids.add(p.envioId());
+        }
+        Set<Long> conocidos = new HashSet<>(guardada.sinUbicacion());
+        guardada.paradas().forEach(p -> conocidos.add(p.envioId()));
+        if (!conocidos.containsAll(ids)) return null;
+        return guardada.paradas().stream().filter(p -> ids.contains(p.envioId())).collect(Collectors.toList());
+    }
+
+    /** Encola la optimización del orden del chofer, salvo que ya haya una pedida o en curso. */
+    private void pedirOrden(Long choferId, Double latitudOrigen, Double longitudOrigen, List<Pendiente> pendientes,
+                            LocalDateTime inicio) {
+        if (!ordenando.add(choferId)) return;
+        List<Pendiente> copia = List.copyOf(pendientes);
+        try {
+            executor.submit(() -> {
+                try {
+                    ordenar(choferId, latitudOrigen, longitudOrigen, copia, inicio);
+                } catch (Exception e) {
+                    log.warn("No se pudo ordenar la ruta del chofer {}: {}", choferId, e.getMessage());
+                } finally {
+                    ordenando.remove(choferId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ordenando.remove(choferId);
+        }
+    }
+
+    /** Optimiza el orden de las paradas y lo guarda. Corre en el hilo de {@link #pedirOrden}. */
+    private void ordenar(Long choferId, Double latitudOrigen, Double longitudOrigen, List<Pendiente> pendientes,
+                         LocalDateTime inicio) {
+        ParadasUbicadas ubicadas = ubicar(pendientes);
+        List<ParadaUbicada> enOrden = enOrden(
+                optimizadorRutaService.optimizar(latitudOrigen, longitudOrigen, ubicadas.paradas(), inicio), ubicadas);
+        recordarRuta(choferId, enOrden, ubicadas.sinUbicacion());
+    }
+
+    /** Ubica las paradas en su destino o, si no tiene, en el centro de su código postal, como la ruta optimizada. */
+    private ParadasUbicadas ubicar(List<Pendiente> pendientes) {
+        Set<String> cpsSinCoordenadas = pendientes.stream()
+                .filter(p -> !UbicacionChoferService.coordenadasValidas(p.latitud(), p.longitud()))
+                .map(Pendiente::codigoPostal)
+                .filter(cp -> cp != null && !cp.isBlank())
+                .collect(Collectors.toSet());
+        Map<String, double[]> centroides = centroidesCodigoPostalService.obtener(cpsSinCoordenadas);
+        Map<Long, Pendiente> porId = new HashMap<>();
+        List<OptimizadorRutaService.Parada> paradas = new ArrayList<>();
+        List<Long> sinUbicacion = new ArrayList<>();
+        for (Pendiente p : pendientes) {
+            porId.put(p.envioId(), p);
+            if (UbicacionChoferService.coordenadasValidas(p.latitud(), p.longitud())) {
+                paradas.add(new OptimizadorRutaService.Parada(p.envioId(), p.latitud(), p.longitud(), p.deadline()));
+            } else if (p.codigoPostal() != null && centroides.containsKey(p.codigoPostal())) {
+                double[] centro = centroides.get(p.codigoPostal());
+                paradas.add(new OptimizadorRutaService.Parada(p.envioId(), centro[0], centro[1], p.deadline()));
+            } else {
+                sinUbicacion.add(p.envioId());
+            }
+        }
+        return new ParadasUbicadas(paradas, porId, sinUbicacion);
+    }
+
+    private static List<ParadaUbicada> enOrden(OptimizadorRutaService.Ruta ruta, ParadasUbicadas ubicadas) {
+        List<ParadaUbicada> enOrden = new ArrayList<>(ruta.paradas().size());
+        for (OptimizadorRutaService.ParadaEnRuta p : ruta.paradas()) {
+            OptimizadorRutaService.Parada parada = p.parada();
+            enOrden.add(new ParadaUbicada(parada.id(), parada.latitud(), parada.longitud(),
+                    ubicadas.porId().get(parada.id()).zona(), parada.deadline()));
+        }
+        return enOrden;
+    }
+
+    /** Par de visitas seguidas del mismo chofer, o null si no sirve para entrenar (sin destino, pausa, carga en lote). */
+    private Par aPar(Object[] anterior, Object[] visita) {
+        Double latA = (Double) anterior[3];
+        Double lngA = (Double) anterior[4];
+        Double latB = (Double) visita[3];
+        Double lngB = (Double) visita[4];
+        if (!UbicacionChoferService.coordenadasValidas(latA, lngA) || !UbicacionChoferService.coordenadasValidas(latB, lngB)) {
+            return null;
+        }
+        double minutos = Duration.between((LocalDateTime) anterior[0], (LocalDateTime) visita[0]).toSeconds() / 60.0;
+        double km = OptimizadorRutaService.haversineKm(latA, lngA, latB, lngB);
+        if (minutos < MINUTOS_MINIMOS_ENTRE_VISITAS || minutos > maxMinutosEntreVisitas || km > MAX_KM_ENTRE_VISITAS) {
+            return null;
+        }
+        String zona = (String) visita[2];
+        return new Par((Long) visita[1], zona != null && !zona.isBlank() ? zona : null, km, minutos);
+    }
+
+    /**
+     * Ajusta el modelo por partes (backfitting): la regresión de viaje se hace con los minutos divididos por el factor
+     * de cada chofer y descontando lo que la zona se aparta del servicio general; con eso se recalculan el servicio por
+     * zona y los factores, y se repite unas pocas vueltas hasta que se estabiliza.
+     */
+    Modelo ajustar(List<Par> pares) {
+        int n = pares.size();
+        if (n < minimoObservaciones || n == 0) return modeloPorDefecto(n);
+
+        double minutosPorKm = minutosPorKmPorDefecto;
+        double servicio = minutosPorParadaPorDefecto;
+        Map<String, Double> servicioPorZona = new HashMap<>();
+        Map<Long, Double> factorPorChofer = new HashMap<>();
+        for (int vuelta = 0; vuelta < VUELTAS_AJUSTE; vuelta++) {
+            // Regresión minutos = servicio + minutosPorKm * km, sin el efecto del chofer ni de la zona
+            double mediaKm = 0;
+            double mediaMinutos = 0;
+            double[] minutos = new double[n];
+            for (int i = 0; i < n; i++) {
+                Par p = pares.get(i);
+                double desvioZona = p.zona() != null && servicioPorZona.containsKey(p.zona()) ? servicioPorZona.get(p.zona()) - servicio : 0;
+                minutos[i] = p.minutos() / factorPorChofer.getOrDefault(p.choferId(), 1.0) - desvioZona;
+                mediaKm += p.km();
+                mediaMinutos += minutos[i];
+            }
+            mediaKm /= n;
+            mediaMinutos /= n;
+            double sxx = 0;
+            double sxy = 0;
+            for (int i = 0; i < n; i++) {
+                double dKm = pares.get(i).km() - mediaKm;
+                sxx += dKm * dKm;
+                sxy += dKm * (minutos[i] - mediaMinutos);
+            }
+            minutosPorKm = limitar(sxx > 1e-9 ? sxy / sxx : minutosPorKmPorDefecto, MIN_MINUTOS_POR_KM, MAX_MINUTOS_POR_KM);
+            servicio = limitar(mediaMinutos - minutosPorKm * mediaKm, MIN_SERVICIO, MAX_SERVICIO);
+
+            // Servicio por zona: lo que queda después del viaje, achicado hacia el general
+            Map<String, double[]> porZona = new HashMap<>();
+            for (Par p : pares) {
+                if (p.zona() == null) continue;
+                double[] acumulado = porZona.computeIfAbsent(p.zona(), z -> new double[2]);
+                acumulado[0] += p.minutos() / factorPorChofer.getOrDefault(p.choferId(), 1.0) - minutosPorKm * p.km();
+                acumulado[1]++;
+            }
+            double servicioGeneral = servicio;
+            servicioPorZona = new HashMap<>();
+            for (Map.Entry<String, double[]> zona : porZona.entrySet()) {
+                double[] a = zona.getValue();
+                servicioPorZona.put(zona.getKey(),
+                        limitar((a[0] + pesoPrevio * servicioGeneral) / (a[1] + pesoPrevio), MIN_SERVICIO, MAX_SERVICIO));
+            }
+
+            // Factor por chofer: minutos reales sobre esperados, achicado hacia 1
+            Map<Long, double[]> porChofer = new HashMap<>();
+            double totalEsperado = 0;
+            for (Par p : pares) {
+                double esperado = minutosPorKm * p.km() + servicioPorZona.getOrDefault(p.zona() != null ? p.zona() : "", servicio);
+                double[] acumulado = porChofer.computeIfAbsent(p.choferId(), id -> new double[2]);
+                acumulado[0] += p.minutos();
+                acumulado[1] += esperado;
+                totalEsperado += esperado;
+            }
+            double previo = pesoPrevio * totalEsperado / n;
+            Map<Long, Double> factores = new HashMap<>();
+            porChofer.forEach((id, a) -> factores.put(id, (a[0] + previo) / (a[1] + previo)));
+            // Solo la proporción entre choferes está determinada: se normaliza para que el chofer típico (promedio
+            // por visita) sea 1 y la escala quede en minutosPorKm y el servicio
+            double promedio = 0;
+            for (Par p : pares) promedio += factores.get(p.choferId());
+            promedio /= n;
+            factorPorChofer = new HashMap<>();
+            for (Map.Entry<Long, Double> factor : factores.entrySet()) {
+                factorPorChofer.put(factor.getKey(), limitar(factor.getValue() / promedio, MIN_FACTOR_CHOFER, MAX_FACTOR_CHOFER));
+            }
+        }
+
+        double sumaCuadrados = 0;
+        for (Par p : pares) {
+            double esperado = factorPorChofer.get(p.choferId())
+                    * (minutosPorKm * p.km() + servicioPorZona.getOrDefault(p.zona() != null ? p.zona() : "", servicio));
+            sumaCuadrados += (p.minutos() - esperado) * (p.minutos() - esperado);
+        }
+        double desvio = Math.max(1, Math.sqrt(sumaCuadrados / n));
+        return new Modelo(minutosPorKm, servicio, Map.copyOf(servicioPorZona), Map.copyOf(factorPorChofer), desvio, n, LocalDateTime.now());
+    }
+
+    private Modelo modeloPorDefecto(int observaciones) {
+        return new Modelo(minutosPorKmPorDefecto, minutosPorParadaPorDefecto, Map.of(), Map.of(), DESVIO_POR_DEFECTO,
+                observaciones, LocalDateTime.now());
+    }
+
+    private static double limitar(double valor, double min, double max) {
+        return Math.max(min, Math.min(max, valor));
+    }
+
+    private static double redondear(double valor) {
+        return Math.round(valor * 100) / 100.0;
+    }
+}
@@ -4,7 +4,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.zetallegue.tms.model.Cliente;
 import com.zetallegue.tms.model.Envio;
 import com.zetallegue.tms.model.HistorialEnvio;
-import com.zetallegue.tms.repository.ClienteRepository;
 import com.zetallegue.tms.repository.EnvioRepository;
 import com.zetallegue.tms.repository.HistorialEnvioRepository;
 import lombok.RequiredArgsConstructor;
@@ -33,7 +32,7 @@ import java.util.stream.Collectors;
 public class FlexPollingService {
 
     private final EnvioRepository envioRepository;
-    private final ClienteRepository clienteRepository;
+    private final DirectorioClientesService directorioClientesService;
     private final HistorialEnvioRepository historialEnvioRepository;
     private final MercadoLibreService mercadoLibreService;
 
@@ -79,8 +78,7 @@ public class FlexPollingService {
             log.info("Encontrados {} envíos Flex para sincronizar", enviosFlex.size());
             
             // Obtener todos los clientes vinculados con Flex una sola vez
-            Map<String, Cliente> clientesPorCodigo = clienteRepository.findAll().stream()
-                    .filter(c -> c.getFlexIdVendedor() != null && !c.getFlexIdVendedor().isEmpty())
+            Map<String, Cliente> clientesPorCodigo = directorioClientesService.clientesConFlex().stream()
                     .filter(c -> c.getFlexRefreshToken() != null && !c.getFlexRefreshToken().isEmpty())
                     .collect(Collectors.toMap(
                             Cliente::getCodigo,
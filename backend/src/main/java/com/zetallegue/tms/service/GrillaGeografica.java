@@ -0,0 +1,196 @@
+package com.zetallegue.tms.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Índice espacial en memoria: puntos (id, lat, lng, datos) repartidos en celdas de {@code tamañoCelda} grados.
+ * Las búsquedas por radio, por área y de los más cercanos recorren solo las celdas que tocan la zona buscada.
+ *
+ * Las lecturas no bloquean; las escrituras se serializan para que un punto no quede en dos celdas a la vez. La
+ * reconstrucción completa arma los mapas nuevos aparte y los publica de una vez: una búsqueda ve el contenido
+ * anterior o el nuevo, nunca uno a medio cargar.
+ */
+public class GrillaGeografica<T> {
+
+    private static final double KM_POR_GRADO = 111.32;
+    /** Más celdas que esto en un área se recorre por las celdas ocupadas en lugar de por el área */
+    private static final long MAX_CELDAS_RECORRIDO = 50_000;
+
+    public record Punto<T>(long id, double latitud, double longitud, T datos) {
+    }
+
+    public record Cercano<T>(Punto<T> punto, double distanciaKm) {
+    }
+
+    /** Puntos por id y ids por celda; se reemplaza entero al reconstruir. */
+    private record Contenido<T>(Map<Long, Punto<T>> porId, Map<Long, Set<Long>> celdas) {
+    }
+
+    private final double tamañoCelda;
+    private volatile Contenido<T> contenido = new Contenido<>(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+    public GrillaGeografica(double tamañoCelda) {
+        this.tamañoCelda = tamañoCelda;
+    }
+
+    public synchronized void poner(long id, double latitud, double longitud, T datos) {
+        Contenido<T> actual = contenido;
+        Punto<T> anterior = actual.porId().put(id, new Punto<>(id, latitud, longitud, datos));
+        long celda = celda(latitud, longitud);
+        if (anterior != null) {
+            long celdaAnterior = celda(anterior.latitud(), anterior.longitud());
+            if (celdaAnterior == celda) return;
+            sacarDeCelda(actual, celdaAnterior, id);
+        }
+        actual.celdas().computeIfAbsent(celda, c -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    public synchronized void quitar(long id) {
+        Contenido<T> actual = contenido;
+        Punto<T> anterior = actual.porId().remove(id);
+        if (anterior != null) sacarDeCelda(actual, celda(anterior.latitud(), anterior.longitud()), id);
+    }
+
+    /** Reemplaza todo el contenido (reconstrucción completa). */
+    public synchronized void reemplazar(List<Punto<T>> puntos) {
+        Map<Long, Punto<T>> porId = new ConcurrentHashMap<>();
+        Map<Long, Set<Long>> celdas = new ConcurrentHashMap<>();
+        for (Punto<T> p : puntos) {
+            porId.put(p.id(), p);
+            celdas.computeIfAbsent(celda(p.latitud(), p.longitud()), c -> ConcurrentHashMap.newKeySet()).add(p.id());
+        }
+        contenido = new Contenido<>(porId, celdas);
+    }
+
+    public Punto<T> obtener(long id) {
+        return contenido.porId().get(id);
+    }
+
+    public int tamaño() {
+        return contenido.porId().size();
+    }
+
+    /** Puntos dentro del rectángulo, los que cumplen el filtro. */
+    public List<Punto<T>> enArea(double latMin, double latMax, double lngMin, double lngMax, Predicate<T> filtro) {
+        Contenido<T> actual = contenido;
+        List<Punto<T>> resultado = new ArrayList<>();
+        for (Long celda : celdasEnArea(actual, latMin, latMax, lngMin, lngMax)) {
+            for (Long id : actual.celdas().getOrDefault(celda, Set.of())) {
+                Punto<T> p = actual.porId().get(id);
+                if (p != null && p.latitud() >= latMin && p.latitud() <= latMax && p.longitud() >= lngMin
+                        && p.longitud() <= lngMax && filtro.test(p.datos())) {
+                    resultado.add(p);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /** Puntos a menos de radioKm, del más cercano al más lejano. */
+    public List<Cercano<T>> enRadio(double latitud, double longitud, double radioKm, Predicate<T> filtro) {
+        double dLat = radioKm / KM_POR_GRADO;
+        double dLng = radioKm / (KM_POR_GRADO * Math.max(0.01, Math.cos(Math.toRadians(Math.min(89, Math.abs(latitud) + dLat)))));
+        List<Cercano<T>> resultado = new ArrayList<>();
+        for (Punto<T> p : enArea(latitud - dLat, latitud + dLat, longitud - dLng, longitud + dLng, filtro)) {
+            double km = OptimizadorRutaService.haversineKm(latitud, longitud, p.latitud(), p.longitud());
+            if (km <= radioKm) resultado.add(new Cercano<>(p, km));
+        }
+        resultado.sort(Comparator.comparingDouble(Cercano::distanciaKm));
+        return resultado;
+    }
+
+    /**
+     * Los {@code cantidad} puntos más cercanos (a lo sumo a maxKm). Recorre anillos de celdas alrededor del punto y
+     * corta cuando el próximo anillo ya no puede tener nada más cerca que el último encontrado.
+     */
+    public List<Cercano<T>> masCercanos(double latitud, double longitud, int cantidad, double maxKm, Predicate<T> filtro) {
+        Contenido<T> actual = contenido;
+        if (cantidad <= 0 || actual.porId().isEmpty()) return List.of();
+        PriorityQueue<Cercano<T>> mejores = new PriorityQueue<>(Comparator.comparingDouble((Cercano<T> c) -> c.distanciaKm()).reversed());
+        // Lado de celda más corto en km (el de longitud, achicado por la latitud)
+        double kmCelda = tamañoCelda * KM_POR_GRADO * Math.max(0.01, Math.cos(Math.toRadians(Math.min(89, Math.abs(latitud) + 1))));
+        int maxAnillo = (int) Math.min(Math.ceil(maxKm / kmCelda) + 1, 2_000);
+        long fila = (long) Math.floor(latitud / tamañoCelda);
+        long columna = (long) Math.floor(longitud / tamañoCelda);
+        for (int anillo = 0; anillo <= maxAnillo; anillo++) {
+            for (long f = fila - anillo; f <= fila + anillo; f++) {
+                boolean borde = f == fila - anillo || f == fila + anillo;
+                for (long c = columna - anillo; c <= columna + anillo; c += borde || anillo == 0 ? 1 : 2L * anillo) {
+                    for (Long id : actual.celdas().getOrDefault(clave(f, c), Set.of())) {
+                        Punto<T> p = actual.porId().get(id);
+                        if (p == null || !filtro.test(p.datos())) continue;
+                        double km = OptimizadorRutaService.haversineKm(latitud, longitud, p.latitud(), p.longitud());
+                        if (km > maxKm) continue;
+                        if (mejores.size() < cantidad) {
+                            mejores.add(new Cercano<>(p, km));
+                        } else if (km < mejores.peek().distanciaKm()) {
+                            mejores.poll();
+                            mejores.add(new Cercano<>(p, km));
+                        }
+                    }
+                }
+            }
+            // Lo que está más allá de este anillo está al menos a anillo celdas completas
+            if (mejores.size() == cantidad && mejores.peek().distanciaKm() <= anillo * kmCelda) break;
+            if (anillo * kmCelda > maxKm) break;
+        }
+        List<Cercano<T>> resultado = new ArrayList<>(mejores);
+        resultado.sort(Comparator.comparingDouble(Cercano::distanciaKm));
+        return resultado;
+    }
+
+    private Iterable<Long> celdasEnArea(Contenido<T> actual, double latMin, double latMax, double lngMin, double lngMax) {
+        long filaMin = (long) Math.floor(latMin / tamañoCelda);
+        long filaMax = (long) Math.floor(latMax / tamañoCelda);
+        long colMin = (long) Math.floor(lngMin / tamañoCelda);
+        long colMax = (long) Math.floor(lngMax / tamañoCelda);
+        long cantidad = (filaMax - filaMin + 1) * (colMax - colMin + 1);
+        if (cantidad <= 0) return List.of();
+        if (cantidad > MAX_CELDAS_RECORRIDO || cantidad > actual.celdas().size()) {
+            // Área grande (mapa alejado): es más barato mirar las celdas ocupadas
+            List<Long> ocupadas = new ArrayList<>();
+            for (Long celda : actual.celdas().keySet()) {
+                long f = fila(celda);
+                long c = columna(celda);
+                if (f >= filaMin && f <= filaMax && c >= colMin && c <= colMax) ocupadas.add(celda);
+            }
+            return ocupadas;
+        }
+        List<Long> resultado = new ArrayList<>((int) cantidad);
+        for (long f = filaMin; f <= filaMax; f++) {
+            for (long c = colMin; c <= colMax; c++) resultado.add(clave(f, c));
+        }
+        return resultado;
+    }
+
+    private static void sacarDeCelda(Contenido<?> actual, long celda, long id) {
+        actual.celdas().computeIfPresent(celda, (c, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private long celda(double latitud, double longitud) {
+        return clave((long) Math.floor(latitud / tamañoCelda), (long) Math.floor(longitud / tamañoCelda));
+    }
+
+    // Fila y columna en 32 bits cada una (con celdas de 0.001° alcanza de sobra para ±180°)
+    private static long clave(long fila, long columna) {
+        return (fila << 32) | (columna & 0xFFFFFFFFL);
+    }
+
+    private static long fila(long clave) {
+        return clave >> 32;
+    }
+
+    private static long columna(long clave) {
+        return (int) clave;
+    }
+}
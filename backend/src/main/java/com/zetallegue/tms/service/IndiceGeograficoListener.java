@@ -0,0 +1,33 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Envio;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA de {@link Envio}: mantiene el {@link IndiceGeograficoService} al día con cada alta, cambio o baja.
+ */
+@Component
+public class IndiceGeograficoListener {
+
+    // ObjectProvider: Hibernate crea el listener junto con el EntityManagerFactory, antes que los repositorios
+    private final ObjectProvider<IndiceGeograficoService> indiceGeograficoService;
+
+    public IndiceGeograficoListener(ObjectProvider<IndiceGeograficoService> indiceGeograficoService) {
+        this.indiceGeograficoService = indiceGeograficoService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void envioGuardado(Envio envio) {
+        indiceGeograficoService.getObject().envioModificado(envio, false);
+    }
+
+    @PostRemove
+    public void envioBorrado(Envio envio) {
+        indiceGeograficoService.getObject().envioModificado(envio, true);
+    }
+}
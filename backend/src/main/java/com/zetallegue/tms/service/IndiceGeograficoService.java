@@ -0,0 +1,348 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.ChoferCercanoDTO;
+import com.zetallegue.tms.dto.EnvioEnMapaDTO;
+import com.zetallegue.tms.dto.GrupoMapaDTO;
+import com.zetallegue.tms.dto.MapaEnviosDTO;
+import com.zetallegue.tms.model.Envio;
+import com.zetallegue.tms.model.Usuario;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.UsuarioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Índice espacial en memoria de los envíos pendientes (destino) y de los choferes (última ubicación), para las
+ * búsquedas del mapa y de reasignación: envíos a menos de R km de un punto, envíos en el área visible y choferes
+ * más cercanos a un envío. Así el mapa recibe solo lo que muestra en lugar de todos los puntos.
+ *
+ * Se carga al arrancar y se mantiene con las escrituras: los envíos por el listener JPA (al confirmarse la
+ * transacción) y las asignaciones masivas con {@link #refrescarEnvios}; los choferes con cada posición recibida.
+ * Cada {@code indice-geografico.reconstruccion-ms} se reconstruye desde la base para cubrir lo que no pase por ahí.
+ */
+@Service
+@Slf4j
+public class IndiceGeograficoService {
+
+    /** Celdas de 0.01° (~1 km) */
+    private static final double TAMAÑO_CELDA = 0.01;
+    private static final Set<String> ESTADOS_FINALES = Set.of("Entregado", "Cancelado");
+    private static final double MAX_RADIO_KM = 100;
+    private static final int MAX_LIMITE = 5000;
+    /** Con el mapa agrupado, el área visible se divide en a lo sumo esta cantidad de grupos por lado */
+    private static final int GRUPOS_POR_LADO = 40;
+    private static final int LOTE_IDS = 1000;
+
+    record EnvioIndexado(String tracking, String estado, String zonaEntrega, Long choferAsignadoId, String choferAsignadoNombre) {
+    }
+
+    record ChoferIndexado(Integer bateria, LocalDateTime fechaHora) {
+    }
+
+    private final EnvioRepository envioRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final UbicacionChoferService ubicacionChoferService;
+
+    private final GrillaGeografica<EnvioIndexado> envios = new GrillaGeografica<>(TAMAÑO_CELDA);
+    private final GrillaGeografica<ChoferIndexado> choferes = new GrillaGeografica<>(TAMAÑO_CELDA);
+    private final Object recursoTransaccion = new Object();
+    /** Cambios aplicados mientras se reconstruye, para no perderlos al reemplazar la grilla (null = quitar) */
+    private final Map<Long, GrillaGeografica.Punto<EnvioIndexado>> cambiosDuranteReconstruccion = new ConcurrentHashMap<>();
+    private volatile boolean reconstruyendo;
+
+    public IndiceGeograficoService(EnvioRepository envioRepository,
+                                   UsuarioRepository usuarioRepository,
+                                   UbicacionChoferService ubicacionChoferService) {
+        this.envioRepository = envioRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.ubicacionChoferService = ubicacionChoferService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        try {
+            reconstruir();
+        } catch (Exception e) {
+            log.error("Error cargando el índice geográfico: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${indice-geografico.reconstruccion-ms:600000}", initialDelayString = "${indice-geografico.reconstruccion-ms:600000}")
+    public void reconstruir() {
+        long comienzo = System.currentTimeMillis();
+        synchronized (this) {
+            reconstruyendo = true;
+            cambiosDuranteReconstruccion.clear();
+        }
+        try {
+            Map<Long, GrillaGeografica.Punto<EnvioIndexado>> puntos = new LinkedHashMap<>();
+            for (Object[] fila : envioRepository.findParaIndiceGeografico()) {
+                GrillaGeografica.Punto<EnvioIndexado> p = aPunto(fila);
+                if (p != null) puntos.put(p.id(), p);
+            }
+            synchronized (this) {
+                // Los cambios confirmados mientras se leía entran antes de publicar, para no verse un instante sin ellos
+                cambiosDuranteReconstruccion.forEach((id, p) -> {
+                    if (p.datos() == null) {
+                        puntos.remove(id);
+                    } else {
+                        puntos.put(id, p);
+                    }
+                });
+                envios.reemplazar(new ArrayList<>(puntos.values()));
+                cambiosDuranteReconstruccion.clear();
+                reconstruyendo = false;
+            }
+        } finally {
+            reconstruyendo = false;
+        }
+
+        List<GrillaGeografica.Punto<ChoferIndexado>> ubicados = new ArrayList<>();
+        for (Usuario chofer : usuarioRepository.findByPerfilAndHabilitadoTrueAndBloqueadoFalse("Chofer")) {
+            UbicacionChoferService.UbicacionActual u = ubicacionChoferService.ubicacionDe(chofer);
+            if (UbicacionChoferService.coordenadasValidas(u.latitud(), u.longitud())) {
+                ubicados.add(new GrillaGeografica.Punto<>(chofer.getId(), u.latitud(), u.longitud(), new ChoferIndexado(u.bateria(), u.fechaHora())));
+            }
+        }
+        choferes.reemplazar(ubicados);
+        log.info("Índice geográfico: {} envíos pendientes y {} choferes ubicados ({} ms)",
+                envios.tamaño(), choferes.tamaño(), System.currentTimeMillis() - comienzo);
+    }
+
+    /**
+     * Llamado por el listener JPA al guardar o borrar un envío. Dentro de una transacción el cambio se aplica al
+     * confirmarse (si se revierte no se aplica); la última versión de cada envío en la transacción es la que queda.
+     */
+    @SuppressWarnings("unchecked")
+    public void envioModificado(Envio envio, boolean borrado) {
+        if (envio.getId() == null) return;
+        GrillaGeografica.Punto<EnvioIndexado> punto = borrado ? null : aPunto(envio);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            aplicar(envio.getId(), punto);
+            return;
+        }
+        Map<Long, GrillaGeografica.Punto<EnvioIndexado>> delaTransaccion =
+                (Map<Long, GrillaGeografica.Punto<EnvioIndexado>>) TransactionSynchronizationManager.getResource(recursoTransaccion);
+        if (delaTransaccion == null) {
+            Map<Long, GrillaGeografica.Punto<EnvioIndexado>> nuevos = new LinkedHashMap<>();
+            delaTransaccion = nuevos;
+            TransactionSynchronizationManager.bindResource(recursoTransaccion, nuevos);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(recursoTransaccion);
+                    if (status == STATUS_COMMITTED) nuevos.forEach(IndiceGeograficoService.this::aplicar);
+                }
+            });
+        }
+        delaTransaccion.put(envio.getId(), punto);
+    }
+
+    /** Vuelve a leer de la base los envíos cambiados con updates masivos (que no pasan por el listener). */
+    public void refrescarEnvios(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return;
+        List<Long> copia = List.copyOf(ids);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            releer(copia);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    releer(copia);
+                } catch (RuntimeException e) {
+                    log.warn("No se pudo refrescar el índice geográfico de {} envíos (se corrige en la próxima reconstrucción): {}",
+                            copia.size(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Posición nueva de un chofer; se ignora si es más vieja que la que ya está en el índice. */
+    public void choferMovido(Long choferId, Double latitud, Double longitud, Integer bateria, LocalDateTime fechaHora) {
+        if (choferId == null || !UbicacionChoferService.coordenadasValidas(latitud, longitud)) return;
+        GrillaGeografica.Punto<ChoferIndexado> actual = choferes.obtener(choferId);
+        if (actual != null && actual.datos().fechaHora() != null && fechaHora != null && actual.datos().fechaHora().isAfter(fechaHora)) return;
+        Integer bateriaActual = bateria != null ? bateria : actual != null ? actual.datos().bateria() : null;
+        choferes.poner(choferId, latitud, longitud, new ChoferIndexado(bateriaActual, fechaHora));
+    }
+
+    public void choferQuitado(Long choferId) {
+        if (choferId != null) choferes.quitar(choferId);
+    }
+
+    /** Envíos pendientes a menos de radioKm del punto, del más cercano al más lejano. */
+    public List<EnvioEnMapaDTO> enviosCercanos(double latitud, double longitud, double radioKm, Integer limite, String estado, Long choferId) {
+        validarPunto(latitud, longitud);
+        if (radioKm <= 0 || radioKm > MAX_RADIO_KM) {
+            throw new IllegalArgumentException("El radio debe estar entre 0 y " + (int) MAX_RADIO_KM + " km");
+        }
+        return envios.enRadio(latitud, longitud, radioKm, filtroEnvios(estado, choferId)).stream()
+                .limit(limite(limite))
+                .map(c -> toDTO(c.punto(), c.distanciaKm()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Envíos pendientes dentro del área visible del mapa. Si pasan el límite se devuelven agrupados por cuadrícula
+     * (centro y cantidad de cada grupo), que es lo que el mapa muestra alejado.
+     */
+    public MapaEnviosDTO enviosEnArea(double latMin, double latMax, double lngMin, double lngMax, Integer limite, String estado, Long choferId) {
+        if (latMin > latMax || lngMin > lngMax) {
+            throw new IllegalArgumentException("Área inválida: los mínimos deben ser menores que los máximos");
+        }
+        List<GrillaGeografica.Punto<EnvioIndexado>> puntos = envios.enArea(latMin, latMax, lngMin, lngMax, filtroEnvios(estado, choferId));
+        int maximo = limite(limite);
+        if (puntos.size() <= maximo) {
+            List<EnvioEnMapaDTO> dtos = puntos.stream().map(p -> toDTO(p, null)).collect(Collectors.toList());
+            return new MapaEnviosDTO(puntos.size(), false, dtos, List.of());
+        }
+        double altoGrupo = Math.max((latMax - latMin) / GRUPOS_POR_LADO, 1e-6);
+        double anchoGrupo = Math.max((lngMax - lngMin) / GRUPOS_POR_LADO, 1e-6);
+        Map<Long, double[]> acumulados = new LinkedHashMap<>();
+        for (GrillaGeografica.Punto<EnvioIndexado> p : puntos) {
+            long fila = (long) ((p.latitud() - latMin) / altoGrupo);
+            long columna = (long) ((p.longitud() - lngMin) / anchoGrupo);
+            double[] acumulado = acumulados.computeIfAbsent(fila * (GRUPOS_POR_LADO + 1) + columna, k -> new double[3]);
+            acumulado[0] += p.latitud();
+            acumulado[1] += p.longitud();
+            acumulado[2]++;
+        }
+        List<GrupoMapaDTO> grupos = acumulados.values().stream()
+                .map(a -> new GrupoMapaDTO(a[0] / a[2], a[1] / a[2], (int) a[2]))
+                .collect(Collectors.toList());
+        return new MapaEnviosDTO(puntos.size(), true, List.of(), grupos);
+    }
+
+    /** Choferes habilitados más cercanos al destino del envío (para reasignar). */
+    public List<ChoferCercanoDTO> choferesCercanosAEnvio(Long envioId, int cantidad, Double maxKm, Integer maxMinutosUbicacion) {
+        GrillaGeografica.Punto<EnvioIndexado> enIndice = envios.obtener(envioId);
+        if (enIndice != null) {
+            return choferesCercanos(enIndice.latitud(), enIndice.longitud(), cantidad, maxKm, maxMinutosUbicacion);
+        }
+        Envio envio = envioRepository.findById(envioId)
+                .orElseThrow(() -> new IllegalArgumentException("Envío no encontrado"));
+        if (!UbicacionChoferService.coordenadasValidas(envio.getLatDestino(), envio.getLngDestino())) {
+            throw new IllegalArgumentException("El envío no tiene coordenadas de destino");
+        }
+        return choferesCercanos(envio.getLatDestino(), envio.getLngDestino(), cantidad, maxKm, maxMinutosUbicacion);
+    }
+
+    /**
+     * Choferes habilitados más cercanos al punto. Con maxMinutosUbicacion se descartan los que no reportan
+     * posición hace más de esos minutos.
+     */
+    public List<ChoferCercanoDTO> choferesCercanos(double latitud, double longitud, int cantidad, Double maxKm, Integer maxMinutosUbicacion) {
+        validarPunto(latitud, longitud);
+        int pedidos = Math.max(1, Math.min(cantidad, 100));
+        LocalDateTime desde = maxMinutosUbicacion != null ? LocalDateTime.now().minusMinutes(maxMinutosUbicacion) : null;
+        Predicate<ChoferIndexado> reciente = c -> desde == null || (c.fechaHora() != null && !c.fechaHora().isBefore(desde));
+        // Se piden de más por si alguno ya no está habilitado (el índice se corrige en la próxima reconstrucción)
+        List<GrillaGeografica.Cercano<ChoferIndexado>> cercanos = choferes.masCercanos(latitud, longitud, pedidos * 2,
+                maxKm != null ? maxKm : Double.MAX_VALUE, reciente);
+        if (cercanos.isEmpty()) return List.of();
+        Map<Long, Usuario> usuarios = usuarioRepository.findAllById(cercanos.stream().map(c -> c.punto().id()).collect(Collectors.toList()))
+                .stream().collect(Collectors.toMap(Usuario::getId, Function.identity()));
+        List<ChoferCercanoDTO> resultado = new ArrayList<>();
+        for (GrillaGeografica.Cercano<ChoferIndexado> c : cercanos) {
+            Usuario u = usuarios.get(c.punto().id());
+            if (u == null || !"Chofer".equals(u.getPerfil()) || !Boolean.TRUE.equals(u.getHabilitado()) || Boolean.TRUE.equals(u.getBloqueado())) continue;
+            GrillaGeografica.Punto<ChoferIndexado> p = c.punto();
+            resultado.add(new ChoferCercanoDTO(u.getId(), String.format("%s %s", u.getNombre(), u.getApellido()).trim(),
+                    p.latitud(), p.longitud(), p.datos().bateria(), p.datos().fechaHora(), c.distanciaKm()));
+            if (resultado.size() == pedidos) break;
+        }
+        return resultado;
+    }
+
+    private void releer(List<Long> ids) {
+        Set<Long> encontrados = new HashSet<>();
+        for (int i = 0; i < ids.size(); i += LOTE_IDS) {
+            for (Object[] fila : envioRepository.findParaIndiceGeograficoPorIds(ids.subList(i, Math.min(ids.size(), i + LOTE_IDS)))) {
+                Long id = (Long) fila[0];
+                encontrados.add(id);
+                aplicar(id, Boolean.TRUE.equals(fila[8]) ? null : aPunto(fila));
+            }
+        }
+        for (Long id : ids) {
+            if (!encontrados.contains(id)) aplicar(id, null);
+        }
+    }
+
+    private synchronized void aplicar(Long id, GrillaGeografica.Punto<EnvioIndexado> punto) {
+        if (reconstruyendo) cambiosDuranteReconstruccion.put(id, punto != null ? punto : sinPunto(id));
+        aplicarEnGrilla(id, punto);
+    }
+
+    private void aplicarEnGrilla(Long id, GrillaGeografica.Punto<EnvioIndexado> punto) {
+        if (punto == null || punto.datos() == null) {
+            envios.quitar(id);
+        } else {
+            envios.poner(id, punto.latitud(), punto.longitud(), punto.datos());
+        }
+    }
+
+    // ConcurrentHashMap no admite null: un punto sin datos marca la baja
+    private static GrillaGeografica.Punto<EnvioIndexado> sinPunto(Long id) {
+        return new GrillaGeografica.Punto<>(id, 0, 0, null);
+    }
+
+    /** Fila de findParaIndiceGeografico: [id, lat, lng, tracking, estado, zona, choferId, choferNombre, eliminado]. */
+    private static GrillaGeografica.Punto<EnvioIndexado> aPunto(Object[] fila) {
+        Double lat = (Double) fila[1];
+        Double lng = (Double) fila[2];
+        String estado = (String) fila[4];
+        if (!UbicacionChoferService.coordenadasValidas(lat, lng) || ESTADOS_FINALES.contains(estado)) return null;
+        return new GrillaGeografica.Punto<>((Long) fila[0], lat, lng,
+                new EnvioIndexado((String) fila[3], estado, (String) fila[5], (Long) fila[6], (String) fila[7]));
+    }
+
+    private static GrillaGeografica.Punto<EnvioIndexado> aPunto(Envio e) {
+        if (Boolean.TRUE.equals(e.getEliminado()) || ESTADOS_FINALES.contains(e.getEstado())
+                || !UbicacionChoferService.coordenadasValidas(e.getLatDestino(), e.getLngDestino())) {
+            return null;
+        }
+        return new GrillaGeografica.Punto<>(e.getId(), e.getLatDestino(), e.getLngDestino(),
+                new EnvioIndexado(e.getTracking(), e.getEstado(), e.getZonaEntrega(), e.getChoferAsignadoId(), e.getChoferAsignadoNombre()));
+    }
+
+    private static Predicate<EnvioIndexado> filtroEnvios(String estado, Long choferId) {
+        boolean conEstado = estado != null && !estado.isBlank();
+        return e -> (!conEstado || estado.equals(e.estado())) && (choferId == null || choferId.equals(e.choferAsignadoId()));
+    }
+
+    private static EnvioEnMapaDTO toDTO(GrillaGeografica.Punto<EnvioIndexado> p, Double distanciaKm) {
+        EnvioIndexado e = p.datos();
+        return new EnvioEnMapaDTO(p.id(), e.tracking(), e.estado(), e.zonaEntrega(), e.choferAsignadoId(),
+                e.choferAsignadoNombre(), p.latitud(), p.longitud(), distanciaKm);
+    }
+
+    private static int limite(Integer limite) {
+        return limite == null || limite <= 0 ? 500 : Math.min(limite, MAX_LIMITE);
+    }
+
+    private static void validarPunto(double latitud, double longitud) {
+        if (!UbicacionChoferService.coordenadasValidas(latitud, longitud)) {
+            throw new IllegalArgumentException("Coordenadas inválidas");
+        }
+    }
+}
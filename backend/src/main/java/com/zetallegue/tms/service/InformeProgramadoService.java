@@ -0,0 +1,275 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.InformeProgramadoDTO;
+import com.zetallegue.tms.dto.InformeRequestDTO;
+import com.zetallegue.tms.model.InformeProgramado;
+import com.zetallegue.tms.repository.InformeProgramadoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Informes recurrentes pre-generados.
+ *
+ * Los clientes piden todas las semanas / meses el mismo informe (mismos destinatarios, formato y tomarEnvios) y
+ * todos a la misma hora. Cada definición se genera una vez por período cerrado, de madrugada
+ * ({@code informes.programados.cron}, 03:00 por defecto), con la lógica de {@link InformeService}, y queda en
+ * {@link AlmacenInformes} hasta que la reemplaza la del período siguiente. Las generaciones corren de a una en un
+ * hilo propio para no competir con los informes a pedido ni trabar las otras tareas programadas. Si una
+ * generación falla se conserva el archivo anterior y se reintenta en la próxima corrida.
+ */
+@Service
+@Slf4j
+public class InformeProgramadoService {
+
+    private static final String PREFIJO_CLAVE = "programado-";
+    private static final DateTimeFormatter FMT_CLAVE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Set<String> FRECUENCIAS = Set.of(InformeProgramado.FRECUENCIA_SEMANAL, InformeProgramado.FRECUENCIA_MENSUAL);
+    private static final Set<String> TIPOS_DESTINATARIO = Set.of("GRUPOS", "CUENTAS", "TODOS_GRUPOS", "TODAS_CUENTAS");
+
+    private final InformeProgramadoRepository informeProgramadoRepository;
+    private final InformeService informeService;
+    private final AlmacenInformes almacenInformes;
+    private final ExecutorService executor;
+    /** Definiciones con una generación encolada o en curso, para no encolarlas dos veces. */
+    private final Set<Long> enCola = ConcurrentHashMap.newKeySet();
+
+    public InformeProgramadoService(InformeProgramadoRepository informeProgramadoRepository,
+                                    InformeService informeService,
+                                    AlmacenInformes almacenInformes) {
+        this.informeProgramadoRepository = informeProgramadoRepository;
+        this.informeService = informeService;
+        this.almacenInformes = almacenInformes;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "informe-programado");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public List<InformeProgramadoDTO> listar() {
+        return informeProgramadoRepository.findAll().stream().map(this::toDTO).collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public InformeProgramadoDTO obtenerPorId(Long id) {
+        return toDTO(obtener(id));
+    }
+
+    /** Lanza IllegalArgumentException si la definición es inválida. */
+    @Transactional
+    public InformeProgramadoDTO crear(InformeProgramadoDTO dto) {
+        InformeProgramado programado = new InformeProgramado();
+        aplicar(dto, programado);
+        return toDTO(informeProgramadoRepository.save(programado));
+    }
+
+    /** Cambiar la definición no borra el último archivo: se reemplaza en la próxima generación. */
+    @Transactional
+    public InformeProgramadoDTO actualizar(Long id, InformeProgramadoDTO dto) {
+        InformeProgramado programado = obtener(id);
+        aplicar(dto, programado);
+        return toDTO(informeProgramadoRepository.save(programado));
+    }
+
+    @Transactional
+    public void eliminar(Long id) {
+        InformeProgramado programado = obtener(id);
+        informeProgramadoRepository.delete(programado);
+        if (programado.getUltimaClave() != null) {
+            almacenInformes.eliminar(programado.getUltimaClave());
+        }
+    }
+
+    /** Encola la generación del período cerrado anterior aunque ya esté generado (por ejemplo, después de corregir envíos). */
+    public InformeProgramadoDTO generarAhora(Long id) {
+        InformeProgramado programado = obtener(id);
+        encolar(programado.getId());
+        return toDTO(programado);
+    }
+
+    /**
+     * Último archivo generado. Lanza RuntimeException si la definición no existe
+     * e IllegalStateException si todavía no se generó ningún período.
+     */
+    public InformeTrabajoService.ArchivoInforme obtenerArchivo(Long id) {
+        InformeProgramado programado = obtener(id);
+        if (programado.getUltimaClave() == null) {
+            throw new IllegalStateException("El informe programado todavía no se generó");
+        }
+        Resource recurso = almacenInformes.obtener(programado.getUltimaClave())
+                .orElseThrow(() -> new RuntimeException("Archivo no encontrado para el informe programado: " + id));
+        return new InformeTrabajoService.ArchivoInforme(recurso, programado.getUltimoNombreArchivo(), programado.getUltimoContentType());
+    }
+
+    /** Encola las definiciones activas cuyo período cerrado anterior todavía no se generó (o falló). */
+    @Scheduled(cron = "${informes.programados.cron:0 0 3 * * ?}")
+    public void generarPendientes() {
+        LocalDate hoy = LocalDate.now();
+        int encolados = 0;
+        for (InformeProgramado programado : informeProgramadoRepository.findByActivoTrueOrderByIdAsc()) {
+            LocalDate[] periodo = periodoAnterior(programado.getFrecuencia(), hoy);
+            boolean generado = periodo[1].equals(programado.getUltimaFechaHasta()) && programado.getUltimoError() == null;
+            if (!generado && encolar(programado.getId())) encolados++;
+        }
+        if (encolados > 0) {
+            log.info("[Informe programado] {} informes encolados para generar", encolados);
+        }
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    private boolean encolar(Long id) {
+        if (!enCola.add(id)) return false;
+        executor.submit(() -> {
+            try {
+                generar(id);
+            } finally {
+                enCola.remove(id);
+            }
+        });
+        return true;
+    }
+
+    private void generar(Long id) {
+        InformeProgramado programado = informeProgramadoRepository.findById(id).orElse(null);
+        if (programado == null) return;
+        LocalDate[] periodo = periodoAnterior(programado.getFrecuencia(), LocalDate.now());
+        InformeRequestDTO req = new InformeRequestDTO(periodo[0], periodo[1], programado.getTipoDestinatario(),
+                aLista(programado.getIdsGrupos()), aLista(programado.getIdsCuentas()),
+                programado.getFormato(), programado.getTomarEnvios());
+        // Clave nueva en cada generación: regenerar un período no pisa el archivo vigente hasta que la nueva termina bien
+        String clave = PREFIJO_CLAVE + id + "-" + periodo[0].format(FMT_CLAVE) + "-" + System.currentTimeMillis();
+        long inicio = System.currentTimeMillis();
+        try {
+            InformeService.InformePreparado informe = informeService.prepararInforme(req);
+            try (AlmacenInformes.ArchivoNuevo out = almacenInformes.crear(clave)) {
+                informe.escribir(out);
+                out.confirmar();
+            }
+            Long tamanio = almacenInformes.obtener(clave).map(InformeProgramadoService::tamanio).orElse(null);
+            // Se relee la definición: pudo editarse o eliminarse mientras se generaba
+            InformeProgramado actual = informeProgramadoRepository.findById(id).orElse(null);
+            if (actual == null) {
+                almacenInformes.eliminar(clave);
+                return;
+            }
+            String anterior = actual.getUltimaClave();
+            actual.setUltimaFechaDesde(periodo[0]);
+            actual.setUltimaFechaHasta(periodo[1]);
+            actual.setUltimaGeneracion(LocalDateTime.now());
+            actual.setUltimaClave(clave);
+            actual.setUltimoNombreArchivo(informe.getNombre());
+            actual.setUltimoContentType(informe.getContentType());
+            actual.setUltimoTamanio(tamanio);
+            actual.setUltimoError(null);
+            informeProgramadoRepository.save(actual);
+            if (anterior != null) {
+                almacenInformes.eliminar(anterior);
+            }
+            log.info("[Informe programado] '{}' {} - {} generado en {} ms ({} bytes)", programado.getNombre(),
+                    periodo[0], periodo[1], System.currentTimeMillis() - inicio, tamanio);
+        } catch (Exception e) {
+            log.error("[Informe programado] Error generando '{}': {}", programado.getNombre(), e.getMessage(), e);
+            almacenInformes.eliminar(clave);
+            informeProgramadoRepository.findById(id).ifPresent(actual -> {
+                actual.setUltimoError(e.getMessage() != null ? truncar(e.getMessage(), 1000) : e.getClass().getSimpleName());
+                informeProgramadoRepository.save(actual);
+            });
+        }
+    }
+
+    /** [desde, hasta] del último período cerrado: lunes a domingo de la semana anterior o el mes calendario anterior. */
+    static LocalDate[] periodoAnterior(String frecuencia, LocalDate hoy) {
+        if (InformeProgramado.FRECUENCIA_MENSUAL.equals(frecuencia)) {
+            LocalDate primeroDelMes = hoy.withDayOfMonth(1);
+            return new LocalDate[]{primeroDelMes.minusMonths(1), primeroDelMes.minusDays(1)};
+        }
+        LocalDate lunes = hoy.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return new LocalDate[]{lunes.minusWeeks(1), lunes.minusDays(1)};
+    }
+
+    private InformeProgramado obtener(Long id) {
+        return informeProgramadoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Informe programado no encontrado con id: " + id));
+    }
+
+    private void aplicar(InformeProgramadoDTO dto, InformeProgramado programado) {
+        if (dto.getNombre() == null || dto.getNombre().trim().isEmpty()) {
+            throw new IllegalArgumentException("El nombre del informe programado es obligatorio");
+        }
+        String frecuencia = dto.getFrecuencia() != null ? dto.getFrecuencia().trim().toUpperCase(Locale.ROOT) : "";
+        if (!FRECUENCIAS.contains(frecuencia)) {
+            throw new IllegalArgumentException("frecuencia debe ser SEMANAL o MENSUAL");
+        }
+        String tipo = dto.getTipoDestinatario() != null ? dto.getTipoDestinatario().trim().toUpperCase(Locale.ROOT) : "";
+        if (!TIPOS_DESTINATARIO.contains(tipo)) {
+            throw new IllegalArgumentException("tipoDestinatario debe ser GRUPOS, CUENTAS, TODOS_GRUPOS o TODAS_CUENTAS");
+        }
+        if ("GRUPOS".equals(tipo) && (dto.getIdsGrupos() == null || dto.getIdsGrupos().isEmpty())) {
+            throw new IllegalArgumentException("Seleccioná al menos un grupo");
+        }
+        if ("CUENTAS".equals(tipo) && (dto.getIdsCuentas() == null || dto.getIdsCuentas().isEmpty())) {
+            throw new IllegalArgumentException("Seleccioná al menos una cuenta");
+        }
+        programado.setNombre(dto.getNombre().trim());
+        programado.setFrecuencia(frecuencia);
+        programado.setTipoDestinatario(tipo);
+        programado.setIdsGrupos("GRUPOS".equals(tipo) ? aTexto(dto.getIdsGrupos()) : null);
+        programado.setIdsCuentas("CUENTAS".equals(tipo) ? aTexto(dto.getIdsCuentas()) : null);
+        programado.setFormato(dto.getFormato());
+        programado.setTomarEnvios(dto.getTomarEnvios());
+        programado.setActivo(dto.getActivo() == null || dto.getActivo());
+    }
+
+    private InformeProgramadoDTO toDTO(InformeProgramado p) {
+        String url = p.getUltimaClave() != null ? "/api/informes/programados/" + p.getId() + "/descarga" : null;
+        return new InformeProgramadoDTO(p.getId(), p.getNombre(), p.getFrecuencia(), p.getTipoDestinatario(),
+                aLista(p.getIdsGrupos()), aLista(p.getIdsCuentas()), p.getFormato(), p.getTomarEnvios(), p.getActivo(),
+                p.getUltimaFechaDesde(), p.getUltimaFechaHasta(), p.getUltimaGeneracion(), p.getUltimoNombreArchivo(),
+                p.getUltimoTamanio(), p.getUltimoError(), url);
+    }
+
+    private static String aTexto(List<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private static List<Long> aLista(String ids) {
+        if (ids == null || ids.isBlank()) return null;
+        return new ArrayList<>(Arrays.stream(ids.split(",")).map(String::trim).filter(s -> !s.isEmpty()).map(Long::valueOf).toList());
+    }
+
+    private static String truncar(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max);
+    }
+
+    private static Long tamanio(Resource recurso) {
+        try {
+            return recurso.contentLength();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -3,11 +3,12 @@ package com.zetallegue.tms.service;
 import com.zetallegue.tms.dto.InformeRequestDTO;
 import com.zetallegue.tms.dto.InformeResultDTO;
 import com.zetallegue.tms.model.Cliente;
+import com.zetallegue.tms.model.ColectaDiaria;
 import com.zetallegue.tms.model.Envio;
 import com.zetallegue.tms.model.Grupo;
+import com.zetallegue.tms.model.Importes;
 import com.zetallegue.tms.model.ListaPrecio;
 import com.zetallegue.tms.model.Zona;
-import com.zetallegue.tms.repository.ClienteRepository;
 import com.zetallegue.tms.repository.EnvioRepository;
 import com.zetallegue.tms.repository.GrupoRepository;
 import com.zetallegue.tms.repository.ListaPrecioRepository;
@@ -19,6 +20,7 @@ import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
@@ -29,23 +31,43 @@ import com.lowagie.text.PageSize;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.Phrase;
 import com.lowagie.text.pdf.ColumnText;
-import com.lowagie.text.pdf.PdfContentByte;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfPageEventHelper;
+import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.PdfWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.awt.Color;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -62,31 +84,70 @@ public class InformeService {
     public static final String FORMATO_PDF = "PDF";
     public static final String TOMAR_SOLO_ENTREGADOS = "SOLO_ENTREGADOS";
     public static final String TOMAR_RETIRADOS_EXCEPTO = "RETIRADOS_EXCEPTO_RECHAZADOS_CANCELADOS";
-    private static final String ESTADO_ENTREGADO = "Entregado";
-    private static final String ESTADO_RECHAZADO = "Rechazado por el comprador";
-    private static final String ESTADO_CANCELADO = "Cancelado";
     private static final DateTimeFormatter FMT_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
     private static final DateTimeFormatter FMT_DATETIME = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
     /** Formato de fecha seguro para nombres de archivo (sin barras). */
     private static final DateTimeFormatter FMT_ARCHIVO = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    /** Ventana de filas por hoja que SXSSF mantiene en memoria antes de volcar a disco. */
+    private static final int FILAS_EXCEL_EN_MEMORIA = 200;
+    /** Prefijo en el almacén de los archivos de target guardados por huella. */
+    private static final String PREFIJO_CACHE_RENDER = "render-";
+    /** Se incrementa cuando cambia el formato de los archivos, para no reutilizar los renderizados con el formato anterior. */
+    private static final int VERSION_RENDER = 1;
 
     private final EnvioRepository envioRepository;
-    private final ClienteRepository clienteRepository;
     private final GrupoRepository grupoRepository;
     private final ListaPrecioRepository listaPrecioRepository;
+    private final DirectorioClientesService directorioClientesService;
+    private final ColectaDiariaService colectaDiariaService;
+    private final AlmacenInformes almacenInformes;
+
+    /** Archivos de un informe multi-destinatario que se renderizan a la vez (0 = núcleos disponibles). */
+    @Value("${informes.render.concurrencia:0}")
+    private int concurrenciaConfigurada;
+    private int concurrenciaRender;
+    private ExecutorService renderPool;
+    /** Horas que se conservan los archivos renderizados por huella para reutilizarlos (0 = sin reutilización). */
+    @Value("${informes.render.cache-horas:72}")
+    private long horasCacheRender;
+
+    @PostConstruct
+    void iniciarPoolRender() {
+        concurrenciaRender = concurrenciaConfigurada > 0 ? concurrenciaConfigurada : Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger numero = new AtomicInteger();
+        renderPool = Executors.newFixedThreadPool(concurrenciaRender, r -> {
+            Thread t = new Thread(r, "informe-render-" + numero.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("[Informe] Pool de render con {} hilos", concurrenciaRender);
+    }
+
+    @PreDestroy
+    void detenerPoolRender() {
+        renderPool.shutdownNow();
+    }
 
     /**
-     * Genera el informe según la solicitud. Retorna archivo único (Excel o PDF) o ZIP con varios archivos + resumen,
+     * Genera el informe completo en memoria. Retorna archivo único (Excel o PDF) o ZIP con varios archivos + resumen,
      * y el nombre sugerido para la descarga (informe_cliente/grupo_fechainicio_fechafin.ext o informe_fechas.zip).
+     * Para descargas conviene {@link #prepararInforme} + {@link InformePreparado#escribir}, que no arma el archivo en memoria.
      */
     @Transactional(readOnly = true)
     public InformeResultDTO generarInforme(InformeRequestDTO req) throws IOException, DocumentException {
-        if (req.getFechaDesde() == null || req.getFechaHasta() == null) {
-            throw new IllegalArgumentException("fechaDesde y fechaHasta son obligatorios");
-        }
-        if (req.getFechaDesde().isAfter(req.getFechaHasta())) {
-            throw new IllegalArgumentException("fechaDesde no puede ser posterior a fechaHasta");
-        }
+        InformePreparado informe = prepararInforme(req);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        informe.escribir(out);
+        return new InformeResultDTO(out.toByteArray(), informe.getNombre());
+    }
+
+    /**
+     * Resuelve todo lo que requiere base de datos (envíos, targets, resúmenes, precios por zona) y devuelve el informe
+     * listo para escribirse en un stream. Lanza IllegalArgumentException si la solicitud es inválida.
+     */
+    @Transactional(readOnly = true)
+    public InformePreparado prepararInforme(InformeRequestDTO req) {
+        validarSolicitud(req);
 
         LocalDateTime desde = req.getFechaDesde().atStartOfDay();
         LocalDateTime hasta = req.getFechaHasta().atTime(23, 59, 59, 999_000_000);
@@ -101,7 +162,14 @@ public class InformeService {
             }
         }
 
-        List<Target> targets = resolveTargets(req);
+        // Totales para los resúmenes: de la tabla de hechos diarios si ya está cargada, si no con un GROUP BY sobre envios
+        List<AgregadoColecta> agregados = colectaDiariaService.disponible()
+                ? colectaDiariaService.obtener(req.getFechaDesde(), req.getFechaHasta()).stream().map(AgregadoColecta::desdeHecho).toList()
+                : envioRepository.resumirColectadosEntreFechas(desde, hasta).stream().map(AgregadoColecta::desdeFila).toList();
+
+        // Clientes, grupos y listas de precios se cargan una vez por informe; los targets se resuelven en memoria
+        CatalogoInforme catalogo = cargarCatalogo(req);
+        List<Target> targets = resolveTargets(req, catalogo);
         if (targets.isEmpty()) {
             throw new IllegalArgumentException("No hay destinatarios seleccionados");
         }
@@ -115,59 +183,297 @@ public class InformeService {
         String tomarEnvios = req.getTomarEnvios() != null ? req.getTomarEnvios().toUpperCase(Locale.ROOT) : TOMAR_RETIRADOS_EXCEPTO;
         boolean esExcel = FORMATO_EXCEL.equals(formato);
 
-        List<ReportFile> reportes = new ArrayList<>();
         List<ResumenFila> resumenFilas = new ArrayList<>();
 
         boolean unSoloDestinatario = targets.size() == 1;
         String ext = esExcel ? "xlsx" : "pdf";
         String sufijoFechas = req.getFechaDesde().format(FMT_ARCHIVO) + "_" + req.getFechaHasta().format(FMT_ARCHIVO);
 
-        for (Target target : targets) {
-            List<Envio> envios = filtrarEnviosParaTarget(todosColectados, target, tomarEnvios);
-            List<Envio> rechazadosCancelados = Collections.emptyList();
-            if (TOMAR_RETIRADOS_EXCEPTO.equals(tomarEnvios)) {
-                rechazadosCancelados = todosColectados.stream()
-                        .filter(e -> perteneceATarget(e.getCliente(), target))
-                        .filter(e -> ESTADO_RECHAZADO.equals(e.getEstado()) || ESTADO_CANCELADO.equals(e.getEstado()))
-                        .collect(Collectors.toList());
+        // Una sola pasada: cada envío (y cada fila agregada) va al balde de los targets a los que pertenece
+        IndiceTargets indice = new IndiceTargets(targets);
+        boolean separarRechazados = TOMAR_RETIRADOS_EXCEPTO.equals(tomarEnvios);
+        List<List<Envio>> enviosPorTarget = listasVacias(targets.size());
+        List<List<Envio>> rechazadosPorTarget = listasVacias(targets.size());
+        for (Envio e : todosColectados) {
+            int[] indices = indice.targetsDe(e.getCliente());
+            if (indices.length == 0) continue;
+            String estadoGrupo = ColectaDiaria.grupoDeEstado(e.getEstado());
+            boolean incluido = estadoIncluido(estadoGrupo, tomarEnvios);
+            boolean rechazado = separarRechazados && ColectaDiaria.ESTADO_RECHAZADO_CANCELADO.equals(estadoGrupo);
+            for (int i : indices) {
+                if (incluido) enviosPorTarget.get(i).add(e);
+                if (rechazado) rechazadosPorTarget.get(i).add(e);
+            }
+        }
+        List<List<AgregadoColecta>> agregadosPorTarget = listasVacias(targets.size());
+        for (AgregadoColecta a : agregados) {
+            if (!estadoIncluido(a.estadoGrupo(), tomarEnvios)) continue;
+            for (int i : indice.targetsDe(a.cliente())) {
+                agregadosPorTarget.get(i).add(a);
             }
+        }
+
+        // Lo que requiere base de datos se resuelve acá, dentro de la transacción; el render no toca la base
+        List<TrabajoRender> trabajos = new ArrayList<>(targets.size());
+        for (int t = 0; t < targets.size(); t++) {
+            Target target = targets.get(t);
+            List<Envio> envios = enviosPorTarget.get(t);
+            List<Envio> rechazadosCancelados = rechazadosPorTarget.get(t);
             log.info("[Informe] Target '{}' codigos={} -> envíos filtrados: {}, rechazados/cancelados: {}", target.nombre, target.codigos, envios.size(), rechazadosCancelados.size());
-            ResumenData resumen = buildResumen(envios);
-            Map<String, String> preciosPorZona = obtenerPreciosPorZonaParaTarget(target);
+            ResumenData resumen = buildResumen(agregadosPorTarget.get(t));
+            Map<String, String> preciosPorZona = catalogo.preciosPorZona(target);
             String nombreSeguro;
             if (unSoloDestinatario) {
                 nombreSeguro = "informe_" + slugParaArchivo(target.nombre) + "_" + sufijoFechas + "." + ext;
             } else {
                 nombreSeguro = sanitizeFileName(target.nombre) + "." + ext;
             }
-            byte[] contenido = esExcel
-                    ? generarExcel(envios, resumen, target.nombre, req.getFechaDesde(), req.getFechaHasta(), rechazadosCancelados, target.esGrupo())
-                    : generarPdf(envios, resumen, target.nombre, req.getFechaDesde(), req.getFechaHasta(), preciosPorZona, target.esGrupo(), rechazadosCancelados);
-            reportes.add(new ReportFile(nombreSeguro, contenido));
+            String huella = calcularHuella(target, nombreSeguro, esExcel, tomarEnvios, req.getFechaDesde(), req.getFechaHasta(),
+                    envios, rechazadosCancelados, resumen, preciosPorZona);
+            trabajos.add(new TrabajoRender(target, nombreSeguro, envios, rechazadosCancelados, resumen, preciosPorZona, huella));
             resumenFilas.add(new ResumenFila(target.nombre, envios.size(), resumen.precioTotal));
         }
 
-        if (reportes.size() == 1) {
-            return new InformeResultDTO(reportes.get(0).contenido, reportes.get(0).nombre);
+        String nombre = unSoloDestinatario ? trabajos.get(0).nombreArchivo() : "informe_" + sufijoFechas + ".zip";
+        return new InformePreparado(nombre, esExcel, req.getFechaDesde(), req.getFechaHasta(), trabajos, resumenFilas);
+    }
+
+    /**
+     * Informe con los datos ya resueltos. {@link #escribir} no accede a la base: el archivo único se escribe directo
+     * en el stream y, con varios destinatarios, cada archivo entra al ZIP apenas se termina de renderizar.
+     */
+    public final class InformePreparado {
+        private final String nombre;
+        private final boolean esExcel;
+        private final LocalDate fechaDesde;
+        private final LocalDate fechaHasta;
+        private final List<TrabajoRender> trabajos;
+        private final List<ResumenFila> resumenFilas;
+
+        private InformePreparado(String nombre, boolean esExcel, LocalDate fechaDesde, LocalDate fechaHasta,
+                                 List<TrabajoRender> trabajos, List<ResumenFila> resumenFilas) {
+            this.nombre = nombre;
+            this.esExcel = esExcel;
+            this.fechaDesde = fechaDesde;
+            this.fechaHasta = fechaHasta;
+            this.trabajos = trabajos;
+            this.resumenFilas = resumenFilas;
+        }
+
+        /** Nombre sugerido para la descarga. */
+        public String getNombre() {
+            return nombre;
+        }
+
+        /** Archivos de destinatario que genera (sin contar el resumen del ZIP). */
+        public int getCantidadArchivos() {
+            return trabajos.size();
+        }
+
+        public boolean esZip() {
+            return trabajos.size() > 1;
+        }
+
+        public String getContentType() {
+            if (esZip()) return "application/zip";
+            return esExcel ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet" : "application/pdf";
+        }
+
+        /** Escribe el informe en el stream sin cerrarlo. */
+        public void escribir(OutputStream out) throws IOException, DocumentException {
+            escribir(out, () -> { });
         }
 
-        ByteArrayOutputStream zipOut = new ByteArrayOutputStream();
-        try (ZipOutputStream zos = new ZipOutputStream(zipOut)) {
-            for (ReportFile rf : reportes) {
+        /** Igual que {@link #escribir(OutputStream)}, avisando cada vez que se termina de escribir un archivo de destinatario. */
+        public void escribir(OutputStream out, Runnable archivoEscrito) throws IOException, DocumentException {
+            if (!esZip()) {
+                escribirArchivo(trabajos.get(0), esExcel, fechaDesde, fechaHasta, out);
+                out.flush();
+                archivoEscrito.run();
+                return;
+            }
+            ZipOutputStream zos = new ZipOutputStream(out);
+            escribirReportesEnParalelo(trabajos, esExcel, fechaDesde, fechaHasta, zos, archivoEscrito);
+            zos.putNextEntry(new ZipEntry("resumen.xlsx"));
+            escribirExcelResumen(resumenFilas, fechaDesde, fechaHasta, zos);
+            zos.closeEntry();
+            zos.finish();
+            zos.flush();
+        }
+    }
+
+    private void escribirArchivo(TrabajoRender trabajo, boolean esExcel, LocalDate fechaDesde, LocalDate fechaHasta,
+                                 OutputStream out) throws IOException, DocumentException {
+        Target target = trabajo.target();
+        if (esExcel) {
+            escribirExcel(trabajo.envios(), trabajo.resumen(), target.nombre, fechaDesde, fechaHasta, trabajo.rechazadosCancelados(), target.esGrupo(), out);
+        } else {
+            escribirPdf(trabajo.envios(), trabajo.resumen(), target.nombre, fechaDesde, fechaHasta, trabajo.preciosPorZona(), target.esGrupo(), trabajo.rechazadosCancelados(), out);
+        }
+    }
+
+    /** Validaciones de la solicitud que no requieren base de datos; lanza IllegalArgumentException. */
+    public void validarSolicitud(InformeRequestDTO req) {
+        if (req.getFechaDesde() == null || req.getFechaHasta() == null) {
+            throw new IllegalArgumentException("fechaDesde y fechaHasta son obligatorios");
+        }
+        if (req.getFechaDesde().isAfter(req.getFechaHasta())) {
+            throw new IllegalArgumentException("fechaDesde no puede ser posterior a fechaHasta");
+        }
+    }
+
+    /**
+     * Archivo de un target de un informe multi-destinatario. Si ya se renderizó uno con la misma huella (mismas
+     * entradas) se reutiliza el guardado; si no, se renderiza y se guarda para la próxima corrida.
+     */
+    private ReportFile renderizar(TrabajoRender trabajo, boolean esExcel, LocalDate fechaDesde, LocalDate fechaHasta) throws IOException, DocumentException {
+        String clave = horasCacheRender > 0 ? PREFIJO_CACHE_RENDER + trabajo.huella() : null;
+        if (clave != null) {
+            Optional<Resource> guardado = almacenInformes.obtener(clave);
+            if (guardado.isPresent()) {
+                try (InputStream in = guardado.get().getInputStream()) {
+                    return new ReportFile(trabajo.nombreArchivo(), in.readAllBytes(), true);
+                } catch (IOException e) {
+                    log.warn("[Informe] No se pudo leer el archivo guardado {}, se renderiza de nuevo: {}", clave, e.getMessage());
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        escribirArchivo(trabajo, esExcel, fechaDesde, fechaHasta, out);
+        byte[] contenido = out.toByteArray();
+        if (clave != null) {
+            try (AlmacenInformes.ArchivoNuevo guardar = almacenInformes.crear(clave)) {
+                guardar.write(contenido);
+                guardar.confirmar();
+            } catch (IOException | RuntimeException e) {
+                log.warn("[Informe] No se pudo guardar el archivo renderizado {}: {}", clave, e.getMessage());
+            }
+        }
+        return new ReportFile(trabajo.nombreArchivo(), contenido, false);
+    }
+
+    /** Elimina los archivos renderizados por huella que superaron {@code informes.render.cache-horas}. */
+    @Scheduled(fixedDelay = 60 * 60 * 1000, initialDelay = 5 * 60 * 1000)
+    public void limpiarCacheRender() {
+        if (horasCacheRender <= 0) return;
+        int eliminados = almacenInformes.eliminarAnterioresA(PREFIJO_CACHE_RENDER, Instant.now().minusSeconds(horasCacheRender * 3600));
+        if (eliminados > 0) {
+            log.info("[Informe] {} archivos renderizados vencidos eliminados", eliminados);
+        }
+    }
+
+    /**
+     * Huella de todo lo que define el archivo de un target: parámetros del informe, envíos y rechazados (cantidad y
+     * una suma, que no depende del orden, de los textos que el renderer del formato muestra de cada uno), resumen y
+     * tarifas por zona (la "versión" de la lista de precios es su contenido). Si la huella no cambia entre corridas,
+     * el archivo tampoco.
+     */
+    private static String calcularHuella(Target target, String nombreArchivo, boolean esExcel, String tomarEnvios,
+                                         LocalDate fechaDesde, LocalDate fechaHasta, List<Envio> envios,
+                                         List<Envio> rechazadosCancelados, ResumenData resumen, Map<String, String> preciosPorZona) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append(VERSION_RENDER).append('|').append(esExcel).append('|').append(target.nombre()).append('|').append(target.esGrupo())
+                .append('|').append(nombreArchivo).append('|').append(tomarEnvios).append('|').append(fechaDesde).append('|').append(fechaHasta);
+        agregarFirmaEnvios(sb, envios, e -> esExcel ? camposDetalleExcel(e) : camposDetallePdf(e));
+        agregarFirmaEnvios(sb, rechazadosCancelados, e -> camposRechazado(e, esExcel ? FMT_DATETIME : FMT_DATE));
+        sb.append('|').append(resumen.cantidadEnvios).append('|').append(resumen.precioTotal).append('|').append(resumen.efectivo);
+        resumen.porDiaZona.forEach((dia, zonas) -> zonas.values().forEach(zd ->
+                sb.append('|').append(dia).append(':').append(zd.zona).append(':').append(zd.cantidad).append(':').append(zd.precio)));
+        sb.append('|').append(new TreeMap<>(preciosPorZona));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void agregarFirmaEnvios(StringBuilder sb, List<Envio> envios, Function<Envio, Object[]> campos) {
+        long suma = 0;
+        for (Envio e : envios) {
+            // El id fija el orden de las filas (los envíos vienen ordenados por id)
+            int h = 31 * Long.hashCode(e.getId() != null ? e.getId() : 0) + Arrays.hashCode(campos.apply(e));
+            // Mezcla a 64 bits para que la suma no colisione con facilidad
+            long x = h * 0x9E3779B97F4A7C15L;
+            suma += x ^ (x >>> 31);
+        }
+        sb.append('|').append(envios.size()).append('|').append(suma);
+    }
+
+    /** Celdas de la hoja Detalle de {@link #escribirExcel}. */
+    private static Object[] camposDetalleExcel(Envio e) {
+        return new Object[]{e.getTracking(), e.getCliente(), textoFecha(e, FMT_DATETIME), e.getEstado(), e.getZonaEntrega(),
+                e.getNombreDestinatario(), e.getDireccion(), e.getCostoEnvio(), e.getTotalACobrar()};
+    }
+
+    /** Celdas de las tablas Detalle y Cobros a destino de {@link #escribirPdf}. */
+    private static Object[] camposDetallePdf(Envio e) {
+        String cobro = e.getTotalACobrarNum() != null && e.getTotalACobrarNum().signum() > 0
+                ? String.format("%.2f", Importes.aDouble(e.getTotalACobrarNum())) : null;
+        return new Object[]{e.getTracking(), textoFecha(e, FMT_DATE), e.getCliente(), e.getDireccion(), e.getLocalidad(),
+                String.format("%.2f", Importes.aDouble(e.getCostoEnvioNum())), cobro};
+    }
+
+    /** Celdas de la tabla de rechazados y cancelados (mismas columnas en Excel y PDF, cambia el formato de fecha). */
+    private static Object[] camposRechazado(Envio e, DateTimeFormatter formatoFecha) {
+        return new Object[]{e.getTracking(), textoFecha(e, formatoFecha), e.getCliente(), e.getDireccion(), e.getEstado()};
+    }
+
+    private static String textoFecha(Envio e, DateTimeFormatter formato) {
+        LocalDateTime fecha = fechaColectaEfectiva(e);
+        if (fecha == null) return null;
+        return fecha.format(formato);
+    }
+
+    /**
+     * Renderiza los archivos de cada target en el pool de render y los escribe en el ZIP a medida que terminan.
+     * Este hilo es el único que escribe en el ZIP y nunca hay más de {@link #concurrenciaRender} archivos
+     * renderizándose o esperando a ser escritos, así la memoria queda acotada aunque haya cientos de targets.
+     */
+    private void escribirReportesEnParalelo(List<TrabajoRender> trabajos, boolean esExcel, LocalDate fechaDesde, LocalDate fechaHasta,
+                                            ZipOutputStream zos, Runnable archivoEscrito) throws IOException, DocumentException {
+        CompletionService<ReportFile> completados = new ExecutorCompletionService<>(renderPool);
+        List<Future<ReportFile>> futuros = new ArrayList<>(trabajos.size());
+        int siguiente = 0;
+        int enCurso = 0;
+        int reutilizados = 0;
+        try {
+            while (siguiente < trabajos.size() || enCurso > 0) {
+                while (siguiente < trabajos.size() && enCurso < concurrenciaRender) {
+                    TrabajoRender trabajo = trabajos.get(siguiente++);
+                    futuros.add(completados.submit(() -> renderizar(trabajo, esExcel, fechaDesde, fechaHasta)));
+                    enCurso++;
+                }
+                ReportFile rf = esperarRender(completados.take());
+                enCurso--;
                 zos.putNextEntry(new ZipEntry(rf.nombre));
                 zos.write(rf.contenido);
                 zos.closeEntry();
+                if (rf.reutilizado) reutilizados++;
+                archivoEscrito.run();
             }
-            byte[] resumenExcel = generarExcelResumen(resumenFilas, req.getFechaDesde(), req.getFechaHasta());
-            zos.putNextEntry(new ZipEntry("resumen.xlsx"));
-            zos.write(resumenExcel);
-            zos.closeEntry();
+            log.info("[Informe] {} archivos escritos, {} reutilizados sin cambios", trabajos.size(), reutilizados);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generación de informe interrumpida", e);
+        } finally {
+            for (Future<ReportFile> f : futuros) f.cancel(true);
+        }
+    }
+
+    private static ReportFile esperarRender(Future<ReportFile> futuro) throws IOException, DocumentException, InterruptedException {
+        try {
+            return futuro.get();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) throw io;
+            if (causa instanceof DocumentException de) throw de;
+            if (causa instanceof RuntimeException re) throw re;
+            throw new IOException("Error al generar informe", causa);
         }
-        String nombreZip = "informe_" + sufijoFechas + ".zip";
-        return new InformeResultDTO(zipOut.toByteArray(), nombreZip);
     }
 
-    private List<Target> resolveTargets(InformeRequestDTO req) {
+    private List<Target> resolveTargets(InformeRequestDTO req, CatalogoInforme catalogo) {
         String tipo = req.getTipoDestinatario() != null ? req.getTipoDestinatario().toUpperCase(Locale.ROOT) : "";
         List<Target> out = new ArrayList<>();
 
@@ -175,9 +481,9 @@ public class InformeService {
             case TIPO_GRUPOS:
                 if (req.getIdsGrupos() != null) {
                     for (Long gid : req.getIdsGrupos()) {
-                        Grupo g = grupoRepository.findById(gid).orElse(null);
+                        Grupo g = catalogo.grupos.get(gid);
                         if (g == null) continue;
-                        List<Cliente> clientes = clienteRepository.findByGrupoId(gid);
+                        List<Cliente> clientes = catalogo.clientesDeGrupo(gid);
                         Set<String> codigos = new java.util.HashSet<>();
                         Set<String> textosCliente = new java.util.HashSet<>();
                         for (Cliente c : clientes) {
@@ -193,7 +499,7 @@ public class InformeService {
             case TIPO_CUENTAS:
                 if (req.getIdsCuentas() != null) {
                     for (Long cid : req.getIdsCuentas()) {
-                        Cliente c = clienteRepository.findById(cid).orElse(null);
+                        Cliente c = catalogo.clientes.get(cid);
                         if (c == null) continue;
                         String nombre = (c.getCodigo() != null ? c.getCodigo() : "") + (c.getNombreFantasia() != null ? " - " + c.getNombreFantasia() : "");
                         Set<String> textos = new java.util.HashSet<>();
@@ -205,8 +511,8 @@ public class InformeService {
                 }
                 break;
             case TIPO_TODOS_GRUPOS:
-                for (Grupo g : grupoRepository.findAll()) {
-                    List<Cliente> clientes = clienteRepository.findByGrupoId(g.getId());
+                for (Grupo g : catalogo.grupos.values()) {
+                    List<Cliente> clientes = catalogo.clientesDeGrupo(g.getId());
                     Set<String> codigos = new java.util.HashSet<>();
                     Set<String> textosCliente = new java.util.HashSet<>();
                     for (Cliente c : clientes) {
@@ -219,7 +525,7 @@ public class InformeService {
                 }
                 break;
             case TIPO_TODAS_CUENTAS:
-                for (Cliente c : clienteRepository.findAll()) {
+                for (Cliente c : catalogo.clientes.values()) {
                     if (c.getCodigo() == null) continue;
                     String nombre = c.getCodigo() + (c.getNombreFantasia() != null ? " - " + c.getNombreFantasia() : "");
                     Set<String> textos = new java.util.HashSet<>();
@@ -235,85 +541,74 @@ public class InformeService {
         return out;
     }
 
-    private List<Envio> filtrarEnviosParaTarget(List<Envio> envios, Target target, String tomarEnvios) {
-        List<Envio> list = envios.stream()
-                .filter(e -> perteneceATarget(e.getCliente(), target))
-                .collect(Collectors.toList());
-
+    /** Si un envío con ese grupo de estado ({@link ColectaDiaria#grupoDeEstado}) entra en el informe según tomarEnvios. */
+    private static boolean estadoIncluido(String estadoGrupo, String tomarEnvios) {
         if (TOMAR_SOLO_ENTREGADOS.equals(tomarEnvios)) {
-            list = list.stream().filter(e -> ESTADO_ENTREGADO.equals(e.getEstado())).collect(Collectors.toList());
-        } else {
-            list = list.stream()
-                    .filter(e -> !ESTADO_RECHAZADO.equals(e.getEstado()) && !ESTADO_CANCELADO.equals(e.getEstado()))
-                    .collect(Collectors.toList());
+            return ColectaDiaria.ESTADO_ENTREGADO.equals(estadoGrupo);
         }
-        return list;
+        return !ColectaDiaria.ESTADO_RECHAZADO_CANCELADO.equals(estadoGrupo);
     }
 
-    /**
-     * Determina si el string cliente de un envío corresponde al target.
-     * Coincide si: (1) el código extraído del envío está en target.codigos, o
-     * (2) envio.cliente (trim, ignore case) coincide con alguna variante en target.textosCliente
-     * ("codigo - nombreFantasia", "nombreFantasia" solo, o codigo). Así se cubre cuando en BD
-     * el envío tiene cliente = "PRODUCCION PRUEBA" y el target es PROD / "PROD - PRODUCCION PRUEBA".
-     */
-    private boolean perteneceATarget(String clienteStr, Target target) {
-        if (clienteStr == null) return false;
-        String c = clienteStr.trim();
-        if (c.isEmpty()) return false;
-        if (target.textosCliente() != null) {
-            for (String t : target.textosCliente()) {
-                if (t != null && c.equalsIgnoreCase(t.trim())) return true;
-            }
-        }
-        if (target.codigos() == null) return false;
-        String codigoEnEnvio = c.contains(" - ") ? c.split(" - ", 2)[0].trim() : c;
-        if (codigoEnEnvio.isEmpty()) codigoEnEnvio = c;
-        for (String codigo : target.codigos()) {
-            if (codigo == null) continue;
-            String cod = codigo.trim();
-            if (cod.isEmpty()) continue;
-            if (codigoEnEnvio.equalsIgnoreCase(cod)) return true;
-            if (c.equalsIgnoreCase(cod)) return true;
-            String sepGuion = cod + " - ";
-            if (c.length() >= sepGuion.length() && c.regionMatches(true, 0, sepGuion, 0, sepGuion.length())) return true;
-            String sepSpace = cod + " ";
-            if (c.length() >= sepSpace.length() && c.regionMatches(true, 0, sepSpace, 0, sepSpace.length())) return true;
-            String sepMinus = cod + "-";
-            if (c.length() >= sepMinus.length() && c.regionMatches(true, 0, sepMinus, 0, sepMinus.length())) return true;
-        }
-        return false;
+    private static <T> List<List<T>> listasVacias(int cantidad) {
+        List<List<T>> listas = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) listas.add(new ArrayList<>());
+        return listas;
     }
 
     /**
-     * Obtiene los precios por zona acordados para el cliente/grupo del target.
-     * Usa la lista de precios del primer cliente encontrado por código en el target.
+     * Carga lo que necesita la resolución de targets y precios, limitado a los destinatarios pedidos: los clientes
+     * salen del directorio en memoria (solo los de las cuentas o grupos seleccionados), los grupos de una consulta y
+     * las listas de precios que usan esos clientes con sus zonas (una consulta, más otra solo si hay listas que
+     * referencian zonas de listas que no usa ningún cliente).
      */
-    private Map<String, String> obtenerPreciosPorZonaParaTarget(Target target) {
-        Map<String, String> out = new LinkedHashMap<>();
-        if (target.codigos() == null || target.codigos().isEmpty()) return out;
-        for (String codigo : target.codigos()) {
-            if (codigo == null || codigo.trim().isEmpty()) continue;
-            Cliente c = clienteRepository.findByCodigo(codigo.trim()).orElse(null);
-            if (c == null || c.getListaPreciosId() == null) continue;
-            ListaPrecio listaPrecio = listaPrecioRepository.findById(c.getListaPreciosId()).orElse(null);
-            if (listaPrecio == null) continue;
-            List<Zona> zonas;
-            if (Boolean.FALSE.equals(listaPrecio.getZonaPropia()) && listaPrecio.getListaPrecioSeleccionada() != null) {
-                ListaPrecio ref = listaPrecioRepository.findById(listaPrecio.getListaPrecioSeleccionada()).orElse(null);
-                zonas = (ref != null && Boolean.TRUE.equals(ref.getZonaPropia()) && ref.getZonas() != null) ? ref.getZonas() : new ArrayList<>();
-            } else {
-                zonas = (listaPrecio.getZonas() != null) ? listaPrecio.getZonas() : new ArrayList<>();
-            }
-            for (Zona z : zonas) {
-                String nombre = (z.getNombre() != null && !z.getNombre().trim().isEmpty()) ? z.getNombre().trim() : (z.getCodigo() != null ? z.getCodigo().trim() : "Zona");
-                if (!nombre.isEmpty() && z.getValor() != null && !z.getValor().trim().isEmpty()) {
-                    out.putIfAbsent(nombre, z.getValor().trim());
+    private CatalogoInforme cargarCatalogo(InformeRequestDTO req) {
+        String tipo = req.getTipoDestinatario() != null ? req.getTipoDestinatario().toUpperCase(Locale.ROOT) : "";
+        List<Cliente> clientes = new ArrayList<>();
+        List<Grupo> grupos = new ArrayList<>();
+        switch (tipo) {
+            case TIPO_GRUPOS:
+                if (req.getIdsGrupos() != null) {
+                    grupos = grupoRepository.findAllById(new LinkedHashSet<>(req.getIdsGrupos()));
+                    for (Grupo g : grupos) clientes.addAll(directorioClientesService.clientesDeGrupo(g.getId()));
+                }
+                break;
+            case TIPO_CUENTAS:
+                if (req.getIdsCuentas() != null) {
+                    for (Long cid : new LinkedHashSet<>(req.getIdsCuentas())) {
+                        directorioClientesService.buscarPorId(cid).ifPresent(clientes::add);
+                    }
                 }
+                break;
+            case TIPO_TODOS_GRUPOS:
+                grupos = grupoRepository.findAll(Sort.by(Sort.Direction.ASC, "id"));
+                for (Cliente c : directorioClientesService.todos()) {
+                    if (c.getGrupoId() != null) clientes.add(c);
+                }
+                break;
+            case TIPO_TODAS_CUENTAS:
+                clientes = directorioClientesService.todos();
+                break;
+            default:
+                break;
+        }
+        Set<Long> idsListas = new HashSet<>();
+        for (Cliente c : clientes) {
+            if (c.getListaPreciosId() != null) idsListas.add(c.getListaPreciosId());
+        }
+        Map<Long, ListaPrecio> listas = new HashMap<>();
+        if (!idsListas.isEmpty()) {
+            for (ListaPrecio l : listaPrecioRepository.findAllConZonasByIdIn(idsListas)) listas.put(l.getId(), l);
+            Set<Long> referenciadas = new HashSet<>();
+            for (ListaPrecio l : listas.values()) {
+                Long ref = l.getListaPrecioSeleccionada();
+                if (Boolean.FALSE.equals(l.getZonaPropia()) && ref != null && !listas.containsKey(ref)) referenciadas.add(ref);
+            }
+            if (!referenciadas.isEmpty()) {
+                for (ListaPrecio l : listaPrecioRepository.findAllConZonasByIdIn(referenciadas)) listas.put(l.getId(), l);
             }
-            break; // un solo cliente para la lista de precios de referencia
         }
-        return out;
+        log.info("[Informe] Catálogo cargado: {} clientes, {} grupos, {} listas de precios", clientes.size(), grupos.size(), listas.size());
+        return new CatalogoInforme(clientes, grupos, listas);
     }
 
     /** Fecha de colecta efectiva: fechaColecta si existe, si no fechaUltimoMovimiento (envíos retirados sin fecha guardada). */
@@ -321,44 +616,39 @@ public class InformeService {
         return e.getFechaColecta() != null ? e.getFechaColecta() : e.getFechaUltimoMovimiento();
     }
 
-    private ResumenData buildResumen(List<Envio> envios) {
+    /**
+     * Resumen del target a partir de los totales agrupados por (cliente, estado, día, zona) de colecta_diaria o del
+     * GROUP BY sobre envios, ya filtrados por cliente y estado igual que el detalle.
+     */
+    private ResumenData buildResumen(List<AgregadoColecta> agregados) {
+        int cantidad = 0;
         double precioTotal = 0;
         double efectivo = 0;
         Map<LocalDate, Map<String, ZonaDia>> porDiaZona = new LinkedHashMap<>();
         Map<String, PorZona> porZona = new LinkedHashMap<>();
 
-        for (Envio e : envios) {
-            double costo = parseDouble(e.getCostoEnvio(), 0);
-            precioTotal += costo;
-            if (e.getTotalACobrar() != null && !e.getTotalACobrar().trim().isEmpty()) {
-                efectivo += parseDouble(e.getTotalACobrar(), 0);
-            }
-            LocalDateTime fec = fechaColectaEfectiva(e);
-            LocalDate dia = fec != null ? fec.toLocalDate() : null;
-            final String zona = (e.getZonaEntrega() != null && !e.getZonaEntrega().trim().isEmpty()) ? e.getZonaEntrega().trim() : "Sin Zona";
-            if (dia != null) {
-                porDiaZona.computeIfAbsent(dia, k -> new LinkedHashMap<>())
+        for (AgregadoColecta a : agregados) {
+            cantidad += a.cantidad();
+            precioTotal += a.costo();
+            efectivo += a.totalACobrar();
+            final String zona = (a.zona() != null && !a.zona().trim().isEmpty()) ? a.zona().trim() : "Sin Zona";
+            if (a.dia() != null) {
+                porDiaZona.computeIfAbsent(a.dia(), k -> new LinkedHashMap<>())
                         .computeIfAbsent(zona, k -> new ZonaDia(zona, 0, 0))
-                        .sumar(1, costo);
+                        .sumar(a.cantidad(), a.costo());
             }
-            porZona.merge(zona, new PorZona(zona, 1, costo), (a, b) -> new PorZona(a.zona(), a.cantidad() + b.cantidad(), a.totalPrecio() + b.totalPrecio()));
+            porZona.merge(zona, new PorZona(zona, a.cantidad(), a.costo()), (x, y) -> new PorZona(x.zona(), x.cantidad() + y.cantidad(), x.totalPrecio() + y.totalPrecio()));
         }
 
-        return new ResumenData(porDiaZona, porZona, envios.size(), precioTotal, efectivo);
+        return new ResumenData(porDiaZona, porZona, cantidad, precioTotal, efectivo);
     }
 
-    private static double parseDouble(String s, double def) {
-        if (s == null || s.trim().isEmpty()) return def;
+    /** Excel del target con SXSSF: solo las últimas filas de cada hoja quedan en memoria, el resto va a disco. */
+    private void escribirExcel(List<Envio> envios, ResumenData resumen, String nombreDestinatario,
+                               LocalDate fechaDesde, LocalDate fechaHasta, List<Envio> rechazadosCancelados, boolean esInformeGrupo,
+                               OutputStream out) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(FILAS_EXCEL_EN_MEMORIA);
         try {
-            return Double.parseDouble(s.trim().replace(",", "."));
-        } catch (NumberFormatException e) {
-            return def;
-        }
-    }
-
-    private byte[] generarExcel(List<Envio> envios, ResumenData resumen, String nombreDestinatario,
-                               LocalDate fechaDesde, LocalDate fechaHasta, List<Envio> rechazadosCancelados, boolean esInformeGrupo) throws IOException {
-        try (Workbook wb = new XSSFWorkbook()) {
             Sheet detalle = wb.createSheet("Detalle");
             Sheet hojaResumen = wb.createSheet("Resumen");
             CellStyle headerStyle = createHeaderStyle(wb);
@@ -407,12 +697,15 @@ public class InformeService {
             crearCelda(hojaResumen.createRow(rResumen++), 0, "RESUMEN - " + nombreDestinatario);
             crearCelda(hojaResumen.createRow(rResumen++), 0, "Pedidos colectados desde " + fechaDesde.format(FMT_DATE) + " hasta " + fechaHasta.format(FMT_DATE));
             rResumen++;
-            crearCelda(hojaResumen.createRow(rResumen++), 0, "Total envíos");
-            crearCelda(hojaResumen.createRow(rResumen - 1), 1, String.valueOf(resumen.cantidadEnvios));
-            crearCelda(hojaResumen.createRow(rResumen++), 0, "Precio total");
-            crearCelda(hojaResumen.createRow(rResumen - 1), 1, String.format("%.2f", resumen.precioTotal));
-            crearCelda(hojaResumen.createRow(rResumen++), 0, "Plata retirada en efectivo");
-            crearCelda(hojaResumen.createRow(rResumen - 1), 1, String.format("%.2f", resumen.efectivo));
+            Row filaTotal = hojaResumen.createRow(rResumen++);
+            crearCelda(filaTotal, 0, "Total envíos");
+            crearCelda(filaTotal, 1, String.valueOf(resumen.cantidadEnvios));
+            Row filaPrecio = hojaResumen.createRow(rResumen++);
+            crearCelda(filaPrecio, 0, "Precio total");
+            crearCelda(filaPrecio, 1, String.format("%.2f", resumen.precioTotal));
+            Row filaEfectivo = hojaResumen.createRow(rResumen++);
+            crearCelda(filaEfectivo, 0, "Plata retirada en efectivo");
+            crearCelda(filaEfectivo, 1, String.format("%.2f", resumen.efectivo));
             rResumen++;
             crearCelda(hojaResumen.createRow(rResumen++), 0, "Por día y zona");
             Row hRow = hojaResumen.createRow(rResumen++);
@@ -459,9 +752,10 @@ public class InformeService {
                 }
             }
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            wb.write(out);
-            return out.toByteArray();
+            wb.write(sinCerrar(out));
+        } finally {
+            wb.dispose();
+            wb.close();
         }
     }
 
@@ -485,35 +779,29 @@ public class InformeService {
     private static final Color COLOR_BORDE = new Color(226, 232, 240);
     private static final Color COLOR_GRIS_TEXTO = new Color(55, 65, 81);
     private static final Color COLOR_GRIS_SUBTITULO = new Color(107, 114, 128);
+    private static final EstilosPdf ESTILOS_PDF = new EstilosPdf();
+    /** Filas de cuerpo que se acumulan en una tabla de detalle antes de mandarlas al writer. */
+    private static final int FILAS_POR_BLOQUE_PDF = 200;
 
-    private byte[] generarPdf(List<Envio> envios, ResumenData resumen, String nombreDestinatario,
+    private void escribirPdf(List<Envio> envios, ResumenData resumen, String nombreDestinatario,
                              LocalDate fechaDesde, LocalDate fechaHasta, Map<String, String> preciosPorZona, boolean esInformeGrupo,
-                             List<Envio> rechazadosCancelados) throws DocumentException, IOException {
+                             List<Envio> rechazadosCancelados, OutputStream out) throws DocumentException, IOException {
         Document doc = new Document(PageSize.A4, 40, 40, 54, 48);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
         PdfWriter writer = PdfWriter.getInstance(doc, out);
+        writer.setCloseStream(false);
         writer.setPageEvent(new NexoReportFooter());
         doc.open();
 
-        com.lowagie.text.Font fontTitulo = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 24);
-        fontTitulo.setColor(COLOR_NEXO_PRIMARY);
-        com.lowagie.text.Font fontSubtitulo = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 13);
-        fontSubtitulo.setColor(COLOR_GRIS_TEXTO);
-        com.lowagie.text.Font fontNormal = FontFactory.getFont(FontFactory.HELVETICA, 10);
-        fontNormal.setColor(COLOR_GRIS_TEXTO);
-        com.lowagie.text.Font fontSeccion = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 13);
-        fontSeccion.setColor(COLOR_NEXO_PRIMARY);
-        com.lowagie.text.Font fontSubtituloSeccion = FontFactory.getFont(FontFactory.HELVETICA, 9);
-        fontSubtituloSeccion.setColor(COLOR_GRIS_SUBTITULO);
+        EstilosPdf estilos = ESTILOS_PDF;
+        com.lowagie.text.Font fontSubtitulo = estilos.subtitulo;
+        com.lowagie.text.Font fontNormal = estilos.normal;
+        com.lowagie.text.Font fontSeccion = estilos.seccion;
+        com.lowagie.text.Font fontSubtituloSeccion = estilos.subtituloSeccion;
 
         // ——— Header de marca: barra principal + franja cyan
         PdfPTable headerBar = new PdfPTable(1);
         headerBar.setWidthPercentage(100);
         headerBar.setSpacingAfter(0);
-        com.lowagie.text.Font fontMarca = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 20);
-        fontMarca.setColor(Color.WHITE);
-        com.lowagie.text.Font fontTagline = FontFactory.getFont(FontFactory.HELVETICA, 10);
-        fontTagline.setColor(new Color(224, 231, 255));
         PdfPCell barraCell = new PdfPCell();
         barraCell.setBackgroundColor(COLOR_NEXO_PRIMARY);
         barraCell.setBorder(0);
@@ -521,9 +809,9 @@ public class InformeService {
         barraCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
         barraCell.setPaddingLeft(16);
         barraCell.setPaddingRight(16);
-        Paragraph pMarca = new Paragraph("NEXO", fontMarca);
+        Paragraph pMarca = new Paragraph("NEXO", estilos.marca);
         pMarca.add(new Chunk("\n"));
-        pMarca.add(new Phrase("Informe de pedidos colectados", fontTagline));
+        pMarca.add(new Phrase("Informe de pedidos colectados", estilos.tagline));
         barraCell.addElement(pMarca);
         headerBar.addCell(barraCell);
         doc.add(headerBar);
@@ -592,8 +880,7 @@ public class InformeService {
         // Precios por zona acordados
         if (preciosPorZona != null && !preciosPorZona.isEmpty()) {
             addSectionTitle(doc, fontSeccion, fontSubtituloSeccion, "Tarifas por zona", "Precios acordados por zona de entrega para el presente informe.");
-            com.lowagie.text.Font fontLine = FontFactory.getFont(FontFactory.HELVETICA, 10);
-            fontLine.setColor(COLOR_GRIS_TEXTO);
+            com.lowagie.text.Font fontLine = estilos.normal;
             PdfPTable preciosBox = new PdfPTable(1);
             preciosBox.setWidthPercentage(100);
             preciosBox.setSpacingBefore(4);
@@ -620,8 +907,7 @@ public class InformeService {
             doc.add(Chunk.NEWLINE);
         } else {
             addSectionTitle(doc, fontSeccion, fontSubtituloSeccion, "Desglose por zonas", "Cantidad de envíos y monto total por zona en el período.");
-            com.lowagie.text.Font fontLine = FontFactory.getFont(FontFactory.HELVETICA, 10);
-            fontLine.setColor(COLOR_GRIS_TEXTO);
+            com.lowagie.text.Font fontLine = estilos.normal;
             PdfPTable desgloseBox = new PdfPTable(1);
             desgloseBox.setWidthPercentage(100);
             desgloseBox.setSpacingBefore(4);
@@ -646,14 +932,9 @@ public class InformeService {
             float[] widthsDetalle = mostrarColumnaCliente ? new float[]{2f, 1.2f, 2f, 2.5f, 1.5f, 1.2f} : new float[]{2.2f, 1.2f, 2.8f, 2f, 1.2f};
 
             addSectionTitle(doc, fontSeccion, fontSubtituloSeccion, "Detalle de envíos", "Listado de envíos con tracking, fecha de colecta, dirección y precio.");
-            com.lowagie.text.Font fontCelda = FontFactory.getFont(FontFactory.HELVETICA, 9);
-            fontCelda.setColor(COLOR_GRIS_TEXTO);
-
-            PdfPTable tablaDetalle = new PdfPTable(numColsDetalle);
-            tablaDetalle.setWidthPercentage(100);
-            tablaDetalle.setWidths(widthsDetalle);
-            tablaDetalle.setSpacingBefore(6);
-            tablaDetalle.setSpacingAfter(4);
+            com.lowagie.text.Font fontCelda = estilos.celda;
+
+            PdfPTable tablaDetalle = tablaIncremental(numColsDetalle, widthsDetalle, 4);
             addHeaderCell(tablaDetalle, "Tracking");
             addHeaderCell(tablaDetalle, "Fecha");
             if (mostrarColumnaCliente) addHeaderCell(tablaDetalle, "Cliente");
@@ -662,10 +943,11 @@ public class InformeService {
             addHeaderCell(tablaDetalle, "Precio");
 
             double sumaPrecio = 0;
+            int filasDetalle = 0;
             for (Envio e : envios) {
                 LocalDateTime fec = fechaColectaEfectiva(e);
                 String fechaStr = fec != null ? fec.toLocalDate().format(FMT_DATE) : "—";
-                double precio = parseDouble(e.getCostoEnvio(), 0);
+                double precio = Importes.aDouble(e.getCostoEnvioNum());
                 sumaPrecio += precio;
                 addBodyCell(tablaDetalle, e.getTracking() != null ? e.getTracking() : "—", fontCelda);
                 addBodyCell(tablaDetalle, fechaStr, fontCelda);
@@ -673,10 +955,10 @@ public class InformeService {
                 addBodyCell(tablaDetalle, e.getDireccion() != null ? e.getDireccion() : "—", fontCelda);
                 addBodyCell(tablaDetalle, e.getLocalidad() != null ? e.getLocalidad() : "—", fontCelda);
                 addBodyCell(tablaDetalle, "$ " + String.format("%.2f", precio), fontCelda);
+                vaciarBloque(doc, tablaDetalle, ++filasDetalle);
             }
             // Fila total detalle
-            com.lowagie.text.Font fontTotal = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 9);
-            fontTotal.setColor(COLOR_GRIS_TEXTO);
+            com.lowagie.text.Font fontTotal = estilos.total;
             int colSpanTotal = numColsDetalle - 1;
             PdfPCell vacioTotal = new PdfPCell(new Phrase("Total", fontTotal));
             vacioTotal.setColspan(colSpanTotal);
@@ -692,34 +974,33 @@ public class InformeService {
             totalPrecioCell.setBorderWidth(1);
             totalPrecioCell.setBorderColor(COLOR_BORDE);
             tablaDetalle.addCell(totalPrecioCell);
+            tablaDetalle.setComplete(true);
             doc.add(tablaDetalle);
             doc.add(Chunk.NEWLINE);
 
             // Sección Cobros en destino (solo envíos con totalACobrar > 0)
             List<Envio> conCobro = envios.stream()
-                    .filter(e -> e.getTotalACobrar() != null && !e.getTotalACobrar().trim().isEmpty() && parseDouble(e.getTotalACobrar(), 0) > 0)
+                    .filter(e -> e.getTotalACobrarNum() != null && e.getTotalACobrarNum().signum() > 0)
                     .toList();
             addSectionTitle(doc, fontSeccion, fontSubtituloSeccion, "Cobros a destino", "Detalle de montos cobrados en destino por envío.");
-            PdfPTable tablaCobros = new PdfPTable(4);
-            tablaCobros.setWidthPercentage(100);
-            tablaCobros.setWidths(new float[]{2f, 1.2f, 2.8f, 1.2f});
-            tablaCobros.setSpacingBefore(6);
-            tablaCobros.setSpacingAfter(4);
+            PdfPTable tablaCobros = tablaIncremental(4, new float[]{2f, 1.2f, 2.8f, 1.2f}, 4);
             addHeaderCell(tablaCobros, "Tracking");
             addHeaderCell(tablaCobros, "Fecha");
             addHeaderCell(tablaCobros, "Dirección");
             addHeaderCell(tablaCobros, "Cobrado");
 
             double sumaCobros = 0;
+            int filasCobros = 0;
             for (Envio e : conCobro) {
                 LocalDateTime fec = fechaColectaEfectiva(e);
                 String fechaStr = fec != null ? fec.toLocalDate().format(FMT_DATE) : "—";
-                double cobro = parseDouble(e.getTotalACobrar(), 0);
+                double cobro = Importes.aDouble(e.getTotalACobrarNum());
                 sumaCobros += cobro;
                 addBodyCell(tablaCobros, e.getTracking() != null ? e.getTracking() : "—", fontCelda);
                 addBodyCell(tablaCobros, fechaStr, fontCelda);
                 addBodyCell(tablaCobros, e.getDireccion() != null ? e.getDireccion() : "—", fontCelda);
                 addBodyCell(tablaCobros, "$ " + String.format("%.2f", cobro), fontCelda);
+                vaciarBloque(doc, tablaCobros, ++filasCobros);
             }
             PdfPCell vacioCobro = new PdfPCell(new Phrase("Total cobros a destino", fontTotal));
             vacioCobro.setColspan(3);
@@ -735,6 +1016,7 @@ public class InformeService {
             totalCobroCell.setBorderWidth(1);
             totalCobroCell.setBorderColor(COLOR_BORDE);
             tablaCobros.addCell(totalCobroCell);
+            tablaCobros.setComplete(true);
             doc.add(tablaCobros);
 
             // Cierre: importe a abonar (Total envíos − Cobros a destino)
@@ -744,8 +1026,7 @@ public class InformeService {
             cierreBox.setWidthPercentage(100);
             cierreBox.setSpacingBefore(8);
             cierreBox.setSpacingAfter(8);
-            com.lowagie.text.Font fontCierre = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 11);
-            fontCierre.setColor(COLOR_NEXO_PRIMARY);
+            com.lowagie.text.Font fontCierre = estilos.cierre;
             PdfPCell cierreCell = new PdfPCell();
             cierreCell.setBorder(0);
             cierreCell.setPadding(14);
@@ -769,18 +1050,14 @@ public class InformeService {
             boolean mostrarColCliente = esInformeGrupo;
             int numColsRC = mostrarColCliente ? 5 : 4;
             float[] widthsRC = mostrarColCliente ? new float[]{2f, 1.2f, 2f, 2.5f, 1.8f} : new float[]{2.2f, 1.2f, 2.8f, 1.8f};
-            PdfPTable tablaRC = new PdfPTable(numColsRC);
-            tablaRC.setWidthPercentage(100);
-            tablaRC.setWidths(widthsRC);
-            tablaRC.setSpacingBefore(6);
-            tablaRC.setSpacingAfter(12);
+            PdfPTable tablaRC = tablaIncremental(numColsRC, widthsRC, 12);
             addHeaderCell(tablaRC, "Tracking");
             addHeaderCell(tablaRC, "Fecha");
             if (mostrarColCliente) addHeaderCell(tablaRC, "Cliente");
             addHeaderCell(tablaRC, "Dirección");
             addHeaderCell(tablaRC, "Estado final");
-            com.lowagie.text.Font fontCeldaRC = FontFactory.getFont(FontFactory.HELVETICA, 9);
-            fontCeldaRC.setColor(COLOR_GRIS_TEXTO);
+            com.lowagie.text.Font fontCeldaRC = estilos.celda;
+            int filasRC = 0;
             for (Envio e : rechazadosCancelados) {
                 LocalDateTime fec = fechaColectaEfectiva(e);
                 String fechaStr = fec != null ? fec.toLocalDate().format(FMT_DATE) : "—";
@@ -790,11 +1067,12 @@ public class InformeService {
                 if (mostrarColCliente) addBodyCell(tablaRC, e.getCliente() != null ? e.getCliente() : "—", fontCeldaRC);
                 addBodyCell(tablaRC, e.getDireccion() != null ? e.getDireccion() : "—", fontCeldaRC);
                 addBodyCell(tablaRC, estadoFinal, fontCeldaRC);
+                vaciarBloque(doc, tablaRC, ++filasRC);
             }
+            tablaRC.setComplete(true);
             doc.add(tablaRC);
         }
         doc.close();
-        return out.toByteArray();
     }
 
     private void addSectionTitle(Document doc, com.lowagie.text.Font fontSeccion, com.lowagie.text.Font fontSub,
@@ -815,56 +1093,111 @@ public class InformeService {
         doc.add(lineTable);
     }
 
+    /**
+     * Tabla de detalle en modo incremental: las filas se mandan al writer cada {@link #FILAS_POR_BLOQUE_PDF}
+     * (ver {@link #vaciarBloque}) en lugar de acumular miles de celdas hasta el final. La fila de títulos se repite
+     * en cada página. Las celdas de cuerpo usan la celda por defecto de la tabla como estilo base.
+     */
+    private static PdfPTable tablaIncremental(int columnas, float[] anchos, float espacioDespues) throws DocumentException {
+        PdfPTable tabla = new PdfPTable(columnas);
+        tabla.setWidthPercentage(100);
+        tabla.setWidths(anchos);
+        tabla.setSpacingBefore(6);
+        tabla.setSpacingAfter(espacioDespues);
+        tabla.setHeaderRows(1);
+        tabla.setComplete(false);
+        PdfPCell base = tabla.getDefaultCell();
+        base.setPadding(6);
+        base.setBorderWidth(1);
+        base.setBorderColor(COLOR_BORDE);
+        base.setVerticalAlignment(Element.ALIGN_MIDDLE);
+        return tabla;
+    }
+
+    /** Escribe las filas completas acumuladas cada {@link #FILAS_POR_BLOQUE_PDF} filas de cuerpo. */
+    private static void vaciarBloque(Document doc, PdfPTable tabla, int filasAgregadas) throws DocumentException {
+        if (filasAgregadas % FILAS_POR_BLOQUE_PDF != 0) return;
+        doc.add(tabla);
+        // Las siguientes partes continúan la misma tabla: sin espacio extra entre bloques
+        tabla.setSpacingBefore(0);
+    }
+
     private static void addHeaderCell(PdfPTable table, String text) {
-        com.lowagie.text.Font f = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 9);
-        f.setColor(Color.WHITE);
-        PdfPCell c = new PdfPCell(new Phrase(text != null ? text : "", f));
+        PdfPCell c = new PdfPCell(new Phrase(text != null ? text : "", ESTILOS_PDF.encabezadoTabla));
         c.setBackgroundColor(COLOR_NEXO_PRIMARY);
         c.setPadding(6);
         c.setHorizontalAlignment(Element.ALIGN_LEFT);
         table.addCell(c);
     }
 
+    /** Celda de cuerpo con el estilo de la celda por defecto de la tabla (ver {@link #tablaIncremental}). */
     private static void addBodyCell(PdfPTable table, String text, com.lowagie.text.Font font) {
-        PdfPCell c = new PdfPCell(new Phrase(text != null ? text : "", font));
-        c.setPadding(6);
-        c.setBorderWidth(1);
-        c.setBorderColor(COLOR_BORDE);
-        c.setVerticalAlignment(Element.ALIGN_MIDDLE);
-        table.addCell(c);
+        table.addCell(new Phrase(text != null ? text : "", font));
     }
 
     private static PdfPCell cellResumen(String text, boolean bold) {
-        com.lowagie.text.Font f = bold ? FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10) : FontFactory.getFont(FontFactory.HELVETICA, 10);
-        f.setColor(Color.DARK_GRAY);
-        PdfPCell c = new PdfPCell(new Phrase(text != null ? text : "", f));
+        PdfPCell c = new PdfPCell(new Phrase(text != null ? text : "", bold ? ESTILOS_PDF.resumenNegrita : ESTILOS_PDF.resumen));
         c.setPadding(4);
         c.setBorder(0);
         return c;
     }
 
-    private static PdfPCell cell(String text, boolean bold) {
-        com.lowagie.text.Font f = bold ? FontFactory.getFont(FontFactory.HELVETICA_BOLD, 9) : FontFactory.getFont(FontFactory.HELVETICA, 8);
-        PdfPCell c = new PdfPCell(new Phrase(text != null ? text : "", f));
-        c.setPadding(5);
-        return c;
-    }
-
-    /** Pie de página en todas las hojas */
+    /**
+     * Pie de página en todas las hojas. El texto se dibuja una sola vez por documento en un {@link PdfTemplate}
+     * que cada página referencia, en lugar de volver a componerlo en cada una. El template pertenece al writer,
+     * por eso hay una instancia por documento.
+     */
     private static class NexoReportFooter extends PdfPageEventHelper {
+        private static final String TEXTO = "Powered by Nexo";
+        private static final float ALTO = 12;
+
+        private PdfTemplate template;
+        private float ancho;
+
+        @Override
+        public void onOpenDocument(PdfWriter writer, Document document) {
+            com.lowagie.text.Font fuente = ESTILOS_PDF.pie;
+            ancho = fuente.getCalculatedBaseFont(false).getWidthPoint(TEXTO, fuente.getSize());
+            template = writer.getDirectContent().createTemplate(ancho, ALTO);
+            ColumnText.showTextAligned(template, Element.ALIGN_LEFT, new Phrase(TEXTO, fuente), 0, 3, 0);
+        }
+
         @Override
         public void onEndPage(PdfWriter writer, Document document) {
-            PdfContentByte cb = writer.getDirectContent();
-            com.lowagie.text.Font fontFooter = FontFactory.getFont(FontFactory.HELVETICA, 8);
-            fontFooter.setColor(COLOR_GRIS_FOOTER);
-            Phrase footer = new Phrase("Powered by Nexo", fontFooter);
-            float x = (document.left() + document.right()) / 2f;
-            float y = document.bottom() - 12;
-            ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, footer, x, y, 0);
+            float x = (document.left() + document.right()) / 2f - ancho / 2f;
+            float y = document.bottom() - 12 - 3;
+            writer.getDirectContent().addTemplate(template, x, y);
+        }
+    }
+
+    /**
+     * Fuentes del PDF, creadas una vez para todos los documentos y todas las corridas (antes se pedían a
+     * FontFactory en cada documento y en cada celda de título). Solo se leen, así que se comparten entre los
+     * hilos de render.
+     */
+    private static final class EstilosPdf {
+        final com.lowagie.text.Font subtitulo = fuente(FontFactory.HELVETICA_BOLD, 13, COLOR_GRIS_TEXTO);
+        final com.lowagie.text.Font normal = fuente(FontFactory.HELVETICA, 10, COLOR_GRIS_TEXTO);
+        final com.lowagie.text.Font seccion = fuente(FontFactory.HELVETICA_BOLD, 13, COLOR_NEXO_PRIMARY);
+        final com.lowagie.text.Font subtituloSeccion = fuente(FontFactory.HELVETICA, 9, COLOR_GRIS_SUBTITULO);
+        final com.lowagie.text.Font marca = fuente(FontFactory.HELVETICA_BOLD, 20, Color.WHITE);
+        final com.lowagie.text.Font tagline = fuente(FontFactory.HELVETICA, 10, new Color(224, 231, 255));
+        final com.lowagie.text.Font celda = fuente(FontFactory.HELVETICA, 9, COLOR_GRIS_TEXTO);
+        final com.lowagie.text.Font total = fuente(FontFactory.HELVETICA_BOLD, 9, COLOR_GRIS_TEXTO);
+        final com.lowagie.text.Font encabezadoTabla = fuente(FontFactory.HELVETICA_BOLD, 9, Color.WHITE);
+        final com.lowagie.text.Font cierre = fuente(FontFactory.HELVETICA_BOLD, 11, COLOR_NEXO_PRIMARY);
+        final com.lowagie.text.Font resumen = fuente(FontFactory.HELVETICA, 10, Color.DARK_GRAY);
+        final com.lowagie.text.Font resumenNegrita = fuente(FontFactory.HELVETICA_BOLD, 10, Color.DARK_GRAY);
+        final com.lowagie.text.Font pie = fuente(FontFactory.HELVETICA, 8, COLOR_GRIS_FOOTER);
+
+        private static com.lowagie.text.Font fuente(String nombre, float tamanio, Color color) {
+            com.lowagie.text.Font f = FontFactory.getFont(nombre, tamanio);
+            f.setColor(color);
+            return f;
         }
     }
 
-    private byte[] generarExcelResumen(List<ResumenFila> filas, LocalDate fechaDesde, LocalDate fechaHasta) throws IOException {
+    private void escribirExcelResumen(List<ResumenFila> filas, LocalDate fechaDesde, LocalDate fechaHasta, OutputStream out) throws IOException {
         try (Workbook wb = new XSSFWorkbook()) {
             Sheet sh = wb.createSheet("Resumen");
             int r = 0;
@@ -880,12 +1213,25 @@ public class InformeService {
                 row.createCell(1).setCellValue(f.cantidad);
                 row.createCell(2).setCellValue(String.format("%.2f", f.precioTotal));
             }
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            wb.write(out);
-            return out.toByteArray();
+            wb.write(sinCerrar(out));
         }
     }
 
+    /** Evita que POI cierre el stream de destino (la entrada del ZIP o la respuesta HTTP) al terminar de escribir. */
+    private static OutputStream sinCerrar(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
     private static String sanitizeFileName(String name) {
         if (name == null) return "informe";
         return name.replaceAll("[\\\\/:*?\"<>|]", "_").trim();
@@ -900,7 +1246,140 @@ public class InformeService {
 
     /** nombre: etiqueta del informe; codigos: códigos de cliente; textosCliente: variantes que pueden aparecer en envio.cliente; esGrupo: true si el destinatario es un grupo (mostrar columna Cliente en PDF). */
     private record Target(String nombre, Set<String> codigos, Set<String> textosCliente, boolean esGrupo) {}
-    private record ReportFile(String nombre, byte[] contenido) {}
+
+    /** Clientes, grupos y listas de precios de un informe, indexados en memoria mientras dura la generación. */
+    private static final class CatalogoInforme {
+        final Map<Long, Cliente> clientes = new LinkedHashMap<>();
+        final Map<Long, Grupo> grupos = new LinkedHashMap<>();
+        private final Map<String, Cliente> clientesPorCodigo = new HashMap<>();
+        private final Map<Long, List<Cliente>> clientesPorGrupo = new HashMap<>();
+        private final Map<Long, ListaPrecio> listas;
+        /** Precios por zona ya armados, por id de lista (varios targets suelen compartir lista). */
+        private final Map<Long, Map<String, String>> preciosPorLista = new HashMap<>();
+
+        CatalogoInforme(List<Cliente> clientes, List<Grupo> grupos, Map<Long, ListaPrecio> listas) {
+            for (Cliente c : clientes) {
+                this.clientes.put(c.getId(), c);
+                if (c.getCodigo() != null) clientesPorCodigo.putIfAbsent(c.getCodigo().trim(), c);
+                if (c.getGrupoId() != null) clientesPorGrupo.computeIfAbsent(c.getGrupoId(), k -> new ArrayList<>()).add(c);
+            }
+            for (Grupo g : grupos) this.grupos.put(g.getId(), g);
+            this.listas = listas;
+        }
+
+        List<Cliente> clientesDeGrupo(Long grupoId) {
+            return clientesPorGrupo.getOrDefault(grupoId, List.of());
+        }
+
+        /**
+         * Precios por zona acordados para el cliente/grupo del target: los de la lista de precios del primer cliente
+         * del target que tenga una (si la lista no tiene zonas propias, las de la lista que referencia).
+         */
+        Map<String, String> preciosPorZona(Target target) {
+            if (target.codigos() == null) return new LinkedHashMap<>();
+            for (String codigo : target.codigos()) {
+                if (codigo == null || codigo.trim().isEmpty()) continue;
+                Cliente c = clientesPorCodigo.get(codigo.trim());
+                if (c == null || c.getListaPreciosId() == null) continue;
+                ListaPrecio listaPrecio = listas.get(c.getListaPreciosId());
+                if (listaPrecio == null) continue;
+                return preciosPorLista.computeIfAbsent(listaPrecio.getId(), id -> armarPrecios(listaPrecio));
+            }
+            return new LinkedHashMap<>();
+        }
+
+        private Map<String, String> armarPrecios(ListaPrecio listaPrecio) {
+            List<Zona> zonas;
+            if (Boolean.FALSE.equals(listaPrecio.getZonaPropia()) && listaPrecio.getListaPrecioSeleccionada() != null) {
+                ListaPrecio ref = listas.get(listaPrecio.getListaPrecioSeleccionada());
+                zonas = (ref != null && Boolean.TRUE.equals(ref.getZonaPropia()) && ref.getZonas() != null) ? ref.getZonas() : List.of();
+            } else {
+                zonas = (listaPrecio.getZonas() != null) ? listaPrecio.getZonas() : List.of();
+            }
+            Map<String, String> out = new LinkedHashMap<>();
+            for (Zona z : zonas) {
+                String nombre = (z.getNombre() != null && !z.getNombre().trim().isEmpty()) ? z.getNombre().trim() : (z.getCodigo() != null ? z.getCodigo().trim() : "Zona");
+                if (!nombre.isEmpty() && z.getValor() != null && !z.getValor().trim().isEmpty()) {
+                    out.putIfAbsent(nombre, z.getValor().trim());
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Índice hash de envio.cliente → targets. Un cliente pertenece a un target si (trim, ignore case):
+     * (1) coincide con alguna variante de target.textosCliente ("codigo - nombreFantasia", "nombreFantasia" solo, o codigo), o
+     * (2) el código extraído del envío (lo anterior a " - "), o el texto completo, es uno de target.codigos, o
+     * (3) el texto empieza con un código seguido de " - ", " " o "-".
+     * Así se cubre cuando en BD el envío tiene cliente = "PRODUCCION PRUEBA" y el target es PROD / "PROD - PRODUCCION PRUEBA".
+     * Para (3) se prueban como código todos los prefijos del texto que terminan antes de un espacio o guion, de modo que
+     * cada cliente se resuelve con unas pocas búsquedas en lugar de comparar contra todas las variantes de todos los targets.
+     * El resultado se memoiza por texto de cliente.
+     */
+    private static final class IndiceTargets {
+        private static final int[] SIN_TARGETS = new int[0];
+
+        private final Map<String, List<Integer>> porTexto = new HashMap<>();
+        private final Map<String, List<Integer>> porCodigo = new HashMap<>();
+        private final Map<String, int[]> resueltos = new HashMap<>();
+
+        IndiceTargets(List<Target> targets) {
+            for (int i = 0; i < targets.size(); i++) {
+                Target target = targets.get(i);
+                if (target.textosCliente() != null) {
+                    for (String texto : target.textosCliente()) {
+                        if (texto != null) indexar(porTexto, texto, i);
+                    }
+                }
+                if (target.codigos() != null) {
+                    for (String codigo : target.codigos()) {
+                        if (codigo != null && !codigo.trim().isEmpty()) indexar(porCodigo, codigo, i);
+                    }
+                }
+            }
+        }
+
+        /** Índices (ascendentes) de los targets a los que pertenece el cliente. */
+        int[] targetsDe(String clienteStr) {
+            if (clienteStr == null) return SIN_TARGETS;
+            return resueltos.computeIfAbsent(clienteStr, this::resolver);
+        }
+
+        private int[] resolver(String clienteStr) {
+            String c = clienteStr.trim();
+            if (c.isEmpty()) return SIN_TARGETS;
+            BitSet encontrados = new BitSet();
+            marcar(encontrados, porTexto, c);
+            marcar(encontrados, porCodigo, c);
+            String codigoEnEnvio = c.contains(" - ") ? c.split(" - ", 2)[0].trim() : c;
+            if (!codigoEnEnvio.isEmpty()) marcar(encontrados, porCodigo, codigoEnEnvio);
+            for (int i = 1; i < c.length(); i++) {
+                char ch = c.charAt(i);
+                if (ch == ' ' || ch == '-') marcar(encontrados, porCodigo, c.substring(0, i));
+            }
+            return encontrados.isEmpty() ? SIN_TARGETS : encontrados.stream().toArray();
+        }
+
+        private static void indexar(Map<String, List<Integer>> indice, String valor, int target) {
+            List<Integer> targets = indice.computeIfAbsent(clave(valor), k -> new ArrayList<>());
+            if (!targets.contains(target)) targets.add(target);
+        }
+
+        private static void marcar(BitSet encontrados, Map<String, List<Integer>> indice, String valor) {
+            List<Integer> targets = indice.get(clave(valor));
+            if (targets != null) targets.forEach(encontrados::set);
+        }
+
+        private static String clave(String valor) {
+            return valor.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record ReportFile(String nombre, byte[] contenido, boolean reutilizado) {}
+    /** Datos ya resueltos para renderizar el archivo de un target fuera de la transacción. */
+    private record TrabajoRender(Target target, String nombreArchivo, List<Envio> envios, List<Envio> rechazadosCancelados,
+                                 ResumenData resumen, Map<String, String> preciosPorZona, String huella) {}
     private record ResumenFila(String nombre, int cantidad, double precioTotal) {}
 
     private static class ZonaDia {
@@ -922,6 +1401,24 @@ public class InformeService {
 
     private record PorZona(String zona, int cantidad, double totalPrecio) {}
 
+    /** Totales de un (cliente, grupo de estado, día, zona), desde colecta_diaria o agregados al vuelo desde envios. */
+    private record AgregadoColecta(String cliente, String estadoGrupo, LocalDate dia, String zona,
+                                   int cantidad, double costo, double totalACobrar) {
+        static AgregadoColecta desdeHecho(ColectaDiaria h) {
+            return new AgregadoColecta(h.getCliente(), h.getEstadoGrupo(), h.getFecha(), h.getZonaEntrega(), h.getCantidad(),
+                    Importes.aDouble(h.getCostoEnvioTotal()), Importes.aDouble(h.getTotalACobrarTotal()));
+        }
+
+        /** Fila de {@link EnvioRepository#resumirColectadosEntreFechas}. */
+        static AgregadoColecta desdeFila(Object[] fila) {
+            LocalDate dia = fila[2] instanceof java.sql.Date d ? d.toLocalDate() : (LocalDate) fila[2];
+            return new AgregadoColecta((String) fila[0], ColectaDiaria.grupoDeEstado((String) fila[1]), dia, (String) fila[3],
+                    ((Number) fila[4]).intValue(),
+                    fila[5] != null ? ((Number) fila[5]).doubleValue() : 0,
+                    fila[6] != null ? ((Number) fila[6]).doubleValue() : 0);
+        }
+    }
+
     private static class ResumenData {
         final Map<LocalDate, Map<String, ZonaDia>> porDiaZona;
         final Map<String, PorZona> porZona;
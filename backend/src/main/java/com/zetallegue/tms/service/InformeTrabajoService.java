@@ -0,0 +1,211 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.InformeRequestDTO;
+import com.zetallegue.tms.dto.InformeTrabajoDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cola de informes generados en segundo plano.
+ *
+ * El POST devuelve enseguida un id de trabajo; el informe se genera con la lógica de {@link InformeService} en un
+ * pool propio, se guarda en {@link AlmacenInformes} y se descarga después desde el link del trabajo. Así los rangos
+ * de fechas largos no dependen del timeout del balanceador. Si llega una solicitud idéntica a la de un trabajo
+ * pendiente o en curso, se devuelve ese trabajo en lugar de generar otro: los reintentos de los usuarios no
+ * multiplican la carga. Un trabajo terminado no se reutiliza, porque los envíos de cualquier período pueden cambiar
+ * después (colectas tardías, bajas, recálculo de precios). Los trabajos y sus archivos se eliminan al vencer la retención.
+ */
+@Service
+@Slf4j
+public class InformeTrabajoService {
+
+    /** Prefijo de las claves en el almacén: separa los archivos de trabajos de los de informes programados. */
+    private static final String PREFIJO_CLAVE = "trabajo-";
+
+    private final InformeService informeService;
+    private final AlmacenInformes almacenInformes;
+    private final long horasRetencion;
+    private final ExecutorService executor;
+    private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+
+    public InformeTrabajoService(InformeService informeService,
+                                 AlmacenInformes almacenInformes,
+                                 @Value("${informes.trabajos.hilos:2}") int hilos,
+                                 @Value("${informes.trabajos.horas-retencion:24}") long horasRetencion) {
+        this.informeService = informeService;
+        this.almacenInformes = almacenInformes;
+        this.horasRetencion = horasRetencion;
+        AtomicInteger numero = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, hilos), r -> {
+            Thread t = new Thread(r, "informe-trabajo-" + numero.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Encola el informe (o devuelve el trabajo vigente con la misma solicitud). Lanza IllegalArgumentException si es inválida. */
+    public InformeTrabajoDTO encolar(InformeRequestDTO req) {
+        informeService.validarSolicitud(req);
+        synchronized (trabajos) {
+            for (Trabajo existente : trabajos.values()) {
+                if (existente.solicitud.equals(req) && existente.reutilizable()) {
+                    log.info("[Informe] Solicitud repetida, se reutiliza el trabajo {}", existente.id);
+                    return existente.toDTO();
+                }
+            }
+            Trabajo trabajo = new Trabajo(UUID.randomUUID().toString(), copiar(req));
+            trabajos.put(trabajo.id, trabajo);
+            executor.submit(() -> ejecutar(trabajo));
+            log.info("[Informe] Trabajo {} encolado ({} {} - {})", trabajo.id, req.getTipoDestinatario(),
+                    req.getFechaDesde(), req.getFechaHasta());
+            return trabajo.toDTO();
+        }
+    }
+
+    public InformeTrabajoDTO obtenerEstado(String id) {
+        return obtenerTrabajo(id).toDTO();
+    }
+
+    /**
+     * Archivo generado del trabajo. Lanza RuntimeException si el trabajo no existe o venció,
+     * e IllegalStateException si todavía no terminó.
+     */
+    public ArchivoInforme obtenerArchivo(String id) {
+        Trabajo trabajo = obtenerTrabajo(id);
+        if (!"COMPLETADO".equals(trabajo.estado)) {
+            throw new IllegalStateException("El informe todavía no está listo (estado " + trabajo.estado + ")");
+        }
+        Resource recurso = almacenInformes.obtener(trabajo.clave())
+                .orElseThrow(() -> new RuntimeException("Archivo de informe no encontrado para el trabajo: " + id));
+        return new ArchivoInforme(recurso, trabajo.nombreArchivo, trabajo.contentType);
+    }
+
+    @Scheduled(fixedDelay = 30 * 60 * 1000, initialDelay = 60 * 1000)
+    public void limpiarVencidos() {
+        trabajos.values().removeIf(t -> {
+            if (!t.vencido()) return false;
+            almacenInformes.eliminar(t.clave());
+            return true;
+        });
+        // Archivos de trabajos que ya no están en memoria (por ejemplo, de antes de un reinicio)
+        int huerfanos = almacenInformes.eliminarAnterioresA(PREFIJO_CLAVE, Instant.now().minusSeconds(horasRetencion * 3600));
+        if (huerfanos > 0) {
+            log.info("[Informe] {} archivos de informes vencidos eliminados", huerfanos);
+        }
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    private Trabajo obtenerTrabajo(String id) {
+        Trabajo trabajo = trabajos.get(id);
+        if (trabajo == null || trabajo.vencido()) {
+            throw new RuntimeException("Informe no encontrado con id: " + id);
+        }
+        return trabajo;
+    }
+
+    private void ejecutar(Trabajo trabajo) {
+        trabajo.estado = "EN_CURSO";
+        trabajo.inicio = LocalDateTime.now();
+        try {
+            InformeService.InformePreparado informe = informeService.prepararInforme(trabajo.solicitud);
+            trabajo.nombreArchivo = informe.getNombre();
+            trabajo.contentType = informe.getContentType();
+            trabajo.totalArchivos = informe.getCantidadArchivos();
+            try (AlmacenInformes.ArchivoNuevo out = almacenInformes.crear(trabajo.clave())) {
+                informe.escribir(out, trabajo.archivosGenerados::incrementAndGet);
+                out.confirmar();
+            }
+            trabajo.tamanio = almacenInformes.obtener(trabajo.clave()).map(this::tamanio).orElse(null);
+            trabajo.estado = "COMPLETADO";
+            log.info("[Informe] Trabajo {} completado: {} ({} bytes)", trabajo.id, trabajo.nombreArchivo, trabajo.tamanio);
+        } catch (Exception e) {
+            trabajo.estado = "ERROR";
+            trabajo.error = e.getMessage();
+            almacenInformes.eliminar(trabajo.clave());
+            log.error("[Informe] Error en trabajo {}: {}", trabajo.id, e.getMessage(), e);
+        } finally {
+            trabajo.fin = LocalDateTime.now();
+        }
+    }
+
+    private Long tamanio(Resource recurso) {
+        try {
+            return recurso.contentLength();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Copia defensiva: la solicitud se usa para detectar repetidas y no debe cambiar después de encolarse. */
+    private static InformeRequestDTO copiar(InformeRequestDTO req) {
+        return new InformeRequestDTO(req.getFechaDesde(), req.getFechaHasta(), req.getTipoDestinatario(),
+                req.getIdsGrupos() != null ? new ArrayList<>(req.getIdsGrupos()) : null,
+                req.getIdsCuentas() != null ? new ArrayList<>(req.getIdsCuentas()) : null,
+                req.getFormato(), req.getTomarEnvios());
+    }
+
+    /** Archivo listo para descargar. */
+    public record ArchivoInforme(Resource recurso, String nombre, String contentType) {}
+
+    private final class Trabajo {
+        final String id;
+        final InformeRequestDTO solicitud;
+        final LocalDateTime creado = LocalDateTime.now();
+        final AtomicInteger archivosGenerados = new AtomicInteger();
+        volatile String estado = "PENDIENTE";
+        volatile String nombreArchivo;
+        volatile String contentType;
+        volatile Integer totalArchivos;
+        volatile Long tamanio;
+        volatile String error;
+        volatile LocalDateTime inicio;
+        volatile LocalDateTime fin;
+
+        Trabajo(String id, InformeRequestDTO solicitud) {
+            this.id = id;
+            this.solicitud = solicitud;
+        }
+
+        String clave() {
+            return PREFIJO_CLAVE + id;
+        }
+
+        LocalDateTime expira() {
+            return fin != null ? fin.plusHours(horasRetencion) : null;
+        }
+
+        /** Solo se reutiliza mientras no terminó: el archivo de uno terminado puede haber quedado desactualizado. */
+        boolean reutilizable() {
+            return "PENDIENTE".equals(estado) || "EN_CURSO".equals(estado);
+        }
+
+        boolean vencido() {
+            LocalDateTime expira = expira();
+            return expira != null && expira.isBefore(LocalDateTime.now());
+        }
+
+        InformeTrabajoDTO toDTO() {
+            String url = "COMPLETADO".equals(estado) ? "/api/informes/trabajos/" + id + "/descarga" : null;
+            return new InformeTrabajoDTO(id, estado, nombreArchivo, totalArchivos, archivosGenerados.get(), tamanio,
+                    error, creado, inicio, fin, expira(), url);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.stream.Collectors;
 public class ListaPrecioService {
 
     private final ListaPrecioRepository listaPrecioRepository;
+    private final MotorPreciosService motorPreciosService;
 
     @Transactional(readOnly = true)
     public PageResponseDTO<ListaPrecioDTO> obtenerTodasLasListasPrecios(int page, int size) {
@@ -65,6 +66,7 @@ public class ListaPrecioService {
             }
         }
         entity = listaPrecioRepository.save(entity);
+        motorPreciosService.invalidar();
         return toDTOSimple(entity);
     }
 
@@ -90,6 +92,7 @@ public class ListaPrecioService {
             }
         }
         existing = listaPrecioRepository.save(existing);
+        motorPreciosService.invalidar();
         return toDTOSimple(existing);
     }
 
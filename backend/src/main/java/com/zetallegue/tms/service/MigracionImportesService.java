@@ -0,0 +1,138 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Envio;
+import com.zetallegue.tms.model.Importes;
+import com.zetallegue.tms.model.ProgresoMigracion;
+import com.zetallegue.tms.model.Zona;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.ProgresoMigracionRepository;
+import com.zetallegue.tms.repository.ZonaRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Completa las columnas numéricas de importes ({@code costo_envio_num}, {@code total_a_cobrar_num}, {@code peso_num},
+ * {@code valor_num}) a partir de los textos guardados antes de que existieran.
+ *
+ * Corre al arrancar la aplicación y solo toca filas pendientes. Los envíos se recorren por id en lotes, cada uno en
+ * su propia transacción, y se escriben con un UPDATE por JDBC de las tres columnas numéricas: no se cargan las
+ * entidades ni se disparan sus listeners. Como el UPDATE no pasa por {@link ColectaDiariaListener}, se marcan a mano
+ * los días de colecta de los envíos completados. El último id revisado queda en {@link ProgresoMigracion}, así los
+ * textos que no son números no se vuelven a leer en cada arranque. Las filas nuevas o modificadas ya se sincronizan
+ * en los {@code @PrePersist/@PreUpdate} de {@link Envio} y {@link Zona}.
+ */
+@Service
+@Slf4j
+public class MigracionImportesService {
+
+    private static final int TAMANIO_LOTE = 500;
+    private static final String MIGRACION_ENVIOS = "importes-envios";
+    private static final String ACTUALIZAR_ENVIO =
+            "UPDATE envios SET costo_envio_num = ?, total_a_cobrar_num = ?, peso_num = ? WHERE id = ?";
+
+    private final EnvioRepository envioRepository;
+    private final ZonaRepository zonaRepository;
+    private final ProgresoMigracionRepository progresoMigracionRepository;
+    private final ColectaDiariaService colectaDiariaService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public MigracionImportesService(EnvioRepository envioRepository,
+                                    ZonaRepository zonaRepository,
+                                    ProgresoMigracionRepository progresoMigracionRepository,
+                                    ColectaDiariaService colectaDiariaService,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager) {
+        this.envioRepository = envioRepository;
+        this.zonaRepository = zonaRepository;
+        this.progresoMigracionRepository = progresoMigracionRepository;
+        this.colectaDiariaService = colectaDiariaService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrarAlIniciar() {
+        try {
+            migrarZonas();
+            migrarEnvios();
+        } catch (Exception e) {
+            log.error("Error al completar importes numéricos: {}", e.getMessage(), e);
+        }
+    }
+
+    private void migrarZonas() {
+        Integer migradas = transactionTemplate.execute(status -> {
+            List<Zona> zonas = zonaRepository.findConValorSinMigrar();
+            int n = 0;
+            for (Zona zona : zonas) {
+                zona.setValorNum(Importes.parsear(zona.getValor(), Importes.ESCALA_MONTO));
+                if (zona.getValorNum() != null) n++;
+            }
+            zonaRepository.saveAll(zonas);
+            return n;
+        });
+        if (migradas != null && migradas > 0) {
+            log.info("Importes numéricos completados en {} zonas", migradas);
+        }
+    }
+
+    private void migrarEnvios() {
+        long ultimoId = progresoMigracionRepository.findById(MIGRACION_ENVIOS).map(ProgresoMigracion::getUltimoId).orElse(0L);
+        int revisados = 0;
+        int completados = 0;
+        while (true) {
+            List<Object[]> filas = envioRepository.findImportesSinMigrar(ultimoId, PageRequest.of(0, TAMANIO_LOTE));
+            if (filas.isEmpty()) break;
+            long hastaId = (Long) filas.get(filas.size() - 1)[0];
+            Integer actualizados = transactionTemplate.execute(status -> {
+                List<Object[]> valores = new ArrayList<>();
+                Set<LocalDate> dias = new HashSet<>();
+                for (Object[] fila : filas) {
+                    BigDecimal costo = Importes.parsear((String) fila[1], Importes.ESCALA_MONTO);
+                    BigDecimal total = Importes.parsear((String) fila[2], Importes.ESCALA_MONTO);
+                    BigDecimal peso = Importes.parsear((String) fila[3], Importes.ESCALA_PESO);
+                    // Los textos que no son números quedan con la columna en null; el progreso evita releerlos
+                    if (costo == null && total == null && peso == null) continue;
+                    // Igual que Envio.normalizarImportes: el total a cobrar no puede ser negativo
+                    if (total != null && total.signum() < 0) total = BigDecimal.ZERO.setScale(Importes.ESCALA_MONTO);
+                    valores.add(new Object[]{costo, total, peso, fila[0]});
+                    if (fila[4] != null) dias.add(aFecha(fila[4]));
+                }
+                if (!valores.isEmpty()) {
+                    jdbcTemplate.batchUpdate(ACTUALIZAR_ENVIO, valores);
+                    colectaDiariaService.marcarDiasPendientes(dias.toArray(LocalDate[]::new));
+                }
+                progresoMigracionRepository.save(new ProgresoMigracion(MIGRACION_ENVIOS, hastaId));
+                return valores.size();
+            });
+            ultimoId = hastaId;
+            revisados += filas.size();
+            completados += actualizados != null ? actualizados : 0;
+        }
+        if (revisados > 0) {
+            log.info("Importes numéricos completados: {} de {} envíos revisados", completados, revisados);
+        }
+    }
+
+    private static LocalDate aFecha(Object valor) {
+        if (valor instanceof LocalDateTime ldt) return ldt.toLocalDate();
+        if (valor instanceof Timestamp ts) return ts.toLocalDateTime().toLocalDate();
+        return (LocalDate) valor;
+    }
+}
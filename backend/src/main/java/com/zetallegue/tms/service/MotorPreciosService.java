@@ -0,0 +1,289 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.model.Importes;
+import com.zetallegue.tms.model.ListaPrecio;
+import com.zetallegue.tms.model.Zona;
+import com.zetallegue.tms.repository.ListaPrecioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Motor de precios: resuelve CP → zona → costo de envío contra una lista de precios.
+ *
+ * Cada lista se compila una sola vez (resolviendo la lista referenciada si no tiene zonas propias) en una
+ * estructura inmutable: segmentos de rangos ordenados y disjuntos + CPs sueltos ordenados, ambos con búsqueda
+ * binaria. El resultado se cachea por listaPreciosId y se descarta cuando {@link ListaPrecioService} crea o
+ * modifica una lista.
+ *
+ * Reglas (las mismas que la lógica de "Lista de Precios" del frontend que se replicaba en cada servicio de envíos):
+ * las zonas se evalúan en orden y gana la primera que contiene el CP; de cada zona se toma el primer rango
+ * "desde-hasta" y los CPs sueltos separados por comas; las zonas sin valor numérico se ignoran.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MotorPreciosService {
+
+    private static final Pattern RANGO_PATTERN = Pattern.compile("(\\d+)-(\\d+)");
+
+    private final ListaPrecioRepository listaPrecioRepository;
+
+    private final Map<Long, ListaCompilada> listas = new ConcurrentHashMap<>();
+    /** Se incrementa en cada invalidación; una lista compilada antes de la última no se guarda. */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Costo de envío para el CP según la lista de precios; 0.0 si la lista no existe, no tiene zonas,
+     * el CP es inválido o ninguna zona lo contiene.
+     */
+    public double calcularCosto(String codigoPostal, Long listaPreciosId) {
+        if (listaPreciosId == null) return 0.0;
+        int cp = parsearCp(codigoPostal);
+        if (cp < 0) {
+            log.warn("CP inválido: {}", codigoPostal);
+            return 0.0;
+        }
+        ListaCompilada lista = obtenerLista(listaPreciosId);
+        int zona = lista.buscarZona(cp);
+        if (zona < 0) {
+            log.debug("No se encontró una zona para el CP {} en lista {}", codigoPostal, listaPreciosId);
+            return 0.0;
+        }
+        return lista.valores[zona];
+    }
+
+    /** Nombre de la zona de la lista que contiene el CP, o null si no hay ninguna. */
+    public String resolverNombreZona(String codigoPostal, Long listaPreciosId) {
+        if (listaPreciosId == null) return null;
+        int cp = parsearCp(codigoPostal);
+        if (cp < 0) return null;
+        ListaCompilada lista = obtenerLista(listaPreciosId);
+        int zona = lista.buscarZona(cp);
+        return zona < 0 ? null : lista.nombres[zona];
+    }
+
+    /**
+     * Descarta todas las listas compiladas (una lista puede heredar las zonas de otra, así que no alcanza con
+     * descartar solo la modificada). Si hay transacción activa se vuelve a descartar al finalizar.
+     */
+    public void invalidar() {
+        descartar();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    descartar();
+                }
+            });
+        }
+    }
+
+    private synchronized void descartar() {
+        version.incrementAndGet();
+        listas.clear();
+    }
+
+    private ListaCompilada obtenerLista(Long listaPreciosId) {
+        ListaCompilada lista = listas.get(listaPreciosId);
+        if (lista != null) return lista;
+        long leida = version.get();
+        lista = compilar(listaPreciosId);
+        // Si se invalidó mientras se compilaba (por ejemplo al confirmar una escritura que esta lectura no vio),
+        // la lista sirve para este cálculo pero no se guarda
+        synchronized (this) {
+            if (version.get() != leida) return lista;
+            ListaCompilada previa = listas.putIfAbsent(listaPreciosId, lista);
+            return previa != null ? previa : lista;
+        }
+    }
+
+    private ListaCompilada compilar(Long listaPreciosId) {
+        ListaPrecio listaPrecio = listaPrecioRepository.findById(listaPreciosId).orElse(null);
+        if (listaPrecio == null) {
+            log.warn("Lista de precios no encontrada con id: {}", listaPreciosId);
+            return ListaCompilada.VACIA;
+        }
+        List<Zona> zonas = Collections.emptyList();
+        if (!Boolean.TRUE.equals(listaPrecio.getZonaPropia()) && listaPrecio.getListaPrecioSeleccionada() != null) {
+            // Si no tiene zonas propias, usar las zonas de la lista referenciada
+            ListaPrecio referenciada = listaPrecioRepository.findById(listaPrecio.getListaPrecioSeleccionada()).orElse(null);
+            if (referenciada != null && Boolean.TRUE.equals(referenciada.getZonaPropia()) && referenciada.getZonas() != null) {
+                zonas = referenciada.getZonas();
+            }
+        } else if (Boolean.TRUE.equals(listaPrecio.getZonaPropia()) && listaPrecio.getZonas() != null) {
+            zonas = listaPrecio.getZonas();
+        }
+        if (zonas.isEmpty()) {
+            log.warn("Lista de precios sin zonas para ID: {}", listaPreciosId);
+        }
+        ListaCompilada compilada = ListaCompilada.compilar(zonas);
+        log.debug("Lista de precios {} compilada: {} zonas con valor, {} segmentos de rango, {} CPs sueltos",
+                listaPreciosId, compilada.valores.length, compilada.rangoInicio.length, compilada.cps.length);
+        return compilada;
+    }
+
+    /** CP numérico (solo dígitos del texto) o -1 si no tiene dígitos o no entra en un int. */
+    static int parsearCp(String codigoPostal) {
+        if (codigoPostal == null) return -1;
+        long cp = 0;
+        boolean hayDigitos = false;
+        for (int i = 0; i < codigoPostal.length(); i++) {
+            char ch = codigoPostal.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                cp = cp * 10 + (ch - '0');
+                hayDigitos = true;
+                if (cp > Integer.MAX_VALUE) return -1;
+            }
+        }
+        return hayDigitos ? (int) cp : -1;
+    }
+
+    /** Valor numérico de la zona (columna valor_num, o el texto si todavía no se migró); null si no es un número. */
+    private static Double valorZona(Zona zona) {
+        BigDecimal valor = zona.getValorNum() != null ? zona.getValorNum() : Importes.parsear(zona.getValor(), Importes.ESCALA_MONTO);
+        if (valor == null) {
+            if (zona.getValor() != null && !zona.getValor().isEmpty()) log.warn("Valor de zona inválido: {}", zona.getValor());
+            return null;
+        }
+        return valor.doubleValue();
+    }
+
+    /**
+     * Lista de precios compilada. Los índices de zona son el orden original de las zonas con valor válido,
+     * así "menor índice" equivale a "primera zona que coincide".
+     */
+    static final class ListaCompilada {
+        static final ListaCompilada VACIA = new ListaCompilada(new double[0], new String[0],
+                new int[0], new int[0], new int[0], new int[0], new int[0]);
+
+        final double[] valores;
+        final String[] nombres;
+        /** Segmentos disjuntos ordenados [inicio, fin] con la zona de menor índice que los cubre. */
+        final int[] rangoInicio;
+        final int[] rangoFin;
+        final int[] rangoZona;
+        /** CPs sueltos ordenados con la zona de menor índice que los lista. */
+        final int[] cps;
+        final int[] cpZona;
+
+        private ListaCompilada(double[] valores, String[] nombres, int[] rangoInicio, int[] rangoFin,
+                               int[] rangoZona, int[] cps, int[] cpZona) {
+            this.valores = valores;
+            this.nombres = nombres;
+            this.rangoInicio = rangoInicio;
+            this.rangoFin = rangoFin;
+            this.rangoZona = rangoZona;
+            this.cps = cps;
+            this.cpZona = cpZona;
+        }
+
+        int buscarZona(int cp) {
+            int zona = -1;
+            int i = Arrays.binarySearch(cps, cp);
+            if (i >= 0) zona = cpZona[i];
+            int r = Arrays.binarySearch(rangoInicio, cp);
+            if (r < 0) r = -r - 2;
+            if (r >= 0 && cp <= rangoFin[r] && (zona < 0 || rangoZona[r] < zona)) {
+                zona = rangoZona[r];
+            }
+            return zona;
+        }
+
+        static ListaCompilada compilar(List<Zona> zonas) {
+            List<Double> valores = new ArrayList<>();
+            List<String> nombres = new ArrayList<>();
+            List<long[]> rangos = new ArrayList<>();
+            Map<Integer, Integer> cpsSueltos = new HashMap<>();
+            for (Zona zona : zonas) {
+                if (zona.getCps() == null || zona.getCps().isEmpty()) continue;
+                Double valor = valorZona(zona);
+                if (valor == null) continue;
+                int indice = valores.size();
+                valores.add(valor);
+                nombres.add(zona.getNombre());
+
+                String cpsZona = zona.getCps();
+                Matcher rangoMatch = RANGO_PATTERN.matcher(cpsZona);
+                if (rangoMatch.find()) {
+                    long inicio = parsearLong(rangoMatch.group(1));
+                    long fin = parsearLong(rangoMatch.group(2));
+                    if (inicio >= 0 && inicio <= Integer.MAX_VALUE && fin >= inicio) {
+                        rangos.add(new long[]{inicio, Math.min(fin, Integer.MAX_VALUE), indice});
+                    }
+                }
+                for (String cp : cpsZona.split(",")) {
+                    String cpTrim = cp.trim();
+                    if (cpTrim.isEmpty() || !cpTrim.chars().allMatch(Character::isDigit)) continue;
+                    long numero = parsearLong(cpTrim);
+                    if (numero >= 0 && numero <= Integer.MAX_VALUE) {
+                        cpsSueltos.putIfAbsent((int) numero, indice);
+                    }
+                }
+            }
+
+            int[] cps = cpsSueltos.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] cpZona = new int[cps.length];
+            for (int i = 0; i < cps.length; i++) cpZona[i] = cpsSueltos.get(cps[i]);
+
+            // Aplanar los rangos (pueden solaparse) en segmentos disjuntos quedándose con la zona de menor índice
+            TreeSet<Long> cortes = new TreeSet<>();
+            for (long[] r : rangos) {
+                cortes.add(r[0]);
+                cortes.add(r[1] + 1);
+            }
+            List<int[]> segmentos = new ArrayList<>();
+            Long desde = cortes.isEmpty() ? null : cortes.first();
+            while (desde != null) {
+                Long siguiente = cortes.higher(desde);
+                if (siguiente == null) break;
+                int mejor = -1;
+                for (long[] r : rangos) {
+                    if (r[0] <= desde && desde <= r[1] && (mejor < 0 || r[2] < mejor)) mejor = (int) r[2];
+                }
+                if (mejor >= 0) {
+                    int[] ultimo = segmentos.isEmpty() ? null : segmentos.get(segmentos.size() - 1);
+                    if (ultimo != null && ultimo[2] == mejor && ultimo[1] + 1L == desde) {
+                        ultimo[1] = (int) (siguiente - 1);
+                    } else {
+                        segmentos.add(new int[]{(int) (long) desde, (int) (siguiente - 1), mejor});
+                    }
+                }
+                desde = siguiente;
+            }
+            int[] rangoInicio = new int[segmentos.size()];
+            int[] rangoFin = new int[segmentos.size()];
+            int[] rangoZona = new int[segmentos.size()];
+            for (int i = 0; i < segmentos.size(); i++) {
+                rangoInicio[i] = segmentos.get(i)[0];
+                rangoFin[i] = segmentos.get(i)[1];
+                rangoZona[i] = segmentos.get(i)[2];
+            }
+
+            double[] valoresArr = new double[valores.size()];
+            for (int i = 0; i < valoresArr.length; i++) valoresArr[i] = valores.get(i);
+            return new ListaCompilada(valoresArr, nombres.toArray(new String[0]),
+                    rangoInicio, rangoFin, rangoZona, cps, cpZona);
+        }
+
+        private static long parsearLong(String digitos) {
+            if (digitos.length() > 18) return -1;
+            return Long.parseLong(digitos);
+        }
+    }
+}
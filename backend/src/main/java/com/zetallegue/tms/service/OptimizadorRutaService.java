@@ -0,0 +1,415 @@
+package com.zetallegue.tms.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Secuenciación de paradas de un chofer, en memoria y sin servicios externos.
+ *
+ * Construye la ruta con vecino más cercano desde la posición del chofer (ruta abierta: no vuelve al origen) y la
+ * mejora con 2-opt (invertir un tramo) y Or-opt (mover un tramo de 1 a 3 paradas a otra posición) hasta que ninguna
+ * mejora o se agota el presupuesto de tiempo. Las distancias son en línea recta (haversine) y el tiempo se estima con
+ * una velocidad promedio más un tiempo fijo por parada.
+ *
+ * Con deadlines el costo es el tiempo total más una penalización por cada minuto de llegada tarde, y cada movimiento
+ * se evalúa recorriendo la ruta; sin deadlines que se puedan incumplir se evalúa solo la diferencia de distancia.
+ */
+@Service
+public class OptimizadorRutaService {
+
+    private static final double RADIO_TIERRA_KM = 6371.0;
+    private static final int LARGO_MAXIMO_OR_OPT = 3;
+    private static final double EPSILON = 1e-9;
+
+    /** Parada a secuenciar. deadline puede ser null. */
+    public record Parada(Long id, double latitud, double longitud, LocalDateTime deadline) {
+    }
+
+    /** Parada en su posición de la ruta, con la llegada estimada. */
+    public record ParadaEnRuta(Parada parada, double kmDesdeAnterior, LocalDateTime llegadaEstimada, boolean tarde) {
+    }
+
+    public record Ruta(List<ParadaEnRuta> paradas, double distanciaKm, double minutos, int paradasTarde,
+                       long milisegundos, boolean presupuestoAgotado) {
+    }
+
+    private final double velocidadKmh;
+    private final double minutosPorParada;
+    private final double penalizacionPorMinutoTarde;
+    private final long presupuestoMs;
+
+    public OptimizadorRutaService(@Value("${rutas.velocidad-kmh:25}") double velocidadKmh,
+                                  @Value("${rutas.minutos-por-parada:4}") double minutosPorParada,
+                                  @Value("${rutas.penalizacion-minuto-tarde:10}") double penalizacionPorMinutoTarde,
+                                  @Value("${rutas.presupuesto-ms:300}") long presupuestoMs) {
+        this.velocidadKmh = velocidadKmh;
+        this.minutosPorParada = minutosPorParada;
+        this.penalizacionPorMinutoTarde = penalizacionPorMinutoTarde;
+        this.presupuestoMs = presupuestoMs;
+    }
+
+    /**
+     * Ordena las paradas saliendo de (latitudOrigen, longitudOrigen) en el momento inicio. Sin origen
+     * (chofer sin ubicación) la ruta arranca en la parada con el deadline más temprano o, si no hay, la primera.
+     */
+    public Ruta optimizar(Double latitudOrigen, Double longitudOrigen, List<Parada> paradas, LocalDateTime inicio) {
+        long comienzo = System.nanoTime();
+        long limite = comienzo + presupuestoMs * 1_000_000L;
+        int n = paradas.size();
+        if (n == 0) {
+            return new Ruta(List.of(), 0, 0, 0, 0, false);
+        }
+
+        Problema p = new Problema(latitudOrigen, longitudOrigen, paradas, inicio);
+        int[] ruta = vecinoMasCercano(p);
+        boolean agotado = false;
+        if (n > 2) {
+            // Primero solo distancia (evaluación O(1) por movimiento); con deadlines se pule después con el costo
+            // completo, que converge en muchas menos pasadas partiendo de una ruta ya corta
+            boolean deadlines = p.hayDeadlines;
+            p.hayDeadlines = false;
+            agotado = mejorar(p, ruta, limite);
+            if (deadlines && !agotado) {
+                p.hayDeadlines = true;
+                agotado = mejorar(p, ruta, limite);
+            }
+        }
+        return armarRuta(p, ruta, (System.nanoTime() - comienzo) / 1_000_000L, agotado);
+    }
+
+    /**
+     * Ruta de vecino más cercano, sin mejorar: no usa el presupuesto de tiempo, para responder enseguida mientras la
+     * ruta optimizada se calcula aparte.
+     */
+    public Ruta rutaInicial(Double latitudOrigen, Double longitudOrigen, List<Parada> paradas, LocalDateTime inicio) {
+        long comienzo = System.nanoTime();
+        if (paradas.isEmpty()) {
+            return new Ruta(List.of(), 0, 0, 0, 0, false);
+        }
+        Problema p = new Problema(latitudOrigen, longitudOrigen, paradas, inicio);
+        return armarRuta(p, vecinoMasCercano(p), (System.nanoTime() - comienzo) / 1_000_000L, false);
+    }
+
+    /** 2-opt y Or-opt hasta que ninguno mejora; devuelve true si se cortó por el presupuesto. */
+    private boolean mejorar(Problema p, int[] ruta, long limite) {
+        boolean mejoro = true;
+        while (mejoro) {
+            if (System.nanoTime() > limite) return true;
+            mejoro = dosOpt(p, ruta, limite) | orOpt(p, ruta, limite);
+        }
+        return false;
+    }
+
+    /** Matriz de distancias (índice 0 = origen, i + 1 = paradas.get(i)) y deadlines en minutos desde el inicio. */
+    private final class Problema {
+        final int n;
+        final boolean conOrigen;
+        final double[][] km;
+        final double[] deadlineMin;
+        /** true si hay deadlines que se pueden incumplir y los movimientos se evalúan con el costo completo */
+        boolean hayDeadlines;
+        final double[] tiempoAntes;
+        final double[] tardeAntes;
+        final double[] llegada;
+        final double[] holguraDesde;
+        final double[] tardeDesde;
+        double tiempoFinal;
+        final List<Parada> paradas;
+        final LocalDateTime inicio;
+
+        Problema(Double latitudOrigen, Double longitudOrigen, List<Parada> paradas, LocalDateTime inicio) {
+            this.n = paradas.size();
+            this.paradas = paradas;
+            this.inicio = inicio;
+            this.conOrigen = latitudOrigen != null && longitudOrigen != null;
+            double[] lat = new double[n + 1];
+            double[] lng = new double[n + 1];
+            if (conOrigen) {
+                lat[0] = latitudOrigen;
+                lng[0] = longitudOrigen;
+            }
+            deadlineMin = new double[n + 1];
+            deadlineMin[0] = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                Parada parada = paradas.get(i);
+                lat[i + 1] = parada.latitud();
+                lng[i + 1] = parada.longitud();
+                deadlineMin[i + 1] = parada.deadline() == null ? Double.POSITIVE_INFINITY
+                        : Duration.between(inicio, parada.deadline()).toSeconds() / 60.0;
+            }
+            km = new double[n + 1][n + 1];
+            for (int i = 0; i <= n; i++) {
+                for (int j = i + 1; j <= n; j++) {
+                    double d = (i == 0 && !conOrigen) ? 0 : haversineKm(lat[i], lng[i], lat[j], lng[j]);
+                    km[i][j] = d;
+                    km[j][i] = d;
+                }
+            }
+            // Solo importan los deadlines que se podrían incumplir: si visitando todas las paradas en el peor orden
+            // razonable (suma de las aristas más largas) se llega a tiempo, se optimiza solo distancia
+            double peorCaso = 0;
+            for (int i = 0; i <= n; i++) {
+                double max = 0;
+                for (int j = 1; j <= n; j++) max = Math.max(max, km[i][j]);
+                peorCaso += minutosViaje(max) + minutosPorParada;
+            }
+            boolean incumplible = false;
+            for (int i = 1; i <= n; i++) {
+                if (deadlineMin[i] < peorCaso) {
+                    incumplible = true;
+                    break;
+                }
+            }
+            hayDeadlines = incumplible;
+            tiempoAntes = new double[n];
+            tardeAntes = new double[n];
+            llegada = new double[n];
+            holguraDesde = new double[n];
+            tardeDesde = new double[n];
+        }
+
+        /** Distancia del nodo anterior a la posición pos (pos = 0 sale del origen). */
+        double kmAnterior(int[] ruta, int pos) {
+            return km[pos == 0 ? 0 : ruta[pos - 1]][ruta[pos]];
+        }
+
+        /**
+         * Recalcula para la ruta actual el tiempo y los minutos tarde acumulados antes de cada posición, y para cada
+         * sufijo los minutos tarde y la holgura mínima hasta el deadline. Con eso {@link #costoDesde} evalúa un
+         * movimiento recorriendo solo el tramo que cambia. Devuelve el costo total.
+         */
+        double calcularPrefijos(int[] ruta) {
+            double t = 0;
+            double tarde = 0;
+            int anterior = 0;
+            for (int pos = 0; pos < n; pos++) {
+                tiempoAntes[pos] = t;
+                tardeAntes[pos] = tarde;
+                int nodo = ruta[pos];
+                t += minutosViaje(km[anterior][nodo]);
+                llegada[pos] = t;
+                if (t > deadlineMin[nodo]) tarde += t - deadlineMin[nodo];
+                t += minutosPorParada;
+                anterior = nodo;
+            }
+            tiempoFinal = t;
+            double holgura = Double.POSITIVE_INFINITY;
+            double tardeSufijo = 0;
+            for (int pos = n - 1; pos >= 0; pos--) {
+                double margen = deadlineMin[ruta[pos]] - llegada[pos];
+                holgura = Math.min(holgura, margen);
+                if (margen < 0) tardeSufijo -= margen;
+                holguraDesde[pos] = holgura;
+                tardeDesde[pos] = tardeSufijo;
+            }
+            return t + penalizacionPorMinutoTarde * tarde;
+        }
+
+        /**
+         * Costo (tiempo total en minutos más la penalización por llegadas tarde) de una ruta que coincide con la
+         * actual antes de desde y desde igualDesde en adelante. Desde la llegada a igualDesde el resto de la ruta es el
+         * actual corrido delta minutos: sin llegadas tarde en ese resto y con delta dentro de la holgura, el costo sale
+         * directo. Devuelve infinito apenas se sabe que no baja de cota.
+         */
+        double costoDesde(int[] ruta, int desde, int igualDesde, double cota) {
+            double t = tiempoAntes[desde];
+            double tarde = tardeAntes[desde];
+            int anterior = desde == 0 ? 0 : ruta[desde - 1];
+            for (int pos = desde; pos < n; pos++) {
+                int nodo = ruta[pos];
+                t += minutosViaje(km[anterior][nodo]);
+                if (pos == igualDesde) {
+                    double delta = t - llegada[pos];
+                    if (tardeDesde[pos] == 0 && delta <= holguraDesde[pos]) {
+                        double costo = tiempoFinal + delta + penalizacionPorMinutoTarde * tarde;
+                        return costo < cota ? costo : Double.POSITIVE_INFINITY;
+                    }
+                    // Con delta >= 0 lo tarde del resto no puede bajar
+                    if (delta >= 0 && tiempoFinal + delta + penalizacionPorMinutoTarde * (tarde + tardeDesde[pos]) >= cota) {
+                        return Double.POSITIVE_INFINITY;
+                    }
+                }
+                if (t > deadlineMin[nodo]) tarde += t - deadlineMin[nodo];
+                t += minutosPorParada;
+                // Cota inferior: al menos el tiempo fijo de las paradas que faltan
+                if (t + (n - 1 - pos) * minutosPorParada + penalizacionPorMinutoTarde * tarde >= cota) return Double.POSITIVE_INFINITY;
+                anterior = nodo;
+            }
+            return t + penalizacionPorMinutoTarde * tarde;
+        }
+    }
+
+    private int[] vecinoMasCercano(Problema p) {
+        int n = p.n;
+        int[] ruta = new int[n];
+        boolean[] visitado = new boolean[n + 1];
+        int actual = 0;
+        int desde = 0;
+        if (!p.conOrigen) {
+            // Sin origen se arranca por el deadline más temprano (o la primera parada)
+            int primero = 1;
+            for (int i = 2; i <= n; i++) {
+                if (p.deadlineMin[i] < p.deadlineMin[primero]) primero = i;
+            }
+            ruta[0] = primero;
+            visitado[primero] = true;
+            actual = primero;
+            desde = 1;
+        }
+        for (int pos = desde; pos < n; pos++) {
+            int mejor = -1;
+            double mejorKm = Double.POSITIVE_INFINITY;
+            for (int j = 1; j <= n; j++) {
+                if (!visitado[j] && p.km[actual][j] < mejorKm) {
+                    mejorKm = p.km[actual][j];
+                    mejor = j;
+                }
+            }
+            ruta[pos] = mejor;
+            visitado[mejor] = true;
+            actual = mejor;
+        }
+        return ruta;
+    }
+
+    /** Una pasada de 2-opt (primera mejora): invierte ruta[i..j]. */
+    private boolean dosOpt(Problema p, int[] ruta, long limite) {
+        int n = ruta.length;
+        boolean mejoro = false;
+        double costoActual = p.hayDeadlines ? p.calcularPrefijos(ruta) : 0;
+        int[] prueba = p.hayDeadlines ? new int[n] : null;
+        // Sin origen la primera parada queda fija (es el punto de partida)
+        int primera = p.conOrigen ? 0 : 1;
+        for (int i = primera; i < n - 1; i++) {
+            if (System.nanoTime() > limite) return mejoro;
+            for (int j = i + 1; j < n; j++) {
+                if (p.hayDeadlines) {
+                    System.arraycopy(ruta, 0, prueba, 0, n);
+                    invertir(prueba, i, j);
+                    if (p.costoDesde(prueba, i, j + 1, costoActual - EPSILON) < costoActual - EPSILON) {
+                        System.arraycopy(prueba, 0, ruta, 0, n);
+                        costoActual = p.calcularPrefijos(ruta);
+                        mejoro = true;
+                    }
+                } else {
+                    int a = i == 0 ? 0 : ruta[i - 1];
+                    double antes = p.km[a][ruta[i]] + (j + 1 < n ? p.km[ruta[j]][ruta[j + 1]] : 0);
+                    double despues = p.km[a][ruta[j]] + (j + 1 < n ? p.km[ruta[i]][ruta[j + 1]] : 0);
+                    if (despues < antes - EPSILON) {
+                        invertir(ruta, i, j);
+                        mejoro = true;
+                    }
+                }
+            }
+        }
+        return mejoro;
+    }
+
+    /** Una pasada de Or-opt (primera mejora): mueve ruta[i..i+largo-1] a otra posición. */
+    private boolean orOpt(Problema p, int[] ruta, long limite) {
+        int n = ruta.length;
+        boolean mejoro = false;
+        double costoActual = p.hayDeadlines ? p.calcularPrefijos(ruta) : 0;
+        int[] prueba = new int[n];
+        int primera = p.conOrigen ? 0 : 1;
+        for (int largo = 1; largo <= LARGO_MAXIMO_OR_OPT; largo++) {
+            for (int i = primera; i + largo <= n; i++) {
+                if (System.nanoTime() > limite) return mejoro;
+                int fin = i + largo - 1;
+                // El tramo se inserta después de la posición k del resto de la ruta (k = primera - 1: al principio)
+                for (int k = primera - 1; k < n; k++) {
+                    if (k >= i - 1 && k <= fin) continue;
+                    boolean aplicar;
+                    if (p.hayDeadlines) {
+                        mover(ruta, prueba, i, largo, k);
+                        aplicar = p.costoDesde(prueba, Math.min(i, k + 1), Math.max(fin, k) + 1, costoActual - EPSILON) < costoActual - EPSILON;
+                    } else {
+                        aplicar = deltaOrOpt(p, ruta, i, fin, k) < -EPSILON;
+                        if (aplicar) mover(ruta, prueba, i, largo, k);
+                    }
+                    if (aplicar) {
+                        System.arraycopy(prueba, 0, ruta, 0, n);
+                        if (p.hayDeadlines) costoActual = p.calcularPrefijos(ruta);
+                        mejoro = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return mejoro;
+    }
+
+    /** Diferencia de distancia de mover ruta[i..fin] después de la posición k. */
+    private static double deltaOrOpt(Problema p, int[] ruta, int i, int fin, int k) {
+        int n = ruta.length;
+        int antesDelTramo = i == 0 ? 0 : ruta[i - 1];
+        boolean hayDespues = fin + 1 < n;
+        double quitar = p.km[antesDelTramo][ruta[i]] + (hayDespues ? p.km[ruta[fin]][ruta[fin + 1]] : 0);
+        double unir = hayDespues ? p.km[antesDelTramo][ruta[fin + 1]] : 0;
+        int a = k < 0 ? 0 : ruta[k];
+        // k == i - 1 (no mover) se excluye antes, así que ruta[k + 1] nunca es parte del tramo
+        boolean hayB = k + 1 < n;
+        int b = hayB ? ruta[k + 1] : -1;
+        double romper = hayB ? p.km[a][b] : 0;
+        double insertar = p.km[a][ruta[i]] + (hayB ? p.km[ruta[fin]][b] : 0);
+        return (unir - quitar) + (insertar - romper);
+    }
+
+    /** Copia en destino la ruta con ruta[i..i+largo-1] movido después de la posición k (k < 0: al principio). */
+    private static void mover(int[] ruta, int[] destino, int i, int largo, int k) {
+        int pos = 0;
+        if (k < 0) {
+            for (int t = 0; t < largo; t++) destino[pos++] = ruta[i + t];
+        }
+        for (int r = 0; r < ruta.length; r++) {
+            if (r >= i && r < i + largo) continue;
+            destino[pos++] = ruta[r];
+            if (r == k) {
+                for (int t = 0; t < largo; t++) destino[pos++] = ruta[i + t];
+            }
+        }
+    }
+
+    private static void invertir(int[] ruta, int i, int j) {
+        while (i < j) {
+            int tmp = ruta[i];
+            ruta[i++] = ruta[j];
+            ruta[j--] = tmp;
+        }
+    }
+
+    private Ruta armarRuta(Problema p, int[] ruta, long milisegundos, boolean agotado) {
+        List<ParadaEnRuta> paradas = new ArrayList<>(ruta.length);
+        double t = 0;
+        double totalKm = 0;
+        int tarde = 0;
+        for (int pos = 0; pos < ruta.length; pos++) {
+            int nodo = ruta[pos];
+            double km = p.kmAnterior(ruta, pos);
+            totalKm += km;
+            t += minutosViaje(km);
+            boolean llegaTarde = t > p.deadlineMin[nodo];
+            if (llegaTarde) tarde++;
+            paradas.add(new ParadaEnRuta(p.paradas.get(nodo - 1), km, p.inicio.plusSeconds(Math.round(t * 60)), llegaTarde));
+            t += minutosPorParada;
+        }
+        return new Ruta(paradas, totalKm, t, tarde, milisegundos, agotado);
+    }
+
+    private double minutosViaje(double km) {
+        return km / velocidadKmh * 60.0;
+    }
+
+    public static double haversineKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * RADIO_TIERRA_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,432 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.AsignacionMasivaDTO;
+import com.zetallegue.tms.dto.AsignacionMasivaResultadoDTO;
+import com.zetallegue.tms.dto.PlanAsignacionDTO;
+import com.zetallegue.tms.dto.PlanChoferDTO;
+import com.zetallegue.tms.dto.PlanificacionRequestDTO;
+import com.zetallegue.tms.model.Usuario;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.UsuarioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Propone cómo repartir los envíos "Retirado" sin chofer entre los choferes disponibles.
+ *
+ * Es un k-means con capacidad: un grupo por chofer, sembrado en las zonas que el chofer suele repartir (lo asignado
+ * en los últimos {@code planificador.dias-afinidad} días) o con k-means++ si no tiene historial. En cada vuelta los
+ * envíos se asignan al centro más cercano con lugar, empezando por los que más pierden si no van a su primera opción,
+ * y el costo de ir a un chofer se descuenta hasta {@code planificador.bonus-afinidad-km} según cuánto conoce la zona.
+ * La capacidad de cada chofer se limita además a una carga pareja (promedio más un margen) para balancear.
+ *
+ * Los envíos sin coordenadas se ubican por el centro de su código postal; los que tampoco así se ubican se reparten
+ * solo por zona. El resultado es una vista previa: {@link #aplicar} la confirma con la asignación masiva.
+ */
+@Service
+@Slf4j
+public class PlanificadorAsignacionService {
+
+    private static final int MAX_ITERACIONES = 30;
+    /** Margen sobre la carga promedio que se permite a un chofer */
+    private static final double MARGEN_BALANCE = 0.15;
+    private static final double KM_POR_GRADO = 111.32;
+    private static final long SEMILLA = 42;
+
+    /** Envío a repartir; x/y en km sobre una proyección plana local (válida para el área de una ciudad). */
+    record EnvioAPlanificar(Long id, String zona, double x, double y, boolean ubicado) {
+    }
+
+    /** afinidad: fracción de lo que repartió el chofer en cada zona (0..1). */
+    record ChoferAPlanificar(Long id, String nombre, int capacidad, Map<String, Double> afinidad) {
+    }
+
+    /** choferDe[i] = índice del chofer del envío i, o -1 si no entró por capacidad. */
+    record Reparto(int[] choferDe, double[][] centros) {
+    }
+
+    private final EnvioRepository envioRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final ZonaEntregaService zonaEntregaService;
+    private final EnvioService envioService;
+    private final CentroidesCodigoPostalService centroidesCodigoPostalService;
+    private final int capacidadPorDefecto;
+    private final int diasAfinidad;
+    private final double bonusAfinidadKm;
+
+    public PlanificadorAsignacionService(EnvioRepository envioRepository,
+                                         UsuarioRepository usuarioRepository,
+                                         ZonaEntregaService zonaEntregaService,
+                                         EnvioService envioService,
+                                         CentroidesCodigoPostalService centroidesCodigoPostalService,
+                                         @Value("${planificador.capacidad-por-defecto:150}") int capacidadPorDefecto,
+                                         @Value("${planificador.dias-afinidad:30}") int diasAfinidad,
+                                         @Value("${planificador.bonus-afinidad-km:3}") double bonusAfinidadKm) {
+        this.envioRepository = envioRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.zonaEntregaService = zonaEntregaService;
+        this.envioService = envioService;
+        this.centroidesCodigoPostalService = centroidesCodigoPostalService;
+        this.capacidadPorDefecto = capacidadPorDefecto;
+        this.diasAfinidad = diasAfinidad;
+        this.bonusAfinidadKm = bonusAfinidadKm;
+    }
+
+    @Transactional(readOnly = true)
+    public PlanAsignacionDTO previsualizar(PlanificacionRequestDTO req) {
+        long comienzo = System.currentTimeMillis();
+        PlanificacionRequestDTO pedido = req != null ? req : new PlanificacionRequestDTO();
+
+        List<Usuario> choferes = pedido.getChoferIds() == null || pedido.getChoferIds().isEmpty()
+                ? usuarioRepository.findByPerfilAndHabilitadoTrueAndBloqueadoFalse("Chofer")
+                : usuarioRepository.findAllById(pedido.getChoferIds()).stream()
+                        .filter(u -> "Chofer".equals(u.getPerfil()))
+                        .collect(Collectors.toList());
+        if (choferes.isEmpty()) {
+            throw new IllegalArgumentException("No hay choferes disponibles para planificar");
+        }
+        choferes.sort(Comparator.comparing(Usuario::getId));
+
+        // Envíos: zona (o la clasificada por CP) y posición (destino, centro del CP, o ninguna)
+        List<Object[]> filas = envioRepository.findRetiradosSinChoferParaPlanificar();
+        Map<String, String> zonaPorCp = zonaEntregaService.clasificar(filas.stream()
+                .filter(f -> f[1] == null && f[2] != null).map(f -> (String) f[2]).collect(Collectors.toSet()));
+        Set<String> zonasPedidas = pedido.getZonas() == null || pedido.getZonas().isEmpty() ? null : Set.copyOf(pedido.getZonas());
+        List<Object[]> elegidas = new ArrayList<>();
+        for (Object[] f : filas) {
+            String zona = f[1] != null ? (String) f[1] : zonaPorCp.getOrDefault((String) f[2], ZonaEntregaService.SIN_ZONA);
+            f[1] = zona;
+            if (zonasPedidas == null || zonasPedidas.contains(zona)) elegidas.add(f);
+        }
+        Map<String, double[]> centroides = centroidesPorCp(elegidas);
+
+        List<double[]> latLng = new ArrayList<>(elegidas.size());
+        double sumaLat = 0;
+        int ubicados = 0;
+        for (Object[] f : elegidas) {
+            Double lat = (Double) f[3];
+            Double lng = (Double) f[4];
+            double[] posicion = UbicacionChoferService.coordenadasValidas(lat, lng) ? new double[]{lat, lng} : centroides.get((String) f[2]);
+            latLng.add(posicion);
+            if (posicion != null) {
+                sumaLat += posicion[0];
+                ubicados++;
+            }
+        }
+        // Proyección plana local (equirectangular): km exactos a escala de ciudad y distancias sin trigonometría
+        double cosLat = Math.cos(Math.toRadians(ubicados > 0 ? sumaLat / ubicados : 0));
+        List<EnvioAPlanificar> envios = new ArrayList<>(elegidas.size());
+        for (int i = 0; i < elegidas.size(); i++) {
+            Object[] f = elegidas.get(i);
+            double[] p = latLng.get(i);
+            envios.add(p != null
+                    ? new EnvioAPlanificar((Long) f[0], (String) f[1], p[1] * KM_POR_GRADO * cosLat, p[0] * KM_POR_GRADO, true)
+                    : new EnvioAPlanificar((Long) f[0], (String) f[1], 0, 0, false));
+        }
+
+        Map<Long, Map<String, Double>> afinidades = afinidadesPorChofer();
+        List<ChoferAPlanificar> aPlanificar = new ArrayList<>();
+        for (Usuario u : choferes) {
+            Integer capacidad = pedido.getCapacidades() != null ? pedido.getCapacidades().get(u.getId()) : null;
+            if (capacidad == null) capacidad = pedido.getCapacidadPorDefecto() != null ? pedido.getCapacidadPorDefecto() : capacidadPorDefecto;
+            aPlanificar.add(new ChoferAPlanificar(u.getId(), String.format("%s %s", u.getNombre(), u.getApellido()).trim(),
+                    Math.max(0, capacidad), afinidades.getOrDefault(u.getId(), Map.of())));
+        }
+
+        Reparto reparto = repartir(envios, aPlanificar, bonusAfinidadKm);
+
+        List<PlanChoferDTO> planes = new ArrayList<>();
+        for (int c = 0; c < aPlanificar.size(); c++) {
+            ChoferAPlanificar chofer = aPlanificar.get(c);
+            List<Long> ids = new ArrayList<>();
+            Map<String, Integer> porZona = new TreeMap<>();
+            double sumaKm = 0;
+            int conPosicion = 0;
+            for (int i = 0; i < envios.size(); i++) {
+                if (reparto.choferDe()[i] != c) continue;
+                EnvioAPlanificar e = envios.get(i);
+                ids.add(e.id());
+                porZona.merge(e.zona(), 1, Integer::sum);
+                if (e.ubicado()) {
+                    sumaKm += distancia(e.x(), e.y(), reparto.centros()[c]);
+                    conPosicion++;
+                }
+            }
+            double[] centro = reparto.centros()[c];
+            boolean conCentro = centro != null && conPosicion > 0;
+            planes.add(new PlanChoferDTO(chofer.id(), chofer.nombre(), chofer.capacidad(), ids.size(), porZona,
+                    conCentro ? centro[1] / KM_POR_GRADO : null,
+                    conCentro ? centro[0] / (KM_POR_GRADO * cosLat) : null,
+                    conPosicion > 0 ? sumaKm / conPosicion : null, ids));
+        }
+        List<Long> sinAsignar = new ArrayList<>();
+        for (int i = 0; i < envios.size(); i++) {
+            if (reparto.choferDe()[i] < 0) sinAsignar.add(envios.get(i).id());
+        }
+        long ms = System.currentTimeMillis() - comienzo;
+        log.info("Plan de asignación: {} envíos entre {} choferes, {} sin lugar, {} sin ubicación ({} ms)",
+                envios.size(), aPlanificar.size(), sinAsignar.size(), envios.size() - ubicados, ms);
+        return new PlanAsignacionDTO(planes, sinAsignar, envios.size(), envios.size() - ubicados, ms);
+    }
+
+    /**
+     * Confirma un plan (el de {@link #previsualizar}, tal cual o editado) con una asignación masiva por chofer, todo
+     * en una transacción. Los envíos que mientras tanto ya recibieron chofer no se tocan: vuelven como rechazados.
+     */
+    @Transactional
+    public List<AsignacionMasivaResultadoDTO> aplicar(PlanAsignacionDTO plan, String usuarioAsignador) {
+        if (plan == null || plan.getChoferes() == null || plan.getChoferes().isEmpty()) {
+            throw new IllegalArgumentException("El plan no tiene choferes");
+        }
+        List<Long> todos = plan.getChoferes().stream()
+                .filter(p -> p.getEnvioIds() != null)
+                .flatMap(p -> p.getEnvioIds().stream())
+                .collect(Collectors.toList());
+        Map<Long, String> yaAsignados = new HashMap<>();
+        if (!todos.isEmpty()) {
+            for (Object[] fila : envioRepository.findDatosAsignacion(todos)) {
+                String chofer = (String) fila[3];
+                if (chofer != null && !chofer.isBlank()) yaAsignados.put((Long) fila[0], chofer);
+            }
+        }
+
+        List<AsignacionMasivaResultadoDTO> resultados = new ArrayList<>();
+        for (PlanChoferDTO p : plan.getChoferes()) {
+            if (p.getEnvioIds() == null || p.getEnvioIds().isEmpty()) continue;
+            Map<Long, String> rechazados = new LinkedHashMap<>();
+            List<Long> ids = new ArrayList<>();
+            for (Long id : p.getEnvioIds()) {
+                if (yaAsignados.containsKey(id)) {
+                    rechazados.put(id, "Ya fue asignado a " + yaAsignados.get(id));
+                } else {
+                    ids.add(id);
+                }
+            }
+            AsignacionMasivaResultadoDTO resultado = ids.isEmpty()
+                    ? new AsignacionMasivaResultadoDTO(p.getChoferId(), p.getChoferNombre(), 0, 0, new LinkedHashMap<>())
+                    : envioService.asignarEnviosMasivo(new AsignacionMasivaDTO(p.getChoferId(), p.getChoferNombre(), usuarioAsignador, "WEB", ids, null));
+            resultado.getRechazados().putAll(rechazados);
+            resultados.add(resultado);
+        }
+        return resultados;
+    }
+
+    /**
+     * El reparto en sí, sin acceso a la base. Primero los envíos ubicados con k-means con capacidad; después los sin
+     * ubicación, a quien ya lleva más de su zona (o más la conoce) y tiene lugar.
+     */
+    static Reparto repartir(List<EnvioAPlanificar> envios, List<ChoferAPlanificar> choferes, double bonusAfinidadKm) {
+        int n = envios.size();
+        int k = choferes.size();
+        int[] choferDe = new int[n];
+        Arrays.fill(choferDe, -1);
+        double[][] centros = new double[k][];
+        if (n == 0 || k == 0) return new Reparto(choferDe, centros);
+
+        int cargaPareja = (int) Math.ceil(cargaPareja(n, choferes) * (1 + MARGEN_BALANCE));
+        int[] capacidad = new int[k];
+        for (int c = 0; c < k; c++) capacidad[c] = Math.min(choferes.get(c).capacidad(), cargaPareja);
+
+        List<Integer> ubicados = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (envios.get(i).ubicado()) ubicados.add(i);
+        }
+        // Costo de afinidad por envío y chofer (se calcula una vez: no depende de los centros)
+        double[][] bonus = new double[n][k];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < k; c++) {
+                bonus[i][c] = bonusAfinidadKm * choferes.get(c).afinidad().getOrDefault(envios.get(i).zona(), 0.0);
+            }
+        }
+
+        int[] restante = capacidad.clone();
+        if (!ubicados.isEmpty()) {
+            sembrarCentros(envios, choferes, ubicados, centros);
+            Integer[] orden = ubicados.toArray(new Integer[0]);
+            double[] arrepentimiento = new double[n];
+            double[][] costo = new double[n][k];
+            for (int iteracion = 0; iteracion < MAX_ITERACIONES; iteracion++) {
+                for (int i : ubicados) {
+                    EnvioAPlanificar e = envios.get(i);
+                    double mejor = Double.POSITIVE_INFINITY;
+                    double segundo = Double.POSITIVE_INFINITY;
+                    for (int c = 0; c < k; c++) {
+                        double v = distancia(e.x(), e.y(), centros[c]) - bonus[i][c];
+                        costo[i][c] = v;
+                        if (v < mejor) {
+                            segundo = mejor;
+                            mejor = v;
+                        } else if (v < segundo) {
+                            segundo = v;
+                        }
+                    }
+                    arrepentimiento[i] = k > 1 ? segundo - mejor : 0;
+                }
+                // Primero los que más pierden si no van a su mejor opción
+                Arrays.sort(orden, (a, b) -> Double.compare(arrepentimiento[b], arrepentimiento[a]));
+                restante = capacidad.clone();
+                boolean cambio = false;
+                for (int i : orden) {
+                    int elegido = -1;
+                    for (int c = 0; c < k; c++) {
+                        if (restante[c] > 0 && (elegido < 0 || costo[i][c] < costo[i][elegido])) elegido = c;
+                    }
+                    if (elegido >= 0) restante[elegido]--;
+                    if (choferDe[i] != elegido) cambio = true;
+                    choferDe[i] = elegido;
+                }
+                recalcularCentros(envios, ubicados, choferDe, centros);
+                if (!cambio) break;
+            }
+        }
+
+        // Sin ubicación: por zona
+        Map<String, int[]> porZonaYChofer = new HashMap<>();
+        for (int i : ubicados) {
+            if (choferDe[i] >= 0) porZonaYChofer.computeIfAbsent(envios.get(i).zona(), z -> new int[k])[choferDe[i]]++;
+        }
+        for (int i = 0; i < n; i++) {
+            EnvioAPlanificar e = envios.get(i);
+            if (e.ubicado()) continue;
+            int[] enZona = porZonaYChofer.computeIfAbsent(e.zona(), z -> new int[k]);
+            int elegido = -1;
+            for (int c = 0; c < k; c++) {
+                if (restante[c] <= 0) continue;
+                if (elegido < 0 || enZona[c] > enZona[elegido]
+                        || (enZona[c] == enZona[elegido] && bonus[i][c] > bonus[i][elegido])
+                        || (enZona[c] == enZona[elegido] && bonus[i][c] == bonus[i][elegido] && restante[c] > restante[elegido])) {
+                    elegido = c;
+                }
+            }
+            choferDe[i] = elegido;
+            if (elegido >= 0) {
+                restante[elegido]--;
+                enZona[elegido]++;
+            }
+        }
+        return new Reparto(choferDe, centros);
+    }
+
+    /**
+     * Carga por chofer si se repartiera parejo: lo que no pueden llevar los de poca capacidad se reparte entre el
+     * resto (con 30 envíos y capacidades 5, 150 y 150 da 12.5, no 10).
+     */
+    private static double cargaPareja(int envios, List<ChoferAPlanificar> choferes) {
+        int[] capacidades = choferes.stream().mapToInt(ChoferAPlanificar::capacidad).sorted().toArray();
+        double restantes = envios;
+        for (int i = 0; i < capacidades.length; i++) {
+            double parejo = restantes / (capacidades.length - i);
+            if (capacidades[i] >= parejo) return parejo;
+            restantes -= capacidades[i];
+        }
+        return restantes > 0 ? Double.MAX_VALUE / 2 : 0;
+    }
+
+    /**
+     * Centro inicial de cada chofer: el promedio de los envíos de hoy en las zonas que conoce, ponderado por su
+     * afinidad. Los que no tienen historial en estas zonas se siembran con k-means++.
+     */
+    private static void sembrarCentros(List<EnvioAPlanificar> envios, List<ChoferAPlanificar> choferes,
+                                       List<Integer> ubicados, double[][] centros) {
+        int k = choferes.size();
+        for (int c = 0; c < k; c++) {
+            Map<String, Double> afinidad = choferes.get(c).afinidad();
+            double sx = 0, sy = 0, peso = 0;
+            for (int i : ubicados) {
+                EnvioAPlanificar e = envios.get(i);
+                double w = afinidad.getOrDefault(e.zona(), 0.0);
+                sx += w * e.x();
+                sy += w * e.y();
+                peso += w;
+            }
+            if (peso > 0) centros[c] = new double[]{sx / peso, sy / peso};
+        }
+        Random random = new Random(SEMILLA);
+        for (int c = 0; c < k; c++) {
+            if (centros[c] != null) continue;
+            double[] d2 = new double[ubicados.size()];
+            double total = 0;
+            for (int j = 0; j < ubicados.size(); j++) {
+                EnvioAPlanificar e = envios.get(ubicados.get(j));
+                double min = Double.POSITIVE_INFINITY;
+                for (double[] centro : centros) {
+                    if (centro != null) min = Math.min(min, distancia(e.x(), e.y(), centro));
+                }
+                d2[j] = Double.isInfinite(min) ? 1 : min * min;
+                total += d2[j];
+            }
+            int elegido = 0;
+            if (total > 0) {
+                double r = random.nextDouble() * total;
+                while (elegido < d2.length - 1 && (r -= d2[elegido]) > 0) elegido++;
+            } else {
+                elegido = random.nextInt(ubicados.size());
+            }
+            EnvioAPlanificar e = envios.get(ubicados.get(elegido));
+            centros[c] = new double[]{e.x(), e.y()};
+        }
+    }
+
+    private static void recalcularCentros(List<EnvioAPlanificar> envios, List<Integer> ubicados, int[] choferDe, double[][] centros) {
+        int k = centros.length;
+        double[] sx = new double[k];
+        double[] sy = new double[k];
+        int[] cantidad = new int[k];
+        for (int i : ubicados) {
+            int c = choferDe[i];
+            if (c < 0) continue;
+            sx[c] += envios.get(i).x();
+            sy[c] += envios.get(i).y();
+            cantidad[c]++;
+        }
+        for (int c = 0; c < k; c++) {
+            // Un grupo vacío conserva su centro (sigue compitiendo en la próxima vuelta)
+            if (cantidad[c] > 0) centros[c] = new double[]{sx[c] / cantidad[c], sy[c] / cantidad[c]};
+        }
+    }
+
+    private static double distancia(double x, double y, double[] centro) {
+        double dx = x - centro[0];
+        double dy = y - centro[1];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Fracción de lo asignado a cada chofer en los últimos días por zona de entrega. */
+    private Map<Long, Map<String, Double>> afinidadesPorChofer() {
+        Map<Long, Map<String, Long>> conteos = new HashMap<>();
+        for (Object[] fila : envioRepository.contarAsignadosPorChoferYZonaDesde(LocalDateTime.now().minusDays(diasAfinidad))) {
+            conteos.computeIfAbsent((Long) fila[0], id -> new HashMap<>()).put((String) fila[1], ((Number) fila[2]).longValue());
+        }
+        Map<Long, Map<String, Double>> afinidades = new HashMap<>();
+        conteos.forEach((choferId, porZona) -> {
+            double total = porZona.values().stream().mapToLong(Long::longValue).sum();
+            Map<String, Double> fracciones = new HashMap<>();
+            porZona.forEach((zona, cantidad) -> fracciones.put(zona, cantidad / total));
+            afinidades.put(choferId, fracciones);
+        });
+        return afinidades;
+    }
+
+    private Map<String, double[]> centroidesPorCp(List<Object[]> filas) {
+        Set<String> cps = filas.stream()
+                .filter(f -> !UbicacionChoferService.coordenadasValidas((Double) f[3], (Double) f[4]) && f[2] != null)
+                .map(f -> (String) f[2])
+                .collect(Collectors.toSet());
+        return centroidesCodigoPostalService.obtener(cps);
+    }
+}
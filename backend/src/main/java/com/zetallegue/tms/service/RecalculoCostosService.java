@@ -0,0 +1,193 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.RecalculoCostosDTO;
+import com.zetallegue.tms.model.Cliente;
+import com.zetallegue.tms.model.Envio;
+import com.zetallegue.tms.model.ListaPrecio;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.ListaPrecioRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recalcula en segundo plano el {@code costoEnvio} de los envíos ya cargados cuando cambia una lista de precios.
+ *
+ * Afecta a los envíos de clientes que usan la lista directamente o a través de otra lista que la referencia
+ * ({@code listaPrecioSeleccionada}), cargados en la ventana de fechas pedida. Los envíos se procesan en lotes,
+ * cada uno en su propia transacción, para no mantener bloqueada la tabla envios durante todo el recálculo.
+ * Los trabajos corren de a uno y su progreso se consulta por id.
+ */
+@Service
+@Slf4j
+public class RecalculoCostosService {
+
+    private static final int TAMANIO_LOTE = 500;
+    /** Los trabajos terminados se olvidan después de este tiempo. */
+    private static final long HORAS_RETENCION = 24;
+
+    private final EnvioRepository envioRepository;
+    private final ListaPrecioRepository listaPrecioRepository;
+    private final DirectorioClientesService directorioClientesService;
+    private final MotorPreciosService motorPreciosService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "recalculo-costos");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+
+    public RecalculoCostosService(EnvioRepository envioRepository,
+                                  ListaPrecioRepository listaPrecioRepository,
+                                  DirectorioClientesService directorioClientesService,
+                                  MotorPreciosService motorPreciosService,
+                                  PlatformTransactionManager transactionManager) {
+        this.envioRepository = envioRepository;
+        this.listaPrecioRepository = listaPrecioRepository;
+        this.directorioClientesService = directorioClientesService;
+        this.motorPreciosService = motorPreciosService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Encola el recálculo de costos para la lista en la ventana [desde, hasta] (fechas de carga, inclusive).
+     */
+    public RecalculoCostosDTO iniciarRecalculo(Long listaPrecioId, LocalDate desde, LocalDate hasta) {
+        if (listaPrecioRepository.findById(listaPrecioId).isEmpty()) {
+            throw new RuntimeException("Lista de precios no encontrada con id: " + listaPrecioId);
+        }
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new RuntimeException("Rango de fechas inválido para el recálculo");
+        }
+        limpiarTrabajosViejos();
+        Trabajo trabajo = new Trabajo(UUID.randomUUID().toString(), listaPrecioId, desde, hasta);
+        trabajos.put(trabajo.id, trabajo);
+        executor.submit(() -> ejecutar(trabajo));
+        log.info("Recálculo de costos {} encolado para lista {} ({} - {})", trabajo.id, listaPrecioId, desde, hasta);
+        return trabajo.toDTO();
+    }
+
+    public RecalculoCostosDTO obtenerEstado(String id) {
+        Trabajo trabajo = trabajos.get(id);
+        if (trabajo == null) {
+            throw new RuntimeException("Recálculo no encontrado con id: " + id);
+        }
+        return trabajo.toDTO();
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    private void ejecutar(Trabajo trabajo) {
+        try {
+            Set<Long> listasAfectadas = new HashSet<>();
+            listasAfectadas.add(trabajo.listaPrecioId);
+            for (ListaPrecio derivada : listaPrecioRepository.findByListaPrecioSeleccionadaAndZonaPropiaFalse(trabajo.listaPrecioId)) {
+                listasAfectadas.add(derivada.getId());
+            }
+
+            // Solo se traen id y cliente; los envíos completos se cargan lote por lote
+            List<Long> ids = new ArrayList<>();
+            for (Object[] fila : envioRepository.findIdYClienteEntreFechas(
+                    trabajo.desde.atStartOfDay(), trabajo.hasta.plusDays(1).atStartOfDay())) {
+                Cliente cliente = directorioClientesService.resolverDesdeTextoEnvio((String) fila[1]).orElse(null);
+                if (cliente != null && listasAfectadas.contains(cliente.getListaPreciosId())) {
+                    ids.add((Long) fila[0]);
+                }
+            }
+            trabajo.total.set(ids.size());
+            log.info("Recálculo {}: {} envíos afectados (listas {})", trabajo.id, ids.size(), listasAfectadas);
+
+            for (int i = 0; i < ids.size(); i += TAMANIO_LOTE) {
+                List<Long> lote = ids.subList(i, Math.min(i + TAMANIO_LOTE, ids.size()));
+                transactionTemplate.executeWithoutResult(status -> procesarLote(trabajo, lote));
+                trabajo.procesados.addAndGet(lote.size());
+            }
+            trabajo.estado = "COMPLETADO";
+            log.info("Recálculo {} completado: {} actualizados, {} sin zona", trabajo.id,
+                    trabajo.actualizados.get(), trabajo.sinZona.get());
+        } catch (Exception e) {
+            trabajo.estado = "ERROR";
+            trabajo.error = e.getMessage();
+            log.error("Error en recálculo de costos {}: {}", trabajo.id, e.getMessage(), e);
+        } finally {
+            trabajo.fin = LocalDateTime.now();
+        }
+    }
+
+    private void procesarLote(Trabajo trabajo, List<Long> ids) {
+        List<Envio> modificados = new ArrayList<>();
+        for (Envio envio : envioRepository.findAllById(ids)) {
+            Cliente cliente = directorioClientesService.resolverDesdeTextoEnvio(envio.getCliente()).orElse(null);
+            if (cliente == null || envio.getCodigoPostal() == null || envio.getCodigoPostal().trim().isEmpty()) {
+                trabajo.sinZona.incrementAndGet();
+                continue;
+            }
+            double costo = motorPreciosService.calcularCosto(envio.getCodigoPostal(), cliente.getListaPreciosId());
+            if (costo <= 0) {
+                // Mismo criterio que al crear el envío: sin zona en la lista no se pisa el costo existente
+                trabajo.sinZona.incrementAndGet();
+                continue;
+            }
+            String nuevoCosto = String.format("%.2f", costo);
+            if (!Objects.equals(nuevoCosto, envio.getCostoEnvio())) {
+                envio.setCostoEnvio(nuevoCosto);
+                modificados.add(envio);
+            }
+        }
+        envioRepository.saveAll(modificados);
+        trabajo.actualizados.addAndGet(modificados.size());
+    }
+
+    private void limpiarTrabajosViejos() {
+        LocalDateTime limite = LocalDateTime.now().minusHours(HORAS_RETENCION);
+        trabajos.values().removeIf(t -> t.fin != null && t.fin.isBefore(limite));
+    }
+
+    private static final class Trabajo {
+        final String id;
+        final Long listaPrecioId;
+        final LocalDate desde;
+        final LocalDate hasta;
+        final LocalDateTime inicio = LocalDateTime.now();
+        final AtomicInteger total = new AtomicInteger();
+        final AtomicInteger procesados = new AtomicInteger();
+        final AtomicInteger actualizados = new AtomicInteger();
+        final AtomicInteger sinZona = new AtomicInteger();
+        volatile String estado = "EN_CURSO";
+        volatile String error;
+        volatile LocalDateTime fin;
+
+        Trabajo(String id, Long listaPrecioId, LocalDate desde, LocalDate hasta) {
+            this.id = id;
+            this.listaPrecioId = listaPrecioId;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        RecalculoCostosDTO toDTO() {
+            return new RecalculoCostosDTO(id, listaPrecioId, desde, hasta, estado, total.get(), procesados.get(),
+                    actualizados.get(), sinZona.get(), error, inicio, fin);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 public class ShopifyService {
 
     private final ClienteRepository clienteRepository;
+    private final DirectorioClientesService directorioClientesService;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     // Versión de API de Shopify (usando 2024-01 que es estable)
@@ -169,11 +170,7 @@ public class ShopifyService {
         List<JsonNode> todosLosPedidos = new ArrayList<>();
         
         // Obtener todos los clientes con Shopify configurado
-        List<Cliente> clientes = clienteRepository.findAll().stream()
-            .filter(c -> c.getShopifyUrl() != null && !c.getShopifyUrl().trim().isEmpty())
-            .filter(c -> c.getShopifyClaveUnica() != null && !c.getShopifyClaveUnica().trim().isEmpty())
-            .filter(c -> c.getHabilitado() != null && c.getHabilitado())
-            .toList();
+        List<Cliente> clientes = directorioClientesService.clientesConShopify();
         
         log.info("Clientes con Shopify configurado: {}", clientes.size());
         
@@ -0,0 +1,160 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.EnvioDTO;
+import com.zetallegue.tms.dto.ResultadoTransicionDTO;
+import com.zetallegue.tms.dto.SincronizacionRequestDTO;
+import com.zetallegue.tms.dto.SincronizacionResultadoDTO;
+import com.zetallegue.tms.dto.TransicionEstadoDTO;
+import com.zetallegue.tms.model.TransicionSincronizada;
+import com.zetallegue.tms.model.Usuario;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.TransicionSincronizadaRepository;
+import com.zetallegue.tms.repository.UsuarioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sincronización de la app del chofer para trabajar sin señal: en un solo pedido la app manda los cambios de estado
+ * que acumuló (cada uno con su hora y una clave de idempotencia) y recibe lo que cambió en su ruta desde la
+ * sincronización anterior.
+ *
+ * Los cambios se aplican en el orden en que ocurrieron con las reglas de {@code actualizarEstado}, todos en una
+ * transacción. La clave de cada cambio procesado (aplicado o rechazado) se guarda en la misma transacción, así un
+ * reintento del mismo lote devuelve los resultados originales sin volver a aplicar nada.
+ *
+ * El cursor es la hora del servidor (epoch ms) menos {@link #MARGEN_CURSOR_MS}: las escrituras que confirman un
+ * poco después de tomada la hora se vuelven a mandar en la próxima sincronización en lugar de perderse (la app
+ * reemplaza por id, repetir un envío no cambia nada).
+ */
+@Service
+@Slf4j
+public class SincronizacionChoferService {
+
+    private static final long MARGEN_CURSOR_MS = 60_000;
+    private static final int LARGO_MAXIMO_CLAVE = 100;
+
+    private final EnvioService envioService;
+    private final EnvioRepository envioRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final TransicionSincronizadaRepository transicionSincronizadaRepository;
+    private final int maxTransiciones;
+    private final int diasRetencion;
+
+    public SincronizacionChoferService(EnvioService envioService,
+                                       EnvioRepository envioRepository,
+                                       UsuarioRepository usuarioRepository,
+                                       TransicionSincronizadaRepository transicionSincronizadaRepository,
+                                       @Value("${sincronizacion.max-transiciones:500}") int maxTransiciones,
+                                       @Value("${sincronizacion.dias-retencion:30}") int diasRetencion) {
+        this.envioService = envioService;
+        this.envioRepository = envioRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.transicionSincronizadaRepository = transicionSincronizadaRepository;
+        this.maxTransiciones = maxTransiciones;
+        this.diasRetencion = diasRetencion;
+    }
+
+    @Transactional
+    public SincronizacionResultadoDTO sincronizar(Long choferId, SincronizacionRequestDTO pedido) {
+        Usuario chofer = usuarioRepository.findById(choferId)
+                .filter(u -> "Chofer".equals(u.getPerfil()))
+                .orElseThrow(() -> new IllegalArgumentException("Chofer no encontrado"));
+        List<TransicionEstadoDTO> transiciones = pedido.getTransiciones() != null ? pedido.getTransiciones() : List.of();
+        if (transiciones.size() > maxTransiciones) {
+            throw new IllegalArgumentException("El lote supera el máximo de " + maxTransiciones + " cambios");
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        String usuarioNombre = pedido.getUsuarioNombre() != null && !pedido.getUsuarioNombre().isBlank()
+                ? pedido.getUsuarioNombre()
+                : String.format("%s %s", chofer.getNombre(), chofer.getApellido()).trim();
+
+        ResultadoTransicionDTO[] resultados = new ResultadoTransicionDTO[transiciones.size()];
+        Set<String> claves = transiciones.stream()
+                .map(TransicionEstadoDTO::getClaveIdempotencia)
+                .filter(c -> c != null && !c.isBlank() && c.length() <= LARGO_MAXIMO_CLAVE)
+                .collect(Collectors.toSet());
+        Map<String, TransicionSincronizada> yaProcesadas = claves.isEmpty() ? Map.of()
+                : transicionSincronizadaRepository.findByClaveIdempotenciaIn(claves).stream()
+                        .collect(Collectors.toMap(TransicionSincronizada::getClaveIdempotencia, Function.identity()));
+
+        // Qué hay que aplicar: sin clave válida se rechaza; las claves ya procesadas (o repetidas en el lote) no
+        List<Integer> aAplicar = new ArrayList<>();
+        Map<String, Integer> primeraDelLote = new HashMap<>();
+        for (int i = 0; i < transiciones.size(); i++) {
+            TransicionEstadoDTO t = transiciones.get(i);
+            String clave = t.getClaveIdempotencia();
+            if (clave == null || clave.isBlank() || clave.length() > LARGO_MAXIMO_CLAVE) {
+                resultados[i] = new ResultadoTransicionDTO(clave, t.getEnvioId(), t.getEstado(), TransicionSincronizada.RECHAZADA,
+                        "Falta la clave de idempotencia (o supera " + LARGO_MAXIMO_CLAVE + " caracteres)", false);
+            } else if (yaProcesadas.containsKey(clave)) {
+                TransicionSincronizada previa = yaProcesadas.get(clave);
+                resultados[i] = new ResultadoTransicionDTO(clave, previa.getEnvioId(), previa.getEstado(), previa.getResultado(), previa.getError(), true);
+            } else if (primeraDelLote.putIfAbsent(clave, i) == null) {
+                aAplicar.add(i);
+            }
+        }
+
+        // En el orden en que ocurrieron (a igual hora, el del lote)
+        aAplicar.sort(Comparator.comparing((Integer i) -> transiciones.get(i).getFechaHora(), Comparator.nullsLast(Comparator.naturalOrder())));
+        List<TransicionEstadoDTO> ordenadas = aAplicar.stream().map(transiciones::get).collect(Collectors.toList());
+        List<ResultadoTransicionDTO> aplicadas = ordenadas.isEmpty() ? List.of()
+                : envioService.aplicarTransicionesChofer(choferId, usuarioNombre, ordenadas);
+
+        List<TransicionSincronizada> registro = new ArrayList<>(aplicadas.size());
+        for (int j = 0; j < aAplicar.size(); j++) {
+            int i = aAplicar.get(j);
+            ResultadoTransicionDTO r = aplicadas.get(j);
+            resultados[i] = r;
+            TransicionEstadoDTO t = transiciones.get(i);
+            registro.add(new TransicionSincronizada(null, t.getClaveIdempotencia(), choferId, t.getEnvioId(), t.getEstado(),
+                    r.getResultado(), recortar(r.getError()), t.getFechaHora(), ahora));
+        }
+        transicionSincronizadaRepository.saveAll(registro);
+        // Repetidas dentro del mismo lote: el resultado de la primera
+        for (int i = 0; i < resultados.length; i++) {
+            if (resultados[i] != null) continue;
+            ResultadoTransicionDTO primera = resultados[primeraDelLote.get(transiciones.get(i).getClaveIdempotencia())];
+            resultados[i] = new ResultadoTransicionDTO(primera.getClaveIdempotencia(), primera.getEnvioId(), primera.getEstado(),
+                    primera.getResultado(), primera.getError(), true);
+        }
+
+        LocalDateTime desde = pedido.getCursor() != null
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(pedido.getCursor()), ZoneId.systemDefault())
+                : null;
+        List<EnvioDTO> cambios = envioService.obtenerCambiosDeChofer(choferId, desde);
+        List<Long> idsEnRuta = envioRepository.findIdsEnRutaDeChofer(choferId);
+        long cursor = ahora.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - MARGEN_CURSOR_MS;
+
+        log.info("Sincronización chofer {}: {} cambios recibidos ({} aplicados ahora), {} envíos devueltos",
+                choferId, transiciones.size(), aplicadas.stream().filter(r -> TransicionSincronizada.APLICADA.equals(r.getResultado())).count(),
+                cambios.size());
+        return new SincronizacionResultadoDTO(List.of(resultados), cambios, idsEnRuta, cursor);
+    }
+
+    /** Las claves se guardan para reconocer reintentos; pasado este plazo la app ya no reintenta. */
+    @Scheduled(cron = "${sincronizacion.purga-cron:0 45 4 * * ?}")
+    @Transactional
+    public void purgarClavesViejas() {
+        int borradas = transicionSincronizadaRepository.deleteByFechaRecepcionBefore(LocalDateTime.now().minusDays(diasRetencion));
+        if (borradas > 0) log.info("Sincronización: {} claves de idempotencia purgadas", borradas);
+    }
+
+    private static String recortar(String texto) {
+        return texto != null && texto.length() > 500 ? texto.substring(0, 500) : texto;
+    }
+}
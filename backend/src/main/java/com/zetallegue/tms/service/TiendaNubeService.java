@@ -22,6 +22,7 @@ import java.util.List;
 public class TiendaNubeService {
 
     private final ClienteRepository clienteRepository;
+    private final DirectorioClientesService directorioClientesService;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     // Base URL de la API de Tienda Nube
@@ -212,6 +213,7 @@ public class TiendaNubeService {
                         if (storeId != null && !storeId.isEmpty()) {
                             cliente.setTiendanubeStoreId(storeId);
                             clienteRepository.save(cliente);
+                            directorioClientesService.invalidar();
                             log.info("Store ID {} guardado para cliente {}", storeId, cliente.getId());
                         } else {
                             log.warn("No se pudo obtener el store_id de la respuesta de /v1/store para cliente {}", cliente.getId());
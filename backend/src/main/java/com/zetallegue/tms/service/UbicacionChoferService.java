@@ -0,0 +1,277 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.UbicacionChoferDTO;
+import com.zetallegue.tms.model.UbicacionChofer;
+import com.zetallegue.tms.model.Usuario;
+import com.zetallegue.tms.repository.UbicacionChoferRepository;
+import com.zetallegue.tms.repository.UsuarioRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingesta de posiciones GPS de los choferes.
+ *
+ * Cada posición actualiza en memoria la última ubicación del chofer (lo que lee el mapa en vivo) y queda en una cola
+ * que se vuelca cada {@code ubicaciones.volcado-ms} a {@code ubicaciones_chofer} con inserts en batch. La fila del
+ * usuario ya no se reescribe en cada ping: el volcado deja en usuarios solo la última posición de cada chofer, como
+ * respaldo para cuando se reinicia el servidor.
+ */
+@Service
+@Slf4j
+public class UbicacionChoferService {
+
+    private static final int FILAS_POR_TRANSACCION = 500;
+    /** Margen para relojes de teléfonos adelantados */
+    private static final int TOLERANCIA_RELOJ_MINUTOS = 5;
+
+    /** Resultado de {@link #registrarLote}. */
+    public record ResultadoLote(int recibidas, int guardadas, int duplicadas, int descartadas) {
+    }
+
+    /** Última posición conocida de un chofer. */
+    public record UbicacionActual(Double latitud, Double longitud, Integer bateria, LocalDateTime fechaHora) {
+    }
+
+    private final UbicacionChoferRepository ubicacionChoferRepository;
+    private final UsuarioRepository usuarioRepository;
+    // ObjectProvider: el índice geográfico lee de acá las ubicaciones al reconstruirse
+    private final ObjectProvider<IndiceGeograficoService> indiceGeograficoService;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPendientes;
+    private final int maxLote;
+
+    private final Map<Long, UbicacionActual> ultimas = new ConcurrentHashMap<>();
+    private final Queue<UbicacionChofer> pendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger cantidadPendientes = new AtomicInteger();
+    /** Momentos de las posiciones encoladas y todavía no guardadas, por chofer (para descartar reenvíos). */
+    private final Map<Long, Set<LocalDateTime>> momentosPendientes = new ConcurrentHashMap<>();
+
+    public UbicacionChoferService(UbicacionChoferRepository ubicacionChoferRepository,
+                                  UsuarioRepository usuarioRepository,
+                                  ObjectProvider<IndiceGeograficoService> indiceGeograficoService,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${ubicaciones.max-pendientes:200000}") int maxPendientes,
+                                  @Value("${ubicaciones.max-lote:2000}") int maxLote) {
+        this.ubicacionChoferRepository = ubicacionChoferRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.indiceGeograficoService = indiceGeograficoService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxPendientes = maxPendientes;
+        this.maxLote = maxLote;
+    }
+
+    /**
+     * Registra una posición. La última ubicación en memoria solo se reemplaza si la nueva es más reciente
+     * (las posiciones pueden llegar desordenadas); el historial guarda todas.
+     */
+    public void registrar(Long choferId, Double latitud, Double longitud, Integer bateria, LocalDateTime fechaHora) {
+        LocalDateTime recepcion = LocalDateTime.now();
+        LocalDateTime tomada = fechaHora != null ? fechaHora : recepcion;
+        UbicacionActual nueva = new UbicacionActual(latitud, longitud, bateria, tomada);
+        ultimas.merge(choferId, nueva, (actual, n) -> actual.fechaHora().isAfter(n.fechaHora()) ? actual : n);
+        indiceGeograficoService.getObject().choferMovido(choferId, latitud, longitud, bateria, tomada);
+
+        encolar(new UbicacionChofer(null, choferId, latitud, longitud, bateria, tomada, recepcion));
+    }
+
+    /**
+     * Registra posiciones que el teléfono acumuló sin señal o para mandarlas juntas. Se descartan las repetidas
+     * (mismo momento, dentro del lote, todavía en cola o ya guardadas: el teléfono reenvía el lote si no recibió
+     * la respuesta; si dos lotes iguales llegan a la vez, el índice único descarta la copia al volcar), las de coordenadas inválidas y las fechadas en el futuro. La última ubicación en memoria
+     * se actualiza una sola vez, con la más reciente.
+     */
+    public ResultadoLote registrarLote(Long choferId, List<UbicacionChoferDTO> posiciones) {
+        if (posiciones == null || posiciones.isEmpty()) {
+            return new ResultadoLote(0, 0, 0, 0);
+        }
+        if (posiciones.size() > maxLote) {
+            throw new IllegalArgumentException("El lote supera el máximo de " + maxLote + " posiciones");
+        }
+        LocalDateTime recepcion = LocalDateTime.now();
+        LocalDateTime limiteFuturo = recepcion.plusMinutes(TOLERANCIA_RELOJ_MINUTOS);
+
+        int descartadas = 0;
+        Map<LocalDateTime, UbicacionChoferDTO> porMomento = new TreeMap<>();
+        for (UbicacionChoferDTO p : posiciones) {
+            if (!coordenadasValidas(p.getLatitud(), p.getLongitud()) || p.getFechaHora() == null || p.getFechaHora().isAfter(limiteFuturo)) {
+                descartadas++;
+                continue;
+            }
+            porMomento.putIfAbsent(p.getFechaHora(), p);
+        }
+        int duplicadas = posiciones.size() - descartadas - porMomento.size();
+        if (porMomento.isEmpty()) {
+            return new ResultadoLote(posiciones.size(), 0, duplicadas, descartadas);
+        }
+
+        TreeMap<LocalDateTime, UbicacionChoferDTO> nuevas = new TreeMap<>(porMomento);
+        Set<LocalDateTime> enCola = momentosPendientes.getOrDefault(choferId, Set.of());
+        nuevas.keySet().removeIf(enCola::contains);
+        if (!nuevas.isEmpty()) {
+            nuevas.keySet().removeAll(ubicacionChoferRepository.findMomentosEntre(choferId, nuevas.firstKey(), nuevas.lastKey()));
+        }
+        duplicadas += porMomento.size() - nuevas.size();
+
+        for (UbicacionChoferDTO p : nuevas.values()) {
+            encolar(new UbicacionChofer(null, choferId, p.getLatitud(), p.getLongitud(), p.getBateria(), p.getFechaHora(), recepcion));
+        }
+        if (!nuevas.isEmpty()) {
+            UbicacionChoferDTO ultima = nuevas.lastEntry().getValue();
+            ultimas.merge(choferId, new UbicacionActual(ultima.getLatitud(), ultima.getLongitud(), ultima.getBateria(), ultima.getFechaHora()),
+                    (actual, n) -> actual.fechaHora().isAfter(n.fechaHora()) ? actual : n);
+            indiceGeograficoService.getObject().choferMovido(choferId, ultima.getLatitud(), ultima.getLongitud(), ultima.getBateria(), ultima.getFechaHora());
+        }
+        return new ResultadoLote(posiciones.size(), nuevas.size(), duplicadas, descartadas);
+    }
+
+    public static boolean coordenadasValidas(Double latitud, Double longitud) {
+        return latitud != null && longitud != null && latitud >= -90 && latitud <= 90 && longitud >= -180 && longitud <= 180
+                && !(latitud == 0 && longitud == 0);
+    }
+
+    private void encolar(UbicacionChofer ubicacion) {
+        if (cantidadPendientes.incrementAndGet() > maxPendientes) {
+            // Si la base no responde no se acumula memoria sin límite: se descarta lo más viejo
+            UbicacionChofer descartada = pendientes.poll();
+            if (descartada != null) {
+                cantidadPendientes.decrementAndGet();
+                quitarMomentoPendiente(descartada);
+            }
+            log.warn("Cola de ubicaciones llena ({}), se descarta la posición más antigua", maxPendientes);
+        }
+        momentosPendientes.computeIfAbsent(ubicacion.getChoferId(), k -> ConcurrentHashMap.newKeySet()).add(ubicacion.getFechaHora());
+        pendientes.add(ubicacion);
+    }
+
+    private void quitarMomentoPendiente(UbicacionChofer ubicacion) {
+        momentosPendientes.computeIfPresent(ubicacion.getChoferId(), (id, momentos) -> {
+            momentos.remove(ubicacion.getFechaHora());
+            return momentos.isEmpty() ? null : momentos;
+        });
+    }
+
+    /** Última posición del chofer recibida desde que arrancó el servidor, o null. */
+    public UbicacionActual obtenerUltima(Long choferId) {
+        return ultimas.get(choferId);
+    }
+
+    /**
+     * Ubicación a mostrar para el usuario: la de memoria si es más nueva que la guardada en la fila del usuario
+     * (que solo se actualiza en cada volcado), si no la guardada.
+     */
+    public UbicacionActual ubicacionDe(Usuario usuario) {
+        UbicacionActual ultima = ultimas.get(usuario.getId());
+        LocalDateTime guardada = usuario.getUltimaActualizacionUbicacion();
+        if (ultima != null && (guardada == null || !guardada.isAfter(ultima.fechaHora()))) {
+            Integer bateria = ultima.bateria() != null ? ultima.bateria() : usuario.getBateria();
+            return new UbicacionActual(ultima.latitud(), ultima.longitud(), bateria, ultima.fechaHora());
+        }
+        return new UbicacionActual(usuario.getLatitud(), usuario.getLongitud(), usuario.getBateria(), guardada);
+    }
+
+    public List<UbicacionChofer> obtenerRecorrido(Long choferId, LocalDateTime desde, LocalDateTime hasta) {
+        volcarPendientes();
+        return ubicacionChoferRepository.findByChoferIdAndFechaHoraBetweenOrderByFechaHoraAsc(choferId, desde, hasta);
+    }
+
+    public void olvidar(Long choferId) {
+        ultimas.remove(choferId);
+        indiceGeograficoService.getObject().choferQuitado(choferId);
+    }
+
+    @Scheduled(fixedDelayString = "${ubicaciones.volcado-ms:15000}", initialDelayString = "${ubicaciones.volcado-ms:15000}")
+    public synchronized void volcarPendientes() {
+        List<UbicacionChofer> lote = new ArrayList<>();
+        UbicacionChofer u;
+        while ((u = pendientes.poll()) != null) {
+            cantidadPendientes.decrementAndGet();
+            lote.add(u);
+        }
+        if (lote.isEmpty()) return;
+
+        // Más reciente por chofer dentro del lote: una sola actualización de usuarios por chofer
+        Map<Long, UbicacionChofer> ultimaPorChofer = new HashMap<>();
+        for (UbicacionChofer p : lote) {
+            ultimaPorChofer.merge(p.getChoferId(), p, (a, b) -> a.getFechaHora().isAfter(b.getFechaHora()) ? a : b);
+        }
+
+        // Una sola fila por chofer y momento (por ejemplo, el mismo lote recibido dos veces a la vez)
+        Set<List<Object>> claves = new HashSet<>();
+        lote.removeIf(p -> {
+            if (claves.add(List.of(p.getChoferId(), p.getFechaHora()))) return false;
+            quitarMomentoPendiente(p);
+            return true;
+        });
+
+        int guardadas = 0;
+        try {
+            for (int i = 0; i < lote.size(); i += FILAS_POR_TRANSACCION) {
+                List<UbicacionChofer> parte = lote.subList(i, Math.min(lote.size(), i + FILAS_POR_TRANSACCION));
+                try {
+                    transactionTemplate.executeWithoutResult(status -> ubicacionChoferRepository.saveAll(parte));
+                } catch (DataIntegrityViolationException e) {
+                    // Alguna ya estaba guardada: se reintenta de a una y se ignoran las que chocan con el índice único
+                    guardarDeAUna(parte);
+                }
+                guardadas += parte.size();
+                // Recién ahora salen del conjunto de pendientes: ya las ve la consulta de repetidas
+                parte.forEach(this::quitarMomentoPendiente);
+            }
+            transactionTemplate.executeWithoutResult(status -> ultimaPorChofer.forEach((choferId, p) -> {
+                if (p.getBateria() != null) {
+                    usuarioRepository.actualizarUltimaUbicacion(choferId, p.getLatitud(), p.getLongitud(), p.getBateria(), p.getFechaHora());
+                } else {
+                    usuarioRepository.actualizarUltimaUbicacionSinBateria(choferId, p.getLatitud(), p.getLongitud(), p.getFechaHora());
+                }
+            }));
+            log.debug("Ubicaciones volcadas: {} posiciones de {} choferes", lote.size(), ultimaPorChofer.size());
+        } catch (RuntimeException e) {
+            // Lo que no se guardó vuelve a la cola para el próximo volcado
+            List<UbicacionChofer> sinGuardar = lote.subList(guardadas, lote.size());
+            for (UbicacionChofer p : sinGuardar) {
+                p.setId(null);
+                pendientes.add(p);
+                cantidadPendientes.incrementAndGet();
+            }
+            log.error("Error volcando {} ubicaciones de choferes: {}", sinGuardar.size(), e.getMessage(), e);
+        }
+    }
+
+    private void guardarDeAUna(List<UbicacionChofer> parte) {
+        int repetidas = 0;
+        for (UbicacionChofer p : parte) {
+            p.setId(null);
+            try {
+                transactionTemplate.executeWithoutResult(status -> ubicacionChoferRepository.save(p));
+            } catch (DataIntegrityViolationException e) {
+                repetidas++;
+            }
+        }
+        log.debug("Ubicaciones volcadas de a una: {} ya estaban guardadas", repetidas);
+    }
+
+    @PreDestroy
+    public void detener() {
+        volcarPendientes();
+    }
+}
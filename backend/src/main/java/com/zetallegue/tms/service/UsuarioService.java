@@ -2,6 +2,7 @@ package com.zetallegue.tms.service;
 
 import com.zetallegue.tms.dto.LoginRequestDTO;
 import com.zetallegue.tms.dto.LoginResponseDTO;
+import com.zetallegue.tms.dto.UbicacionChoferDTO;
 import com.zetallegue.tms.dto.UsuarioDTO;
 import com.zetallegue.tms.model.Usuario;
 import com.zetallegue.tms.repository.UsuarioRepository;
@@ -9,10 +10,16 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -20,6 +27,13 @@ import java.util.stream.Collectors;
 public class UsuarioService {
 
     private final UsuarioRepository usuarioRepository;
+    private final UbicacionChoferService ubicacionChoferService;
+
+    /**
+     * Copias desacopladas de los choferes que envían posiciones, para no leer la fila del usuario en cada ping.
+     * Se descartan al modificar o eliminar el usuario.
+     */
+    private final Map<Long, Usuario> choferesConUbicacion = new ConcurrentHashMap<>();
 
     public LoginResponseDTO login(LoginRequestDTO loginRequest) {
         Usuario usuario = usuarioRepository
@@ -91,12 +105,15 @@ public class UsuarioService {
         usuario.setBloqueado(usuarioDTO.getBloqueado());
 
         usuario = usuarioRepository.save(usuario);
+        olvidarChofer(id);
         return toDTO(usuario);
     }
 
     @Transactional
     public void eliminarUsuario(Long id) {
         usuarioRepository.deleteById(id);
+        olvidarChofer(id);
+        ubicacionChoferService.olvidar(id);
     }
 
     public List<UsuarioDTO> obtenerChoferes() {
@@ -106,26 +123,65 @@ public class UsuarioService {
                 .collect(Collectors.toList());
     }
 
-    @Transactional
+    /**
+     * Registra la posición del chofer en memoria y en la cola del historial; la fila del usuario no se escribe
+     * (ver {@link UbicacionChoferService}). Lanza IllegalArgumentException si las coordenadas no son válidas o el
+     * usuario no es chofer, y RuntimeException si no existe.
+     */
     public UsuarioDTO actualizarUbicacion(Long choferId, Double latitud, Double longitud, Integer bateria) {
-        Usuario chofer = usuarioRepository.findById(choferId)
-                .orElseThrow(() -> new RuntimeException("Chofer no encontrado"));
-        
-        if (!"Chofer".equals(chofer.getPerfil())) {
-            throw new RuntimeException("El usuario no es un chofer");
+        if (latitud == null || longitud == null) {
+            throw new IllegalArgumentException("Latitud y longitud son obligatorias");
         }
-        
-        chofer.setLatitud(latitud);
-        chofer.setLongitud(longitud);
-        if (bateria != null) {
-            chofer.setBateria(bateria);
+        if (!UbicacionChoferService.coordenadasValidas(latitud, longitud)) {
+            throw new IllegalArgumentException("Coordenadas inválidas: " + latitud + ", " + longitud);
         }
-        chofer.setUltimaActualizacionUbicacion(java.time.LocalDateTime.now());
-        
-        chofer = usuarioRepository.save(chofer);
+        Usuario chofer = choferConUbicacion(choferId);
+        ubicacionChoferService.registrar(choferId, latitud, longitud, bateria, null);
         return toDTO(chofer);
     }
 
+    /** Lote de posiciones acumuladas en el teléfono (ver {@link UbicacionChoferService#registrarLote}). */
+    public UbicacionChoferService.ResultadoLote registrarUbicaciones(Long choferId, List<UbicacionChoferDTO> posiciones) {
+        choferConUbicacion(choferId);
+        return ubicacionChoferService.registrarLote(choferId, posiciones);
+    }
+
+    public List<UbicacionChoferDTO> obtenerRecorrido(Long choferId, LocalDateTime desde, LocalDateTime hasta) {
+        return ubicacionChoferService.obtenerRecorrido(choferId, desde, hasta).stream()
+                .map(u -> new UbicacionChoferDTO(u.getChoferId(), u.getLatitud(), u.getLongitud(), u.getBateria(), u.getFechaHora()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Chofer que envía posiciones; la primera vez se lee de la base y valida el perfil. Lanza RuntimeException si no
+     * existe e IllegalArgumentException si no es chofer.
+     */
+    private Usuario choferConUbicacion(Long choferId) {
+        return choferesConUbicacion.computeIfAbsent(choferId, id -> {
+            Usuario chofer = usuarioRepository.findById(id)
+                    .orElseThrow(() -> new RuntimeException("Chofer no encontrado"));
+            if (!"Chofer".equals(chofer.getPerfil())) {
+                throw new IllegalArgumentException("El usuario no es un chofer");
+            }
+            Usuario copia = new Usuario();
+            BeanUtils.copyProperties(chofer, copia);
+            return copia;
+        });
+    }
+
+    /** Descarta la copia del chofer; con una transacción activa también al terminar, para no releer la fila anterior. */
+    private void olvidarChofer(Long id) {
+        choferesConUbicacion.remove(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    choferesConUbicacion.remove(id);
+                }
+            });
+        }
+    }
+
     private UsuarioDTO toDTO(Usuario usuario) {
         UsuarioDTO dto = new UsuarioDTO();
         dto.setId(usuario.getId());
@@ -138,10 +194,11 @@ public class UsuarioService {
         dto.setGrupoId(usuario.getGrupoId());
         dto.setHabilitado(usuario.getHabilitado());
         dto.setBloqueado(usuario.getBloqueado());
-        dto.setLatitud(usuario.getLatitud());
-        dto.setLongitud(usuario.getLongitud());
-        dto.setUltimaActualizacionUbicacion(usuario.getUltimaActualizacionUbicacion());
-        dto.setBateria(usuario.getBateria());
+        UbicacionChoferService.UbicacionActual ubicacion = ubicacionChoferService.ubicacionDe(usuario);
+        dto.setLatitud(ubicacion.latitud());
+        dto.setLongitud(ubicacion.longitud());
+        dto.setUltimaActualizacionUbicacion(ubicacion.fechaHora());
+        dto.setBateria(ubicacion.bateria());
         return dto;
     }
 
@@ -0,0 +1,263 @@
+package com.zetallegue.tms.service;
+
+import com.zetallegue.tms.dto.ZonaEntregaRangoDTO;
+import com.zetallegue.tms.model.ZonaEntregaRango;
+import com.zetallegue.tms.repository.EnvioRepository;
+import com.zetallegue.tms.repository.ZonaEntregaRangoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Clasificador único de zona de entrega por CP (CABA / Zona 1 / Zona 2 / Zona 3 / Sin Zona).
+ *
+ * El mapa se lee de la tabla {@code zonas_entrega_rangos}; mientras esté vacía se usa el mapa por defecto
+ * (el que estaba repetido en cada servicio de envíos). Se compila en un arreglo denso indexado por CP numérico,
+ * así que clasificar es un acceso a arreglo. Permite clasificar CPs en lote y reclasificar envíos ya cargados
+ * con updates por conjunto cuando cambia el mapa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ZonaEntregaService {
+
+    public static final String SIN_ZONA = "Sin Zona";
+
+    /** CP más alto admitido en el mapa (acota el tamaño del arreglo denso). */
+    private static final int CP_MAXIMO = 99_999;
+    /** Cantidad máxima de CPs por cláusula IN al reclasificar. */
+    private static final int LOTE_CPS = 500;
+
+    private static final int[][] CABA = {{1000, 1599}};
+    private static final int[][] ZONA_1 = {
+            {1602, 1607}, {1609, 1609}, {1636, 1638}, {1640, 1646}, {1649, 1653}, {1655, 1655}, {1657, 1657},
+            {1672, 1672}, {1674, 1676}, {1678, 1678}, {1682, 1688}, {1692, 1692}, {1702, 1704}, {1706, 1708},
+            {1712, 1715}, {1751, 1754}, {1766, 1766}, {1773, 1773}, {1821, 1829}, {1831, 1836}, {1868, 1875}
+    };
+    private static final int[][] ZONA_2 = {
+            {1608, 1608}, {1610, 1618}, {1621, 1621}, {1624, 1624}, {1648, 1648}, {1659, 1667}, {1670, 1671},
+            {1716, 1716}, {1718, 1718}, {1722, 1724}, {1736, 1736}, {1738, 1738}, {1740, 1740}, {1742, 1746},
+            {1755, 1755}, {1757, 1759}, {1761, 1761}, {1763, 1765}, {1768, 1768}, {1770, 1772}, {1774, 1774},
+            {1776, 1776}, {1778, 1778}, {1785, 1786}, {1801, 1807}, {1812, 1812}, {1837, 1849}, {1851, 1856},
+            {1859, 1861}, {1863, 1863}, {1867, 1867}, {1876, 1891}, {1893, 1893}
+    };
+    private static final int[][] ZONA_3 = {
+            {1601, 1601}, {1619, 1620}, {1622, 1623}, {1625, 1635}, {1639, 1639}, {1647, 1647}, {1669, 1669},
+            {1727, 1727}, {1748, 1749}, {1808, 1808}, {1814, 1816}, {1858, 1858}, {1862, 1862}, {1864, 1865},
+            {1894, 1898}, {1900, 1910}, {1912, 1912}, {1914, 1914}, {1916, 1916}, {1923, 1927}, {1929, 1929},
+            {1931, 1931}, {1984, 1984}, {2800, 2802}, {2804, 2806}, {2808, 2808}, {2814, 2814}, {2816, 2816},
+            {6608, 6608}, {6700, 6703}, {6706, 6706}, {6708, 6708}, {6712, 6712}
+    };
+
+    private final ZonaEntregaRangoRepository zonaEntregaRangoRepository;
+    private final EnvioRepository envioRepository;
+    private final ColectaDiariaService colectaDiariaService;
+    private final IndiceGeograficoService indiceGeograficoService;
+
+    private volatile MapaZonas mapa;
+
+    /** Zona de entrega para el CP (se usan solo sus dígitos); "Sin Zona" si no está en el mapa o es inválido. */
+    public String clasificar(String codigoPostal) {
+        return obtenerMapa().clasificar(MotorPreciosService.parsearCp(codigoPostal));
+    }
+
+    /** Clasifica un lote de CPs con una sola lectura del mapa. Devuelve CP original → zona. */
+    public Map<String, String> clasificar(Collection<String> codigosPostales) {
+        MapaZonas m = obtenerMapa();
+        Map<String, String> resultado = new HashMap<>();
+        for (String cp : codigosPostales) {
+            if (cp != null && !resultado.containsKey(cp)) {
+                resultado.put(cp, m.clasificar(MotorPreciosService.parsearCp(cp)));
+            }
+        }
+        return resultado;
+    }
+
+    @Transactional(readOnly = true)
+    public List<ZonaEntregaRangoDTO> obtenerRangos() {
+        List<ZonaEntregaRango> rangos = zonaEntregaRangoRepository.findAllByOrderByOrdenAscCpDesdeAsc();
+        if (rangos.isEmpty()) {
+            rangos = rangosPorDefecto();
+        }
+        return rangos.stream().map(this::toDTO).collect(Collectors.toList());
+    }
+
+    /**
+     * Reemplaza el mapa de zonas completo. No toca los envíos ya cargados: para eso está
+     * {@link #reclasificarEnvios(LocalDateTime, LocalDateTime)}.
+     */
+    @Transactional
+    public List<ZonaEntregaRangoDTO> reemplazarRangos(List<ZonaEntregaRangoDTO> dtos) {
+        List<ZonaEntregaRango> nuevos = new ArrayList<>();
+        for (ZonaEntregaRangoDTO dto : dtos) {
+            if (dto.getZona() == null || dto.getZona().trim().isEmpty()) {
+                throw new RuntimeException("Cada rango debe tener una zona");
+            }
+            if (dto.getCpDesde() == null) {
+                throw new RuntimeException("El rango de la zona " + dto.getZona() + " no tiene CP desde");
+            }
+            int desde = dto.getCpDesde();
+            int hasta = dto.getCpHasta() != null ? dto.getCpHasta() : desde;
+            if (desde < 0 || hasta < desde || hasta > CP_MAXIMO) {
+                throw new RuntimeException("Rango de CP inválido para la zona " + dto.getZona() + ": " + desde + "-" + hasta);
+            }
+            ZonaEntregaRango rango = new ZonaEntregaRango();
+            rango.setZona(dto.getZona().trim());
+            rango.setCpDesde(desde);
+            rango.setCpHasta(hasta);
+            rango.setOrden(dto.getOrden() != null ? dto.getOrden() : 0);
+            nuevos.add(rango);
+        }
+        zonaEntregaRangoRepository.deleteAllInBatch();
+        List<ZonaEntregaRango> guardados = zonaEntregaRangoRepository.saveAll(nuevos);
+        invalidar();
+        log.info("Mapa de zonas de entrega reemplazado: {} rangos", guardados.size());
+        return guardados.stream().map(this::toDTO).collect(Collectors.toList());
+    }
+
+    /**
+     * Recalcula {@code zonaEntrega} de los envíos cargados en [desde, hasta) con el mapa actual.
+     * Clasifica una sola vez cada CP distinto y aplica un UPDATE por zona y lote de CPs. El UPDATE no pasa por los
+     * listeners de Envio, así que antes de cada lote se leen los envíos que cambian para marcar sus días de colecta
+     * y refrescarlos en el índice geográfico; fechaModificacion se actualiza para la sincronización de la app.
+     *
+     * @return cantidad de envíos actualizados por zona
+     */
+    @Transactional
+    public Map<String, Integer> reclasificarEnvios(LocalDateTime desde, LocalDateTime hasta) {
+        List<String> codigosPostales = envioRepository.findCodigosPostalesDistintos(desde, hasta);
+        Map<String, List<String>> cpsPorZona = clasificar(codigosPostales).entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue, LinkedHashMap::new,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+
+        Map<String, Integer> actualizadosPorZona = new LinkedHashMap<>();
+        LocalDateTime ahora = LocalDateTime.now();
+        Set<LocalDate> diasColecta = new HashSet<>();
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : cpsPorZona.entrySet()) {
+            List<String> cps = entry.getValue();
+            int actualizados = 0;
+            for (int i = 0; i < cps.size(); i += LOTE_CPS) {
+                List<String> lote = cps.subList(i, Math.min(i + LOTE_CPS, cps.size()));
+                for (Object[] fila : envioRepository.findParaReclasificarZona(entry.getKey(), lote, desde, hasta)) {
+                    ids.add((Long) fila[0]);
+                    if (fila[1] != null) diasColecta.add(aFecha(fila[1]));
+                }
+                actualizados += envioRepository.actualizarZonaEntregaPorCodigosPostales(entry.getKey(), lote, desde, hasta, ahora);
+            }
+            actualizadosPorZona.put(entry.getKey(), actualizados);
+        }
+        colectaDiariaService.marcarDiasPendientes(diasColecta.toArray(LocalDate[]::new));
+        indiceGeograficoService.refrescarEnvios(ids);
+        log.info("Reclasificación de zonas de entrega {} - {}: {} CPs distintos, actualizados {}",
+                desde, hasta, codigosPostales.size(), actualizadosPorZona);
+        return actualizadosPorZona;
+    }
+
+    private static LocalDate aFecha(Object valor) {
+        if (valor instanceof LocalDateTime ldt) return ldt.toLocalDate();
+        if (valor instanceof Timestamp ts) return ts.toLocalDateTime().toLocalDate();
+        return (LocalDate) valor;
+    }
+
+    private void invalidar() {
+        mapa = null;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    mapa = null;
+                }
+            });
+        }
+    }
+
+    private MapaZonas obtenerMapa() {
+        MapaZonas m = mapa;
+        if (m != null) return m;
+        synchronized (this) {
+            if (mapa == null) {
+                List<ZonaEntregaRango> rangos = zonaEntregaRangoRepository.findAllByOrderByOrdenAscCpDesdeAsc();
+                if (rangos.isEmpty()) {
+                    rangos = rangosPorDefecto();
+                }
+                mapa = MapaZonas.compilar(rangos);
+            }
+            return mapa;
+        }
+    }
+
+    private ZonaEntregaRangoDTO toDTO(ZonaEntregaRango rango) {
+        return new ZonaEntregaRangoDTO(rango.getZona(), rango.getCpDesde(), rango.getCpHasta(), rango.getOrden());
+    }
+
+    private static List<ZonaEntregaRango> rangosPorDefecto() {
+        List<ZonaEntregaRango> rangos = new ArrayList<>();
+        agregarRangos(rangos, "CABA", 0, CABA);
+        agregarRangos(rangos, "Zona 1", 1, ZONA_1);
+        agregarRangos(rangos, "Zona 2", 2, ZONA_2);
+        agregarRangos(rangos, "Zona 3", 3, ZONA_3);
+        return rangos;
+    }
+
+    private static void agregarRangos(List<ZonaEntregaRango> rangos, String zona, int orden, int[][] cps) {
+        for (int[] r : cps) {
+            rangos.add(new ZonaEntregaRango(null, zona, r[0], r[1], orden));
+        }
+    }
+
+    /** Mapa compilado: posición = CP, valor = índice en {@code zonas} (0 = Sin Zona). */
+    private static final class MapaZonas {
+        private final short[] zonaPorCp;
+        private final String[] zonas;
+
+        private MapaZonas(short[] zonaPorCp, String[] zonas) {
+            this.zonaPorCp = zonaPorCp;
+            this.zonas = zonas;
+        }
+
+        String clasificar(int cp) {
+            if (cp < 0 || cp >= zonaPorCp.length) return SIN_ZONA;
+            return zonas[zonaPorCp[cp]];
+        }
+
+        /** Los rangos vienen ordenados por prioridad: el primero que cubre un CP se lo queda. */
+        static MapaZonas compilar(List<ZonaEntregaRango> rangos) {
+            int maximo = 0;
+            for (ZonaEntregaRango r : rangos) {
+                maximo = Math.max(maximo, Math.min(r.getCpHasta(), CP_MAXIMO));
+            }
+            short[] zonaPorCp = new short[maximo + 1];
+            List<String> zonas = new ArrayList<>();
+            zonas.add(SIN_ZONA);
+            Map<String, Short> indices = new HashMap<>();
+            for (ZonaEntregaRango r : rangos) {
+                short indice = indices.computeIfAbsent(r.getZona(), z -> {
+                    zonas.add(z);
+                    return (short) (zonas.size() - 1);
+                });
+                int hasta = Math.min(r.getCpHasta(), CP_MAXIMO);
+                for (int cp = Math.max(r.getCpDesde(), 0); cp <= hasta; cp++) {
+                    if (zonaPorCp[cp] == 0) zonaPorCp[cp] = indice;
+                }
+            }
+            return new MapaZonas(zonaPorCp, zonas.toArray(new String[0]));
+        }
+    }
+}